@@ -10,6 +10,7 @@ fun environment(key: String) = providers.environmentVariable(key)
 
 val javaVersion = "11"
 val flexmarkVersion = "0.64.0"
+val jmhVersion = "1.36"
 val pluginSinceBuild = "203"
 val pluginUntilBuild = ""
 val pluginVersion = "3.0.203.115"
@@ -94,7 +95,29 @@ sourceSets {
             setSrcDirs(mutableListOf("src/test/java"))
         }
     }
-    
+
+    // JMH benchmarks, run with the jmh task
+    create("jmh") {
+        java {
+            setSrcDirs(mutableListOf("src/jmh/java"))
+        }
+
+        compileClasspath += sourceSets["main"].output + sourceSets["test"].output
+        runtimeClasspath += sourceSets["main"].output + sourceSets["test"].output
+    }
+}
+
+val jmhImplementation: Configuration by configurations.getting {
+    extendsFrom(configurations.testImplementation.get())
+}
+
+val jmhRuntimeOnly: Configuration by configurations.getting {
+    extendsFrom(configurations.testRuntimeOnly.get())
+}
+
+dependencies {
+    jmhImplementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 tasks { // Set the JVM compatibility versions
@@ -121,6 +144,33 @@ tasks { // Set the JVM compatibility versions
 
     }
 
+    // benchmarks need the same headless IDE environment as tests, JMH forks inherit the JVM arguments
+    register<JavaExec>("jmh") {
+        group = "verification"
+        description = "Runs JMH benchmarks over test-data/performance, use -PjmhArgs=\"...\" for JMH options"
+
+        val jmhSourceSet = sourceSets["jmh"]
+        val test = named<Test>("test").get()
+        val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+
+        dependsOn(jmhSourceSet.classesTaskName, "prepareTestingSandbox")
+        classpath = jmhSourceSet.runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        workingDir = projectDir
+        jvmArgumentProviders.addAll(test.jvmArgumentProviders)
+        systemProperties(test.systemProperties)
+        systemProperty("java.awt.headless", "true")
+        outputs.file(resultFile)
+        outputs.upToDateWhen { false }
+
+        args("-rf", "json", "-rff", resultFile.get().asFile.absolutePath)
+        args(properties("jmhArgs").getOrElse("").split(' ').filter { it.isNotBlank() })
+
+        doFirst {
+            resultFile.get().asFile.parentFile.mkdirs()
+        }
+    }
+
     runPluginVerifier {
 
     }
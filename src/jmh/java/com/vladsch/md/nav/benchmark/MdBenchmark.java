@@ -0,0 +1,171 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.intellij.testFramework.fixtures.impl.LightTempDirTestFixtureImpl;
+import com.vladsch.flexmark.ext.tables.TableExtractingVisitor;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.format.MarkdownTable;
+import com.vladsch.flexmark.util.sequence.LineAppendableImpl;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.parser.LexerData;
+import com.vladsch.md.nav.parser.MdLexParserManager;
+import com.vladsch.md.nav.parser.MdLexer;
+import com.vladsch.md.nav.parser.PegdownOptionsAdapter;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.api.ParserPurpose;
+import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import com.vladsch.md.nav.testUtil.MdEnhSpecTestSetup;
+import com.vladsch.md.nav.testUtil.MdSpecTestSetup;
+import com.vladsch.md.nav.util.format.MdFormatter;
+import com.vladsch.md.nav.util.format.MdNavigatorTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmarks of lexing, parsing, formatting and rendering of test-data/performance files
+ * <p>
+ * Run with `./gradlew jmh`, JMH options can be given with `-PjmhArgs="..."`. The plugin code needs the IDE application
+ * so each trial starts a headless light test fixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MdBenchmark {
+    public static final String CORPUS_DIR_PROPERTY = "md.nav.benchmark.corpus";
+
+    public enum ExtensionSet {
+        BASIC(MdSpecTestSetup.BASIC_OPTIONS),
+        ENHANCED(MdEnhSpecTestSetup.ENHANCED_OPTIONS),
+        ALL_ENHANCED(MdEnhSpecTestSetup.ALL_ENHANCED_PARSER_OPTIONS),
+        LEGACY(MdEnhSpecTestSetup.LEGACY_OPTIONS),
+        ;
+
+        final Consumer<MdRenderingProfile> profileOptions;
+
+        ExtensionSet(Consumer<MdRenderingProfile> profileOptions) {
+            this.profileOptions = profileOptions;
+        }
+    }
+
+    @Param({ "spec.md", "commonMarkSpec.md", "table.md", "wrap.md", "slow-link-validation.md", "slow-unused-references.md", "hang-pegdown.md" })
+    public String corpus;
+
+    @Param({ "BASIC", "ENHANCED", "ALL_ENHANCED", "LEGACY" })
+    public ExtensionSet extensionSet;
+
+    private CodeInsightTestFixture myFixture;
+    private MdRenderingProfile myRenderingProfile;
+    private String myText;
+    private MdFile myFile;
+    private DataHolder myParserOptions;
+    private Document myParserDocument;
+    private HtmlRenderer myHtmlRenderer;
+    private Document myHtmlDocument;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        myText = new String(Files.readAllBytes(Paths.get(System.getProperty(CORPUS_DIR_PROPERTY, "test-data/performance"), corpus)), StandardCharsets.UTF_8);
+
+        IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+        TestFixtureBuilder<IdeaProjectTestFixture> fixtureBuilder = factory.createLightFixtureBuilder(LightProjectDescriptor.EMPTY_PROJECT_DESCRIPTOR);
+        myFixture = factory.createCodeInsightFixture(fixtureBuilder.getFixture(), new LightTempDirTestFixtureImpl(true));
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.setUp());
+
+        Project project = myFixture.getProject();
+
+        // measure parsing, not the shared lexer data of the last parse
+        MdApplicationSettings.getInstance().getDebugSettings().setUseLexerDataCache(false);
+
+        myRenderingProfile = MdRenderingProfileManager.getProfile(project);
+        myRenderingProfile.copyFrom(new MdRenderingProfile(), true);
+        extensionSet.profileOptions.accept(myRenderingProfile);
+
+        myFile = ReadAction.compute(() -> (MdFile) PsiFileFactory.getInstance(project).createFileFromText(corpus, MdFileType.INSTANCE, myText));
+
+        myParserOptions = new PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, myRenderingProfile);
+        myParserDocument = Parser.builder(myParserOptions).build().parse(myText);
+
+        DataHolder htmlOptions = new PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.HTML, HtmlPurpose.RENDER, null, myRenderingProfile);
+        myHtmlRenderer = HtmlRenderer.builder(htmlOptions).build();
+        myHtmlDocument = Parser.builder(htmlOptions).build().parse(myText);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.tearDown());
+    }
+
+    @Benchmark
+    public void lexer(Blackhole blackhole) {
+        MdLexer lexer = new MdLexer(myRenderingProfile);
+        lexer.start(myText, 0, myText.length(), lexer.getStartState());
+
+        while (lexer.getTokenType() != null) {
+            blackhole.consume(lexer.getTokenType());
+            lexer.advance();
+        }
+    }
+
+    @Benchmark
+    public LexerData parser() {
+        return MdLexParserManager.parseMarkdownUncached(myRenderingProfile, myText);
+    }
+
+    @Benchmark
+    public CharSequence formatter() {
+        return ReadAction.compute(() -> MdFormatter.formatFile(myFile).toSequence());
+    }
+
+    @Benchmark
+    public void tableFormatter(Blackhole blackhole) {
+        for (MarkdownTable markdownTable : new TableExtractingVisitor(myParserOptions).getTables(myParserDocument)) {
+            MdNavigatorTable table = new MdNavigatorTable(markdownTable);
+            LineAppendableImpl out = new LineAppendableImpl(0);
+            table.normalize();
+            table.appendTable(out);
+            blackhole.consume(out.toString());
+        }
+    }
+
+    @Benchmark
+    public String htmlRenderer() {
+        return myHtmlRenderer.render(myHtmlDocument);
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
+import com.intellij.psi.impl.cache.impl.id.IdDataConsumer;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.intellij.testFramework.fixtures.impl.LightTempDirTestFixtureImpl;
+import com.vladsch.md.nav.parser.MdLexParser;
+import com.vladsch.md.nav.todo.MdFilterLexer;
+import com.vladsch.md.nav.todo.MdIdIndexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Benchmarks of id and todo indexing of test-data/performance files with the full flexmark lexer and with the
+ * dedicated indexing lexer
+ * <p>
+ * Run with `./gradlew jmh -PjmhArgs="MdIndexingBenchmark"`
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MdIndexingBenchmark {
+    @Param({ "spec.md", "commonMarkSpec.md", "table.md", "wrap.md", "slow-link-validation.md", "slow-unused-references.md", "hang-pegdown.md" })
+    public String corpus;
+
+    private CodeInsightTestFixture myFixture;
+    private String myText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        myText = new String(Files.readAllBytes(Paths.get(System.getProperty(MdBenchmark.CORPUS_DIR_PROPERTY, "test-data/performance"), corpus)), StandardCharsets.UTF_8);
+
+        IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+        TestFixtureBuilder<IdeaProjectTestFixture> fixtureBuilder = factory.createLightFixtureBuilder(LightProjectDescriptor.EMPTY_PROJECT_DESCRIPTOR);
+        myFixture = factory.createCodeInsightFixture(fixtureBuilder.getFixture(), new LightTempDirTestFixtureImpl(true));
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.setUp());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.tearDown());
+    }
+
+    private Map<?, ?> indexIds(Function<OccurrenceConsumer, Lexer> lexerFactory) {
+        IdDataConsumer idDataConsumer = new IdDataConsumer();
+        Lexer lexer = lexerFactory.apply(new OccurrenceConsumer(idDataConsumer, false));
+        lexer.start(myText);
+        while (lexer.getTokenType() != null) lexer.advance();
+        return idDataConsumer.getResult();
+    }
+
+    @Benchmark
+    public Map<?, ?> parserLexer() {
+        return indexIds(consumer -> new MdFilterLexer(MdLexParser.createLexer(null), consumer));
+    }
+
+    @Benchmark
+    public Map<?, ?> indexingLexer() {
+        return indexIds(MdIdIndexer::createIndexingLexer);
+    }
+}
@@ -18,16 +18,52 @@ package com.vladsch.md.nav
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.util.concurrency.AppExecutorUtil
+import com.vladsch.md.nav.settings.MdApplicationSettings
+import com.vladsch.md.nav.settings.MdDocumentSettings
+import com.vladsch.md.nav.util.Md5Utils
 import com.vladsch.plugin.util.plus
 import com.vladsch.plugin.util.suffixWith
 import java.io.File
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
 import java.util.function.Consumer
 
-class MdImageCache : Disposable {
+/**
+ * Cache of generated images, ie. diagrams, in ~/.markdownNavigator/image-cache
+ *
+ * Image files are named by the md5 of their key and written to a temp file first then renamed, so concurrent
+ * writers of the same key never expose a partial file. The key to file map with last access time and size is kept
+ * in a manifest so images survive IDE restarts. Least recently used images are removed when the cache exceeds the
+ * size budget or were not used within the maximum age, both from document settings.
+ *
+ * Access times are saved with a delay after they change by more than [ACCESS_SAVE_RESOLUTION_MS], so the LRU order
+ * survives an IDE crash, except for the most recent accesses.
+ */
+class MdImageCache(cacheDir: File = File(System.getProperty("user.home")).plus(".markdownNavigator").plus("image-cache")) : Disposable {
     companion object {
         val LOG: Logger = Logger.getInstance("com.vladsch.md.nav.ImageCache")
 
+        // background image generation is CPU bound, leave some cores for the IDE
+        val BACKGROUND_WRITERS: Int = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))
+
+        const val MANIFEST_FILE_NAME: String = "manifest.txt"
+        const val MANIFEST_HEADER: String = "# MdImageCache 1"
+        const val IMAGE_FILE_PREFIX: String = "image_"
+        const val TEMP_FILE_PREFIX: String = "tmp_"
+        const val MANIFEST_SAVE_DELAY_MS: Long = 5000L
+        const val ACCESS_SAVE_RESOLUTION_MS: Long = 60L * 1000L
+
+        private const val MB: Long = 1024L * 1024L
+        private const val DAY_MS: Long = 24L * 60L * 60L * 1000L
+
         var testInstance: MdImageCache? = null
 
         @JvmStatic
@@ -45,81 +81,332 @@ class MdImageCache : Disposable {
             }
     }
 
-    val imageMD5PathMap: ConcurrentHashMap<String, String> = ConcurrentHashMap<String, String>()
-    val cachedImagesMap: ConcurrentHashMap<String, String> = ConcurrentHashMap<String, String>()
+    private class CacheEntry(val key: String, val file: File, val size: Long, @Volatile var lastAccess: Long) {
+        // last access written to the manifest
+        @Volatile var savedAccess: Long = lastAccess
+    }
+
+    private val myEntries = ConcurrentHashMap<String, CacheEntry>()
+    private val myPathKeys = ConcurrentHashMap<String, String>()
+    private val myHits = AtomicLong()
+    private val myMisses = AtomicLong()
+    private val myEvictions = AtomicLong()
+    private val myManifestSavePending = AtomicBoolean()
+    private val myEvictionLock = Any()
+
     var tempDirPath: String = ""
         private set
 
-    val fileWriterLock: Any = Object()
+    // key to callbacks to run when the image is written by a background writer
+    private val myPendingImages = ConcurrentHashMap<String, ArrayList<Runnable>>()
+    private val myBackgroundWriter: ExecutorService by lazy { AppExecutorUtil.createBoundedApplicationPoolExecutor("MdImageCache Writer", BACKGROUND_WRITERS) }
 
     init {
-        initComponent()
+        initComponent(cacheDir)
     }
 
     fun isCachedFile(path: String): Boolean {
-        return cachedImagesMap.containsKey(path)
+        return myPathKeys.containsKey(path)
     }
 
-    fun fileCount(): Int = imageMD5PathMap.size
+    fun fileCount(): Int = myEntries.size
 
     fun fileSize(): Long {
         var size = 0L
-        for (file in imageMD5PathMap.values) {
-            val tempFile = File(file)
-            if (tempFile.exists() && tempFile.isFile) {
-                size += tempFile.totalSpace
-            }
+        for (entry in myEntries.values) {
+            size += entry.size
         }
         return size
     }
 
+    val hits: Long get() = myHits.get()
+    val misses: Long get() = myMisses.get()
+    val evictions: Long get() = myEvictions.get()
+
+    fun resetStatistics() {
+        myHits.set(0)
+        myMisses.set(0)
+        myEvictions.set(0)
+    }
+
+    fun getStatistics(): String {
+        val hits = myHits.get()
+        val misses = myMisses.get()
+        val total = hits + misses
+        return String.format("hits: %d, misses: %d, hit rate: %d%%, evicted: %d", hits, misses, if (total == 0L) 0 else hits * 100 / total, myEvictions.get())
+    }
+
     fun clearCache() {
-        val values = ArrayList(imageMD5PathMap.values)
-        imageMD5PathMap.clear()
-        cachedImagesMap.clear()
-
-        for (file in values) {
-            val tempFile = File(file)
-            if (tempFile.exists() && tempFile.isFile) {
-                tempFile.delete()
+        val values = ArrayList(myEntries.values)
+        myEntries.clear()
+        myPathKeys.clear()
+
+        for (entry in values) {
+            if (entry.file.exists() && entry.file.isFile) {
+                entry.file.delete()
             }
         }
+
+        saveManifest()
     }
 
-    private fun initComponent() {
-        val tempDir = File(System.getProperty("user.home")).plus(".markdownNavigator").plus("image-cache")
+    private fun initComponent(tempDir: File) {
         tempDirPath = tempDir.absolutePath.suffixWith('/')
 
         if (!tempDir.exists()) {
             tempDir.mkdirs()
         }
+
+        loadManifest()
+        removeUntrackedFiles()
+        evictImages()
     }
 
     override fun dispose() {
+        saveManifest()
     }
 
-    fun getImageFile(md5: String, extension: String, fileWriter: Consumer<File>): File {
-        var file: File
-        val path = imageMD5PathMap[md5 + extension]
-        if (path != null) {
-            file = File(path)
-            if (file.isFile && file.exists()) return file
+    private fun getImageFileName(key: String, extension: String): String {
+        return IMAGE_FILE_PREFIX + Md5Utils.md5(key) + extension
+    }
+
+    private fun getCachedFile(key: String): File? {
+        val entry = myEntries[key]
+        if (entry != null) {
+            if (entry.file.isFile && entry.file.exists()) {
+                val lastAccess = System.currentTimeMillis()
+                entry.lastAccess = lastAccess
+                myHits.incrementAndGet()
+
+                if (lastAccess - entry.savedAccess >= ACCESS_SAVE_RESOLUTION_MS) scheduleManifestSave()
+                return entry.file
+            }
+
+            removeEntry(entry)
+        }
+        return null
+    }
+
+    private fun removeEntry(entry: CacheEntry) {
+        if (myEntries.remove(entry.key, entry)) {
+            myPathKeys.remove(entry.file.path)
         }
+    }
 
-        // does not exit, create it
-        // FIX: try to use the file name as is, if not conflict then save under the original file name else use temp file with prefix prefix
-        file = File.createTempFile("image_", extension, File(tempDirPath))
-        imageMD5PathMap[md5 + extension] = file.path
-        cachedImagesMap[file.path] = md5 + extension
+    /**
+     * Write image to a temp file and move it to its final name, replacing any image written concurrently for the same key
+     */
+    private fun writeImageFile(key: String, extension: String, fileWriter: Consumer<File>): File {
+        val file = File(tempDirPath, getImageFileName(key, extension))
+        val tempFile = File.createTempFile(TEMP_FILE_PREFIX, extension, File(tempDirPath))
 
         try {
-            // Only one file writer at a time since a file writer can change user.dir setting while generating a file
-            synchronized(fileWriterLock) {
-                fileWriter.accept(file)
-            }
+            fileWriter.accept(tempFile)
         } catch (e: Throwable) {
+            // partial or empty image is not cached, next request writes it again
+            tempFile.delete()
             LOG.error(e)
+            return file
+        }
+
+        try {
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } catch (e: IOException) {
+            LOG.warn("Image file move failed $tempFile to $file", e)
+            tempFile.delete()
+            return file
         }
+
+        // add to cache only after it is written so a partial file is never used
+        val entry = CacheEntry(key, file, file.length(), System.currentTimeMillis())
+        myEntries[key] = entry
+        myPathKeys[file.path] = key
+
+        evictImages()
+        scheduleManifestSave()
         return file
     }
+
+    fun getImageFile(md5: String, extension: String, fileWriter: Consumer<File>): File {
+        val key = md5 + extension
+        val file = getCachedFile(key)
+        if (file != null) return file
+
+        myMisses.incrementAndGet()
+        return writeImageFile(key, extension, fileWriter)
+    }
+
+    /**
+     * Get image file if it was already generated, otherwise generate it in the background
+     *
+     * NOTE: background writers run concurrently so fileWriter must not depend on or modify global state, like user.dir
+     *
+     * @param md5        key for the image content
+     * @param extension  image file extension
+     * @param fileWriter writer for the image file
+     * @param onReady    called from a background thread after the image file is written
+     *
+     * @return image file or null if it is being generated
+     */
+    fun getImageFileOrSchedule(md5: String, extension: String, fileWriter: Consumer<File>, onReady: Runnable): File? {
+        val key = md5 + extension
+        val file = getCachedFile(key)
+        if (file != null) return file
+
+        var schedule = false
+        myPendingImages.compute(key) { _, callbacks ->
+            if (callbacks == null) {
+                schedule = true
+                arrayListOf(onReady)
+            } else {
+                callbacks.add(onReady)
+                callbacks
+            }
+        }
+
+        if (schedule) {
+            myMisses.incrementAndGet()
+
+            myBackgroundWriter.execute {
+                try {
+                    writeImageFile(key, extension, fileWriter)
+                } finally {
+                    val callbacks = myPendingImages.remove(key)
+                    callbacks?.forEach { it.run() }
+                }
+            }
+        }
+        return null
+    }
+
+    /**
+     * Remove images not used within max age and least recently used images over the size budget
+     */
+    fun evictImages() {
+        val maxSize: Long
+        val maxAge: Long
+
+        if (ApplicationManager.getApplication() == null || ApplicationManager.getApplication().isUnitTestMode) {
+            maxSize = MdDocumentSettings.DEFAULT_IMAGE_CACHE_MAX_SIZE * MB
+            maxAge = MdDocumentSettings.DEFAULT_IMAGE_CACHE_MAX_AGE * DAY_MS
+        } else {
+            val documentSettings = MdApplicationSettings.instance.documentSettings
+            maxSize = documentSettings.imageCacheMaxSize * MB
+            maxAge = documentSettings.imageCacheMaxAge * DAY_MS
+        }
+
+        evictImages(maxSize, maxAge)
+    }
+
+    /**
+     * @param maxSize maximum total size of images in bytes
+     * @param maxAge  maximum time since last access in milliseconds
+     */
+    internal fun evictImages(maxSize: Long, maxAge: Long) {
+        synchronized(myEvictionLock) {
+            val entries = ArrayList(myEntries.values)
+            var totalSize = 0L
+            for (entry in entries) {
+                totalSize += entry.size
+            }
+
+            val oldest = System.currentTimeMillis() - maxAge
+            if (totalSize <= maxSize && entries.all { it.lastAccess >= oldest }) return
+
+            entries.sortBy { it.lastAccess }
+
+            var evicted = false
+            for (entry in entries) {
+                if (totalSize <= maxSize && entry.lastAccess >= oldest) break
+
+                removeEntry(entry)
+                entry.file.delete()
+                totalSize -= entry.size
+                myEvictions.incrementAndGet()
+                evicted = true
+            }
+
+            if (evicted) scheduleManifestSave()
+        }
+    }
+
+    private fun scheduleManifestSave() {
+        if (myManifestSavePending.compareAndSet(false, true)) {
+            AppExecutorUtil.getAppScheduledExecutorService().schedule({
+                saveManifest()
+            }, MANIFEST_SAVE_DELAY_MS, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun loadManifest() {
+        val manifest = File(tempDirPath, MANIFEST_FILE_NAME)
+        if (!manifest.isFile) return
+
+        try {
+            val lines = manifest.readLines()
+            if (lines.isEmpty() || lines[0] != MANIFEST_HEADER) return
+
+            for (i in 1 until lines.size) {
+                // lastAccess, file name, key
+                val parts = lines[i].split('\t', limit = 3)
+                if (parts.size != 3) continue
+
+                val lastAccess = parts[0].toLongOrNull() ?: continue
+                val file = File(tempDirPath, parts[1])
+                if (file.isFile) {
+                    myEntries[parts[2]] = CacheEntry(parts[2], file, file.length(), lastAccess)
+                    myPathKeys[file.path] = parts[2]
+                }
+            }
+        } catch (e: IOException) {
+            LOG.warn("Image cache manifest load failed", e)
+        }
+    }
+
+    @Synchronized
+    internal fun saveManifest() {
+        myManifestSavePending.set(false)
+
+        val sb = StringBuilder()
+        sb.append(MANIFEST_HEADER).append('\n')
+        for (entry in myEntries.values) {
+            val lastAccess = entry.lastAccess
+            entry.savedAccess = lastAccess
+            sb.append(lastAccess).append('\t').append(entry.file.name).append('\t').append(entry.key).append('\n')
+        }
+
+        try {
+            val manifest = File(tempDirPath, MANIFEST_FILE_NAME)
+            val tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".txt", File(tempDirPath))
+            tempFile.writeText(sb.toString())
+            try {
+                Files.move(tempFile.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(tempFile.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } catch (e: IOException) {
+            LOG.warn("Image cache manifest save failed", e)
+        }
+    }
+
+    /**
+     * Remove image files which are not in the manifest, written by previous versions or left by interrupted writers
+     *
+     * NOTE: recent files are left alone, they could be written by another IDE instance using the same cache directory
+     */
+    private fun removeUntrackedFiles() {
+        val files = File(tempDirPath).listFiles() ?: return
+        val oldest = System.currentTimeMillis() - DAY_MS
+        for (file in files) {
+            if (!file.isFile) continue
+            val name = file.name
+            if ((name.startsWith(IMAGE_FILE_PREFIX) || name.startsWith(TEMP_FILE_PREFIX)) && !myPathKeys.containsKey(file.path) && file.lastModified() < oldest) {
+                file.delete()
+            }
+        }
+    }
 }
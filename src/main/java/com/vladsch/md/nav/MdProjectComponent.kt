@@ -55,6 +55,7 @@ import com.vladsch.md.nav.editor.MdPreviewFileEditorProvider
 import com.vladsch.md.nav.editor.MdSplitEditor
 import com.vladsch.md.nav.editor.api.MdEditorCustomizationProvider
 import com.vladsch.md.nav.highlighter.MdSyntaxHighlighter
+import com.vladsch.md.nav.parser.LexerDataCache
 import com.vladsch.md.nav.psi.element.MdFile
 import com.vladsch.md.nav.psi.element.MdNamedElement
 import com.vladsch.md.nav.settings.*
@@ -99,6 +100,7 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
     // every time the file content changes this number is incremented.
     // this way modified images are reloaded by JavaFX WebView by attaching the serial after
     // the file name as a query parameter to make WebView load it as a new image
+    @Volatile
     private var imageFilesChangedPending = false
 
     private val runWhenProjectClosed = DelayedRunner()
@@ -284,6 +286,9 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
         val log = LOG.isDebugEnabled
 
         if (!project.isDisposed) {
+            // NOTE: settings which affect parsing may have changed, cached parse results must not be reused
+            LexerDataCache.getInstance().clear()
+
             if (DumbService.isDumb(project)) {
                 DumbService.getInstance(project).runWhenSmart {
                     reparseMarkdown(reparseFilePsi)
@@ -381,15 +386,24 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
     private fun fileContentChanged(file: VirtualFile) {
         val changedFile = file.path
         if (PathInfo(changedFile).isImageExt) {
-            if (!imageFilesChangedPending) {
-                imageFilesChangedPending = true
+            imageFilesChanged()
+        }
+    }
 
-                if (!project.isDisposed) {
-                    ApplicationManager.getApplication().invokeLater {
-                        if (!project.isDisposed) {
-                            imageFilesChangedPending = false
-                            project.messageBus.syncPublisher(FileChangedListener.TOPIC).onFilesChanged()
-                        }
+    /**
+     * Notify previews that images changed, used for image files and for images generated in the background
+     *
+     * Can be called from any thread, notifications are merged until the listeners are invoked on the EDT
+     */
+    fun imageFilesChanged() {
+        if (!imageFilesChangedPending) {
+            imageFilesChangedPending = true
+
+            if (!project.isDisposed) {
+                ApplicationManager.getApplication().invokeLater {
+                    if (!project.isDisposed) {
+                        imageFilesChangedPending = false
+                        project.messageBus.syncPublisher(FileChangedListener.TOPIC).onFilesChanged()
                     }
                 }
             }
@@ -8,6 +8,8 @@ import com.vladsch.ReverseRegEx.util.RegExMatcher
 import com.vladsch.ReverseRegEx.util.RegExPattern
 import com.vladsch.ReverseRegEx.util.ReversePattern
 import com.vladsch.flexmark.formatter.Formatter
+import com.vladsch.flexmark.parser.Parser
+import com.vladsch.flexmark.util.data.DataHolder
 import com.vladsch.flexmark.util.data.MutableDataSet
 import com.vladsch.flexmark.util.format.CharWidthProvider
 import com.vladsch.flexmark.util.format.TrackedOffset
@@ -19,6 +21,7 @@ import com.vladsch.flexmark.util.sequence.BasedSequence.NULL
 import com.vladsch.flexmark.util.sequence.SequenceUtils
 import com.vladsch.md.nav.MdBundle
 import com.vladsch.md.nav.actions.api.MdElementContextInfoProvider
+import com.vladsch.md.nav.parser.MdParserCache
 import com.vladsch.md.nav.parser.PegdownOptionsAdapter
 import com.vladsch.md.nav.parser.api.HtmlPurpose
 import com.vladsch.md.nav.parser.api.ParserPurpose
@@ -76,16 +79,19 @@ open class ParagraphContext(val context: CaretContextInfo, val paragraphInfo: Pa
             }
 
             val renderingProfile = context.renderingProfile
-            val parserSettings = renderingProfile.parserSettings
-            val optionsAdapter = PegdownOptionsAdapter()
             val formatOptionsAdapter = FlexmarkFormatOptionsAdapter(context, paragraphSeq.startOffset, paragraphSeq.endOffset)
 
-            val parserOptions = optionsAdapter.getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, renderingProfile)
-
             val formatOptions = formatOptionsAdapter.formatOptions
                 .set(Formatter.MAX_BLANK_LINES, 0)
                 .set(Formatter.MAX_TRAILING_BLANK_LINES, if (paragraphSeq.endsWithEOL()) 0 else -1)
 
+            if (startOffset == this.startOffset) {
+                val adjusted = rewrapParagraph(trackedOffset, formatOptions, adjustCaret)
+                if (adjusted != null) return adjusted
+            }
+
+            val parserOptions = PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, renderingProfile)
+
             val documentOptions = MutableDataSet()
                 .set(Formatter.DOCUMENT_FIRST_PREFIX, firstPrefix)
                 .set(Formatter.RESTORE_TRACKED_SPACES, true)
@@ -99,7 +105,6 @@ open class ParagraphContext(val context: CaretContextInfo, val paragraphInfo: Pa
                 context.file.putUserData(MdFile.FORMAT_RESULT, formattedSeq)
             }
 
-            // FIX: use segment information to do incremental update
             val originalChars = context.charSequence.subSequence(startOffset, this.endOffset)
             val diffInfo = getDiffInfo(originalChars, formattedSeq, false)
             if (diffInfo.isEqual || diffInfo.lastCharDiff) {
@@ -123,6 +128,92 @@ open class ParagraphContext(val context: CaretContextInfo, val paragraphInfo: Pa
         return false
     }
 
+    /**
+     * Re-wrap lines around the caret without formatting the paragraph
+     *
+     * @return adjust paragraph result or null if the paragraph needs to be formatted
+     */
+    private fun rewrapParagraph(trackedOffset: TrackedOffset, formatOptions: DataHolder, adjustCaret: Boolean): Boolean? {
+        val rightMargin = Formatter.RIGHT_MARGIN.get(formatOptions)
+        if (rightMargin <= 0) return null
+
+        // links kept at start of line are wrapped by the formatter when rendering them
+        if ((Formatter.KEEP_EXPLICIT_LINKS_AT_START.get(formatOptions) || Formatter.KEEP_IMAGE_LINKS_AT_START.get(formatOptions)) && paragraph.indexOf('[') != -1) return null
+
+        val leadInHandlers = if (Formatter.APPLY_SPECIAL_LEAD_IN_HANDLERS.get(formatOptions)) {
+            val parser = MdParserCache.getInstance(context.file.project).getParser(context.renderingProfile, ParserPurpose.PARSER, HtmlPurpose.RENDER)
+            Parser.SPECIAL_LEAD_IN_HANDLERS.get(parser.options)
+        } else {
+            listOf()
+        }
+
+        val rewrapper = ParagraphRewrapper(paragraph, rightMargin - prefix.length, prefix.length - firstPrefix.length,
+            Formatter.FORMAT_CHAR_WIDTH_PROVIDER.get(formatOptions), Formatter.KEEP_HARD_LINE_BREAKS.get(formatOptions), leadInHandlers, formatOptions)
+
+        val rewrap = rewrapper.rewrap(trackedOffset) ?: return null
+
+        // lines are only replaced so their document prefixes have to be the ones of the paragraph
+        val chars = context.charSequence
+        var replaceStart = -1
+        for (i in rewrap.startLine until rewrap.endLine) {
+            val line = rewrapper.getLine(i)
+            if (line.isEmpty || line.endOffset - line.startOffset != line.length) return null
+
+            val lineStart = context.offsetLineStart(line.startOffset) ?: return null
+            if (!chars.subSequence(lineStart, line.startOffset).contentEquals(if (i == 0) firstPrefix else prefix)) return null
+            if (i == rewrap.startLine) replaceStart = lineStart
+        }
+
+        val replaceEnd = rewrapper.getLine(rewrap.endLine - 1).endOffset
+        val wrapped = rewrap.wrapped
+
+        // format result user data is used by tests for segments of the result, wrapped text is added with its segments
+        val based = if (context.file.getUserData(MdFile.FORMAT_RESULT) != null) paragraph.builder.append(startOffset, replaceStart) else null
+
+        val sb = StringBuilder()
+        var caretIndex = -1
+        var lineStart = 0
+        while (lineStart <= wrapped.length) {
+            var lineEnd = wrapped.indexOf('\n', lineStart)
+            if (lineEnd == -1) lineEnd = wrapped.length
+
+            if (lineStart > 0) sb.append('\n')
+            val linePrefix = if (rewrap.startLine == 0 && lineStart == 0) firstPrefix else prefix
+            if (based != null) {
+                if (lineStart > 0) based.append('\n')
+                based.append(linePrefix, 0, linePrefix.length)
+                rewrapper.appendBased(based, rewrap, lineStart, lineEnd)
+            }
+
+            sb.append(linePrefix)
+            if (rewrap.caretIndex in lineStart..lineEnd) caretIndex = sb.length + rewrap.caretIndex - lineStart
+            sb.append(wrapped, lineStart, lineEnd)
+            lineStart = lineEnd + 1
+        }
+
+        if (based != null) {
+            based.append(replaceEnd, endOffset)
+            context.file.putUserData(MdFile.FORMAT_RESULT, based.toSequence())
+        }
+
+        val originalChars = chars.subSequence(replaceStart, replaceEnd)
+        val diffInfo = getDiffInfo(originalChars, sb, false)
+        if (diffInfo.isEqual || diffInfo.lastCharDiff) {
+            if (char == null) {
+                context.showTooltip(MdBundle.message("tooltip.document.format.no-changes")) { }
+            }
+            return false
+        }
+
+        context.document.replaceString(replaceStart + diffInfo.firstDiff, replaceEnd - diffInfo.lastDiff, sb.subSequence(diffInfo.firstDiff, sb.length - diffInfo.lastDiff))
+
+        if (adjustCaret && caretIndex != -1) {
+            context.editor.caretModel.currentCaret.moveToOffset(replaceStart + caretIndex)
+            return true
+        }
+        return !adjustCaret
+    }
+
     companion object {
         const val MARKDOWN_START_LINE_CHAR: Char = SequenceUtils.LS     // https://www.fileformat.info/info/unicode/char/2028/index.htm LINE_SEPARATOR this one is not preserved but will cause a line break if not already at beginning of line
 
@@ -0,0 +1,197 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.actions.handlers.util
+
+import com.vladsch.flexmark.util.data.DataHolder
+import com.vladsch.flexmark.util.format.CharWidthProvider
+import com.vladsch.flexmark.util.format.MarkdownParagraph
+import com.vladsch.flexmark.util.format.TrackedOffset
+import com.vladsch.flexmark.util.sequence.BasedSequence
+import com.vladsch.flexmark.util.sequence.SequenceUtils
+import com.vladsch.flexmark.util.sequence.builder.SequenceBuilder
+import com.vladsch.flexmark.util.sequence.mappers.SpecialLeadInHandler
+
+/**
+ * Incremental re-wrap of paragraph text for wrap on typing
+ *
+ * Paragraph text has its line prefixes removed, each line is a segment of the document. Only lines from the one before
+ * the edited line up to the first line whose break does not change are wrapped, doubling the range until the break
+ * stays. The rest of the paragraph keeps its lines. Only the lines next to the range are checked to be already
+ * wrapped, if not [rewrap] returns null and the paragraph has to be formatted. Lines further away are left as they are,
+ * wrapping them is up to the next edit near them or formatting the paragraph.
+ *
+ * @param paragraph        paragraph text without prefixes
+ * @param width            wrapping width of lines, in columns
+ * @param firstWidthOffset width offset of the first paragraph line
+ */
+class ParagraphRewrapper(
+    val paragraph: BasedSequence,
+    val width: Int,
+    val firstWidthOffset: Int,
+    val charWidthProvider: CharWidthProvider,
+    val keepHardBreaks: Boolean,
+    val leadInHandlers: List<SpecialLeadInHandler>,
+    val options: DataHolder
+) {
+    /**
+     * @param startLine  first wrapped line
+     * @param endLine    end of wrapped lines, exclusive
+     * @param wrapped    text replacing the lines, without EOL after the last line
+     * @param caretIndex index of caret in wrapped text, -1 if not resolved
+     */
+    class Rewrap(val startLine: Int, val endLine: Int, val wrapped: BasedSequence, val caretIndex: Int)
+
+    // start and end index of each line's text in paragraph, end is before EOL
+    private val lineStarts: IntArray
+    private val lineEnds: IntArray
+
+    init {
+        val starts = ArrayList<Int>()
+        val ends = ArrayList<Int>()
+        val length = paragraph.length
+        var pos = 0
+
+        while (pos < length) {
+            var eol = paragraph.indexOf('\n', pos)
+            if (eol == -1) eol = length
+            starts.add(pos)
+            ends.add(eol)
+            pos = eol + 1
+        }
+
+        lineStarts = starts.toIntArray()
+        lineEnds = ends.toIntArray()
+    }
+
+    val lineCount: Int get() = lineStarts.size
+
+    fun getLine(line: Int): BasedSequence = paragraph.subSequence(lineStarts[line], lineEnds[line])
+
+    fun rewrap(trackedOffset: TrackedOffset): Rewrap? {
+        val editLine = getOffsetLine(trackedOffset.offset)
+        if (editLine < 0 || trackedOffset.offset > getLine(editLine).endOffset) return null
+
+        val startLine = (editLine - 1).coerceAtLeast(0)
+        var endLine = (editLine + 2).coerceAtMost(lineCount)
+
+        // first word of the range does not change, only the line before it can take words from the range
+        if (startLine > 0 && !isWrappedLine(startLine - 1)) return null
+
+        while (true) {
+            for (i in startLine until endLine) {
+                val line = getLine(i)
+                if (line.isBlank || line[0] == ' ') return null
+            }
+
+            // wrapped as plain text, segmented text tracks spaces of removed prefixes as part of the line
+            val text = BasedSequence.of(paragraph.subSequence(lineStarts[startLine], lineEnds[endLine - 1]).toString())
+            val formatter = MarkdownParagraph(text, text, charWidthProvider)
+            formatter.options = options
+            formatter.width = width
+            formatter.firstWidthOffset = if (startLine == 0) firstWidthOffset else 0
+            formatter.keepSoftBreaks = false
+            formatter.keepHardBreaks = keepHardBreaks
+            formatter.isRestoreTrackedSpaces = true
+            formatter.leadInHandlers = leadInHandlers
+
+            val tracked = trackedOffset.withOffset(lineStarts[editLine] - lineStarts[startLine] + trackedOffset.offset - getLine(editLine).startOffset)
+            formatter.addTrackedOffset(tracked)
+
+            val wrapped = formatter.wrapText()
+            var isStable = endLine == lineCount
+
+            if (!isStable) {
+                // last two lines are the same and the last one does not take words from the next line
+                val lastLines = "\n" + getLine(endLine - 2) + "\n" + getLine(endLine - 1)
+                isStable = ("\n" + wrapped).endsWith(lastLines) && isWrappedLine(endLine - 1)
+            }
+
+            if (isStable) {
+                if (endLine < lineCount && !isWrappedLine(endLine)) return null
+                return Rewrap(startLine, endLine, wrapped, if (tracked.isResolved) tracked.index else -1)
+            }
+
+            endLine = (endLine + endLine - startLine).coerceAtMost(lineCount)
+        }
+    }
+
+    /**
+     * Append wrapped text to builder, characters taken from the paragraph are appended as their segments of its base
+     * sequence, one at a time
+     *
+     * NOTE: only used for segment ranges of the result in tests
+     *
+     * @param builder    builder for the paragraph's base sequence
+     * @param rewrap     re-wrap result
+     * @param startIndex start index in wrapped text
+     * @param endIndex   end index in wrapped text
+     */
+    fun appendBased(builder: SequenceBuilder, rewrap: Rewrap, startIndex: Int, endIndex: Int) {
+        val source = paragraph.subSequence(lineStarts[rewrap.startLine], lineEnds[rewrap.endLine - 1])
+        for (i in startIndex until endIndex) {
+            val index = rewrap.wrapped.getIndexOffset(i)
+            val offset = if (index == -1) -1 else source.getIndexOffset(index)
+            if (offset == -1) builder.append(rewrap.wrapped[i])
+            else builder.append(offset, offset + 1)
+        }
+    }
+
+    private fun getOffsetLine(offset: Int): Int {
+        var lo = 0
+        var hi = lineCount
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (getLine(mid).startOffset <= offset) lo = mid + 1 else hi = mid
+        }
+        return lo - 1
+    }
+
+    private fun getLineWidth(line: Int): Int {
+        return charWidthProvider.spaceWidth * (width + if (line == 0) firstWidthOffset else 0).coerceAtLeast(0)
+    }
+
+    private fun isHardBreak(text: BasedSequence, line: Int): Boolean {
+        return keepHardBreaks && line + 1 < lineCount && (text.endsWith("  ") || text.endsWith("\\"))
+    }
+
+    private fun getFirstWord(text: BasedSequence): BasedSequence {
+        val end = text.indexOf(' ')
+        return if (end == -1) text else text.subSequence(0, end)
+    }
+
+    /**
+     * Conservative test of a line being left as is by wrapping: no extra spaces, fits and the next line's first word
+     * does not fit after it. Lead-in words are not escaped or unescaped.
+     */
+    private fun isWrappedLine(line: Int): Boolean {
+        val text = getLine(line)
+        if (text.isEmpty || text[0] == ' ' || text.indexOf('\t') != -1 || text.indexOf(SequenceUtils.LS) != -1) return false
+
+        val isHardBreak = isHardBreak(text, line)
+        val body = if (isHardBreak && text.endsWith("  ")) text.subSequence(0, text.length - 2) else text
+        if (body.endsWith(" ") || body.indexOf("  ") != -1) return false
+
+        val bodyWidth = charWidthProvider.getStringWidth(body)
+        if (bodyWidth > getLineWidth(line)) return false
+
+        if (leadInHandlers.isNotEmpty()) {
+            var pos = 0
+            while (pos < body.length) {
+                var end = body.indexOf(' ', pos)
+                if (end == -1) end = body.length
+                val word = body.subSequence(pos, end)
+
+                for (handler in leadInHandlers) {
+                    if (if (pos == 0) handler.escape(word, options) { } else handler.unEscape(word, options) { }) return false
+                }
+                pos = end + 1
+            }
+        }
+
+        if (!isHardBreak && line + 1 < lineCount) {
+            val nextWord = getFirstWord(getLine(line + 1))
+            if (bodyWidth + charWidthProvider.spaceWidth + charWidthProvider.getStringWidth(nextWord) <= getLineWidth(line)) return false
+        }
+        return true
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.actions.ide
+
+import com.intellij.notification.NotificationListener
+import com.intellij.notification.NotificationType
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.fileEditor.OpenFileDescriptor
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.progress.Task
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.xml.util.XmlStringUtil
+import com.vladsch.md.nav.MdBundle
+import com.vladsch.md.nav.PluginNotifications
+import com.vladsch.md.nav.vcs.MdLinkResolverManager
+import com.vladsch.md.nav.vcs.MdProjectLinkValidator
+import com.vladsch.plugin.util.getProjectBaseDirectory
+import javax.swing.event.HyperlinkEvent
+
+class ValidateProjectLinksAction : AnAction() {
+    companion object {
+        const val MAX_LISTED_PROBLEMS: Int = 50
+    }
+
+    override fun update(e: AnActionEvent) {
+        e.presentation.isEnabled = e.project != null
+    }
+
+    override fun actionPerformed(e: AnActionEvent) {
+        val project = e.project ?: return
+
+        ProgressManager.getInstance().run(object : Task.Backgroundable(project, MdBundle.message("validate-links.progress"), true) {
+            var result: MdProjectLinkValidator.ValidationResult? = null
+
+            override fun run(indicator: ProgressIndicator) {
+                result = MdLinkResolverManager.getInstance(project).linkValidator.validate(indicator)
+            }
+
+            override fun onSuccess() {
+                val validationResult = result
+                if (validationResult != null && !project.isDisposed) {
+                    showResult(project, validationResult)
+                }
+            }
+        })
+    }
+
+    private fun showResult(project: Project, result: MdProjectLinkValidator.ValidationResult) {
+        val baseDir = project.getProjectBaseDirectory()
+        val sb = StringBuilder()
+        sb.append(MdBundle.message("validate-links.result.message", result.checkedFiles, result.files, result.problems.size))
+
+        if (result.problems.isNotEmpty()) {
+            sb.append("<br>")
+            for ((index, problem) in result.problems.withIndex()) {
+                if (index >= MAX_LISTED_PROBLEMS) {
+                    sb.append("<br>").append(MdBundle.message("validate-links.more.message", result.problems.size - MAX_LISTED_PROBLEMS))
+                    break
+                }
+
+                val filePath = (if (baseDir == null) null else VfsUtilCore.getRelativePath(problem.virtualFile, baseDir)) ?: problem.virtualFile.path
+                sb.append("<br><a href=\"").append(index).append("\">")
+                    .append(XmlStringUtil.escapeString(filePath)).append(":").append(problem.lineNumber)
+                    .append("</a> ").append(XmlStringUtil.escapeString(problem.linkText))
+                    .append(" - ").append(XmlStringUtil.escapeString(problem.description))
+            }
+        }
+
+        val listener = NotificationListener { _, hyperlinkEvent ->
+            if (hyperlinkEvent.eventType == HyperlinkEvent.EventType.ACTIVATED) {
+                val problem = hyperlinkEvent.description.toIntOrNull()?.let { result.problems.getOrNull(it) }
+                if (problem != null && problem.virtualFile.isValid && !project.isDisposed) {
+                    OpenFileDescriptor(project, problem.virtualFile, problem.offset).navigate(true)
+                }
+            }
+        }
+
+        val notificationType = if (result.problems.isEmpty()) NotificationType.INFORMATION else NotificationType.WARNING
+        PluginNotifications.makeNotification(sb.toString(), MdBundle.message("validate-links.result.title"), notificationType, PluginNotifications.NOTIFICATION_GROUP_INFORM, project, listener)
+    }
+}
@@ -17,6 +17,7 @@ import com.vladsch.md.nav.parser.LexerData;
 import com.vladsch.md.nav.parser.LexerToken;
 import com.vladsch.md.nav.parser.MdLexParserManager;
 import com.vladsch.md.nav.parser.MdLexemeProcessor;
+import com.vladsch.md.nav.parser.PackedLexerTokens;
 import com.vladsch.md.nav.settings.MdApplicationSettings;
 import com.vladsch.md.nav.settings.MdParserSettings;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
@@ -82,7 +83,7 @@ public class MdExternalAnnotator extends ExternalAnnotator<MdExternalAnnotator.P
                 lexerData[0] = MdLexParserManager.parseMarkdown(renderingProfile, source.myCharSequence);
             });
             if (lexerData[0] != null) {
-                LexerToken[] tokens = lexerData[0].lexerTokens;
+                PackedLexerTokens tokens = lexerData[0].lexerTokens;
                 // parse whitespace and EOL as per lexer
                 CharSequence chars = source.myCharSequence;
                 MdLexemeProcessor processor = new MdLexemeProcessor(chars, tokens, 0, chars.length(), 0);
@@ -1,6 +1,7 @@
 // Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.vladsch.md.nav.editor
 
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiManager
@@ -13,8 +14,11 @@ import com.vladsch.md.nav.editor.split.SplitFileEditor
 import com.vladsch.md.nav.editor.text.TextHtmlPanelProvider
 import com.vladsch.md.nav.editor.util.HtmlGeneratorProvider
 import com.vladsch.md.nav.parser.api.HtmlPurpose
+import com.vladsch.md.nav.parser.flexmark.MdBlockHtmlCache
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
+import com.vladsch.md.nav.settings.MdRenderingProfile
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
+import com.vladsch.md.nav.vcs.MdLinkResolverManager
 import com.vladsch.plugin.util.TimeIt
 import java.util.*
 import java.util.function.Consumer
@@ -22,9 +26,19 @@ import java.util.regex.Pattern
 import kotlin.collections.LinkedHashMap
 
 class MdPreviewFileEditor constructor(project: Project, file: VirtualFile) : PreviewFileEditorBase(project, file) {
-    override fun makeHtmlPage(pattern: Pattern?): String {
-        if (myDocument == null) return ""
+    companion object {
+        /**
+         * Rendered blocks are reused only if rendering profile, generator and link target state are the same.
+         * Profile is copied because settings changes update the project's profile instance in place.
+         */
+        internal fun getBlockCacheKey(renderingProfile: MdRenderingProfile, providerId: String, linkTargetsVersion: Int, fileStructureModificationCount: Long): Any {
+            return listOf(MdRenderingProfile(renderingProfile), providerId, linkTargetsVersion, fileStructureModificationCount)
+        }
+    }
+
+    private val myBlockHtmlCache = MdBlockHtmlCache()
 
+    override fun makeHtmlPageRenderer(pattern: Pattern?): HtmlPageRenderer {
         val plainText = myLastPanelProviderInfo == TextHtmlPanelProvider.INFO
         val htmlProviderInfo =
             if (plainText && mySplitEditorPreviewType == SplitFileEditor.SplitEditorPreviewType.UNMODIFIED_HTML) TextHtmlGeneratorProvider.INFO
@@ -32,24 +46,9 @@ class MdPreviewFileEditor constructor(project: Project, file: VirtualFile) : Pre
 
         if (myLastHtmlProviderInfo != htmlProviderInfo) myLastRenderedHtml = ""
 
-        val myHtmlGenerator = HtmlGeneratorProvider.getFromInfoOrDefault(htmlProviderInfo).createHtmlGenerator(GitHubLinkResolver(myFile, myProject), myRenderingProfile)
-        val psiFile = PsiManager.getInstance(myProject).findFile(myFile)
-
-        var rangeList: List<Range>? = null
         var selectionList: List<Range>? = null
         myHighlightEnabled = true
 
-        if (pattern != null) {
-            val ranges = ArrayList<Range>()
-            val matcher = pattern.matcher(myDocument.charsSequence)
-
-            while (matcher.find()) {
-                ranges.add(Range.of(matcher.start(), matcher.end()))
-            }
-
-            rangeList = ranges
-        }
-
         if (myRenderingProfile.previewSettings.showSelectionInPreview) {
             val editor = myEditor
             if (editor != null && editor.selectionModel.hasSelection()) {
@@ -67,6 +66,33 @@ class MdPreviewFileEditor constructor(project: Project, file: VirtualFile) : Pre
             }
         }
 
+        val renderingProfile = myRenderingProfile
+
+        val blockCacheKey = getBlockCacheKey(renderingProfile, htmlProviderInfo.providerId, myLinkTargetsVersion, MdLinkResolverManager.getInstance(myProject).fileStructureModificationCount)
+
+        return HtmlPageRenderer { charSequence ->
+            makeHtmlPage(charSequence, pattern, selectionList, plainText, htmlProviderInfo, renderingProfile, blockCacheKey)
+        }
+    }
+
+    private fun makeHtmlPage(charSequence: CharSequence, pattern: Pattern?, selectionList: List<Range>?, plainText: Boolean, htmlProviderInfo: HtmlGeneratorProvider.Info, renderingProfile: MdRenderingProfile, blockCacheKey: Any): HtmlPage {
+        val myHtmlGenerator = HtmlGeneratorProvider.getFromInfoOrDefault(htmlProviderInfo).createHtmlGenerator(GitHubLinkResolver(myFile, myProject), renderingProfile)
+        val psiFile = PsiManager.getInstance(myProject).findFile(myFile)
+
+        var rangeList: List<Range>? = null
+
+        if (pattern != null) {
+            val ranges = ArrayList<Range>()
+            val matcher = pattern.matcher(charSequence)
+
+            while (matcher.find()) {
+                ProgressManager.checkCanceled()
+                ranges.add(Range.of(matcher.start(), matcher.end()))
+            }
+
+            rangeList = ranges
+        }
+
         var rangeMap: Map<Range, String>? = null
 
         if (selectionList != null && rangeList != null) {
@@ -144,25 +170,33 @@ class MdPreviewFileEditor constructor(project: Project, file: VirtualFile) : Pre
             }
         }
 
+        ProgressManager.checkCanceled()
+
         var currentHtml: String = ""
 
         TimeIt.logTime(LOG, "MarkdownPreviewFileEditor::makeHtmlPage toHtml") {
             // diagnostic/2612  use immutableCharSequence
-            currentHtml = myHtmlGenerator.toHtml(psiFile, myDocument.immutableCharSequence, HtmlPurpose.RENDER, null, null, Consumer { it ->
+            currentHtml = myHtmlGenerator.toHtml(psiFile, charSequence, HtmlPurpose.RENDER, null, null, Consumer { it ->
+                // rendered in a non-blocking read action, parse and render check for cancellation
+                it.set(MdNavigatorExtension.CHECK_CANCELED, true)
+
                 if (!plainText) {
                     if (rangeMap != null) {
                         // add range list
                         it.set(MdNavigatorExtension.HIGHLIGHT_RANGES, rangeMap)
                         it.set(Parser.FENCED_CODE_CONTENT_BLOCK, true)
+                    } else {
+                        // only re-render changed blocks
+                        it.set(MdNavigatorExtension.BLOCK_HTML_CACHE, myBlockHtmlCache.startRender(blockCacheKey))
                     }
                     // fastest output possible
                     it.set(HtmlRenderer.FORMAT_FLAGS, LineAppendable.F_PASS_THROUGH)
+                    // generate diagrams in the background, preview is updated when they are ready
+                    it.set(MdNavigatorExtension.DEFER_IMAGE_CONVERSION, true)
                 }
             })
         }
 
-        myHtmlTagRanges = myHtmlGenerator.htmlTagRanges
-
-        return currentHtml
+        return HtmlPage(currentHtml, myHtmlGenerator.htmlTagRanges)
     }
 }
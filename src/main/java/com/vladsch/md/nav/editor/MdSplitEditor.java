@@ -173,10 +173,9 @@ public class MdSplitEditor extends SplitFileEditor<TextEditor, MdPreviewFileEdit
 
         final Editor editor = getMainEditor().getEditor();
 
-        if (editor.getCaretModel().getCaretCount() == 1) {
-            int offset = editor.getCaretModel().getOffset();
-            syncScrollPosition(editor, offset, mySecondEditor);
-        }
+        // with multiple carets the preview follows the primary caret
+        int offset = editor.getCaretModel().getPrimaryCaret().getOffset();
+        syncScrollPosition(editor, offset, mySecondEditor);
     }
 
     private void setSoftWraps(boolean state) {
@@ -8,6 +8,7 @@ import com.intellij.find.SearchReplaceComponent
 import com.intellij.ide.structureView.StructureViewBuilder
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.ModalityState
+import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.command.WriteCommandAction
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.editor.Document
@@ -24,6 +25,7 @@ import com.intellij.openapi.util.UserDataHolderBase
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.openapi.wm.IdeFocusManager
 import com.intellij.util.Alarm
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.vladsch.flexmark.util.sequence.Range
 import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.*
@@ -39,18 +41,22 @@ import com.vladsch.md.nav.editor.util.HtmlGeneratorProvider
 import com.vladsch.md.nav.editor.util.HtmlPanel
 import com.vladsch.md.nav.editor.util.HtmlPanelProvider
 import com.vladsch.md.nav.editor.util.HtmlPanelProvider.AvailabilityInfo
+import com.vladsch.md.nav.editor.util.HtmlTagRangeIndex
 import com.vladsch.md.nav.settings.*
 import com.vladsch.md.nav.settings.MdProjectSettings.Companion.getInstance
 import com.vladsch.md.nav.util.*
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
 import com.vladsch.plugin.util.TimeIt
 import com.vladsch.plugin.util.debug
+import org.jetbrains.concurrency.CancellablePromise
 import java.awt.BorderLayout
 import java.awt.event.ComponentEvent
 import java.awt.event.ComponentListener
 import java.beans.PropertyChangeListener
 import java.lang.reflect.Method
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
 import java.util.regex.Pattern
 import java.util.regex.PatternSyntaxException
 import javax.swing.JComponent
@@ -64,7 +70,11 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
     protected val myDocument: Document? = FileDocumentManager.getInstance().getDocument(myFile)
     private val myDocumentAlarm = Alarm(Alarm.ThreadToUse.POOLED_THREAD, this)
     private val mySwingAlarm = Alarm(Alarm.ThreadToUse.SWING_THREAD, this)
+    private val myScrollAlarm = Alarm(Alarm.ThreadToUse.SWING_THREAD, this)
+    private var myPendingScrollOffset: Int = 0
+    private var myPendingScrollEditor: Editor? = null
     private var myLastHtmlOrRefreshRequest: Runnable? = null
+    private var myHtmlPageRequest: CancellablePromise<Pair<Long, HtmlPage>>? = null
     private var myLastScrollOffset: Int = 0
     private var myLastScrollLineOffsets: Range = Range.of(0, 0)
     private var myLastOffsetVertical: Float? = null
@@ -80,7 +90,7 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
         mySplitEditorLayout = myRenderingProfile.previewSettings.splitEditorLayout
     }
 
-    protected var myHtmlTagRanges: List<TagRange> = ArrayList()
+    protected var myHtmlTagRangeIndex: HtmlTagRangeIndex = HtmlTagRangeIndex.EMPTY
     private var inSettingsChange: Boolean = false
     protected var mySplitEditorPreviewType: SplitFileEditor.SplitEditorPreviewType = myRenderingProfile.previewSettings.splitEditorPreviewType
     private var myPreviewEditorState: PreviewEditorState = PreviewEditorState()
@@ -89,6 +99,9 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
     protected var myFirstEditorCounterpart: FileEditor? = null
     private var gotFirstEditor = false
     protected var myDocumentIsModified: Boolean = false
+
+    // incremented when images or VCS repositories change, rendering of unchanged text can differ after that
+    protected var myLinkTargetsVersion: Int = 0
     private val panelSetupTimeoutMs: Long = 10L
     private var renderingDelayMs: Long = MdApplicationSettings.instance.documentSettings.typingUpdateDelay.toLong()
     protected var myEditor: Editor? = null
@@ -229,6 +242,7 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
 
         val imageFileChangedListener = object : MdProjectComponent.FileChangedListener {
             override fun onFilesChanged() {
+                myLinkTargetsVersion++
                 updateHtml()
             }
         }
@@ -277,6 +291,7 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
 
         projectMessageBusConnection.subscribe(MdRepoChangeListener.TOPIC, MdRepoChangeListener {
             ApplicationManager.getApplication().invokeLater {
+                myLinkTargetsVersion++
                 updateHtml()
                 detailLogger.debug { ("OnRepoChanged()") }
             }
@@ -531,7 +546,28 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
             return myPanel ?: throw IllegalStateException("Panel is guaranteed to be not null now")
         }
 
-    abstract fun makeHtmlPage(pattern: Pattern?): String
+    class HtmlPage(val html: String, val htmlTagRanges: List<TagRange>) {
+        // built with the page, off the EDT, used for all scroll requests until the next page
+        val htmlTagRangeIndex: HtmlTagRangeIndex = HtmlTagRangeIndex(htmlTagRanges)
+    }
+
+    fun interface HtmlPageRenderer {
+        /**
+         * Render the page, called in a background read action which is cancelled when the document changes
+         *
+         * @param charSequence immutable snapshot of the document text
+         */
+        fun makeHtmlPage(charSequence: CharSequence): HtmlPage
+    }
+
+    /**
+     * Collect editor state needed to render the page, called on the EDT
+     *
+     * @param pattern search highlight pattern or null
+     *
+     * @return renderer which will be called in a background read action
+     */
+    abstract fun makeHtmlPageRenderer(pattern: Pattern?): HtmlPageRenderer
 
     private fun updateHtml() {
         if (getSplitEditorPreview(mySplitEditorPreviewType, mySplitEditorLayout) == SplitFileEditor.SplitEditorPreviewType.NONE) return
@@ -582,6 +618,9 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
                 mySwingAlarm.cancelRequest(lastHtmlOrRefreshRequest)
             }
 
+            // rendering in progress is stale now
+            cancelHtmlPageRequest()
+
             val nextHtmlOrRefreshRequest = Runnable {
                 updateHtmlRunner(highlightRanges)
             }
@@ -593,7 +632,6 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
     }
 
     open fun scrollToSrcOffset(offset: Int, editor: Editor) {
-        val document = editor.document
         if (myEditor == null) {
             myEditor = editor
             val editorComponent = editor.contentComponent
@@ -605,6 +643,26 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
             }
         }
 
+        // coalesce caret moves to one scroll per frame, only the last offset is used
+        val hadPendingScroll = myPendingScrollEditor != null
+        myPendingScrollOffset = offset
+        myPendingScrollEditor = editor
+
+        if (!hadPendingScroll && !myScrollAlarm.isDisposed) {
+            myScrollAlarm.addRequest({
+                val pendingEditor = myPendingScrollEditor
+                myPendingScrollEditor = null
+                if (pendingEditor != null && !pendingEditor.isDisposed && !myProject.isDisposed) {
+                    scrollToSrcOffsetRaw(myPendingScrollOffset, pendingEditor)
+                }
+            }, SCROLL_FRAME_DELAY_MS, ModalityState.stateForComponent(component))
+        }
+    }
+
+    private fun scrollToSrcOffsetRaw(offset: Int, editor: Editor) {
+        val document = editor.document
+        if (offset > document.textLength) return
+
         val offsetVertical: Float?
         val lineOffsets: Range?
 
@@ -632,15 +690,15 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
 
         if (myRenderingProfile.previewSettings.synchronizePreviewPosition) {
             if (document.modificationStamp == myLastUpdatedModificationStamp && myPanel != null) {
-                TimeIt.logTime(syncLogger, "scrollToMarkdownSrcOffset($offset, myHtmlTagRanges, false, false))") {
+                TimeIt.logTime(syncLogger, "scrollToMarkdownSrcOffset($offset, myHtmlTagRangeIndex, false, false))") {
                     myLastScrollOffset = offset
                     myLastScrollLineOffsets = lineOffsets
                     myLastOffsetVertical = offsetVertical
-                    panelGuaranteed.scrollToMarkdownSrcOffset(offset, lineOffsets, offsetVertical, myHtmlTagRanges, onLoadUpdate = false, onTypingUpdate = false)
+                    panelGuaranteed.scrollToMarkdownSrcOffset(offset, lineOffsets, offsetVertical, myHtmlTagRangeIndex, onLoadUpdate = false, onTypingUpdate = false)
                 }
             } else {
                 // save it for the page load update
-                syncLogger.debug { "caching till page load: scrollToMarkdownSrcOffset($offset, myHtmlTagRanges, false, false))" }
+                syncLogger.debug { "caching till page load: scrollToMarkdownSrcOffset($offset, myHtmlTagRangeIndex, false, false))" }
                 myLastScrollOffset = offset
                 myLastScrollLineOffsets = lineOffsets
                 myLastOffsetVertical = offsetVertical
@@ -654,9 +712,6 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
 
         myLastHtmlOrRefreshRequest = null
 
-        // set time stamp to eliminate scrolling updates for earlier or later caret moves
-        myLastUpdatedModificationStamp = myDocument?.modificationStamp ?: 0
-
         val lastRenderedUrl = myLastRenderedUrl
         myLastRenderedUrl = ""
 
@@ -676,6 +731,7 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
                 //val urlBase = "https://github.com"
                 myLastRenderedUrl = url
                 myLastRenderedHtml = ""
+                myLastUpdatedModificationStamp = myDocument?.modificationStamp ?: 0
                 panelGuaranteed.setPageUrl(url)
 
                 detailLogger.debug { "GitHub preview: $url" }
@@ -683,31 +739,74 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
         }
 
         if (myLastRenderedUrl.isBlank()) {
-            var currentHtml = ""
+            renderHtmlPage(makeHtmlPageRenderer(highlightRanges), lastRenderedUrl)
+        }
+    }
+
+    private fun cancelHtmlPageRequest() {
+        val htmlPageRequest = myHtmlPageRequest
+        if (htmlPageRequest != null) {
+            myHtmlPageRequest = null
+            htmlPageRequest.cancel()
+        }
+    }
+
+    private fun renderHtmlPage(renderer: HtmlPageRenderer, lastRenderedUrl: String) {
+        val document = myDocument ?: return
+        cancelHtmlPageRequest()
+
+        // parse and render off the EDT on committed PSI, the read action is restarted if a write action needs to run,
+        // renderer must check for cancellation, see MdNavigatorExtension.CHECK_CANCELED
+        myHtmlPageRequest = ReadAction.nonBlocking(Callable {
+            val modificationStamp = document.modificationStamp
+            var htmlPage: HtmlPage? = null
             TimeIt.logTime(LOG, "makeHtmlPage() ") {
-                currentHtml = makeHtmlPage(highlightRanges)
+                htmlPage = renderer.makeHtmlPage(document.immutableCharSequence)
+            }
+            Pair(modificationStamp, htmlPage!!)
+        })
+            .withDocumentsCommitted(myProject)
+            .expireWith(this)
+            .finishOnUiThread(ModalityState.stateForComponent(component)) { (modificationStamp, htmlPage) ->
+                updateHtmlPage(modificationStamp, htmlPage, lastRenderedUrl)
             }
-            detailLogger.debug { "JavaFx preview, last URL = $lastRenderedUrl" }
+            .submit(htmlPageExecutor)
+    }
 
-            myLastRenderedHtml = currentHtml
-            if (!lastRenderedUrl.isBlank()) {
-                // first one needs to be blank to reset the URL, or it won't render
-                setUpPanel()
-                detailLogger.debug { "JavaFx recreating preview to clear URL" }
-            } else {
-                myPanel ?: return
+    private fun updateHtmlPage(modificationStamp: Long, htmlPage: HtmlPage, lastRenderedUrl: String) {
+        myHtmlPageRequest = null
 
-                if (myRenderingProfile.previewSettings.synchronizePreviewPosition) {
-                    val lastActionId: String? = getLastActionId()
-                    panelGuaranteed.scrollToMarkdownSrcOffset(myLastScrollOffset, myLastScrollLineOffsets, myLastOffsetVertical, myHtmlTagRanges, true, lastActionId == null || lastActionId in arrayOf("EditorBackSpace"))
-                }
+        // diagnostic/2940
+        if (myProject.isDisposed) return
 
-                TimeIt.logTime(LOG, "Update") {
-                    if (panelGuaranteed.setHtml(currentHtml)) {
-                        detailLogger.debug { "JavaFx preview, updated" }
-                    } else {
-                        detailLogger.debug { "JavaFx preview, rescheduled" }
-                    }
+        // a newer document version is already scheduled for rendering
+        if (modificationStamp != myDocument?.modificationStamp) return
+
+        detailLogger.debug { "JavaFx preview, last URL = $lastRenderedUrl" }
+
+        // set time stamp to eliminate scrolling updates for earlier or later caret moves
+        myLastUpdatedModificationStamp = modificationStamp
+        myHtmlTagRangeIndex = htmlPage.htmlTagRangeIndex
+
+        val currentHtml = htmlPage.html
+        myLastRenderedHtml = currentHtml
+        if (!lastRenderedUrl.isBlank()) {
+            // first one needs to be blank to reset the URL, or it won't render
+            setUpPanel()
+            detailLogger.debug { "JavaFx recreating preview to clear URL" }
+        } else {
+            myPanel ?: return
+
+            if (myRenderingProfile.previewSettings.synchronizePreviewPosition) {
+                val lastActionId: String? = getLastActionId()
+                panelGuaranteed.scrollToMarkdownSrcOffset(myLastScrollOffset, myLastScrollLineOffsets, myLastOffsetVertical, myHtmlTagRangeIndex, true, lastActionId == null || lastActionId in arrayOf("EditorBackSpace"))
+            }
+
+            TimeIt.logTime(LOG, "Update") {
+                if (panelGuaranteed.setHtml(currentHtml)) {
+                    detailLogger.debug { "JavaFx preview, updated" }
+                } else {
+                    detailLogger.debug { "JavaFx preview, rescheduled" }
                 }
             }
         }
@@ -792,6 +891,8 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
     }
 
     override fun dispose() {
+        cancelHtmlPageRequest()
+
         val panel = myPanel
         if (panel != null) {
             Disposer.dispose(panel)
@@ -819,6 +920,10 @@ abstract class PreviewFileEditorBase constructor(protected val myProject: Projec
 
         val MODIFIED_DOCUMENT_TIMEOUT_MS = 1500L
         val UNMODIFIED_DOCUMENT_TIMEOUT_MS = 5000L
+        const val HTML_PAGE_RENDERERS = 2
+        const val SCROLL_FRAME_DELAY_MS = 16
+
+        private val htmlPageExecutor: ExecutorService by lazy { AppExecutorUtil.createBoundedApplicationPoolExecutor("MdPreviewHtmlPage", HTML_PAGE_RENDERERS) }
 
         fun getLastActionId(): String? {
             if (!lastActionInitialized) {
@@ -20,7 +20,6 @@ import com.vladsch.boxed.json.BoxedJsObject
 import com.vladsch.boxed.json.BoxedJsValue
 import com.vladsch.boxed.json.BoxedJson
 import com.vladsch.flexmark.util.sequence.Range
-import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.javafx.webview.debugger.DevToolsDebuggerJsBridge
 import com.vladsch.javafx.webview.debugger.JfxDebugProxyJsBridge
 import com.vladsch.javafx.webview.debugger.JfxScriptStateProvider
@@ -31,7 +30,9 @@ import com.vladsch.md.nav.MdProjectComponent
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
+import com.vladsch.md.nav.editor.util.HtmlBlockPatch
 import com.vladsch.md.nav.editor.util.HtmlPanel
+import com.vladsch.md.nav.editor.util.HtmlTagRangeIndex
 import com.vladsch.md.nav.editor.util.HtmlResource
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.settings.*
@@ -50,6 +51,7 @@ import org.intellij.lang.annotations.Language
 import org.jdom.Text
 import org.w3c.dom.Element
 import org.w3c.dom.Node
+import org.w3c.dom.NodeList
 import org.w3c.dom.events.EventListener
 import org.w3c.dom.events.EventTarget
 import java.awt.BorderLayout
@@ -72,6 +74,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
     private var myInlineCss: String? = null
     private var myCssUris = ArrayUtil.EMPTY_STRING_ARRAY
     private var myLastRawHtml = ""
+    private var myLoadedPageHtml = ""   // page html shown in web view, only accessed by runner
     private var myLastPageUrl = ""
 
     //    private var myHtmlPanelHost: HtmlPanelHost? = null
@@ -415,12 +418,24 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         // so this is now done by creating a new preview
         myLastPageUrl = ""
 
+        val canPatch = MdApplicationSettings.instance.debugSettings.usePreviewDomPatching && lastPageUrl.isEmpty() && myHtmlFile.isEmpty() && !isDebugging()
+
         LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
         myWebViewFxRunner.schedule("JavaFxHtml::setHtml.loadContent", WebViewFxRunner.Type.LOADER) {
             if (!myProject.isDisposed) {
                 val htmlPanelHost = myHtmlPanelHost
                 updateViewOptions(myWebView, htmlPanelHost.getRenderingProfile().previewSettings)
 
+                // only changed blocks are replaced if the rest of the page is the same as the loaded page
+                val loadedPageHtml = myLoadedPageHtml
+                myLoadedPageHtml = ""
+                val patch = if (canPatch) HtmlBlockPatch.diff(loadedPageHtml, html) else null
+                if (patch != null && patchPage(patch)) {
+                    myLoadedPageHtml = html
+                    LOG.debug { "[$myInstance] patched content $patch" }
+                    return@schedule
+                }
+
                 var alternatePage = false
                 for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
                     val pageFileUrl = handler.getPageFileURL(myProject, myInstance, myDebugFileSerial + 1, result)
@@ -438,6 +453,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                 if (!alternatePage) {
                     pageReloading()
                     myWebView.engine.loadContent(result)
+                    myLoadedPageHtml = html
                     LOG.debug { "[$myInstance] updated content" }
                 }
 
@@ -474,6 +490,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                 updateViewOptions(myWebView, myHtmlPanelHost.getRenderingProfile().previewSettings)
 
                 pageReloading()
+                myLoadedPageHtml = ""
                 myWebView.engine.load(url)
                 LOG.debug { "[$myInstance] updated url: $url" }
             }
@@ -485,6 +502,28 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         myJSBridge.pageReloading()
     }
 
+    private fun patchPage(patch: HtmlBlockPatch): Boolean {
+        if (!patch.isEmpty) {
+            try {
+                val inserted = myWebView.engine.executeScript(patch.toScript("markdownNavigator.patchBlocks")) as? JSObject ?: return false
+                val length = inserted.getMember("length") as? Int ?: return false
+                for (i in 0 until length) {
+                    val element = inserted.getSlot(i) as? Element ?: continue
+                    prepareElements { tagName -> element.getElementsByTagName(tagName) }
+                }
+            } catch (ex: JSException) {
+                LOG.debug("[$myInstance] JSException on patch", ex)
+                return false
+            }
+        }
+
+        // there is no load event for a patched page, complete initialization after loader is done
+        Platform.runLater {
+            if (!myProject.isDisposed) scrollToReference(true)
+        }
+        return true
+    }
+
     fun launchExternalLink(href: String): Boolean {
         if (myProject.isDisposed) return true
         return myHtmlPanelHost.launchExternalLink(href)
@@ -521,27 +560,11 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         }
     }
 
-    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
+    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRangeIndex: HtmlTagRangeIndex, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
-        var bestTagRange: TagRange? = null
-        val tagPriorities = mapOf(
-            "a" to 1,
-            "span" to 2,
-            "img" to 3
-        )
+        val bestTagRange = tagRangeIndex.findBestTagRange(offset, lineOffsets, TAG_PRIORITIES)
 
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span <= bestTagRange.span && (tagPriorities[tagRange.tag]
-                        ?: 0) > (tagPriorities[bestTagRange.tag] ?: 0)) {
-                    bestTagRange = tagRange
-                }
-            } else if (bestTagRange == null && lineOffsets.doesOverlap(tagRange)) {
-                bestTagRange = tagRange
-            }
-        }
-
-        LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges, $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
+        LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges[${tagRangeIndex.size}], $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
 
         val findBestTagRange = bestTagRange ?: return
 
@@ -567,8 +590,6 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         // connect JsBridge
         myJSBridge.connectJsBridge()
 
-        val lastPageUrl = myLastPageUrl
-
         val doc = myWebView.engine.document
         if (doc != null) {
             if (myAllowContextMenu.get()) {
@@ -577,27 +598,62 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                 (doc.documentElement as EventTarget).addEventListener("contextmenu", { evt -> evt.preventDefault() }, false)
             }
 
-            val listener = EventListener { evt ->
-                if (myProject.isDisposed) return@EventListener
+            prepareElements { tagName -> doc.getElementsByTagName(tagName) }
 
-                val link = evt.currentTarget as Element
-                val href = link.getAttribute("href")
-                if (href[0] == '#') {
-                    if (!lastPageUrl.isEmpty()) {
-                        // we're on github, process as normal
+            if (myHtmlPanelHost.getRenderingProfile().previewSettings.synchronizeSourcePositionOnClick) {
+                val clickListener = EventListener { evt ->
+                    if (myProject.isDisposed) return@EventListener
+
+                    if (myJSBridge.jsEventHandledBy != null) {
+                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview, default prevented by: ${myJSBridge.jsEventHandledBy}" }
+                        myJSBridge.clearJSEventHandledBy()
                         return@EventListener
+                    } else {
+                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview" }
                     }
 
-                    evt.stopPropagation()
-                    evt.preventDefault()
+                    var element: Node? = evt.target as Node
+                    while (element != null) {
+                        val srcPos = element.attributes?.getNamedItem("md-pos")
+                        if (srcPos !== null) {
+                            val startPos = srcPos.nodeValue.split('-', limit = 2)[0].toInt()
+                            myHtmlPanelHost.synchronizeCaretPos(startPos)
+                            break
+                        }
+                        element = element.parentNode as? Element
+                    }
+                }
+
+                (doc as EventTarget).addEventListener("click", clickListener, false)
+            }
+        }
+    }
+
+    // add link and task item listeners and resolve relative image paths, for the loaded page or for patched elements
+    private fun prepareElements(getElementsByTagName: (String) -> NodeList) {
+        val lastPageUrl = myLastPageUrl
+
+        val listener = EventListener { evt ->
+            if (myProject.isDisposed) return@EventListener
+
+            val link = evt.currentTarget as Element
+            val href = link.getAttribute("href")
+            if (href[0] == '#') {
+                if (!lastPageUrl.isEmpty()) {
+                    // we're on github, process as normal
+                    return@EventListener
+                }
 
-                    if (href.length != 1) {
-                        // tries to go to an anchor
-                        val hrefName = href.substring(1)
-                        // scroll it into view
-                        try {
-                            @Language("JavaScript")
-                            val func = """
+                evt.stopPropagation()
+                evt.preventDefault()
+
+                if (href.length != 1) {
+                    // tries to go to an anchor
+                    val hrefName = href.substring(1)
+                    // scroll it into view
+                    try {
+                        @Language("JavaScript")
+                        val func = """
 (function (hrefName) {
     let elemTop = 0;
     let elements = '';
@@ -623,104 +679,76 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
     return { elemTop: elemTop, elements: elements, found: !!elem };
 })
 """
-                            val result: JSObject = myWebView.engine.executeScript("$func('$hrefName');") as JSObject
-                            val elemTop = result.getMember("elemTop") as Int
-                            val elemFound = result.getMember("found") as Boolean
-
-                            if (elemFound) myWebView.engine.executeScript("window.scroll(0, $elemTop)")
-                        } catch (ex: JSException) {
-                            //                            val error = ex.toString()
-                            LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
-                        }
-                    }
-                } else {
-                    // NOTE: some links can cause the JavaFx to crash so we disable this feature with bundled JVM on Mac, if they are missing the needed libraries
-                    if (launchExternalLink(href)) {
-                        evt.stopPropagation()
-                        evt.preventDefault()
+                        val result: JSObject = myWebView.engine.executeScript("$func('$hrefName');") as JSObject
+                        val elemTop = result.getMember("elemTop") as Int
+                        val elemFound = result.getMember("found") as Boolean
+
+                        if (elemFound) myWebView.engine.executeScript("window.scroll(0, $elemTop)")
+                    } catch (ex: JSException) {
+                        //                            val error = ex.toString()
+                        LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
                     }
                 }
-            }
-
-            val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
-            val fileUriPrefix = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
-            val projectComponent = if (documentPath != null) MdProjectComponent.getInstance(myProject) else null
-
-            val nodeList = doc.getElementsByTagName("a")
-            for (i in 0 until nodeList.length) {
-                val item = nodeList.item(i)
-                (item as EventTarget).addEventListener("click", listener, false)
-            }
-
-            val taskListener = EventListener { evt ->
-                if (myProject.isDisposed) return@EventListener
-
-                val span = evt.currentTarget as Element
-                val listItem = span.parentNode as Element
-                val taskOffset = listItem.getAttribute("task-offset")
-                if (taskOffset != null && taskOffset.isNotEmpty()) {
+            } else {
+                // NOTE: some links can cause the JavaFx to crash so we disable this feature with bundled JVM on Mac, if they are missing the needed libraries
+                if (launchExternalLink(href)) {
                     evt.stopPropagation()
                     evt.preventDefault()
-
-                    myHtmlPanelHost.toggleTask(taskOffset)
                 }
             }
+        }
 
-            val spanList = doc.getElementsByTagName("span")
-            for (i in 0 until spanList.length) {
-                val item = spanList.item(i) as Element
-                val spanClass = item.getAttribute("class")
-                if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
-                    (item as EventTarget).addEventListener("click", taskListener, false)
-                }
-            }
+        val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
+        val fileUriPrefix = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
+        val projectComponent = if (documentPath != null) MdProjectComponent.getInstance(myProject) else null
 
-            if (myHtmlPanelHost.getRenderingProfile().previewSettings.synchronizeSourcePositionOnClick) {
-                val clickListener = EventListener { evt ->
-                    if (myProject.isDisposed) return@EventListener
+        val nodeList = getElementsByTagName("a")
+        for (i in 0 until nodeList.length) {
+            val item = nodeList.item(i)
+            (item as EventTarget).addEventListener("click", listener, false)
+        }
 
-                    if (myJSBridge.jsEventHandledBy != null) {
-                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview, default prevented by: ${myJSBridge.jsEventHandledBy}" }
-                        myJSBridge.clearJSEventHandledBy()
-                        return@EventListener
-                    } else {
-                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview" }
-                    }
+        val taskListener = EventListener { evt ->
+            if (myProject.isDisposed) return@EventListener
 
-                    var element: Node? = evt.target as Node
-                    while (element != null) {
-                        val srcPos = element.attributes?.getNamedItem("md-pos")
-                        if (srcPos !== null) {
-                            val startPos = srcPos.nodeValue.split('-', limit = 2)[0].toInt()
-                            myHtmlPanelHost.synchronizeCaretPos(startPos)
-                            break
-                        }
-                        element = element.parentNode as? Element
-                    }
-                }
+            val span = evt.currentTarget as Element
+            val listItem = span.parentNode as Element
+            val taskOffset = listItem.getAttribute("task-offset")
+            if (taskOffset != null && taskOffset.isNotEmpty()) {
+                evt.stopPropagation()
+                evt.preventDefault()
 
-                (doc as EventTarget).addEventListener("click", clickListener, false)
+                myHtmlPanelHost.toggleTask(taskOffset)
             }
+        }
 
-            if (documentPath != null && projectComponent != null) {
-                val images = doc.getElementsByTagName("img")
+        val spanList = getElementsByTagName("span")
+        for (i in 0 until spanList.length) {
+            val item = spanList.item(i) as Element
+            val spanClass = item.getAttribute("class")
+            if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
+                (item as EventTarget).addEventListener("click", taskListener, false)
+            }
+        }
 
-                for (i in 0 until images.length) {
-                    val item: Node = images.item(i)
-                    val src = item.attributes?.getNamedItem("src")
-                    if (src != null) {
-                        val imageSrc = src.nodeValue
-                        if (!PathInfo.isURI(imageSrc) && PathInfo.isRelative(imageSrc) && !ImageUtils.isEncodedImage(imageSrc)) {
-                            // change it to absolute
-                            val imagePath = documentPath + imageSrc
-                            val serial = projectComponent.getFileSerial(imagePath)
-                            val serialQuery = if (serial > 0) "?$serial" else ""
+        if (documentPath != null && projectComponent != null) {
+            val images = getElementsByTagName("img")
 
-                            src.nodeValue = fileUriPrefix + imagePath + serialQuery
+            for (i in 0 until images.length) {
+                val item: Node = images.item(i)
+                val src = item.attributes?.getNamedItem("src")
+                if (src != null) {
+                    val imageSrc = src.nodeValue
+                    if (!PathInfo.isURI(imageSrc) && PathInfo.isRelative(imageSrc) && !ImageUtils.isEncodedImage(imageSrc)) {
+                        // change it to absolute
+                        val imagePath = documentPath + imageSrc
+                        val serial = projectComponent.getFileSerial(imagePath)
+                        val serialQuery = if (serial > 0) "?$serial" else ""
 
-                            for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
-                                handler.adjustImageItem(item, serial)
-                            }
+                        src.nodeValue = fileUriPrefix + imagePath + serialQuery
+
+                        for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
+                            handler.adjustImageItem(item, serial)
                         }
                     }
                 }
@@ -911,6 +939,12 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         private var instances: Int = 0
         private val instanceMap = HashMap<String, Int>()
 
+        private val TAG_PRIORITIES = mapOf(
+            "a" to 1,
+            "span" to 2,
+            "img" to 3
+        )
+
         internal fun getInstance(virtualFile: VirtualFile): Int {
             return instanceMap[virtualFile.path] ?: let {
                 instanceMap[virtualFile.path] = ++instances
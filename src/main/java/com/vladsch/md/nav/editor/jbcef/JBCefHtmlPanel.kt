@@ -18,14 +18,15 @@ import com.vladsch.boxed.json.BoxedJsString
 import com.vladsch.boxed.json.BoxedJsValue
 import com.vladsch.boxed.json.BoxedJson
 import com.vladsch.flexmark.util.sequence.Range
-import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.javafx.webview.debugger.JfxScriptStateProvider
 import com.vladsch.md.nav.MdPlugin
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
 import com.vladsch.md.nav.editor.javafx.WebViewDocumentLoaded
+import com.vladsch.md.nav.editor.util.HtmlBlockPatch
 import com.vladsch.md.nav.editor.util.HtmlPanel
+import com.vladsch.md.nav.editor.util.HtmlTagRangeIndex
 import com.vladsch.md.nav.editor.util.HtmlResource
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.settings.*
@@ -76,6 +77,8 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
     private var myInlineCss: String? = null
     private var myCssUris = ArrayUtil.EMPTY_STRING_ARRAY
     private var myLastRawHtml = ""
+    private var myLastHtml = ""
+    private var myLoadedPageHtml = ""   // page html shown in browser, only accessed on EDT
     private var myLastPageUrl = ""
 
     //    private var myHtmlPanelHost: HtmlPanelHost? = null
@@ -256,17 +259,31 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         }
 
         myLastRawHtml = result
+        myLastHtml = html
         val lastPageUrl = myLastPageUrl
         // if url was set nothing will make it display the page until content changes
         // so this is now done by creating a new preview
         myLastPageUrl = ""
 
+        val canPatch = MdApplicationSettings.instance.debugSettings.usePreviewDomPatching && lastPageUrl.isEmpty() && myHtmlFile.isEmpty() && !isDebugging()
+
         LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
         myWebViewFxRunner.schedule("JBCefHtmlPanel::setHtml.loadContent", JBCefRunner.Type.LOADER) {
             if (!myProject.isDisposed) {
                 val htmlPanelHost = myHtmlPanelHost
                 updateViewOptions(myWebView, htmlPanelHost.getRenderingProfile().previewSettings)
 
+                // only changed blocks are replaced if the rest of the page is the same as the loaded page
+                val loadedPageHtml = myLoadedPageHtml
+                myLoadedPageHtml = ""
+                val patch = if (canPatch) HtmlBlockPatch.diff(loadedPageHtml, html) else null
+                if (patch != null) {
+                    patchPage(patch)
+                    myLoadedPageHtml = html
+                    LOG.debug { "[$myInstance] patched content $patch" }
+                    return@schedule
+                }
+
                 var alternatePage = false
                 for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
                     val pageFileUrl = handler.getPageFileURL(myProject, myInstance, myDebugFileSerial + 1, result)
@@ -285,6 +302,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
                     pageReloading()
                     val fileUri = fileUriPrefix + myHtmlPanelHost.getVirtualFile().path
                     myPanel.loadHTML(result, fileUri)
+                    myLoadedPageHtml = html
                     LOG.debug { "[$myInstance] updated content" }
                 }
 
@@ -323,6 +341,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
                 updateViewOptions(myWebView, myHtmlPanelHost.getRenderingProfile().previewSettings)
 
                 pageReloading()
+                myLoadedPageHtml = ""
                 myPanel.loadURL(url)
                 LOG.debug { "[$myInstance] updated url: $url" }
             }
@@ -334,6 +353,26 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         //myJSBridge.pageReloading()
     }
 
+    private fun patchPage(patch: HtmlBlockPatch) {
+        // script is run asynchronously, if page content does not match it requests a reload through patchFailed
+        if (!patch.isEmpty) {
+            myWebView.executeJavaScript(patch.toScript("markdownNavigator.patchBlocks"), myWebView.url, 0)
+        }
+
+        // there is no load event for a patched page, complete initialization after loader is done
+        ApplicationManager.getApplication().invokeLater {
+            if (!myProject.isDisposed) scrollToReference(true)
+        }
+    }
+
+    internal fun reloadPage(reason: String?) {
+        if (myProject.isDisposed) return
+
+        LOG.debug { "[$myInstance] patch failed: $reason, reloading page" }
+        myLoadedPageHtml = ""
+        setHtml(myLastHtml)
+    }
+
     fun launchExternalLink(href: String): Boolean {
         if (myProject.isDisposed) return true
         return myHtmlPanelHost.launchExternalLink(href)
@@ -366,27 +405,11 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         }
     }
 
-    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
+    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRangeIndex: HtmlTagRangeIndex, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
-        var bestTagRange: TagRange? = null
-        val tagPriorities = mapOf(
-            "a" to 1,
-            "span" to 2,
-            "img" to 3
-        )
+        val bestTagRange = tagRangeIndex.findBestTagRange(offset, lineOffsets, TAG_PRIORITIES)
 
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span <= bestTagRange.span && (tagPriorities[tagRange.tag]
-                        ?: 0) > (tagPriorities[bestTagRange.tag] ?: 0)) {
-                    bestTagRange = tagRange
-                }
-            } else if (bestTagRange == null && lineOffsets.doesOverlap(tagRange)) {
-                bestTagRange = tagRange
-            }
-        }
-
-        LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges, $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
+        LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges[${tagRangeIndex.size}], $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
 
         val findBestTagRange = bestTagRange ?: return
 
@@ -487,6 +510,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         private val myJSQueryOpenInBrowser: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
         private val myJSQueryToggleTask: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
         private val myJSQuerySyncSource: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
+        private val myJSQueryPatchFailed: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
 
         init {
             myJSQuerySetState.addHandler { state: String ->
@@ -541,6 +565,13 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
                 }
                 null
             }
+
+            myJSQueryPatchFailed.addHandler { reason: String? ->
+                ApplicationManager.getApplication().invokeLater {
+                    panel.reloadPage(reason)
+                }
+                null
+            }
         }
 
         fun getCefBrowser(): CefBrowser = panel.myWebView
@@ -551,6 +582,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
             Disposer.dispose(myJSQueryOpenInBrowser);
             Disposer.dispose(myJSQueryToggleTask);
             Disposer.dispose(myJSQuerySyncSource);
+            Disposer.dispose(myJSQueryPatchFailed);
         }
 
         override fun onLoadingStateChange(browser: CefBrowser?, isLoading: Boolean, canGoBack: Boolean, canGoForward: Boolean) {
@@ -581,6 +613,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
     markdownNavigator.openLinkInBrowser = function(link) {${myJSQueryOpenInBrowser.inject("link")}};
     markdownNavigator.toggleTask = function(taskOffset) {${myJSQueryToggleTask.inject("taskOffset")}};
     markdownNavigator.synchronizeCaretPos = function(sourceOffset) {${myJSQuerySyncSource.inject("sourceOffset")}};
+    markdownNavigator.patchFailed = function(reason) {${myJSQueryPatchFailed.inject("reason")}};
     
     markdownNavigator.runJsBridge();
 })();
@@ -612,6 +645,12 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         private var instances: Int = 0
         private val instanceMap = HashMap<String, Int>()
 
+        private val TAG_PRIORITIES = mapOf(
+            "a" to 1,
+            "span" to 2,
+            "img" to 3
+        )
+
         internal fun getInstance(virtualFile: VirtualFile): Int {
             return instanceMap[virtualFile.path] ?: let {
                 instanceMap[virtualFile.path] = ++instances
@@ -8,12 +8,12 @@ import com.intellij.openapi.util.io.FileUtil
 import com.intellij.ui.components.JBScrollPane
 import com.intellij.util.ui.JBUI
 import com.vladsch.flexmark.util.sequence.Range
-import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.MdPlugin
 import com.vladsch.md.nav.MdResourceResolverImpl
 import com.vladsch.md.nav.editor.*
 import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
 import com.vladsch.md.nav.editor.util.HtmlPanel
+import com.vladsch.md.nav.editor.util.HtmlTagRangeIndex
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.settings.HighlightPreviewType
 import com.vladsch.md.nav.settings.MdApplicationSettings
@@ -238,7 +238,7 @@ internal class SwingHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) :
         }
     }
 
-    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
+    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRangeIndex: HtmlTagRangeIndex, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // FIX: sync preview work for swing browser
         val editorKit = jEditorPane.editorKit as? MdEditorKit ?: return
         val viewList = editorKit.elementList
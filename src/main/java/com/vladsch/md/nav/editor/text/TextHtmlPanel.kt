@@ -14,11 +14,11 @@ import com.intellij.openapi.editor.impl.EditorImpl
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.Disposer
 import com.vladsch.flexmark.util.sequence.Range
-import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.editor.ExternalLinkLauncher
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.util.HtmlPanel
+import com.vladsch.md.nav.editor.util.HtmlTagRangeIndex
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import javax.swing.JComponent
 
@@ -121,19 +121,9 @@ internal class TextHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : H
         })
     }
 
-    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
+    override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRangeIndex: HtmlTagRangeIndex, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // first we find the tag of interest and its range
-        var bestTagRange: TagRange? = null
-
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span) {
-                    bestTagRange = tagRange
-                }
-            }
-        }
-
-        val findBestTagRange = bestTagRange ?: return
+        val findBestTagRange = tagRangeIndex.findBestTagRange(offset, null, mapOf()) ?: return
 
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
         myScrollTag = findBestTagRange.tag
@@ -0,0 +1,389 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util;
+
+import com.vladsch.md.nav.parser.flexmark.FlexmarkAttributeProvider;
+import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Difference between two preview pages expressed as replacement of a run of top level blocks of the page content
+ * <p>
+ * Content is the body of the markdown article element of the page. A patch is only possible if everything outside
+ * of it is identical, otherwise scripts, CSS or page settings changed and the page has to be reloaded.
+ * <p>
+ * Blocks before the replaced run are unchanged. Blocks after it are unchanged except for source offsets in
+ * md-pos and task-offset attributes, which are shifted by {@link #sourceOffsetDelta}.
+ */
+public class HtmlBlockPatch {
+    static final String[] CONTENT_START_MARKERS = { "<article class=\"markdown-body\">", "<article class=\"wiki-body\">" };
+    static final String CONTENT_END_MARKER = "</article>";
+    static final String[] SOURCE_OFFSET_ATTRIBUTES = { MdNavigatorExtension.SOURCE_POSITION_ATTRIBUTE_NAME, FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE };
+
+    // elements whose content is not parsed for tags
+    static final String[] RAW_TEXT_ELEMENTS = { "script", "style", "textarea", "title", "xmp" };
+    static final String[] VOID_ELEMENTS = { "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr" };
+
+    final public int startIndex;
+    final public int deleteCount;
+    final public int oldCount;
+    final public int insertCount;
+    final public @NotNull String html;
+    final public int sourceOffsetDelta;
+
+    HtmlBlockPatch(int startIndex, int deleteCount, int oldCount, int insertCount, @NotNull String html, int sourceOffsetDelta) {
+        this.startIndex = startIndex;
+        this.deleteCount = deleteCount;
+        this.oldCount = oldCount;
+        this.insertCount = insertCount;
+        this.html = html;
+        this.sourceOffsetDelta = sourceOffsetDelta;
+    }
+
+    public boolean isEmpty() {
+        return deleteCount == 0 && insertCount == 0 && sourceOffsetDelta == 0;
+    }
+
+    /**
+     * Script applying the patch
+     *
+     * @param function name of JS function taking patch fields as arguments
+     *
+     * @return script text
+     */
+    @NotNull
+    public String toScript(@NotNull String function) {
+        StringBuilder sb = new StringBuilder(html.length() + function.length() + 64);
+        sb.append(function).append('(')
+                .append(startIndex).append(", ")
+                .append(deleteCount).append(", ")
+                .append(oldCount).append(", ")
+                .append(insertCount).append(", ");
+        appendJsString(sb, html);
+        sb.append(", ").append(sourceOffsetDelta).append(");");
+        return sb.toString();
+    }
+
+    static void appendJsString(@NotNull StringBuilder sb, @NotNull String text) {
+        sb.append('"');
+        int iMax = text.length();
+        for (int i = 0; i < iMax; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c == 0x2028 || c == 0x2029) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return "HtmlBlockPatch{" +
+                "startIndex=" + startIndex +
+                ", deleteCount=" + deleteCount +
+                ", oldCount=" + oldCount +
+                ", insertCount=" + insertCount +
+                ", sourceOffsetDelta=" + sourceOffsetDelta +
+                ", html='" + html + '\'' +
+                '}';
+    }
+
+    /**
+     * Compute patch which changes content of old page to content of new page
+     *
+     * @param oldPage previously loaded page html
+     * @param newPage new page html
+     *
+     * @return patch or null if the page needs to be reloaded
+     */
+    @Nullable
+    public static HtmlBlockPatch diff(@NotNull String oldPage, @NotNull String newPage) {
+        if (oldPage.isEmpty() || newPage.isEmpty()) return null;
+
+        int oldStart = contentStart(oldPage);
+        int newStart = contentStart(newPage);
+        if (oldStart == -1 || oldStart != newStart || !oldPage.regionMatches(0, newPage, 0, oldStart)) return null;
+
+        int oldEnd = oldPage.lastIndexOf(CONTENT_END_MARKER);
+        int newEnd = newPage.lastIndexOf(CONTENT_END_MARKER);
+        if (oldEnd < oldStart || newEnd < newStart) return null;
+
+        int suffixLength = oldPage.length() - oldEnd;
+        if (suffixLength != newPage.length() - newEnd || !oldPage.regionMatches(oldEnd, newPage, newEnd, suffixLength)) return null;
+
+        List<int[]> oldBlocks = parseBlocks(oldPage, oldStart, oldEnd);
+        List<int[]> newBlocks = parseBlocks(newPage, newStart, newEnd);
+        if (oldBlocks == null || newBlocks == null) return null;
+
+        int oldCount = oldBlocks.size();
+        int newCount = newBlocks.size();
+        int maxCommon = Math.min(oldCount, newCount);
+
+        int prefix = 0;
+        while (prefix < maxCommon && sameBlock(oldPage, oldBlocks.get(prefix), newPage, newBlocks.get(prefix))) prefix++;
+
+        int suffix = 0;
+        int delta = Integer.MIN_VALUE;
+        while (suffix < maxCommon - prefix) {
+            int blockDelta = shiftedBlockDelta(oldPage, oldBlocks.get(oldCount - suffix - 1), newPage, newBlocks.get(newCount - suffix - 1), delta);
+            if (blockDelta == Integer.MIN_VALUE) break;
+            delta = blockDelta;
+            suffix++;
+        }
+
+        int deleteCount = oldCount - prefix - suffix;
+        int insertCount = newCount - prefix - suffix;
+
+        String html = "";
+        if (insertCount > 0) {
+            int htmlStart = newBlocks.get(prefix)[0];
+            int htmlEnd = newBlocks.get(prefix + insertCount - 1)[1];
+            html = newPage.substring(htmlStart, htmlEnd);
+
+            // inserted scripts are not run, page has to be reloaded
+            if (indexOfIgnoreCase(html, "<script", 0) != -1) return null;
+        }
+
+        return new HtmlBlockPatch(prefix, deleteCount, oldCount, insertCount, html, delta == Integer.MIN_VALUE ? 0 : delta);
+    }
+
+    static int contentStart(@NotNull String page) {
+        for (String marker : CONTENT_START_MARKERS) {
+            int pos = page.indexOf(marker);
+            if (pos != -1) return pos + marker.length();
+        }
+        return -1;
+    }
+
+    private static boolean sameBlock(@NotNull String oldPage, @NotNull int[] oldBlock, @NotNull String newPage, @NotNull int[] newBlock) {
+        int length = oldBlock[1] - oldBlock[0];
+        return length == newBlock[1] - newBlock[0] && oldPage.regionMatches(oldBlock[0], newPage, newBlock[0], length);
+    }
+
+    /**
+     * Compare blocks allowing source offset attributes to differ by a constant
+     *
+     * @param oldPage  old page
+     * @param oldBlock old block range
+     * @param newPage  new page
+     * @param newBlock new block range
+     * @param delta    source offset delta of following blocks or Integer.MIN_VALUE if not known yet
+     *
+     * @return source offset delta, Integer.MIN_VALUE if blocks differ
+     */
+    static int shiftedBlockDelta(@NotNull String oldPage, @NotNull int[] oldBlock, @NotNull String newPage, @NotNull int[] newBlock, int delta) {
+        int o = oldBlock[0];
+        int n = newBlock[0];
+        int oEnd = oldBlock[1];
+        int nEnd = newBlock[1];
+
+        while (o < oEnd && n < nEnd) {
+            char c = oldPage.charAt(o);
+            if (c != newPage.charAt(n)) return Integer.MIN_VALUE;
+            o++;
+            n++;
+
+            if (c == '"' && isSourceOffsetValue(oldPage, o)) {
+                // compare offset values, numbers separated by '-'
+                while (true) {
+                    int oValueEnd = o;
+                    while (oValueEnd < oEnd && Character.isDigit(oldPage.charAt(oValueEnd))) oValueEnd++;
+                    int nValueEnd = n;
+                    while (nValueEnd < nEnd && Character.isDigit(newPage.charAt(nValueEnd))) nValueEnd++;
+                    if (oValueEnd == o || nValueEnd == n || oValueEnd - o > 9 || nValueEnd - n > 9) return Integer.MIN_VALUE;
+
+                    int valueDelta = Integer.parseInt(newPage, n, nValueEnd, 10) - Integer.parseInt(oldPage, o, oValueEnd, 10);
+                    if (delta == Integer.MIN_VALUE) delta = valueDelta;
+                    else if (delta != valueDelta) return Integer.MIN_VALUE;
+
+                    o = oValueEnd;
+                    n = nValueEnd;
+                    if (o < oEnd && n < nEnd && oldPage.charAt(o) == '-' && newPage.charAt(n) == '-') {
+                        o++;
+                        n++;
+                    } else {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (o != oEnd || n != nEnd) return Integer.MIN_VALUE;
+        return delta == Integer.MIN_VALUE ? 0 : delta;
+    }
+
+    private static boolean isSourceOffsetValue(@NotNull String page, int valueStart) {
+        // preceded by attr=" where attr is one of the source offset attributes
+        if (valueStart < 2 || page.charAt(valueStart - 2) != '=') return false;
+        for (String attribute : SOURCE_OFFSET_ATTRIBUTES) {
+            int nameStart = valueStart - 2 - attribute.length();
+            if (nameStart > 0 && page.startsWith(attribute, nameStart) && Character.isWhitespace(page.charAt(nameStart - 1))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find top level elements of content
+     *
+     * @param page  page text
+     * @param start content start
+     * @param end   content end
+     *
+     * @return list of element start/end offsets or null if content has top level text or elements could not be matched
+     */
+    @Nullable
+    static List<int[]> parseBlocks(@NotNull String page, int start, int end) {
+        ArrayList<int[]> blocks = new ArrayList<>();
+        int pos = start;
+
+        while (pos < end) {
+            char c = page.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (page.startsWith("<!--", pos)) {
+                int commentEnd = page.indexOf("-->", pos + 4);
+                if (commentEnd == -1 || commentEnd + 3 > end) return null;
+                pos = commentEnd + 3;
+            } else if (c == '<' && pos + 1 < end && Character.isLetter(page.charAt(pos + 1))) {
+                int elementEnd = elementEnd(page, pos, end);
+                if (elementEnd == -1) return null;
+                blocks.add(new int[] { pos, elementEnd });
+                pos = elementEnd;
+            } else {
+                // top level text, closing tag without open or other markup
+                return null;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Find end of element, only tags of the same name are tracked for nesting
+     *
+     * @param page  page text
+     * @param start start of element open tag
+     * @param end   end of text to search
+     *
+     * @return offset after closing tag or -1 if not found
+     */
+    static int elementEnd(@NotNull String page, int start, int end) {
+        int nameEnd = tagNameEnd(page, start + 1, end);
+        String name = page.substring(start + 1, nameEnd).toLowerCase();
+
+        int openEnd = tagEnd(page, nameEnd, end);
+        if (openEnd == -1) return -1;
+        if (page.charAt(openEnd - 2) == '/' || contains(VOID_ELEMENTS, name)) return openEnd;
+
+        if (contains(RAW_TEXT_ELEMENTS, name)) {
+            int closeStart = indexOfIgnoreCase(page, "</" + name, openEnd);
+            if (closeStart == -1 || closeStart >= end) return -1;
+            return tagEnd(page, closeStart + 2 + name.length(), end);
+        }
+
+        int depth = 1;
+        int pos = openEnd;
+        while (pos < end) {
+            int tagStart = page.indexOf('<', pos);
+            if (tagStart == -1 || tagStart + 1 >= end) return -1;
+
+            if (page.startsWith("<!--", tagStart)) {
+                int commentEnd = page.indexOf("-->", tagStart + 4);
+                if (commentEnd == -1) return -1;
+                pos = commentEnd + 3;
+                continue;
+            }
+
+            boolean isClose = page.charAt(tagStart + 1) == '/';
+            int tagNameStart = isClose ? tagStart + 2 : tagStart + 1;
+            if (tagNameStart >= end || !Character.isLetter(page.charAt(tagNameStart))) {
+                pos = tagStart + 1;
+                continue;
+            }
+
+            int tagNameEnd = tagNameEnd(page, tagNameStart, end);
+            int tagEnd = tagEnd(page, tagNameEnd, end);
+            if (tagEnd == -1) return -1;
+
+            String tagName = page.substring(tagNameStart, tagNameEnd).toLowerCase();
+            if (!isClose && contains(RAW_TEXT_ELEMENTS, tagName) && page.charAt(tagEnd - 2) != '/') {
+                int closeStart = indexOfIgnoreCase(page, "</" + tagName, tagEnd);
+                if (closeStart == -1 || closeStart >= end) return -1;
+                pos = closeStart;
+                continue;
+            }
+
+            if (tagName.equals(name)) {
+                if (isClose) {
+                    if (--depth == 0) return tagEnd;
+                } else if (page.charAt(tagEnd - 2) != '/') {
+                    depth++;
+                }
+            }
+            pos = tagEnd;
+        }
+        return -1;
+    }
+
+    private static int tagNameEnd(@NotNull String page, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            char c = page.charAt(pos);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != ':') break;
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tagEnd(@NotNull String page, int start, int end) {
+        char quote = 0;
+        for (int pos = start; pos < end; pos++) {
+            char c = page.charAt(pos);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return pos + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contains(@NotNull String[] names, @NotNull String name) {
+        for (String item : names) {
+            if (item.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private static int indexOfIgnoreCase(@NotNull String text, @NotNull String pattern, int from) {
+        int iMax = text.length() - pattern.length();
+        for (int i = from; i <= iMax; i++) {
+            if (text.regionMatches(true, i, pattern, 0, pattern.length())) return i;
+        }
+        return -1;
+    }
+}
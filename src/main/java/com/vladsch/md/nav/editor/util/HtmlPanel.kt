@@ -6,7 +6,6 @@ import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.util.Range
-import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
@@ -17,7 +16,7 @@ abstract class HtmlPanel(val myProject: Project, val myHtmlPanelHost: HtmlPanelH
     abstract val component: JComponent
     abstract fun setHtml(html: String): Boolean   // false means don't try to scroll to offset, update was rescheduled or engine not ready
     abstract fun setCSS(inlineCss: String?, fileUris: Array<String>)
-    abstract fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: com.vladsch.flexmark.util.sequence.Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean)
+    abstract fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: com.vladsch.flexmark.util.sequence.Range, verticalLocation: Float?, tagRangeIndex: HtmlTagRangeIndex, onLoadUpdate: Boolean, onTypingUpdate: Boolean)
 
     //    abstract fun setHtmlPanelHost(launcher: HtmlPanelHost)
     abstract fun setPageUrl(url: String): Boolean? // null means no such feature, need page HTML, false means update rescheduled, if URL blank just return true if can handle urls or null if not
@@ -0,0 +1,103 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util
+
+import com.vladsch.flexmark.util.sequence.Range
+import com.vladsch.flexmark.util.sequence.TagRange
+
+/**
+ * Tag ranges of a rendered page sorted by source start offset, used to find the preview element for a source offset
+ *
+ * Built once per rendered page. Lookups binary search for the last range starting at or before the offset and scan
+ * back from it, jumping over ranges which end before the offset. For nested tag ranges a lookup examines only the
+ * ranges enclosing the offset and one sibling per nesting level, instead of all ranges of the page.
+ */
+class HtmlTagRangeIndex(tagRanges: List<TagRange>) {
+    companion object {
+        @JvmField
+        val EMPTY: HtmlTagRangeIndex = HtmlTagRangeIndex(listOf())
+    }
+
+    // sort is stable, ranges with the same start keep their rendering order, outer before inner
+    private val myTagRanges: Array<TagRange> = tagRanges.toTypedArray().apply { sortWith(Comparator { o1, o2 -> o1.start.compareTo(o2.start) }) }
+
+    // largest end offset of ranges up to and including index, non-decreasing
+    private val myMaxEnds: IntArray = IntArray(myTagRanges.size).also { maxEnds ->
+        var maxEnd = Int.MIN_VALUE
+        for (i in myTagRanges.indices) {
+            maxEnd = maxOf(maxEnd, myTagRanges[i].end)
+            maxEnds[i] = maxEnd
+        }
+    }
+
+    // index of the closest preceding range with a larger end offset or -1, ranges in between end at or before this one
+    private val myPrevLongerEnds: IntArray = IntArray(myTagRanges.size).also { prevLongerEnds ->
+        val stack = IntArray(myTagRanges.size)
+        var top = 0
+        for (i in myTagRanges.indices) {
+            val end = myTagRanges[i].end
+            while (top > 0 && myTagRanges[stack[top - 1]].end <= end) top--
+            prevLongerEnds[i] = if (top > 0) stack[top - 1] else -1
+            stack[top++] = i
+        }
+    }
+
+    val size: Int get() = myTagRanges.size
+
+    /**
+     * Find the tag range to use for a source offset
+     *
+     * @param offset        source offset
+     * @param lineOffsets   range of the offset's line, used to find a tag range when none contains the offset, null for no fallback
+     * @param tagPriorities priority of tags, of ranges with the same span the one with higher priority is used
+     *
+     * @return smallest range containing the offset, first range overlapping line offsets if none contain it or null
+     */
+    fun findBestTagRange(offset: Int, lineOffsets: Range?, tagPriorities: Map<String, Int>): TagRange? {
+        var bestTagRange: TagRange? = null
+        var bestPriority = 0
+
+        // scanning backwards, on equal span and priority the earlier rendered range is used
+        var i = lastStartingAtOrBefore(offset)
+        while (i >= 0 && myMaxEnds[i] > offset) {
+            val tagRange = myTagRanges[i]
+            if (tagRange.doesContain(offset)) {
+                val priority = tagPriorities[tagRange.tag] ?: 0
+                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span == bestTagRange.span && priority >= bestPriority) {
+                    bestTagRange = tagRange
+                    bestPriority = priority
+                }
+                i--
+            } else {
+                // starts at or before offset so it ends at or before it, and so do all ranges up to its previous longer one
+                i = myPrevLongerEnds[i]
+            }
+        }
+
+        if (bestTagRange != null || lineOffsets == null) return bestTagRange
+
+        // ranges before the first one whose max end reaches the line cannot overlap it
+        var lo = 0
+        var hi = myMaxEnds.size
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (myMaxEnds[mid] < lineOffsets.start) lo = mid + 1 else hi = mid
+        }
+
+        i = lo
+        while (i < myTagRanges.size && myTagRanges[i].start <= lineOffsets.end) {
+            if (lineOffsets.doesOverlap(myTagRanges[i])) return myTagRanges[i]
+            i++
+        }
+        return null
+    }
+
+    private fun lastStartingAtOrBefore(offset: Int): Int {
+        var lo = 0
+        var hi = myTagRanges.size
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (myTagRanges[mid].start <= offset) lo = mid + 1 else hi = mid
+        }
+        return lo - 1
+    }
+}
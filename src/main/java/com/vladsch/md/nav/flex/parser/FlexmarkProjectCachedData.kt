@@ -14,12 +14,14 @@ import com.intellij.psi.PsiJavaFile
 import com.intellij.psi.impl.java.stubs.index.JavaFieldNameIndex
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.psi.util.PsiTreeUtil
+import com.vladsch.md.nav.MdFileType
 import com.vladsch.md.nav.flex.psi.util.FlexmarkPsiImplUtils
 import com.vladsch.md.nav.parser.cache.CachedData
 import com.vladsch.md.nav.parser.cache.PsiClassProcessor
 import com.vladsch.md.nav.parser.cache.PsiFileProcessor
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey
 import com.vladsch.md.nav.parser.cache.data.ProjectCachedData
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileKeys
 import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext
 import com.vladsch.md.nav.psi.element.MdFile
@@ -77,7 +79,12 @@ class FlexmarkProjectCachedData {
             }
 
             /**
-             * NOTE: not invoked on ADT nor inside read action, have to do all that manually
+             * Only java files and markdown spec files can change the test case files
+             */
+            override fun getFileKeys(): ProjectFileKeys = ProjectFileKeys.ofExtensions("java", *MdFileType.EXTENSIONS)
+
+            /**
+             * NOTE: invoked on a pooled thread inside a read action, restarting code analysis has to be done on the EDT
              *
              * Test dependency on given file and return true if still valid
              * @param psiFile file to test
@@ -137,7 +144,9 @@ class FlexmarkProjectCachedData {
                             // has the same name, may not resolve but for the test it is good enough, we invalidate the file
                             val fileCachedData = ProjectCachedData.fileCachedData(psiFile)
                             if (fileCachedData.remove(FlexmarkSpecTestCaseCachedData.TEST_CASE_DATA)) {
-                                DaemonCodeAnalyzer.getInstance(project).restart(psiFile)
+                                ApplicationManager.getApplication().invokeLater {
+                                    if (!project.isDisposed && psiFile.isValid) DaemonCodeAnalyzer.getInstance(project).restart(psiFile)
+                                }
                             }
                             break;
                         }
@@ -6,23 +6,17 @@ import com.intellij.codeInspection.InspectionManager;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemHighlightType;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.vladsch.flexmark.ext.tables.TableExtractingVisitor;
-import com.vladsch.flexmark.ext.tables.TablesExtension;
-import com.vladsch.flexmark.util.ast.Document;
-import com.vladsch.flexmark.util.data.MutableDataHolder;
-import com.vladsch.flexmark.util.format.MarkdownTable;
 import com.vladsch.flexmark.util.misc.Utils;
 import com.vladsch.flexmark.util.sequence.BasedSequence;
-import com.vladsch.flexmark.util.sequence.LineAppendable;
 import com.vladsch.md.nav.MdBundle;
 import com.vladsch.md.nav.MdFileType;
 import com.vladsch.md.nav.actions.handlers.util.PsiEditAdjustment;
 import com.vladsch.md.nav.annotator.ReplaceTextChangeQuickFix;
 import com.vladsch.md.nav.inspections.LocalInspectionToolBase;
 import com.vladsch.md.nav.inspections.ProblemDescriptors;
-import com.vladsch.md.nav.parser.MdLexParserManager;
 import com.vladsch.md.nav.psi.element.MdComposite;
 import com.vladsch.md.nav.psi.element.MdFile;
 import com.vladsch.md.nav.psi.element.MdTable;
@@ -32,11 +26,152 @@ import com.vladsch.md.nav.psi.util.MdTypes;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
 import com.vladsch.md.nav.settings.MdRenderingProfileManager;
 import com.vladsch.md.nav.settings.ParserOptions;
-import com.vladsch.md.nav.util.format.FlexmarkFormatOptionsAdapter;
+import com.vladsch.plugin.util.LazyComputable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class GitHubTableInspection extends LocalInspectionToolBase {
+    private static final Key<TableChecks> TABLE_CHECKS = Key.create("MD_NAV_GITHUB_TABLE_CHECKS");
+
+    /**
+     * Check results of a table, done on its PSI structure. Results are keyed by the table's text and contain offsets
+     * relative to the table's start so they remain valid when text outside the table changes.
+     */
+    private static class TableChecks {
+        final int textLength;
+        final int textHash;
+        final boolean hasInvalidHeaderRows;
+        final boolean hasInconsistentColumns;
+        final int rowsEndOffset;
+        final int capStartOffset;
+        final int capEndOffset;
+        final @Nullable String columnSpanText;
+
+        TableChecks(@NotNull MdTable element, @NotNull String text, @NotNull LazyComputable<PsiEditAdjustment> editContext) {
+            textLength = text.length();
+            textHash = text.hashCode();
+
+            PsiElement tableHeader = MdPsiImplUtil.findNestedChildByType(element, MdTypes.TABLE_HEADER);
+            int headerRows = 0;
+            if (tableHeader != null) {
+                for (PsiElement row : tableHeader.getChildren()) {
+                    if (row.getNode().getElementType() == MdTypes.TABLE_ROW) headerRows++;
+                }
+            }
+            hasInvalidHeaderRows = tableHeader != null && headerRows != 1;
+
+            int minColumns = Integer.MAX_VALUE;
+            int maxColumns = 0;
+            boolean hadColumnSpans = false;
+
+            for (PsiElement row : getRows(element)) {
+                int columns = 0;
+                for (PsiElement part : row.getChildren()) {
+                    if (part instanceof MdComposite && part.getNode().getElementType() == MdTypes.TABLE_CELL) {
+                        int colSpan = getColSpan(part);
+                        if (colSpan > 1) hadColumnSpans = true;
+                        columns += colSpan;
+                    }
+                }
+
+                if (minColumns > columns) minColumns = columns;
+                if (maxColumns < columns) maxColumns = columns;
+            }
+
+            hasInconsistentColumns = minColumns != maxColumns;
+            int startOffset = element.getTextOffset();
+
+            PsiElement caption = MdPsiImplUtil.findNestedChildByType(element, MdTypes.TABLE_CAPTION);
+            if (caption != null) {
+                BasedSequence charSequence = editContext.getValue().getCharSequence();
+                int capStartOffset = charSequence.startOfLine(caption.getTextOffset());
+                int capEndOffset = charSequence.endOfLineAnyEOL(capStartOffset);
+                this.capStartOffset = capStartOffset - startOffset;
+                this.capEndOffset = capEndOffset + charSequence.eolStartLength(capEndOffset) - startOffset;
+
+                // make end offset for table the previous end of line
+                rowsEndOffset = Math.max(0, capStartOffset - charSequence.eolEndLength(capStartOffset)) - startOffset;
+            } else {
+                capStartOffset = -1;
+                capEndOffset = -1;
+                rowsEndOffset = textLength;
+            }
+
+            columnSpanText = hadColumnSpans ? getColumnSpanText(element, editContext.getValue()) : null;
+        }
+
+        boolean isValidFor(@NotNull String text) {
+            return textLength == text.length() && textHash == text.hashCode();
+        }
+
+        @NotNull
+        static List<PsiElement> getRows(@NotNull MdTable element) {
+            List<PsiElement> rows = new ArrayList<>();
+            for (PsiElement section : element.getChildren()) {
+                if (section.getNode().getElementType() == MdTypes.TABLE_SEPARATOR) {
+                    rows.add(section);
+                } else {
+                    rows.addAll(Arrays.asList(section.getChildren()));
+                }
+            }
+            return rows;
+        }
+
+        static int getColSpan(@NotNull PsiElement cell) {
+            PsiElement separators = cell.getNextSibling();
+            return Utils.minLimit(1, separators == null ? 1 : separators.getTextLength());
+        }
+
+        /**
+         * Table text with a space inserted between the pipes of column spans
+         */
+        @NotNull
+        static String getColumnSpanText(@NotNull MdTable element, @NotNull PsiEditAdjustment editContext) {
+            BlockPrefixes prefixes = MdPsiImplUtil.getBlockPrefixes(element, null, editContext).finalizePrefixes(editContext);
+            BasedSequence childContPrefix = prefixes.getChildContPrefix();
+            StringBuilder tableText = new StringBuilder();
+            CharSequence sep = "";
+
+            for (PsiElement row : getRows(element)) {
+                int columns = 0;
+                tableText.append(sep);
+                sep = "\n" + childContPrefix.toString();
+
+                for (PsiElement part : row.getChildren()) {
+                    if (part instanceof MdComposite && part.getNode().getElementType() == MdTypes.TABLE_CELL) {
+                        PsiElement leadSeparators = part.getPrevSibling();
+
+                        if (columns == 0 && leadSeparators != null) {
+                            tableText.append(leadSeparators.getText());
+                        }
+
+                        tableText.append(part.getText());
+
+                        PsiElement separators = part.getNextSibling();
+                        int colSpan = getColSpan(part);
+                        if (separators != null && colSpan > 1) {
+                            String sepCell = "";
+                            for (int i = 0; i < colSpan; i++) {
+                                tableText.append(sepCell);
+                                sepCell = " ";
+                                tableText.append('|');
+                            }
+                        } else if (separators != null) {
+                            tableText.append(separators.getText().trim());
+                        }
+
+                        columns += colSpan;
+                    }
+                }
+            }
+            return tableText.toString();
+        }
+    }
+
     @Nullable
     @Override
     public ProblemDescriptor[] checkFile(@NotNull PsiFile file, @NotNull InspectionManager manager, boolean isOnTheFly) {
@@ -52,114 +187,41 @@ public class GitHubTableInspection extends LocalInspectionToolBase {
         }
 
         final ProblemDescriptors problems = new ProblemDescriptors();
-        final PsiEditAdjustment editContext = new PsiEditAdjustment(file);
+        final LazyComputable<PsiEditAdjustment> editContext = new LazyComputable<>(() -> new PsiEditAdjustment(file));
 
         MdPsiImplUtil.findChildrenOfAnyType((MdFile) file, false, false, false, element -> {
-            LineAppendable tableChars = editContext.getLineAppendable();
-            tableChars.append(editContext.elementText(element)).line();
-            MdPsiImplUtil.adjustLinePrefix(element, tableChars, editContext);
-
-            Document root = MdLexParserManager.parseFlexmarkDocument(renderingProfile, tableChars.toString(false), true);
-
-            if (root != null) {
-                BlockPrefixes prefixes = MdPsiImplUtil.getBlockPrefixes(element, null, editContext).finalizePrefixes(editContext);
-                BasedSequence childContPrefix = prefixes.getChildContPrefix();
-                FlexmarkFormatOptionsAdapter flexmarkFormatOptionsAdapter = new FlexmarkFormatOptionsAdapter(editContext, element.getTextOffset(), element.getTextOffset() + element.getTextLength());
-                MutableDataHolder formatOptions = flexmarkFormatOptionsAdapter.getTableFormatOptions("");
-                formatOptions.set(TablesExtension.APPEND_MISSING_COLUMNS, true);
-                TableExtractingVisitor tableVisitor = new TableExtractingVisitor(formatOptions);
-                MarkdownTable[] tables = tableVisitor.getTables(root);
-                if (tables.length > 0) {
-                    MarkdownTable table = tables[0];
-
-                    table.normalize();
-
-                    if (table.header.rows.size() != 1) {
-                        PsiElement tableHeader = MdPsiImplUtil.findNestedChildByType(element, MdTypes.TABLE_HEADER);
-                        if (tableHeader != null) {
-                            problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.header-rows"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
-                        }
-                    }
-
-                    int minColumns = Integer.MAX_VALUE;
-                    int maxColumns = 0;
-                    boolean hadColumnSpans = false;
-                    StringBuilder tableText = new StringBuilder();
-                    CharSequence sep = "";
-
-                    for (PsiElement section : element.getChildren()) {
-                        for (PsiElement row : section.getNode().getElementType() == MdTypes.TABLE_SEPARATOR ? new PsiElement[] { section } : section.getChildren()) {
-                            int columns = 0;
-                            tableText.append(sep);
-                            sep = "\n" + childContPrefix.toString();
-
-                            for (PsiElement part : row.getChildren()) {
-                                if (part instanceof MdComposite && part.getNode().getElementType() == MdTypes.TABLE_CELL) {
-                                    PsiElement leadSeparators = part.getPrevSibling();
-
-                                    if (columns == 0 && leadSeparators != null) {
-                                        tableText.append(leadSeparators.getText());
-                                    }
-
-                                    tableText.append(part.getText());
-
-                                    PsiElement separators = part.getNextSibling();
-                                    int colSpan = Utils.minLimit(1, separators == null ? 1 : separators.getTextLength());
-                                    if (separators != null && colSpan > 1) {
-                                        hadColumnSpans = true;
-                                        final StringBuilder sb = new StringBuilder();
-                                        String sepCell = "";
-                                        for (int i = 0; i < colSpan; i++) {
-                                            sb.append(sepCell);
-                                            sepCell = " ";
-                                            sb.append('|');
-                                        }
-                                        tableText.append(sb);
-                                    } else if (separators != null) {
-                                        tableText.append(separators.getText().trim());
-                                    }
-
-                                    columns += colSpan;
-                                }
-                            }
-
-                            if (minColumns > columns) minColumns = columns;
-                            if (maxColumns < columns) maxColumns = columns;
-                        }
-                    }
-
-                    int startOffset = element.getTextOffset();
-                    int endOffset = startOffset + element.getTextLength();
-
-                    if (minColumns != maxColumns) {
-                        LineAppendable formattedTable = editContext.getLineAppendable();
-                        table.appendTable(formattedTable);
-                        MdPsiImplUtil.addLinePrefix(formattedTable, "", childContPrefix);
-                        problems.add(new ReplaceTextChangeQuickFix(MdBundle.message("quickfix.reformat-table"), startOffset, endOffset, formattedTable.toString()));
-                        problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.inconsistent-columns"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
-                    }
+            String text = element.getText();
+            TableChecks checks = element.getUserData(TABLE_CHECKS);
+            if (checks == null || !checks.isValidFor(text)) {
+                checks = new TableChecks(element, text, editContext);
+                element.putUserData(TABLE_CHECKS, checks);
+            }
 
-                    PsiElement caption = MdPsiImplUtil.findNestedChildByType(element, MdTypes.TABLE_CAPTION);
-                    if (caption != null) {
-                        BasedSequence charSequence = editContext.getCharSequence();
-                        int capStartOffset = charSequence.startOfLine(caption.getTextOffset());
-                        int capEndOffset = charSequence.endOfLineAnyEOL(capStartOffset);
-                        capEndOffset += charSequence.eolStartLength(capEndOffset);
+            int startOffset = element.getTextOffset();
 
-                        problems.add(new ReplaceTextChangeQuickFix(MdBundle.message("annotation.table.caption-support.delete-caption"), capStartOffset, capEndOffset, ""));
-                        problems.add(manager.createProblemDescriptor(caption, MdBundle.message("annotation.table.caption-support"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
+            if (checks.hasInvalidHeaderRows) {
+                problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.header-rows"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
+            }
 
-                        // make end offset for table the previous end of line
-                        endOffset = Math.max(0, capStartOffset - charSequence.eolEndLength(capStartOffset));
-                    }
+            if (checks.hasInconsistentColumns) {
+                // formatted table is only computed when the fix is applied
+                problems.add(new ReformatTableQuickFix(MdBundle.message("quickfix.reformat-table"), startOffset, startOffset + checks.textLength));
+                problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.inconsistent-columns"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
+            }
 
-                    if (hadColumnSpans) {
-                        // need to add spaces between |
-                        problems.add(new ReplaceTextChangeQuickFix(MdBundle.message("annotation.table.column-span.insert-space"), startOffset, endOffset, tableText.toString()));
-                        problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.column-span"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
-                    }
+            if (checks.capStartOffset != -1) {
+                PsiElement caption = MdPsiImplUtil.findNestedChildByType(element, MdTypes.TABLE_CAPTION);
+                if (caption != null) {
+                    problems.add(new ReplaceTextChangeQuickFix(MdBundle.message("annotation.table.caption-support.delete-caption"), startOffset + checks.capStartOffset, startOffset + checks.capEndOffset, ""));
+                    problems.add(manager.createProblemDescriptor(caption, MdBundle.message("annotation.table.caption-support"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
                 }
             }
+
+            if (checks.columnSpanText != null) {
+                // need to add spaces between |
+                problems.add(new ReplaceTextChangeQuickFix(MdBundle.message("annotation.table.column-span.insert-space"), startOffset, startOffset + checks.rowsEndOffset, checks.columnSpanText));
+                problems.add(manager.createProblemDescriptor(element, MdBundle.message("annotation.table.column-span"), true, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly, problems.fixes()));
+            }
         }, MdTable.class);
 
         return problems.done();
@@ -0,0 +1,117 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.inspections.table;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.IncorrectOperationException;
+import com.vladsch.flexmark.ext.tables.TableExtractingVisitor;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.util.data.MutableDataHolder;
+import com.vladsch.flexmark.util.format.MarkdownTable;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+import com.vladsch.flexmark.util.sequence.LineAppendable;
+import com.vladsch.md.nav.MdBundle;
+import com.vladsch.md.nav.actions.handlers.util.PsiEditAdjustment;
+import com.vladsch.md.nav.annotator.MdBaseIntentionAction;
+import com.vladsch.md.nav.annotator.ReplaceTextChangeQuickFix;
+import com.vladsch.md.nav.parser.MdLexParserManager;
+import com.vladsch.md.nav.psi.element.MdTable;
+import com.vladsch.md.nav.psi.util.BlockPrefixes;
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import com.vladsch.md.nav.util.format.FlexmarkFormatOptionsAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Replace table with its formatted text, table is parsed and formatted only when the fix is applied
+ */
+public class ReformatTableQuickFix extends MdBaseIntentionAction {
+    private final String myMessage;
+    private final int myStartOffset;
+    private final int myEndOffset;
+
+    public ReformatTableQuickFix(@NotNull String message, int startOffset, int endOffset) {
+        myMessage = message;
+        myStartOffset = startOffset;
+        myEndOffset = endOffset;
+    }
+
+    @NotNull
+    @Override
+    public String getText() {
+        return myMessage;
+    }
+
+    @NotNull
+    @Override
+    public String getFamilyName() {
+        return MdBundle.message("quickfix.reformat-table.family-name");
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull Project project, Document document, PsiFile file) {
+        return getTable(file) != null;
+    }
+
+    @Override
+    public void invoke(@NotNull Project project, Document document, PsiFile file) throws IncorrectOperationException {
+        MdTable table = getTable(file);
+        if (table == null) return;
+
+        String formattedTable = getFormattedTable(table);
+        if (formattedTable == null) return;
+
+        ApplicationManager.getApplication().invokeLater(() -> ReplaceTextChangeQuickFix.replaceChars(project, file, document, myStartOffset, myEndOffset, formattedTable));
+    }
+
+    @Override
+    public boolean startInWriteAction() {
+        // we handle our own
+        return false;
+    }
+
+    @Nullable
+    private MdTable getTable(@Nullable PsiFile file) {
+        if (file == null || !file.isValid()) return null;
+
+        MdTable table = PsiTreeUtil.getParentOfType(file.findElementAt(myStartOffset), MdTable.class, false);
+        return table != null && table.getTextOffset() == myStartOffset && table.getTextOffset() + table.getTextLength() == myEndOffset ? table : null;
+    }
+
+    @Nullable
+    public static String getFormattedTable(@NotNull MdTable element) {
+        PsiFile file = element.getContainingFile();
+        MdRenderingProfile renderingProfile = MdRenderingProfileManager.getInstance(file.getProject()).getRenderingProfile(file);
+        PsiEditAdjustment editContext = new PsiEditAdjustment(file);
+
+        LineAppendable tableChars = editContext.getLineAppendable();
+        tableChars.append(editContext.elementText(element)).line();
+        MdPsiImplUtil.adjustLinePrefix(element, tableChars, editContext);
+
+        com.vladsch.flexmark.util.ast.Document root = MdLexParserManager.parseFlexmarkDocument(renderingProfile, tableChars.toString(false), true);
+        if (root == null) return null;
+
+        FlexmarkFormatOptionsAdapter flexmarkFormatOptionsAdapter = new FlexmarkFormatOptionsAdapter(editContext, element.getTextOffset(), element.getTextOffset() + element.getTextLength());
+        MutableDataHolder formatOptions = flexmarkFormatOptionsAdapter.getTableFormatOptions("");
+        formatOptions.set(TablesExtension.APPEND_MISSING_COLUMNS, true);
+        TableExtractingVisitor tableVisitor = new TableExtractingVisitor(formatOptions);
+        MarkdownTable[] tables = tableVisitor.getTables(root);
+        if (tables.length == 0) return null;
+
+        MarkdownTable table = tables[0];
+        table.normalize();
+
+        BlockPrefixes prefixes = MdPsiImplUtil.getBlockPrefixes(element, null, editContext).finalizePrefixes(editContext);
+        BasedSequence childContPrefix = prefixes.getChildContPrefix();
+        LineAppendable formattedTable = editContext.getLineAppendable();
+        table.appendTable(formattedTable);
+        MdPsiImplUtil.addLinePrefix(formattedTable, "", childContPrefix);
+        return formattedTable.toString();
+    }
+}
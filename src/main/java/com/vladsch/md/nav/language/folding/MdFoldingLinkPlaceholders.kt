@@ -0,0 +1,109 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.language.folding
+
+import com.intellij.codeInsight.folding.CodeFoldingManager
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.diagnostic.debug
+import com.intellij.openapi.editor.EditorFactory
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Computable
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiManager
+import com.intellij.util.concurrency.AppExecutorUtil
+import com.vladsch.md.nav.parser.cache.MdCachedFileElements
+import com.vladsch.md.nav.parser.cache.MdCachedResolvedLinks
+import com.vladsch.md.nav.psi.element.MdFile
+import com.vladsch.md.nav.psi.element.MdLinkRefElement
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil
+import com.vladsch.md.nav.vcs.GitHubLinkResolver
+import com.vladsch.plugin.util.image.ImageUtils
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+
+/**
+ * Resolves folding placeholders of URL links in the background
+ *
+ * Folding only uses placeholders cached in [MdCachedResolvedLinks] and schedules the file here when any are missing.
+ * Each link is resolved in its own read action so write actions are not held up, then folding is updated
+ * for editors of the file if any link gained a placeholder.
+ */
+object MdFoldingLinkPlaceholders {
+    private val LOG = Logger.getInstance("com.vladsch.md.nav.language.folding")
+
+    private val myExecutor: ExecutorService by lazy { AppExecutorUtil.createBoundedApplicationPoolExecutor("MdFoldingLinkPlaceholders", 1) }
+    private val myPendingFiles = ConcurrentHashMap.newKeySet<VirtualFile>()
+
+    @JvmStatic
+    fun schedule(file: MdFile) {
+        val virtualFile = file.originalFile.virtualFile ?: return
+        val project = file.project
+
+        if (myPendingFiles.add(virtualFile)) {
+            myExecutor.execute {
+                myPendingFiles.remove(virtualFile)
+                if (!project.isDisposed && virtualFile.isValid) {
+                    resolvePlaceholders(project, virtualFile)
+                }
+            }
+        }
+    }
+
+    private fun resolvePlaceholders(project: Project, virtualFile: VirtualFile) {
+        val application = ApplicationManager.getApplication()
+
+        val links = application.runReadAction(Computable<List<MdLinkRefElement>> {
+            val file = if (project.isDisposed || !virtualFile.isValid) null else PsiManager.getInstance(project).findFile(virtualFile) as? MdFile
+            if (file == null) listOf()
+            else MdCachedFileElements.listChildrenOfAnyType(file, false, false, false, MdCachedResolvedLinks.LINK_REF_CLASSES)
+        })
+
+        if (links.isEmpty()) return
+
+        var resolver: GitHubLinkResolver? = null
+        var updateFolding = false
+
+        for (link in links) {
+            if (project.isDisposed) return
+
+            val added = application.runReadAction(Computable {
+                val file = if (link.isValid) link.containingFile as? MdFile else null
+                if (file == null || MdCachedResolvedLinks.getCachedFoldPlaceholder(file, link) != null) {
+                    false
+                } else {
+                    val linkRef = MdPsiImplUtil.getLinkRef(link.parent)
+                    if (linkRef == null || ImageUtils.isPossiblyEncodedImage(linkRef.filePath)) {
+                        false
+                    } else {
+                        val linkResolver = resolver ?: GitHubLinkResolver(file).also { resolver = it }
+                        if (!MdFoldingVisitor.isResolvedPlaceholderLink(linkRef, linkResolver)) {
+                            false
+                        } else {
+                            val placeholder = MdFoldingVisitor.getResolvedPlaceholder(link, linkRef, linkResolver)
+                            MdCachedResolvedLinks.addCachedFoldPlaceholder(file, link, placeholder) && placeholder.isNotEmpty()
+                        }
+                    }
+                }
+            })
+
+            if (added) updateFolding = true
+        }
+
+        LOG.debug { "resolved folding placeholders for ${virtualFile.path}, links: ${links.size}, update folding: $updateFolding" }
+
+        if (updateFolding) {
+            application.invokeLater {
+                if (!project.isDisposed && virtualFile.isValid) {
+                    val document = FileDocumentManager.getInstance().getCachedDocument(virtualFile)
+                    if (document != null) {
+                        val foldingManager = CodeFoldingManager.getInstance(project)
+                        for (editor in EditorFactory.getInstance().getEditors(document, project)) {
+                            foldingManager.scheduleAsyncFoldingUpdate(editor)
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
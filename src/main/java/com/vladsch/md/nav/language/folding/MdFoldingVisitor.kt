@@ -8,6 +8,7 @@ import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiElement
 import com.vladsch.md.nav.language.api.MdFoldingBuilderProvider
 import com.vladsch.md.nav.language.api.MdFoldingVisitorHandler
+import com.vladsch.md.nav.parser.cache.MdCachedResolvedLinks
 import com.vladsch.md.nav.psi.element.*
 import com.vladsch.md.nav.psi.util.MdNodeVisitor
 import com.vladsch.md.nav.psi.util.MdPsiImplUtil
@@ -28,6 +29,8 @@ class MdFoldingVisitor(
 ) : MdFoldingVisitorHandler {
 
     private val myResolver = GitHubLinkResolver(root)
+    private val myFile = root.containingFile as? MdFile
+    private var myHavePendingLinks = false
     private val myHeadingRanges = HashMap<MdHeaderElement, TextRange>()
     private val myOpenHeadingRanges = Array<TextRange?>(6) { null }
     private val myOpenHeadings = Array<MdHeaderElement?>(6) { null }
@@ -89,6 +92,10 @@ class MdFoldingVisitor(
 
         // close any open headings at end of file
         closeOpenHeadings()
+
+        if (myHavePendingLinks && myFile != null) {
+            MdFoldingLinkPlaceholders.schedule(myFile)
+        }
     }
 
     private fun fold(element: MdVerbatim) {
@@ -117,27 +124,18 @@ class MdFoldingVisitor(
                         }
                     })
                 } else {
-                    if ((linkRef.isURL || linkRef.isFileURI) && !myResolver.isExternalUnchecked(linkRef)) {
-                        val reference = element.reference
-                        if (reference != null) {
-                            val targetElement = reference.resolve()
-
-                            if (targetElement != null) {
-                                // get the repo relative if available, if not then page relative
-                                var collapsedForm = myResolver.resolve(linkRef, Want.invoke(Local.ABS, Remote.ABS, Links.NONE), null)
-                                if (collapsedForm == null) {
-                                    collapsedForm = myResolver.resolve(linkRef, Want.invoke(Local.REL, Remote.REL, Links.NONE), null)
-                                }
-
-                                if (collapsedForm != null && collapsedForm is LinkRef) {
-                                    val collapsedText = collapsedForm.filePath
-                                    addDescriptor(object : FoldingDescriptor(element, element.textRange) {
-                                        override fun getPlaceholderText(): String? {
-                                            return collapsedText
-                                        }
-                                    })
+                    if (isResolvedPlaceholderLink(linkRef, myResolver)) {
+                        // NOTE: resolving links is too slow for folding, placeholders are resolved in the background and folding updated when ready
+                        val collapsedText = if (myFile == null) getResolvedPlaceholder(element, linkRef, myResolver) else MdCachedResolvedLinks.getCachedFoldPlaceholder(myFile, element)
+
+                        if (collapsedText == null) {
+                            myHavePendingLinks = true
+                        } else if (collapsedText.isNotEmpty()) {
+                            addDescriptor(object : FoldingDescriptor(element, element.textRange) {
+                                override fun getPlaceholderText(): String? {
+                                    return collapsedText
                                 }
-                            }
+                            })
                         }
                     }
                 }
@@ -278,4 +276,27 @@ class MdFoldingVisitor(
             })
         }
     }
+
+    companion object {
+        @JvmStatic
+        fun isResolvedPlaceholderLink(linkRef: LinkRef, resolver: GitHubLinkResolver): Boolean {
+            return (linkRef.isURL || linkRef.isFileURI) && !resolver.isExternalUnchecked(linkRef)
+        }
+
+        /**
+         * Resolve collapsed form of a URL link
+         *
+         * @return repo relative link address if available, if not then page relative, empty if link does not resolve
+         */
+        @JvmStatic
+        fun getResolvedPlaceholder(element: MdLinkRefElement, linkRef: LinkRef, resolver: GitHubLinkResolver): String {
+            val reference = element.reference ?: return ""
+            reference.resolve() ?: return ""
+
+            val collapsedForm = resolver.resolve(linkRef, Want.invoke(Local.ABS, Remote.ABS, Links.NONE), null)
+                ?: resolver.resolve(linkRef, Want.invoke(Local.REL, Remote.REL, Links.NONE), null)
+
+            return if (collapsedForm is LinkRef) collapsedForm.filePath else ""
+        }
+    }
 }
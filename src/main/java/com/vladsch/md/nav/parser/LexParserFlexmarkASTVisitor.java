@@ -116,7 +116,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
     boolean parseHtmlBlocks = !MdApplicationSettings.getInstance().getDocumentSettings().getHtmlLangInjections();
     private final int length;
 
-    protected final ArrayList<LexerToken> tokens = new ArrayList<>(100);
+    protected final PackedLexerTokens.Builder tokens = new PackedLexerTokens.Builder();
 
     final private Document myDocument;
 
@@ -176,7 +176,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
         return myDocument;
     }
 
-    public ArrayList<LexerToken> getTokens() {
+    public PackedLexerTokens.Builder getTokens() {
         return tokens;
     }
 
@@ -458,7 +458,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
             SyntheticFlexmarkNodes nodes = new SyntheticFlexmarkNodes(node, ATX_HEADER, NONE);
             nodes.addLeaf(node.getOpeningMarker(), HEADER_ATX_MARKER);
             nodes.addComposite(node.getText(), HEADER_TEXT, HEADER_TEXT);
-            nodes.addLeaf(node.getClosingMarker(), ATX_HEADER);
+            nodes.addLeaf(node.getClosingMarker(), HEADER_ATX_MARKER);
             nodes.addLeaf(node.getChars().trimmedEOL(), EOL);
             addCompositeTokensWithChildren(nodes);
         }
@@ -1152,9 +1152,9 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
                     } else {
                         combinedType = processCombinationAncestors(tokenType, tokenType);
                     }
-                    tokens.add(new LexerToken(range, combinedType, parentRanges.size()));
+                    tokens.add(range.getStart(), range.getEnd(), combinedType, parentRanges.size());
                 } else {
-                    tokens.add(new LexerToken(range, tokenType, parentRanges.size()));
+                    tokens.add(range.getStart(), range.getEnd(), tokenType, parentRanges.size());
                 }
             }
         }
@@ -1175,7 +1175,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
             SegmentedRange range = processAncestors(new SegmentedRange(startIndex, endIndex, tokenType, originalTokenType));
             tokenType = range.getTokenType();
             for (Range subRange : range.getSegments()) {
-                if (!subRange.isEmpty()) tokens.add(new LexerToken(subRange, tokenType, parentRanges.size()));
+                if (!subRange.isEmpty()) tokens.add(subRange.getStart(), subRange.getEnd(), tokenType, parentRanges.size());
             }
         }
     }
@@ -0,0 +1,250 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser;
+
+import com.intellij.openapi.project.Project;
+import com.vladsch.md.nav.settings.MdHtmlSettings;
+import com.vladsch.md.nav.settings.MdParserSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Shares parse results between the highlighting lexer, PSI builder and external annotator
+ * <p>
+ * All three parse the same document text with the same rendering profile, usually within the same
+ * daemon pass. Results are keyed by the parsed text and the parser settings of the profile so a hit
+ * is only possible when the parse would produce identical lexer data.
+ * <p>
+ * The base for incremental reparse is not shared, each {@link MdLexer} keeps the last text it parsed so parses of
+ * other files or of parts of the same file cannot replace it.
+ */
+public class LexerDataCache {
+    public static final int MAX_CACHED_ENTRIES = 16;
+
+    private static final LexerDataCache INSTANCE = new LexerDataCache();
+
+    @NotNull
+    public static LexerDataCache getInstance() {
+        return INSTANCE;
+    }
+
+    final private LinkedHashMap<CacheKey, ParsedText> myCache = new LinkedHashMap<CacheKey, ParsedText>(MAX_CACHED_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, ParsedText> eldest) {
+            return size() > MAX_CACHED_ENTRIES;
+        }
+    };
+
+    final private AtomicLong myHits = new AtomicLong();
+    final private AtomicLong myMisses = new AtomicLong();
+    final private AtomicLong myIncremental = new AtomicLong();
+
+    private LexerDataCache() {
+
+    }
+
+    /**
+     * Parsed text with its lexer data and the parser settings used to parse it
+     */
+    public static class ParsedText {
+        public final @NotNull String text;
+        public final @NotNull LexerData lexerData;
+        final @NotNull SettingsKey settingsKey;
+
+        ParsedText(@NotNull SettingsKey settingsKey, @NotNull String text, @NotNull LexerData lexerData) {
+            this.settingsKey = settingsKey;
+            this.text = text;
+            this.lexerData = lexerData;
+        }
+
+        ParsedText(@NotNull MdRenderingProfile renderingProfile, @NotNull String text, @NotNull LexerData lexerData) {
+            this(new SettingsKey(renderingProfile).copy(), text, lexerData);
+        }
+
+        /**
+         * @param renderingProfile rendering profile used for parsing
+         * @param buffer           text to parse
+         *
+         * @return true if parsing buffer with the profile gives this lexer data
+         */
+        public boolean isParsedWith(@NotNull MdRenderingProfile renderingProfile, @NotNull CharSequence buffer) {
+            return text.contentEquals(buffer) && settingsKey.equals(new SettingsKey(renderingProfile));
+        }
+    }
+
+    /**
+     * Get cached lexer data for the text or compute and cache it
+     *
+     * @param renderingProfile rendering profile used for parsing
+     * @param buffer           text to parse
+     * @param lastParsed       last text parsed by the caller, base for incremental reparse, null if none
+     * @param computable       parse function, given an immutable copy of buffer text and lastParsed if it was parsed
+     *                         with the same settings. Should return null to signal that the previous parse result
+     *                         could not be used, in which case it will be called again without previous text.
+     *
+     * @return parsed text
+     */
+    @NotNull
+    public ParsedText getParsedText(@NotNull MdRenderingProfile renderingProfile, @NotNull CharSequence buffer, @Nullable ParsedText lastParsed, @NotNull BiFunction<String, ParsedText, LexerData> computable) {
+        SettingsKey settingsKey = new SettingsKey(renderingProfile);
+        String text = buffer.toString();
+        ParsedText parsedText;
+
+        synchronized (myCache) {
+            parsedText = myCache.get(new CacheKey(settingsKey, text));
+        }
+
+        if (parsedText != null) {
+            myHits.incrementAndGet();
+            return parsedText;
+        }
+
+        myMisses.incrementAndGet();
+
+        LexerData lexerData = null;
+        if (lastParsed != null && lastParsed.settingsKey.equals(settingsKey)) {
+            lexerData = computable.apply(text, lastParsed);
+            if (lexerData != null) myIncremental.incrementAndGet();
+        }
+
+        if (lexerData == null) {
+            lexerData = computable.apply(text, null);
+        }
+
+        // settings are changed in place, kept keys need their own copy
+        parsedText = new ParsedText(settingsKey.copy(), text, lexerData);
+        synchronized (myCache) {
+            myCache.put(new CacheKey(parsedText.settingsKey, text), parsedText);
+        }
+        return parsedText;
+    }
+
+    public void clear() {
+        synchronized (myCache) {
+            myCache.clear();
+        }
+    }
+
+    public long getHits() {
+        return myHits.get();
+    }
+
+    public long getMisses() {
+        return myMisses.get();
+    }
+
+    public long getIncremental() {
+        return myIncremental.get();
+    }
+
+    public void resetStatistics() {
+        myHits.set(0);
+        myMisses.set(0);
+        myIncremental.set(0);
+    }
+
+    @NotNull
+    public String getStatistics() {
+        long hits = myHits.get();
+        long misses = myMisses.get();
+        long total = hits + misses;
+        return String.format("hits: %d, misses: %d, hit rate: %d%%, incremental: %d", hits, misses, total == 0 ? 0 : hits * 100 / total, myIncremental.get());
+    }
+
+    static class SettingsKey {
+        // NOTE: copies of the profile's settings for keys kept after parsing, the profile's settings for look up
+        final @NotNull String projectId;
+        final int pegdownFlags;
+        final long optionsFlags;
+        final @NotNull MdParserSettings parserSettings;
+        final @NotNull MdHtmlSettings htmlSettings;
+        final int hashCode;
+
+        SettingsKey(@NotNull MdRenderingProfile renderingProfile) {
+            this(getProjectId(renderingProfile.getProject()), renderingProfile.getParserSettings(), renderingProfile.getHtmlSettings());
+        }
+
+        private SettingsKey(@NotNull String projectId, @NotNull MdParserSettings parserSettings, @NotNull MdHtmlSettings htmlSettings) {
+            this.projectId = projectId;
+            this.pegdownFlags = parserSettings.getPegdownFlags();
+            this.optionsFlags = parserSettings.getOptionsFlags();
+            this.parserSettings = parserSettings;
+            this.htmlSettings = htmlSettings;
+
+            int result = projectId.hashCode();
+            result = 31 * result + pegdownFlags;
+            result = 31 * result + Long.hashCode(optionsFlags);
+            result = 31 * result + parserSettings.hashCode();
+            result = 31 * result + htmlSettings.hashCode();
+            this.hashCode = result;
+        }
+
+        @NotNull
+        private static String getProjectId(@Nullable Project project) {
+            return project == null ? "" : project.getLocationHash();
+        }
+
+        /**
+         * @return key with copies of the settings, not affected by later changes to the profile
+         */
+        @NotNull
+        SettingsKey copy() {
+            return new SettingsKey(projectId, new MdParserSettings(parserSettings), new MdHtmlSettings(htmlSettings));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SettingsKey)) return false;
+
+            SettingsKey key = (SettingsKey) o;
+
+            if (hashCode != key.hashCode) return false;
+            if (pegdownFlags != key.pegdownFlags) return false;
+            if (optionsFlags != key.optionsFlags) return false;
+            if (!projectId.equals(key.projectId)) return false;
+            if (!parserSettings.equals(key.parserSettings)) return false;
+            return htmlSettings.equals(key.htmlSettings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class CacheKey {
+        final @NotNull SettingsKey settingsKey;
+        final @NotNull String text;
+        final int hashCode;
+
+        CacheKey(@NotNull SettingsKey settingsKey, @NotNull String text) {
+            this.settingsKey = settingsKey;
+            this.text = text;
+            this.hashCode = 31 * settingsKey.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+
+            CacheKey key = (CacheKey) o;
+
+            if (hashCode != key.hashCode) return false;
+            if (!settingsKey.equals(key.settingsKey)) return false;
+            return text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
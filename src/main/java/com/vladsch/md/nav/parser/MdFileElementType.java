@@ -21,7 +21,7 @@ import org.jetbrains.annotations.Nullable;
 public class MdFileElementType extends ILightStubFileElementType<MdFileStub> {
     public static final MdFileElementType INSTANCE = new MdFileElementType();
 
-    public static final int MD_INDEX_VERSION = 34;
+    public static final int MD_INDEX_VERSION = 35;
 
     private MdFileElementType() {
         super("psi.MdFile", MdLanguage.INSTANCE);
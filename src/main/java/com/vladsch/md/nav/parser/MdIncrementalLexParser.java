@@ -0,0 +1,256 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser;
+
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
+import com.vladsch.md.nav.parser.ast.MdASTNode;
+import com.vladsch.md.nav.psi.util.MdTypes;
+import com.vladsch.plugin.util.psi.PsiUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Block level incremental reparse of lexer data
+ * <p>
+ * Finds the top level blocks of the previous parse affected by the edit, extends them to blank line separated
+ * boundaries, reparses only that window and splices the resulting tokens and AST nodes into the previous data.
+ * <p>
+ * Returns null whenever the window cannot be parsed in isolation: lists, fenced code, block quotes, HTML blocks,
+ * any block which can affect parsing of the rest of the document and indented text which would continue a preceding
+ * list item. The caller must then do a full parse.
+ */
+public class MdIncrementalLexParser {
+    // top level blocks which are parsed the same in isolation as in the document when separated by blank lines
+    final static TokenSet ISOLATED_BLOCK_SET = TokenSet.create(
+            MdTypes.PARAGRAPH_BLOCK,
+            MdTypes.ATX_HEADER,
+            MdTypes.SETEXT_HEADER,
+            MdTypes.HRULE,
+            MdTypes.TABLE
+    );
+
+    // top level blocks which do not define anything used by the rest of the document
+    final static TokenSet NON_DEFINING_BLOCK_SET = TokenSet.orSet(ISOLATED_BLOCK_SET, TokenSet.create(
+            MdTypes.VERBATIM,
+            MdTypes.BLOCK_QUOTE,
+            MdTypes.ASIDE_BLOCK,
+            MdTypes.BULLET_LIST,
+            MdTypes.ORDERED_LIST,
+            MdTypes.DEFINITION_LIST,
+            MdTypes.HTML_BLOCK,
+            MdTypes.BLOCK_COMMENT,
+            MdTypes.COMMENT,
+            MdTypes.JEKYLL_FRONT_MATTER_BLOCK
+    ));
+
+    /**
+     * Reparse only the changed blocks of previously parsed text
+     *
+     * @param oldText      previously parsed text
+     * @param oldData      lexer data of previously parsed text
+     * @param newText      text to parse
+     * @param windowParser parser for window text, must use the same rendering profile as oldData
+     *
+     * @return lexer data for new text or null if full parse is needed
+     */
+    @Nullable
+    public static LexerData reparse(@NotNull String oldText, @NotNull LexerData oldData, @NotNull String newText, @NotNull Function<String, LexerData> windowParser) {
+        List<MdASTNode> blocks = oldData.rootNode.getChildren();
+        int blockCount = blocks.size();
+        if (blockCount < 2 || oldData.lexerTokens.isEmpty()) return null;
+
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int maxCommon = Math.min(oldLength, newLength);
+
+        int prefix = 0;
+        while (prefix < maxCommon && oldText.charAt(prefix) == newText.charAt(prefix)) prefix++;
+        if (prefix == oldLength && prefix == newLength) return oldData;
+
+        int suffix = 0;
+        int maxSuffix = maxCommon - prefix;
+        while (suffix < maxSuffix && oldText.charAt(oldLength - suffix - 1) == newText.charAt(newLength - suffix - 1)) suffix++;
+
+        int editEnd = oldLength - suffix;
+        boolean mayHaveDefinitions = false;
+
+        int first = 0;
+        int last = -1;
+        for (int i = 0; i < blockCount; i++) {
+            MdASTNode block = blocks.get(i);
+            IElementType type = block.getElementType();
+
+            // abbreviations apply to all text, no way to tell what the edit affects
+            if (type == MdTypes.ABBREVIATION) return null;
+            if (!PsiUtils.isTypeOf(type, NON_DEFINING_BLOCK_SET)) mayHaveDefinitions = true;
+
+            if (block.getStartOffset() <= prefix) first = i;
+            if (last == -1 && block.getEndOffset() >= editEnd) last = i;
+        }
+
+        if (last == -1) last = blockCount - 1;
+        if (last < first) last = first;
+
+        while (first > 0 && !isBlankLineSeparated(oldText, blocks.get(first - 1).getEndOffset(), blocks.get(first).getStartOffset())) first--;
+        while (last < blockCount - 1 && !isBlankLineSeparated(oldText, blocks.get(last).getEndOffset(), blocks.get(last + 1).getStartOffset())) last++;
+
+        for (int i = first; i <= last; i++) {
+            if (!PsiUtils.isTypeOf(blocks.get(i).getElementType(), ISOLATED_BLOCK_SET)) return null;
+        }
+
+        int windowStart = blocks.get(first).getStartOffset();
+        int oldWindowEnd = last + 1 < blockCount ? blocks.get(last + 1).getStartOffset() : oldLength;
+        int delta = newLength - oldLength;
+        int newWindowEnd = oldWindowEnd + delta;
+
+        // edit must be inside the window, otherwise it touched the separating blank lines
+        if (prefix < windowStart || editEnd > oldWindowEnd || newWindowEnd < windowStart) return null;
+
+        // indented text after a blank line continues a preceding list item, footnote or indented code
+        if (first > 0 && !PsiUtils.isTypeOf(blocks.get(first - 1).getElementType(), ISOLATED_BLOCK_SET) && isIndentedLine(newText, windowStart)) return null;
+
+        // window covering most of the document is not worth the splicing
+        if ((oldWindowEnd - windowStart) * 2 > oldLength) return null;
+
+        String windowText = newText.substring(windowStart, newWindowEnd);
+
+        // undefined references in window may be defined elsewhere in the document
+        if (mayHaveDefinitions && windowText.indexOf('[') != -1) return null;
+
+        LexerData windowData = windowParser.apply(windowText);
+        if (windowData.lexerTokens.isEmpty() && !windowText.isBlank()) return null;
+
+        for (MdASTNode block : windowData.rootNode.getChildren()) {
+            if (!PsiUtils.isTypeOf(block.getElementType(), ISOLATED_BLOCK_SET)) return null;
+        }
+
+        // window ending in a container would take in the following indented block
+        List<MdASTNode> windowBlocks = windowData.rootNode.getChildren();
+        if (!windowBlocks.isEmpty() && last + 1 < blockCount
+                && !PsiUtils.isTypeOf(windowBlocks.get(windowBlocks.size() - 1).getElementType(), ISOLATED_BLOCK_SET)
+                && isIndentedLine(newText, newWindowEnd)) {
+            return null;
+        }
+
+        PackedLexerTokens oldTokens = oldData.lexerTokens;
+        PackedLexerTokens windowTokens = windowData.lexerTokens;
+        int oldCount = oldTokens.size();
+        PackedLexerTokens.Builder tokens = new PackedLexerTokens.Builder(oldCount + windowTokens.size());
+
+        int i = 0;
+        for (; i < oldCount; i++) {
+            if (oldTokens.getEnd(i) > windowStart) break;
+            tokens.add(oldTokens.getStart(i), oldTokens.getEnd(i), oldTokens.getTypeIndex(i), Integer.MAX_VALUE);
+        }
+
+        if (i < oldCount && oldTokens.getStart(i) < windowStart) return null;
+        int firstSeam = tokens.size();
+
+        for (int w = 0; w < windowTokens.size(); w++) {
+            tokens.add(windowTokens.getStart(w) + windowStart, windowTokens.getEnd(w) + windowStart, windowTokens.getTypeIndex(w), Integer.MAX_VALUE);
+        }
+
+        for (; i < oldCount; i++) {
+            if (oldTokens.getStart(i) >= oldWindowEnd) break;
+            if (oldTokens.getEnd(i) > oldWindowEnd) return null;
+        }
+
+        int secondSeam = tokens.size();
+
+        for (; i < oldCount; i++) {
+            tokens.add(oldTokens.getStart(i) + delta, oldTokens.getEnd(i) + delta, oldTokens.getTypeIndex(i), Integer.MAX_VALUE);
+        }
+
+        TokenSet nonMergeTokenSet = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
+        PackedLexerTokens.Builder mergedTokens = mergeAtSeams(tokens, firstSeam, secondSeam, nonMergeTokenSet);
+
+        MdASTCompositeNode rootNode = new MdASTCompositeNode(oldData.rootNode.getElementType(), 0, newLength);
+        for (int b = 0; b < first; b++) {
+            rootNode.add(blocks.get(b));
+        }
+
+        for (MdASTNode block : windowData.rootNode.getChildren()) {
+            rootNode.add(MdASTCompositeNode.shift(block, windowStart));
+        }
+
+        // NOTE: blocks after the window are shifted when their children are first requested, unchanged subtrees are not copied
+        for (int b = last + 1; b < blockCount; b++) {
+            rootNode.add(MdASTCompositeNode.shift(blocks.get(b), delta));
+        }
+
+        return new LexerData(mergedTokens.build(), rootNode);
+    }
+
+    /**
+     * Merge tokens which would have been combined if the text was parsed as a whole
+     *
+     * @param tokens           spliced tokens
+     * @param firstSeam        index of the first window token
+     * @param secondSeam       index of the first token after the window
+     * @param nonMergeTokenSet tokens which are never merged
+     *
+     * @return tokens with adjacent tokens at seams merged
+     */
+    @NotNull
+    private static PackedLexerTokens.Builder mergeAtSeams(@NotNull PackedLexerTokens.Builder tokens, int firstSeam, int secondSeam, @NotNull TokenSet nonMergeTokenSet) {
+        int iMax = tokens.size();
+        PackedLexerTokens.Builder merged = new PackedLexerTokens.Builder(iMax);
+
+        for (int i = 0; i < iMax; i++) {
+            int last = merged.size() - 1;
+            if ((i == firstSeam || i == secondSeam) && last >= 0) {
+                short type = merged.getTypeIndex(last);
+                boolean doesExtend = type == tokens.getTypeIndex(i) && merged.getEnd(last) == tokens.getStart(i);
+                if (doesExtend && !nonMergeTokenSet.contains(IElementType.find(type))) {
+                    merged.extendLast(tokens.getEnd(i));
+                    continue;
+                }
+            }
+            merged.add(tokens.getStart(i), tokens.getEnd(i), tokens.getTypeIndex(i), Integer.MAX_VALUE);
+        }
+        return merged;
+    }
+
+    /**
+     * Test if text between two top level blocks contains a blank line
+     *
+     * @param text       text
+     * @param blockEnd   end offset of preceding block
+     * @param blockStart start offset of following block
+     *
+     * @return true if the blocks are separated by at least one blank line
+     */
+    static boolean isBlankLineSeparated(@NotNull CharSequence text, int blockEnd, int blockStart) {
+        if (blockEnd > blockStart) return false;
+
+        int eolCount = blockEnd > 0 && text.charAt(blockEnd - 1) == '\n' ? 1 : 0;
+        for (int i = blockEnd; i < blockStart; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') eolCount++;
+            else if (c != ' ' && c != '\t' && c != '\r') return false;
+        }
+        return eolCount >= 2;
+    }
+
+    /**
+     * Test if the line containing the offset starts with a space or tab
+     *
+     * @param text   text
+     * @param offset offset in text
+     *
+     * @return true if line is indented
+     */
+    static boolean isIndentedLine(@NotNull CharSequence text, int offset) {
+        int lineStart = offset;
+        while (lineStart > 0 && text.charAt(lineStart - 1) != '\n') lineStart--;
+        if (lineStart >= text.length()) return false;
+
+        char c = text.charAt(lineStart);
+        return c == ' ' || c == '\t';
+    }
+}
@@ -2,20 +2,16 @@
 package com.vladsch.md.nav.parser;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import com.vladsch.flexmark.util.ast.Document;
-import com.vladsch.flexmark.util.sequence.Range;
 import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
 import com.vladsch.md.nav.psi.util.MdTypes;
 import com.vladsch.md.nav.settings.MdProjectSettings;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
-import com.vladsch.plugin.util.psi.PsiUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 /**
  * Lexer/Parser Combination that uses pegdown behind the scenes to do the heavy lifting here we just fake everything.
  */
@@ -57,7 +53,7 @@ public class MdLexParser {
     public static final String EXAMPLE_TYPE_BREAK = ".";
     public static final String EXAMPLE_TEST_END = "````````````````";
 
-    public static final LexerToken[] EMPTY_TOKENS = new LexerToken[0];
+    public static final PackedLexerTokens EMPTY_TOKENS = PackedLexerTokens.EMPTY;
     public static final LexerData EMPTY_DATA = new LexerData(EMPTY_TOKENS, new MdASTCompositeNode(MdTypes.WHITESPACE, 0, 0));
 
     public static MdLexer createLexer(Project project) {
@@ -71,129 +67,108 @@ public class MdLexParser {
 
         LexParserFlexmarkASTVisitor visitor = new LexParserFlexmarkASTVisitor(document);
         visitor.build();
-        ArrayList<LexerToken> lexerTokens = visitor.getTokens();
 
-        LexerToken[] tokens = getData(lexerTokens);
-        return tokens == null ? EMPTY_DATA : new LexerData(tokens, visitor.getRootASTNode());
+        PackedLexerTokens tokens = getData(visitor.getTokens());
+        return tokens.isEmpty() ? EMPTY_DATA : new LexerData(tokens, visitor.getRootASTNode());
     }
 
-    @Nullable
-    public static LexerToken[] getData(ArrayList<LexerToken> lexerTokens) {
-        LexerToken[] tokens = new LexerToken[lexerTokens.size()];
-        tokens = lexerTokens.toArray(tokens);
-        TokenSet NON_MERGE_TOKEN_SET = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
-
-        if (tokens.length > 0) {
-            Arrays.sort(tokens);
-
-            // now need to step through and merge consecutive tokens
-            int iMax = tokens.length;
-            LexerToken thisToken = tokens[0];
-            lexerTokens = new ArrayList<LexerToken>(iMax);
-
-            for (int i = 1; i < iMax; i++) {
-                LexerToken thatToken = tokens[i];
-
-                // same region, keep deepest child since it did not get excluded by the parent so it should survive
-                // QUERY: is this still valid?
-                // FIX: in reality here we only get exact duplicates, need to trace where they are generated
-                if (thisToken.getRange().equals(thatToken.getRange())) {
-                    if (thisToken.getNesting() < thatToken.getNesting()) thisToken = thatToken;
-                    continue;
-                }
+    @NotNull
+    public static PackedLexerTokens getData(@NotNull PackedLexerTokens.Builder tokens) {
+        int iMax = tokens.size();
+        if (iMax == 0) return EMPTY_TOKENS;
 
-                if (!thatToken.doesExtend(thisToken) || PsiUtils.isTypeOf(thisToken.getElementType(), NON_MERGE_TOKEN_SET)) {
-                    lexerTokens.add(thisToken);
-                    thisToken = thatToken;
-                } else {
-                    thisToken.setRange(thisToken.getRange().expandToInclude(thatToken.getRange()));
+        TokenSet NON_MERGE_TOKEN_SET = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
+        tokens.sort();
+
+        // now need to step through and merge consecutive tokens
+        PackedLexerTokens.Builder merged = new PackedLexerTokens.Builder(iMax);
+        int thisStart = tokens.starts[0];
+        int thisEnd = tokens.ends[0];
+        short thisType = tokens.types[0];
+        int thisNesting = tokens.nesting[0];
+
+        for (int i = 1; i < iMax; i++) {
+            int thatStart = tokens.starts[i];
+            int thatEnd = tokens.ends[i];
+            short thatType = tokens.types[i];
+
+            // same region, keep deepest child since it did not get excluded by the parent so it should survive
+            // QUERY: is this still valid?
+            // FIX: in reality here we only get exact duplicates, need to trace where they are generated
+            if (thisStart == thatStart && thisEnd == thatEnd) {
+                if (thisNesting < tokens.nesting[i]) {
+                    thisType = thatType;
+                    thisNesting = tokens.nesting[i];
                 }
+                continue;
             }
-            lexerTokens.add(thisToken);
 
-            // now we generate lexemes from the combined optimized tokens
-            tokens = new LexerToken[lexerTokens.size()];
-            tokens = lexerTokens.toArray(tokens);
-
-            // we create a list of non-intersecting, sorted, ranges
-            tokens = splitLexerTokens(tokens);
+            boolean doesExtend = thisType == thatType && (thatStart == thisEnd || thatEnd == thisStart);
+            if (!doesExtend || NON_MERGE_TOKEN_SET.contains(IElementType.find(thisType))) {
+                merged.add(thisStart, thisEnd, thisType, thisNesting);
+                thisStart = thatStart;
+                thisEnd = thatEnd;
+                thisType = thatType;
+                thisNesting = tokens.nesting[i];
+            } else {
+                thisStart = Math.min(thisStart, thatStart);
+                thisEnd = Math.max(thisEnd, thatEnd);
+            }
         }
+        merged.add(thisStart, thisEnd, thisType, thisNesting);
 
-        return tokens;
+        // we create a list of non-intersecting, sorted, ranges
+        return splitLexerTokens(merged);
     }
 
-    protected static
-    @Nullable
-    LexerToken[] splitLexerTokens(@NotNull LexerToken[] tokens) {
-        int end = tokens.length;
+    @NotNull
+    protected static PackedLexerTokens splitLexerTokens(@NotNull PackedLexerTokens.Builder tokens) {
+        int end = tokens.size();
 
         if (end > 0) {
-            ArrayList<LexerToken> lexemes = new ArrayList<LexerToken>(tokens.length);
+            PackedLexerTokens.Builder lexemes = new PackedLexerTokens.Builder(end);
 
             // do all of them
             splitLexemes(lexemes, tokens, 0, Integer.MAX_VALUE);
-            LexerToken[] lexerTokens = new LexerToken[lexemes.size()];
-            return lexemes.toArray(lexerTokens);
+            return lexemes.build();
         }
-        return null;
+        return EMPTY_TOKENS;
     }
 
-    protected static int splitLexemes(@NotNull ArrayList<LexerToken> lexemes, @NotNull LexerToken[] tokens, int start, int rangeEnd) {
-        LexerToken token = tokens[start];
-        Range range = token.getRange();
-        com.vladsch.flexmark.util.sequence.Range range1;
+    protected static int splitLexemes(@NotNull PackedLexerTokens.Builder lexemes, @NotNull PackedLexerTokens.Builder tokens, int start, int rangeEnd) {
+        short type = tokens.types[start];
+        int rangeStart = tokens.starts[start];
+        int rangeStop = tokens.ends[start];
 
-        if (range.getEnd() <= rangeEnd) {
-            int end = tokens.length;
+        if (rangeStop <= rangeEnd) {
+            int end = tokens.size();
 
             start++;
-            for (; start < end && (range1 = tokens[start].getRange()).getEnd() <= rangeEnd; start++) {
-                if (range.compare(range1) <= 0 && (range.doesNotOverlap(range1) || range.equals(range1))) {
+            for (; start < end && tokens.ends[start] <= rangeEnd; start++) {
+                int start1 = tokens.starts[start];
+                int end1 = tokens.ends[start];
+                boolean isEqual = rangeStart == start1 && rangeStop == end1;
+                boolean isBefore = rangeStart < start1 || (rangeStart == start1 && rangeStop >= end1);
+                boolean doesContain = rangeStop >= end1 && rangeStart <= start1;
+
+                if (isBefore && (end1 <= rangeStart || start1 >= rangeStop || isEqual)) {
                     // it comes before, add it, if it equals, then skip it
-                    if (!range.equals(range1)) {
-                        if (range.equals(token.getRange())) {
-                            lexemes.add(token);
-                        } else {
-                            LexerToken newToken = new LexerToken(range, token.getElementType());
-                            lexemes.add(newToken);
-                        }
-                        token = tokens[start];
-                        range = token.getRange();
-                    }
-                } else if (!range.doesContain(range1)) {
-                    lexemes.add(token);
-                    token = tokens[start];
-                    range = token.getRange();
-                } else {
-                    if (range.doesOverlap(range1) && !range.doesContain(range1)) {
-                        // split the range and continue if it contains it, then skip it
-                        com.vladsch.flexmark.util.sequence.Range newRange = range.withEnd(range1.getStart());
-                        if (newRange.isEmpty()) {
-                            token = tokens[start];
-                            range = token.getRange();
-                        } else {
-                            LexerToken newToken = new LexerToken(newRange, token.getElementType());
-                            lexemes.add(newToken);
-
-                            range = range.withStart(range1.getEnd());
-                            if (range.isEmpty()) {
-                                token = tokens[start];
-                                range = token.getRange();
-                            } else {
-                                start = splitLexemes(lexemes, tokens, start, range.getStart());
-                            }
-                        }
+                    if (!isEqual) {
+                        lexemes.add(rangeStart, rangeStop, type, Integer.MAX_VALUE);
+                        type = tokens.types[start];
+                        rangeStart = start1;
+                        rangeStop = end1;
                     }
+                } else if (!doesContain) {
+                    lexemes.add(rangeStart, rangeStop, type, Integer.MAX_VALUE);
+                    type = tokens.types[start];
+                    rangeStart = start1;
+                    rangeStop = end1;
                 }
             }
 
-            if (!range.isEmpty()) {
-                if (range.equals(token.getRange())) {
-                    lexemes.add(token);
-                } else {
-                    LexerToken newToken = new LexerToken(range, token.getElementType());
-                    lexemes.add(newToken);
-                }
+            if (rangeStart < rangeStop) {
+                lexemes.add(rangeStart, rangeStop, type, Integer.MAX_VALUE);
             }
         }
         return start;
@@ -12,6 +12,7 @@ import com.vladsch.md.nav.parser.api.HtmlPurpose;
 import com.vladsch.md.nav.parser.api.ParserPurpose;
 import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
 import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.settings.MdDebugSettings;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -19,11 +20,9 @@ import org.jetbrains.annotations.Nullable;
 public class MdLexParserManager {
     @Nullable
     public static Document parseFlexmarkDocument(@NotNull MdRenderingProfile renderingProfile, @NotNull final CharSequence buffer, boolean forParser) {
-        PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
         Document rootNode = null;
 
-        DataHolder options = optionsAdapter.getFlexmarkOptions(forParser ? ParserPurpose.PARSER : ParserPurpose.HTML, HtmlPurpose.RENDER, null, renderingProfile);
-        Parser parser = Parser.builder(options).build();
+        Parser parser = MdParserCache.getInstance(renderingProfile.getProject()).getParser(renderingProfile, forParser ? ParserPurpose.PARSER : ParserPurpose.HTML, HtmlPurpose.RENDER);
         String exceptionText = null;
         // use an immutable copy so it does not change in the process of being parsed
         final BasedSequence input = buffer instanceof BasedSequence ? (BasedSequence) buffer : BasedSequence.of(ImmutableCharSequence.asImmutable(buffer));
@@ -44,14 +43,46 @@ public class MdLexParserManager {
 
     @NotNull
     public static LexerData parseMarkdown(@NotNull MdRenderingProfile renderingProfile, @NotNull final CharSequence buffer) {
+        return parseMarkdown(renderingProfile, buffer, null).lexerData;
+    }
+
+    /**
+     * Parse markdown using the last parse of the caller as base for incremental reparse
+     *
+     * @param renderingProfile rendering profile
+     * @param buffer           text to parse
+     * @param lastParsed       last text parsed by the caller or null
+     *
+     * @return parsed text, to be passed as lastParsed of the next parse by the same caller
+     */
+    @NotNull
+    public static LexerDataCache.ParsedText parseMarkdown(@NotNull MdRenderingProfile renderingProfile, @NotNull final CharSequence buffer, @Nullable LexerDataCache.ParsedText lastParsed) {
+        if (lastParsed != null && lastParsed.isParsedWith(renderingProfile, buffer)) return lastParsed;
+
+        MdDebugSettings debugSettings = MdApplicationSettings.getInstance().getDebugSettings();
+        if (debugSettings.getUseLexerDataCache()) {
+            // NOTE: lexer, PSI builder and external annotator all parse the same text, share the result
+            //  the base for incremental reparse is the caller's last parse, a shared one is replaced by parses of other files
+            boolean useIncremental = debugSettings.getUseIncrementalLexer();
+            return LexerDataCache.getInstance().getParsedText(renderingProfile, buffer, useIncremental ? lastParsed : null, (text, base) -> {
+                if (base == null) return parseMarkdownUncached(renderingProfile, text);
+                return MdIncrementalLexParser.reparse(base.text, base.lexerData, text, windowText -> parseMarkdownUncached(renderingProfile, windowText));
+            });
+        }
+
+        String text = buffer.toString();
+        return new LexerDataCache.ParsedText(renderingProfile, text, parseMarkdownUncached(renderingProfile, text));
+    }
+
+    @NotNull
+    public static LexerData parseMarkdownUncached(@NotNull MdRenderingProfile renderingProfile, @NotNull final CharSequence buffer) {
         int pegdownExtensions = renderingProfile.getParserSettings().getPegdownFlags();
         long parserOptions = renderingProfile.getParserSettings().getOptionsFlags();
 
-        PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
         Document rootNode = null;
 
-        DataHolder options = optionsAdapter.getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, renderingProfile);
-        Parser parser = Parser.builder(options).build();
+        Parser parser = MdParserCache.getInstance(renderingProfile.getProject()).getParser(renderingProfile, ParserPurpose.PARSER, HtmlPurpose.RENDER);
+        DataHolder options = parser.getOptions();
         // use an immutable copy so it does not change in the process of being parsed
         final BasedSequence input = BasedSequence.of(ImmutableCharSequence.asImmutable(buffer));
 
@@ -4,8 +4,8 @@ package com.vladsch.md.nav.parser;
 import com.intellij.lexer.LexerPosition;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.psi.tree.IElementType;
-import com.vladsch.flexmark.util.sequence.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static com.intellij.openapi.diagnostic.Logger.getInstance;
 import static com.vladsch.md.nav.psi.util.MdTypes.ASIDE_BLOCK_WHITESPACE;
@@ -19,16 +19,21 @@ public class MdLexemeProcessor {
     private static final Logger LOG = getInstance("com.vladsch.md.nav.parser");
 
     final protected CharSequence buffer;
-    final protected LexerToken[] lexerTokens;
+    final protected PackedLexerTokens lexerTokens;
+
+    // current token, offsets relative to startOffset
+    protected boolean hasToken = false;
+    protected int tokenStart = 0;
+    protected int tokenEnd = 0;
+    protected IElementType tokenType = null;
 
-    protected LexerToken lexerToken = null;
     protected int startOffset = 0;
     protected int endOffset = 0;
     protected int lexemeIndex = 0;
     protected int currentOffset = 0;
-    protected LexerToken prevToken = null;
+    protected IElementType prevTokenType = null;
 
-    public MdLexemeProcessor(final CharSequence buffer, final LexerToken[] lexerTokens, int startOffset, int endOffset, int initialState) {
+    public MdLexemeProcessor(final CharSequence buffer, final PackedLexerTokens lexerTokens, int startOffset, int endOffset, int initialState) {
         this.buffer = buffer;
         this.lexerTokens = lexerTokens;
         this.startOffset = startOffset;
@@ -66,71 +71,107 @@ public class MdLexemeProcessor {
         return currentOffset;
     }
 
-    public LexerToken getPrevToken() {
-        return prevToken;
+    @Nullable
+    public IElementType getPrevTokenType() {
+        return prevTokenType;
+    }
+
+    public boolean hasToken() {
+        return hasToken;
+    }
+
+    /**
+     * @return current token type or null if no more tokens
+     */
+    @Nullable
+    public IElementType getTokenType() {
+        return hasToken ? tokenType : null;
+    }
+
+    /**
+     * @return start of current token relative to start offset
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return end of current token relative to start offset
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Create a token object for the current token, only for code which needs to hold on to tokens
+     *
+     * @return current token or null if no more tokens
+     */
+    @Nullable
+    public LexerToken getLexerToken() {
+        return hasToken ? new LexerToken(tokenStart, tokenEnd, tokenType) : null;
+    }
+
+    private void setToken(int index) {
+        hasToken = true;
+        tokenStart = lexerTokens.getStart(index);
+        tokenEnd = lexerTokens.getEnd(index);
+        tokenType = lexerTokens.getElementType(index);
     }
 
     private void initialize() {
-        lexerToken = null;
-        LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, state %d", buffer.length(), startOffset, endOffset, lexemeIndex));
+        hasToken = false;
+        if (LOG.isDebugEnabled()) LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, state %d", buffer.length(), startOffset, endOffset, lexemeIndex));
 
         // prime the lexeme stream, if the first is white space we need to start with that
-        if (lexerTokens != null && lexerTokens.length > lexemeIndex) {
+        if (lexerTokens != null && lexerTokens.size() > lexemeIndex) {
+            int size = lexerTokens.size();
+
             // lexemeIndex needs to be advanced if currentOffset > 0
             if (currentOffset > 0) {
-                while (lexemeIndex < lexerTokens.length) {
-                    LexerToken token = lexerTokens[lexemeIndex];
-                    Range range = token.getRange();
-                    if (range.getEnd() + startOffset > currentOffset) {
-                        break;
-                    }
+                lexemeIndex = Math.max(lexemeIndex, lexerTokens.indexAfter(currentOffset - startOffset));
 
-                    lexemeIndex++;
-                }
-
-                if (lexemeIndex >= lexerTokens.length) {
+                if (lexemeIndex >= size) {
                     lexemeIndex = 0;
                 }
             }
 
-            LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, index %d", buffer.length(), startOffset, endOffset, lexemeIndex));
+            if (LOG.isDebugEnabled()) LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, index %d", buffer.length(), startOffset, endOffset, lexemeIndex));
 
-            lexerToken = lexerTokens[lexemeIndex];
-            if (currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                lexerToken = getNextWhitespace(lexerToken.getRange().getStart() + startOffset);
+            setToken(lexemeIndex);
+            if (currentOffset < tokenStart + startOffset) {
+                setNextWhitespace(tokenStart + startOffset);
             } else {
                 lexemeIndex++;
             }
         }
 
-        if (lexerToken == null) {
+        if (!hasToken) {
             // create a dummy whitespace token for the whole file
-            lexerToken = getNextWhitespace(endOffset);
+            setNextWhitespace(endOffset);
         }
 
-        currentOffset = lexerToken.getRange().getEnd() + startOffset;
+        currentOffset = tokenEnd + startOffset;
 
         //assert currentOffset <= endOffset;
         if (currentOffset > endOffset) {
             currentOffset = endOffset;
         }
 
-        LOG.debug("start advanced to " + currentOffset + " (" + (lexerToken == null ? "null" : lexerToken.toString()) + ") \"" + (lexerToken == null ? "" : (buffer.subSequence(lexerToken.getRange().getStart() + startOffset, lexerToken.getRange().getEnd() + startOffset))) + "\"");
+        if (LOG.isDebugEnabled()) LOG.debug("start advanced to " + currentOffset + " (" + tokenType + ") \"" + buffer.subSequence(tokenStart + startOffset, tokenEnd + startOffset) + "\"");
     }
 
-    private LexerToken getNextWhitespace(int offset) {
+    private void setNextWhitespace(int offset) {
         int pos = currentOffset;
-        IElementType tokenType = WHITESPACE;
-
-        IElementType prevTokenType = prevToken == null ? null : prevToken.getElementType();
+        IElementType whitespaceType = WHITESPACE;
 
         // here we also split into block quote and aside whitespace
         while (pos < offset) {
             char c = buffer.charAt(pos);
             if (c == '\n') {
-                if (tokenType != WHITESPACE) break;
+                if (whitespaceType != WHITESPACE) break;
                 pos++;
-                tokenType = (prevTokenType == null
+                whitespaceType = (prevTokenType == null
                         || prevTokenType == BLANK_LINE
                         || prevTokenType == VERBATIM_CONTENT
                         || prevTokenType == EOL
@@ -139,20 +180,19 @@ public class MdLexemeProcessor {
                 ) ? BLANK_LINE : EOL;
                 break;
             } else if (c == '>') {
-                if (tokenType == ASIDE_BLOCK_WHITESPACE) break;
-                tokenType = BLOCK_QUOTE_WHITESPACE;
+                if (whitespaceType == ASIDE_BLOCK_WHITESPACE) break;
+                whitespaceType = BLOCK_QUOTE_WHITESPACE;
             } else if (c == '|') {
-                if (tokenType == BLOCK_QUOTE_WHITESPACE) break;
-                tokenType = ASIDE_BLOCK_WHITESPACE;
+                if (whitespaceType == BLOCK_QUOTE_WHITESPACE) break;
+                whitespaceType = ASIDE_BLOCK_WHITESPACE;
             }
             pos++;
         }
 
-        return new LexerToken(currentOffset - startOffset, pos - startOffset, tokenType);
-    }
-
-    public LexerToken getLexerToken() {
-        return lexerToken;
+        hasToken = true;
+        tokenStart = currentOffset - startOffset;
+        tokenEnd = pos - startOffset;
+        tokenType = whitespaceType;
     }
 
     public int getLineColumn(int posOffset) {
@@ -167,47 +207,47 @@ public class MdLexemeProcessor {
     }
 
     public void advance() {
-        prevToken = lexerToken;
+        prevTokenType = hasToken ? tokenType : null;
         if (currentOffset < endOffset) {
             do {
-                if (lexerTokens != null && lexemeIndex >= 0 && lexemeIndex < lexerTokens.length) {
-                    if (lexerToken == null || currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                        lexerToken = getNextWhitespace(lexerTokens[lexemeIndex].getRange().getStart() + startOffset);
+                if (lexerTokens != null && lexemeIndex >= 0 && lexemeIndex < lexerTokens.size()) {
+                    if (!hasToken || currentOffset < tokenStart + startOffset) {
+                        setNextWhitespace(lexerTokens.getStart(lexemeIndex) + startOffset);
                     } else {
-                        lexerToken = lexerTokens[lexemeIndex];
-                        if (currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                            lexerToken = getNextWhitespace(lexerToken.getRange().getStart() + startOffset);
+                        setToken(lexemeIndex);
+                        if (currentOffset < tokenStart + startOffset) {
+                            setNextWhitespace(tokenStart + startOffset);
                         } else {
                             lexemeIndex++;
                         }
                     }
                 } else {
                     if (currentOffset < endOffset) {
-                        lexerToken = getNextWhitespace(endOffset);
+                        setNextWhitespace(endOffset);
                     } else {
-                        lexerToken = null;
+                        hasToken = false;
                     }
                 }
-            } while (lexerToken != null && lexerToken.getRange().getEnd() + startOffset < currentOffset);
+            } while (hasToken && tokenEnd + startOffset < currentOffset);
 
-            currentOffset = lexerToken == null ? endOffset : lexerToken.getRange().getEnd() + startOffset;
+            currentOffset = !hasToken ? endOffset : tokenEnd + startOffset;
         } else {
-            lexerToken = null;
+            hasToken = false;
         }
 
         if (currentOffset > endOffset) {
-            lexerToken = null;
+            hasToken = false;
             currentOffset = endOffset;
         }
 
-        LOG.debug("advanced to " + currentOffset + " (" + (lexerToken == null ? "null" : lexerToken.toString()) + ") \"" + (lexerToken == null ? "" : (buffer.subSequence(lexerToken.getRange().getStart() + startOffset, lexerToken.getRange().getEnd() + startOffset))) + "\"");
+        if (LOG.isDebugEnabled()) LOG.debug("advanced to " + currentOffset + " (" + getTokenType() + ") \"" + (!hasToken ? "" : buffer.subSequence(tokenStart + startOffset, tokenEnd + startOffset)) + "\"");
     }
 
     public void restore(@NotNull LexerPosition lexerPosition) {
         currentOffset = lexerPosition.getOffset();
         lexemeIndex = lexerPosition.getState();
-        lexerToken = null;
-        prevToken = null;
+        hasToken = false;
+        prevTokenType = null;
         advance();
     }
 
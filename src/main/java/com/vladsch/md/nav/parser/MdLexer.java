@@ -25,6 +25,7 @@ public class MdLexer extends Lexer implements RestartableLexer {
     protected MdLexemeProcessor myLexemeProcessor = null;
 
     protected LexerData lexerData = null;
+    protected @Nullable LexerDataCache.ParsedText myLastParsed = null;
     protected final @NotNull MdRenderingProfile renderingProfile;
     protected HashSet<Integer> myFileLevelLexemeStarts = null;
 
@@ -32,6 +33,18 @@ public class MdLexer extends Lexer implements RestartableLexer {
         return lexerData;
     }
 
+    /**
+     * @return last whole buffer parsed by this lexer, base for incremental reparse of the next one
+     */
+    @Nullable
+    public LexerDataCache.ParsedText getLastParsed() {
+        return myLastParsed;
+    }
+
+    public void setLastParsed(@Nullable LexerDataCache.ParsedText lastParsed) {
+        myLastParsed = lastParsed;
+    }
+
     public MdLexer(final @NotNull MdRenderingProfile renderingProfile) {
         super();
 
@@ -63,10 +76,16 @@ public class MdLexer extends Lexer implements RestartableLexer {
 
     @Override
     public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
-        LexerToken[] lexerTokens = null;
+        PackedLexerTokens lexerTokens = null;
 
         if (buffer.length() > 0) {
-            lexerData = MdLexParserManager.parseMarkdown(renderingProfile, buffer.subSequence(startOffset, endOffset));
+            if (startOffset == 0 && endOffset == buffer.length()) {
+                myLastParsed = MdLexParserManager.parseMarkdown(renderingProfile, buffer, myLastParsed);
+                lexerData = myLastParsed.lexerData;
+            } else {
+                // partial restart, not a base for reparse of the whole buffer
+                lexerData = MdLexParserManager.parseMarkdown(renderingProfile, buffer.subSequence(startOffset, endOffset));
+            }
             lexerTokens = lexerData.lexerTokens;
         }
 
@@ -115,32 +134,24 @@ public class MdLexer extends Lexer implements RestartableLexer {
 
     @Override
     public int getState() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
         // here we need to return 0 in low bit when the file can be re-parsed from this point, ie. file level elements
-        return (lexerToken != null && isFileLevelOffset(lexerToken.getRange().getStart()) ? 0 : 1);
+        return (myLexemeProcessor.hasToken() && isFileLevelOffset(myLexemeProcessor.getTokenStart()) ? 0 : 1);
     }
 
     @Nullable
     @Override
     public IElementType getTokenType() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getElementType() : null;
+        return myLexemeProcessor.getTokenType();
     }
 
     @Override
     public int getTokenStart() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getRange().getStart() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
+        return myLexemeProcessor.hasToken() ? myLexemeProcessor.getTokenStart() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
     }
 
     @Override
     public int getTokenEnd() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getRange().getEnd() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
+        return myLexemeProcessor.hasToken() ? myLexemeProcessor.getTokenEnd() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
     }
 
     @Override
@@ -0,0 +1,167 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.messages.MessageBusConnection;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.api.MdParserExtension;
+import com.vladsch.md.nav.parser.api.ParserPurpose;
+import com.vladsch.md.nav.settings.MdProjectSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.ProfileManagerChangeListener;
+import com.vladsch.md.nav.settings.ProjectSettingsChangedListener;
+import com.vladsch.md.nav.settings.RenderingProfileManager;
+import com.vladsch.md.nav.settings.SettingsChangedListener;
+import com.vladsch.plugin.util.LazyFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+
+/**
+ * Built flexmark parsers for rendering profile options which do not depend on a link resolver
+ * <p>
+ * Building a parser loads all extensions and creates block parser factories, which is more expensive than
+ * parsing a typical paragraph. Parsers are immutable and thread safe so they are shared until project settings or
+ * rendering profiles change.
+ * <p>
+ * Parsers are keyed by a copy of all rendering profile settings so a profile changed in place or a default project
+ * profile, whose changes are not published, gets its own parser. Options which are not part of the profile: dark
+ * theme of the UI scheme, debug settings and parser extension options, clear the cache on application settings and
+ * parser extension changes.
+ */
+public class MdParserCache implements Disposable {
+    final private static LazyFunction<Project, MdParserCache> NULL = new LazyFunction<>(MdParserCache::new);
+
+    @NotNull
+    public static MdParserCache getInstance(@Nullable Project project) {
+        if (project == null || project.isDefault() || project.isDisposed()) {
+            Project defaultProject = ProjectManager.getInstance().getDefaultProject();
+            return NULL.getValue(defaultProject);
+        } else {
+            return project.getService(MdParserCache.class);
+        }
+    }
+
+    final private HashMap<ParserKey, Parser> myParsers = new HashMap<>();
+
+    public MdParserCache(@NotNull Project project) {
+        Disposer.register(project, this);
+
+        ApplicationManager.getApplication().getMessageBus().connect(this).subscribe(SettingsChangedListener.TOPIC, settings -> clear());
+        MdParserExtension.EP_NAME.addChangeListener(this::clear, this);
+
+        MessageBusConnection projectBusConnection = project.getMessageBus().connect(this);
+        projectBusConnection.subscribe(ProjectSettingsChangedListener.TOPIC, new ProjectSettingsChangedListener() {
+            @Override
+            public void onSettingsChange(@NotNull Project project1, @NotNull MdProjectSettings settings) {
+                clear();
+            }
+        });
+
+        projectBusConnection.subscribe(ProfileManagerChangeListener.TOPIC, new ProfileManagerChangeListener() {
+            @Override
+            public void onSettingsChange(@NotNull RenderingProfileManager manager) {
+                clear();
+            }
+
+            @Override
+            public void onSettingsLoaded(@NotNull RenderingProfileManager manager) {
+                clear();
+            }
+        });
+    }
+
+    /**
+     * Usually not invoked directly, see class javadoc.
+     */
+    @Override
+    public void dispose() {
+        clear();
+    }
+
+    public void clear() {
+        synchronized (myParsers) {
+            myParsers.clear();
+        }
+    }
+
+    /**
+     * Get parser for rendering profile without link resolver
+     * <p>
+     * NOTE: parser options are copied into every parsed document so parsers using a link resolver cannot be shared
+     * and must be built by the caller.
+     *
+     * @param renderingProfile rendering profile
+     * @param parserPurpose    parser purpose
+     * @param htmlPurpose      html purpose
+     *
+     * @return shared parser instance
+     */
+    @NotNull
+    public Parser getParser(@NotNull MdRenderingProfile renderingProfile, @NotNull ParserPurpose parserPurpose, @NotNull HtmlPurpose htmlPurpose) {
+        ParserKey key = new ParserKey(renderingProfile, parserPurpose, htmlPurpose);
+        Parser parser;
+
+        synchronized (myParsers) {
+            parser = myParsers.get(key);
+        }
+
+        if (parser == null) {
+            // NOTE: key copy is taken before options so a concurrent change to the profile can only cause a miss
+            ParserKey cacheKey = new ParserKey(new MdRenderingProfile(renderingProfile), parserPurpose, htmlPurpose);
+            DataHolder options = new PegdownOptionsAdapter().getFlexmarkOptions(parserPurpose, htmlPurpose, null, renderingProfile);
+            parser = Parser.builder(options).build();
+
+            synchronized (myParsers) {
+                Parser cachedParser = myParsers.putIfAbsent(cacheKey, parser);
+                if (cachedParser != null) parser = cachedParser;
+            }
+        }
+        return parser;
+    }
+
+    private static class ParserKey {
+        // NOTE: a copy of the profile for keys in the cache, the requested profile for look up
+        final @NotNull MdRenderingProfile renderingProfile;
+        final @NotNull ParserPurpose parserPurpose;
+        final @NotNull HtmlPurpose htmlPurpose;
+        final int hashCode;
+
+        ParserKey(@NotNull MdRenderingProfile renderingProfile, @NotNull ParserPurpose parserPurpose, @NotNull HtmlPurpose htmlPurpose) {
+            this.renderingProfile = renderingProfile;
+            this.parserPurpose = parserPurpose;
+            this.htmlPurpose = htmlPurpose;
+
+            int result = renderingProfile.hashCode();
+            result = 31 * result + parserPurpose.hashCode();
+            result = 31 * result + htmlPurpose.hashCode();
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ParserKey)) return false;
+
+            ParserKey key = (ParserKey) o;
+
+            if (hashCode != key.hashCode) return false;
+            if (parserPurpose != key.parserPurpose) return false;
+            if (htmlPurpose != key.htmlPurpose) return false;
+            return renderingProfile.equals(key.renderingProfile);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.DummyHolder;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IReparseableElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.vladsch.md.nav.MdLanguage;
+import com.vladsch.md.nav.parser.ast.MdASTNode;
+import com.vladsch.md.nav.psi.util.MdTypes;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.util.DataPrinterAware;
+import com.vladsch.plugin.util.psi.PsiUtils;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Top level block element type which is reparsed on its own when an edit is contained in the block
+ * <p>
+ * The file parse still builds these as regular composite elements so stub building is not affected. On edit the
+ * block text is parsed in isolation and only accepted if the result is a single block of the same type, the block
+ * is separated by blank lines from its neighbours and nothing else in the file can change how it is parsed: the
+ * block does not continue a preceding list item and does not take in a following indented block.
+ */
+public class MdReparseableElementType extends IReparseableElementType implements DataPrinterAware {
+    private static final Key<LexerDataCache.ParsedText> REPARSE_LEXER_DATA = Key.create("MD_NAV_REPARSE_LEXER_DATA");
+
+    public MdReparseableElementType(@NotNull @NonNls String debugName) {
+        super(debugName, MdLanguage.INSTANCE);
+    }
+
+    @Override
+    public boolean isParsable(@Nullable ASTNode parent, @NotNull CharSequence buffer, @NotNull Language fileLanguage, @NotNull Project project) {
+        // only top level blocks, nested ones depend on the parent's prefix and indentation
+        return parent != null && parent.getElementType() == MdParserDefinition.MARKDOWN_FILE
+                && MdApplicationSettings.getInstance().getDebugSettings().getUseIncrementalLexer();
+    }
+
+    @Override
+    public boolean isValidReparse(@NotNull ASTNode oldNode, @NotNull ASTNode newNode) {
+        ASTNode fileNode = oldNode.getTreeParent();
+        PsiFile file = oldNode.getPsi().getContainingFile();
+        if (fileNode == null || file == null) return false;
+
+        boolean mayHaveDefinitions = false;
+        for (ASTNode child = fileNode.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            IElementType type = child.getElementType();
+
+            // abbreviations apply to all text, no way to tell what the edit affects
+            if (type == MdTypes.ABBREVIATION) return false;
+            if (child.getFirstChildNode() != null && type != MdTypes.BLANK_LINE && !PsiUtils.isTypeOf(type, MdIncrementalLexParser.NON_DEFINING_BLOCK_SET)) {
+                mayHaveDefinitions = true;
+            }
+        }
+
+        CharSequence newText = newNode.getChars();
+
+        // undefined references in block may be defined elsewhere in the document
+        if (mayHaveDefinitions && indexOf(newText, '[') != -1) return false;
+
+        CharSequence fileText = fileNode.getChars();
+        int startOffset = oldNode.getStartOffset();
+        int endOffset = startOffset + oldNode.getTextLength();
+        if (!isBlankLineSeparated(fileText, startOffset, endOffset, newText)) return false;
+
+        // indented text after a blank line continues a preceding list item, footnote or indented code
+        ASTNode prevBlock = getSiblingBlock(oldNode, false);
+        if (prevBlock != null && !PsiUtils.isTypeOf(prevBlock.getElementType(), MdIncrementalLexParser.ISOLATED_BLOCK_SET) && isIndentedStart(fileText, startOffset, newText)) {
+            return false;
+        }
+
+        // container block would take in the following indented block
+        ASTNode nextBlock = getSiblingBlock(oldNode, true);
+        if (nextBlock != null && !PsiUtils.isTypeOf(this, MdIncrementalLexParser.ISOLATED_BLOCK_SET) && MdIncrementalLexParser.isIndentedLine(fileText, nextBlock.getStartOffset())) {
+            return false;
+        }
+
+        // block text parsed on its own must give a single block of the same type, result is kept for doParseContents
+        Lexer lexer = MdParserDefinition.definitionFor(file).createLexer(file.getProject());
+        if (!(lexer instanceof MdLexer)) return false;
+
+        MdLexer mdLexer = (MdLexer) lexer;
+        mdLexer.start(newText);
+        LexerData lexerData = mdLexer.getLexerData();
+        if (lexerData == null) return false;
+
+        List<MdASTNode> blocks = lexerData.rootNode.getChildren();
+        if (blocks.size() != 1) return false;
+
+        MdASTNode block = blocks.get(0);
+        if (block.getElementType() != this || block.getStartOffset() != 0 || block.getEndOffset() != newText.length()) return false;
+
+        // unterminated fenced code would include the rest of the file
+        boolean hasOpen = false;
+        boolean hasClose = false;
+        PackedLexerTokens tokens = lexerData.lexerTokens;
+        short openIndex = MdTypes.VERBATIM_OPEN.getIndex();
+        short closeIndex = MdTypes.VERBATIM_CLOSE.getIndex();
+        for (int i = 0; i < tokens.size(); i++) {
+            short typeIndex = tokens.getTypeIndex(i);
+            if (typeIndex == openIndex) hasOpen = true;
+            else if (typeIndex == closeIndex) hasClose = true;
+        }
+
+        if (hasOpen != hasClose) return false;
+
+        newNode.putUserData(REPARSE_LEXER_DATA, mdLexer.getLastParsed());
+        return true;
+    }
+
+    /**
+     * Get the preceding or following top level block, skipping blank lines
+     *
+     * @param node top level node
+     * @param next true for following block
+     *
+     * @return block node or null if none
+     */
+    @Nullable
+    private static ASTNode getSiblingBlock(@NotNull ASTNode node, boolean next) {
+        ASTNode sibling = next ? node.getTreeNext() : node.getTreePrev();
+        while (sibling != null && isBlankText(sibling.getChars())) {
+            sibling = next ? sibling.getTreeNext() : sibling.getTreePrev();
+        }
+        return sibling;
+    }
+
+    /**
+     * Test if the first line of the block is indented
+     *
+     * @param fileText    text of the file before the edit
+     * @param startOffset start offset of old block
+     * @param newText     new block text
+     *
+     * @return true if block's first line starts with a space or tab
+     */
+    private static boolean isIndentedStart(@NotNull CharSequence fileText, int startOffset, @NotNull CharSequence newText) {
+        if (startOffset > 0 && fileText.charAt(startOffset - 1) != '\n') {
+            return MdIncrementalLexParser.isIndentedLine(fileText, startOffset);
+        }
+        return newText.length() > 0 && (newText.charAt(0) == ' ' || newText.charAt(0) == '\t');
+    }
+
+    private static boolean isBlankText(@NotNull CharSequence text) {
+        int iMax = text.length();
+        for (int i = 0; i < iMax; i++) {
+            if (!isBlank(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected ASTNode doParseContents(@NotNull final ASTNode chameleon, @NotNull final PsiElement psi) {
+        Project project = psi.getProject();
+        MdParserDefinition parserDefinition = MdParserDefinition.definitionFor(getContextFile(psi));
+        Lexer lexer = parserDefinition.createLexer(project);
+
+        // reuse lexer data of the block text from isValidReparse
+        LexerDataCache.ParsedText parsedText = chameleon.getUserData(REPARSE_LEXER_DATA);
+        if (parsedText != null) {
+            chameleon.putUserData(REPARSE_LEXER_DATA, null);
+            if (lexer instanceof MdLexer) ((MdLexer) lexer).setLastParsed(parsedText);
+        }
+
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(project, chameleon, lexer, getLanguage(), chameleon.getChars());
+        builder.enforceCommentTokens(TokenSet.EMPTY);
+
+        PsiBuilder.Marker rootMarker = builder.mark();
+        LexerData lexerData = lexer instanceof MdLexer ? ((MdLexer) lexer).getLexerData() : null;
+
+        if (lexerData != null) {
+            List<MdASTNode> blocks = lexerData.rootNode.getChildren();
+            PsiBuilderFillingVisitor visitor = new PsiBuilderFillingVisitor(builder);
+
+            if (blocks.size() == 1 && blocks.get(0).getElementType() == this) {
+                visitor.visitChildren(blocks.get(0));
+            } else {
+                visitor.visitChildren(lexerData.rootNode);
+            }
+        }
+
+        while (!builder.eof()) builder.advanceLexer();
+        rootMarker.done(this);
+        return builder.getTreeBuilt().getFirstChildNode();
+    }
+
+    @NotNull
+    private static PsiFile getContextFile(@NotNull PsiElement psi) {
+        PsiFile file = psi.getContainingFile();
+
+        if (file instanceof DummyHolder) {
+            // reparse result is validated in a dummy holder whose context is the replaced element
+            PsiElement context = file.getContext();
+            if (context != null && context.getContainingFile() != null) return context.getContainingFile();
+        }
+        return file;
+    }
+
+    /**
+     * Test if block is separated from preceding and following blocks by blank lines
+     *
+     * @param fileText    text of the file before the edit
+     * @param startOffset start offset of old block
+     * @param endOffset   end offset of old block
+     * @param newText     new block text
+     *
+     * @return true if block has a blank line or start/end of file on both sides
+     */
+    static boolean isBlankLineSeparated(@NotNull CharSequence fileText, int startOffset, int endOffset, @NotNull CharSequence newText) {
+        int prevEnd = startOffset;
+        while (prevEnd > 0 && isBlank(fileText.charAt(prevEnd - 1))) prevEnd--;
+        if (prevEnd > 0 && countEols(fileText, prevEnd, startOffset) < 2) return false;
+
+        int nextStart = endOffset;
+        int fileLength = fileText.length();
+        while (nextStart < fileLength && isBlank(fileText.charAt(nextStart))) nextStart++;
+        if (nextStart == fileLength) return true;
+
+        int lastNonBlank = newText.length();
+        while (lastNonBlank > 0 && isBlank(newText.charAt(lastNonBlank - 1))) lastNonBlank--;
+
+        return countEols(newText, lastNonBlank, newText.length()) + countEols(fileText, endOffset, nextStart) >= 2;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static int countEols(@NotNull CharSequence text, int startOffset, int endOffset) {
+        int eolCount = 0;
+        for (int i = startOffset; i < endOffset; i++) {
+            if (text.charAt(i) == '\n') eolCount++;
+        }
+        return eolCount;
+    }
+
+    private static int indexOf(@NotNull CharSequence text, char c) {
+        int iMax = text.length();
+        for (int i = 0; i < iMax; i++) {
+            if (text.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    @NotNull
+    @Override
+    public String testData() {
+        return "MdReparseableElementType." + super.toString();
+    }
+
+    @NotNull
+    @Override
+    public String className(@Nullable Class<Object> inParent) {
+        return DataPrinterAware.DefaultImpls.className(this, null);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString();
+    }
+}
@@ -0,0 +1,249 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Lexer tokens packed into parallel primitive arrays
+ * <p>
+ * Tokens are sorted, non-overlapping ranges. Element types are stored as {@link IElementType#getIndex()} so large files
+ * do not need a token, range and text range object per lexeme.
+ */
+public final class PackedLexerTokens {
+    public static final PackedLexerTokens EMPTY = new PackedLexerTokens(new int[0], new int[0], new short[0], 0);
+
+    private final int[] myStarts;
+    private final int[] myEnds;
+    private final short[] myTypes;
+    private final int mySize;
+
+    PackedLexerTokens(@NotNull int[] starts, @NotNull int[] ends, @NotNull short[] types, int size) {
+        myStarts = starts;
+        myEnds = ends;
+        myTypes = types;
+        mySize = size;
+    }
+
+    public int size() {
+        return mySize;
+    }
+
+    public boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    public int getStart(int index) {
+        return myStarts[index];
+    }
+
+    public int getEnd(int index) {
+        return myEnds[index];
+    }
+
+    public short getTypeIndex(int index) {
+        return myTypes[index];
+    }
+
+    @NotNull
+    public IElementType getElementType(int index) {
+        return IElementType.find(myTypes[index]);
+    }
+
+    /**
+     * Index of first token whose end is after the offset
+     *
+     * @param offset offset
+     *
+     * @return token index or size() if all tokens end at or before offset
+     */
+    public int indexAfter(int offset) {
+        int lo = 0;
+        int hi = mySize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (myEnds[mid] <= offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Create token object for given index, only for code which needs to hold on to individual tokens
+     *
+     * @param index token index
+     *
+     * @return lexer token
+     */
+    @NotNull
+    public LexerToken getLexerToken(int index) {
+        return new LexerToken(myStarts[index], myEnds[index], getElementType(index));
+    }
+
+    @NotNull
+    public LexerToken[] toLexerTokens() {
+        LexerToken[] tokens = new LexerToken[mySize];
+        for (int i = 0; i < mySize; i++) {
+            tokens[i] = getLexerToken(i);
+        }
+        return tokens;
+    }
+
+    @NotNull
+    public static PackedLexerTokens of(@NotNull LexerToken[] tokens) {
+        Builder builder = new Builder(tokens.length);
+        for (LexerToken token : tokens) {
+            builder.add(token.getRange().getStart(), token.getRange().getEnd(), token.getElementType());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Accumulates tokens in emitted order, nesting is only used to resolve identical ranges when sorting
+     */
+    public static final class Builder {
+        int[] starts;
+        int[] ends;
+        int[] nesting;
+        short[] types;
+        int size;
+
+        public Builder() {
+            this(100);
+        }
+
+        public Builder(int capacity) {
+            int initialCapacity = Math.max(capacity, 16);
+            starts = new int[initialCapacity];
+            ends = new int[initialCapacity];
+            nesting = new int[initialCapacity];
+            types = new short[initialCapacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getStart(int index) {
+            return starts[index];
+        }
+
+        public int getEnd(int index) {
+            return ends[index];
+        }
+
+        public short getTypeIndex(int index) {
+            return types[index];
+        }
+
+        public void add(int start, int end, @NotNull IElementType elementType) {
+            add(start, end, elementType.getIndex(), Integer.MAX_VALUE);
+        }
+
+        public void add(int start, int end, @NotNull IElementType elementType, int nestingLevel) {
+            add(start, end, elementType.getIndex(), nestingLevel);
+        }
+
+        public void add(int start, int end, short typeIndex, int nestingLevel) {
+            if (size == starts.length) {
+                int capacity = size + (size >> 1);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                nesting = Arrays.copyOf(nesting, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+
+            starts[size] = start;
+            ends[size] = end;
+            types[size] = typeIndex;
+            nesting[size] = nestingLevel;
+            size++;
+        }
+
+        /**
+         * Extend end of last added token
+         *
+         * @param end new end offset
+         */
+        public void extendLast(int end) {
+            ends[size - 1] = end;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Stable sort by start ascending, end descending then nesting ascending, same order as {@link LexerToken#compare(LexerToken)}
+         */
+        public void sort() {
+            if (size < 2) return;
+
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+
+            int[] buffer = new int[size];
+            mergeSort(order, buffer, 0, size);
+
+            starts = permute(starts, order);
+            ends = permute(ends, order);
+            nesting = permute(nesting, order);
+
+            short[] sortedTypes = new short[starts.length];
+            for (int i = 0; i < size; i++) sortedTypes[i] = types[order[i]];
+            types = sortedTypes;
+        }
+
+        private int[] permute(int[] values, int[] order) {
+            int[] sorted = new int[values.length];
+            for (int i = 0; i < size; i++) sorted[i] = values[order[i]];
+            return sorted;
+        }
+
+        private int compare(int a, int b) {
+            if (starts[a] != starts[b]) return starts[a] < starts[b] ? -1 : 1;
+            if (ends[a] != ends[b]) return ends[a] > ends[b] ? -1 : 1;
+            return Integer.compare(nesting[a], nesting[b]);
+        }
+
+        private void mergeSort(int[] order, int[] buffer, int from, int to) {
+            int length = to - from;
+            if (length < 8) {
+                // insertion sort, stable
+                for (int i = from + 1; i < to; i++) {
+                    int value = order[i];
+                    int j = i - 1;
+                    while (j >= from && compare(order[j], value) > 0) {
+                        order[j + 1] = order[j];
+                        j--;
+                    }
+                    order[j + 1] = value;
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            mergeSort(order, buffer, from, mid);
+            mergeSort(order, buffer, mid, to);
+
+            // tokens are mostly emitted in order, skip merge if already sorted
+            if (compare(order[mid - 1], order[mid]) <= 0) return;
+
+            System.arraycopy(order, from, buffer, from, length);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && compare(buffer[i], buffer[j]) <= 0)) order[k] = buffer[i++];
+                else order[k] = buffer[j++];
+            }
+        }
+
+        @NotNull
+        public PackedLexerTokens build() {
+            if (size == 0) return EMPTY;
+            return new PackedLexerTokens(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(types, size), size);
+        }
+    }
+}
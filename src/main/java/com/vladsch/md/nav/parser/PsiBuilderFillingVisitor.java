@@ -45,6 +45,16 @@ public class PsiBuilderFillingVisitor extends MdASTChildVisitor {
         marker.done(node.getElementType());
     }
 
+    /**
+     * Add children of node to builder, used when the marker for the node itself is created by the caller
+     *
+     * @param node node whose children to add
+     */
+    public void visitChildren(@NotNull MdASTNode node) {
+        super.visitNode(node);
+        ensureBuilderInPosition(node.getEndOffset(), false);
+    }
+
     private void ensureBuilderInPosition(int position, boolean exactPos) {
         while (builder.getCurrentOffset() < position && !builder.eof()) {
             if (builder.getTokenType() == MdTypes.BLANK_LINE) {
@@ -94,6 +94,24 @@ public interface MdFencedCodeImageConverter {
     @Nullable
     MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver);
 
+    /**
+     * Convert fenced code to Image url if handled, else null, image can be generated in the background
+     *
+     * @param content          fenced code content
+     * @param info             fenced code info string (one of strings reported by {@link #getInfoStrings()}()
+     * @param variant          variant (one of variants reported by {@link #getInfoStrings()}() for this info string
+     * @param renderingProfile rendering profile used for the file being converted
+     * @param resolver         link resolver used for rendering HTML, can be used to convert file references in content to full paths
+     * @param deferConversion  true if a placeholder image url can be returned while the image is generated in the background,
+     *                         the project's image files changed listeners are notified when it is available
+     *
+     * @return image url or null if not enabled
+     */
+    @Nullable
+    default MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver, boolean deferConversion) {
+        return imageUrl(content, info, variant, renderingProfile, resolver);
+    }
+
     /**
      * default rendering of code fence block, only called if {@link #imageUrl(String, String, String, MdRenderingProfile, MdLinkResolver)} returns null
      *
@@ -13,6 +13,10 @@ public class MdASTCompositeNode implements MdASTNode {
     private final IElementType elementType;
     private final ArrayList<MdASTNode> children = new ArrayList<MdASTNode>();
 
+    // children of a shifted copy, shifted into children when first requested, null once shifted
+    private volatile List<MdASTNode> unshiftedChildren;
+    private final int childrenDelta;
+
     @Override
     public int getStartOffset() {
         return startOffset;
@@ -30,6 +34,17 @@ public class MdASTCompositeNode implements MdASTNode {
 
     @Override
     public List<MdASTNode> getChildren() {
+        if (unshiftedChildren != null) {
+            synchronized (children) {
+                List<MdASTNode> unshifted = unshiftedChildren;
+                if (unshifted != null) {
+                    for (MdASTNode child : unshifted) {
+                        children.add(shift(child, childrenDelta));
+                    }
+                    unshiftedChildren = null;
+                }
+            }
+        }
         return children;
     }
 
@@ -37,22 +52,64 @@ public class MdASTCompositeNode implements MdASTNode {
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.elementType = elementType;
+        this.childrenDelta = 0;
     }
 
     public MdASTCompositeNode(IElementType elementType, int startOffset, int endOffset, List<MdASTNode> children) {
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.elementType = elementType;
+        this.childrenDelta = 0;
 
         this.children.addAll(children);
     }
 
+    /**
+     * Copy of node with offsets shifted by delta
+     * <p>
+     * Children are shifted when first requested, so a copy of a subtree whose children are not used costs one node and
+     * a copy of a copy shifts the original children only once.
+     *
+     * @param node  node to copy
+     * @param delta offset delta
+     */
+    public MdASTCompositeNode(MdASTCompositeNode node, int delta) {
+        this.startOffset = node.startOffset + delta;
+        this.endOffset = node.endOffset + delta;
+        this.elementType = node.elementType;
+
+        List<MdASTNode> unshifted = node.unshiftedChildren;
+        if (unshifted != null) {
+            this.unshiftedChildren = unshifted;
+            this.childrenDelta = node.childrenDelta + delta;
+        } else {
+            this.unshiftedChildren = new ArrayList<MdASTNode>(node.children);
+            this.childrenDelta = delta;
+        }
+    }
+
+    /**
+     * @param node  node
+     * @param delta offset delta
+     *
+     * @return node with offsets shifted by delta, node itself if delta is 0
+     */
+    public static MdASTNode shift(MdASTNode node, int delta) {
+        if (delta == 0) return node;
+
+        if (node instanceof MdASTCompositeNode) {
+            return new MdASTCompositeNode((MdASTCompositeNode) node, delta);
+        } else {
+            return new MdASTLeafNode(node.getElementType(), node.getStartOffset() + delta, node.getEndOffset() + delta);
+        }
+    }
+
     public void add(MdASTNode child) {
-        children.add(child);
+        getChildren().add(child);
     }
 
     public void add(int index, MdASTNode child) {
-        children.add(index, child);
+        getChildren().add(index, child);
     }
 
     @Override
@@ -62,7 +119,7 @@ public class MdASTCompositeNode implements MdASTNode {
 
     @Override
     public void acceptChildren(MdASTVisitor visitor) {
-        for (MdASTNode child : children) {
+        for (MdASTNode child : getChildren()) {
             child.accept(visitor);
         }
     }
@@ -74,6 +131,6 @@ public class MdASTCompositeNode implements MdASTNode {
         //    if (sb.length() != 0) sb.append(", ");
         //    sb.append(child.toString());
         //}
-        return elementType + "[" + startOffset + "," + endOffset + ")" + ": children[" + children.size() + "]";
+        return elementType + "[" + startOffset + "," + endOffset + ")" + ": children[" + getChildren().size() + "]";
     }
 }
@@ -16,14 +16,19 @@ import com.vladsch.flexmark.util.misc.Utils;
 import com.vladsch.md.nav.parser.MdParserDefinition;
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext;
+import com.vladsch.md.nav.psi.element.MdAnchorTarget;
+import com.vladsch.md.nav.psi.element.MdAttributeIdValue;
 import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.psi.element.MdHeaderElement;
 import com.vladsch.md.nav.psi.element.MdJekyllIncludeLinkRef;
 import com.vladsch.md.nav.psi.element.MdPsiElement;
+import com.vladsch.md.nav.psi.element.MdRefAnchor;
 import com.vladsch.md.nav.psi.element.MdReferenceElement;
 import com.vladsch.md.nav.psi.element.MdReferenceElementIdentifier;
 import com.vladsch.md.nav.psi.element.MdReferencingElementReference;
 import com.vladsch.md.nav.psi.util.MdIndexUtil;
 import com.vladsch.md.nav.psi.util.MdNodeVisitor;
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
 import com.vladsch.md.nav.psi.util.MdTypes;
 import com.vladsch.md.nav.psi.util.MdVisitor;
 import com.vladsch.md.nav.util.PsiSet;
@@ -32,10 +37,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiConsumer;
@@ -155,6 +162,91 @@ public class MdCachedFileElements {
                 }
             };
 
+    /**
+     * Anchor targets of a file keyed by lower case anchor id, in the same order as collected by
+     * {@link com.vladsch.md.nav.psi.util.MdPsiImplUtil#getAnchorTargets(MdFile, String, boolean)}: ref anchors, id
+     * attributes then headers whose id is not overridden by an id attribute
+     */
+    final private static CachedDataKey<MdFile, Map<String, ? extends List<MdAnchorTarget>>> ANCHOR_TARGET_MAP =
+            new CachedDataKey<MdFile, Map<String, ? extends List<MdAnchorTarget>>>("FILE:ANCHOR_TARGET_MAP") {
+
+                @Override
+                public boolean isValid(@NotNull Map<String, ? extends List<MdAnchorTarget>> value) {
+                    // NOTE: invalidated by the file and included files modification stamp dependencies, checking every element makes each lookup O(n)
+                    return true;
+                }
+
+                @NotNull
+                @Override
+                public Map<String, ? extends List<MdAnchorTarget>> compute(@NotNull CachedTransactionContext<MdFile> context) {
+                    MdFile file = context.getDataOwner();
+                    context.addDependency(file);
+                    ArrayList<MdRefAnchor> anchors = new ArrayList<>();
+                    ArrayList<MdAttributeIdValue> attributes = new ArrayList<>();
+                    ArrayList<MdHeaderElement> headers = new ArrayList<>();
+                    PsiSet<MdHeaderElement> overriddenHeaders = new PsiSet<>(HashSet::new);
+                    final PsiFile[] lastFile = { null };
+
+                    // NOTE: add all anchor targets from included files
+                    MdCachedFileElements.<MdAnchorTarget>findChildrenOfAnyType(file, false, true, false, arrayOf(MdRefAnchor.class, MdAttributeIdValue.class, MdHeaderElement.class), (element, source) -> {
+                        if (element instanceof MdRefAnchor) {
+                            anchors.add((MdRefAnchor) element);
+                        } else if (element instanceof MdAttributeIdValue) {
+                            attributes.add((MdAttributeIdValue) element);
+
+                            MdHeaderElement header = MdPsiImplUtil.findAncestorOfType(element, MdHeaderElement.class);
+                            if (header != null) overriddenHeaders.add(header);
+                        } else if (element instanceof MdHeaderElement) {
+                            headers.add((MdHeaderElement) element);
+                        }
+
+                        if (lastFile[0] != source.file) {
+                            lastFile[0] = source.file;
+                            context.addDependency(source.file);
+                        }
+                        return Result.CONTINUE();
+                    });
+
+                    HashMap<String, ArrayList<MdAnchorTarget>> anchorTargetMap = new HashMap<>();
+                    for (MdRefAnchor anchor : anchors) {
+                        addAnchorTarget(anchorTargetMap, anchor.getReferenceId(), anchor);
+                    }
+
+                    for (MdAttributeIdValue attribute : attributes) {
+                        addAnchorTarget(anchorTargetMap, attribute.getText(), attribute);
+                    }
+
+                    for (MdHeaderElement header : headers) {
+                        if (!overriddenHeaders.contains(header)) {
+                            addAnchorTarget(anchorTargetMap, header.getAnchorReferenceId(), header);
+                        }
+                    }
+                    return anchorTargetMap;
+                }
+            };
+
+    private static void addAnchorTarget(@NotNull HashMap<String, ArrayList<MdAnchorTarget>> anchorTargetMap, @Nullable String anchorId, @NotNull MdAnchorTarget anchorTarget) {
+        if (anchorId != null) {
+            anchorTargetMap.computeIfAbsent(anchorId.toLowerCase(Locale.ROOT), k -> new ArrayList<>(1)).add(anchorTarget);
+        }
+    }
+
+    /**
+     * Get anchor targets whose id matches the anchor id, ignoring case
+     * <p>
+     * Caller needs to test each for an exact match since ref anchors and id attributes are case sensitive
+     *
+     * @param mdFile   file
+     * @param anchorId anchor id
+     *
+     * @return anchor targets in file and its included files
+     */
+    @NotNull
+    public static List<MdAnchorTarget> getAnchorTargets(@NotNull MdFile mdFile, @NotNull String anchorId) {
+        List<MdAnchorTarget> targets = CachedData.get(mdFile, ANCHOR_TARGET_MAP).get(anchorId.toLowerCase(Locale.ROOT));
+        return targets == null ? Collections.emptyList() : targets;
+    }
+
     @NotNull
     public static Map<String, ? extends Set<MdReferenceElement>> getReferencedElementMap(@NotNull MdFile mdFile) {
         return CachedData.get(mdFile, REFERENCED_ELEMENT_MAP);
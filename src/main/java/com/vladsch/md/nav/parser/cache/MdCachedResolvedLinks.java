@@ -12,6 +12,8 @@ import com.vladsch.flexmark.util.sequence.Escaping;
 import com.vladsch.md.nav.MdFileType;
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
 import com.vladsch.md.nav.parser.cache.data.ProjectCachedData;
+import com.vladsch.md.nav.parser.cache.data.dependency.DataKeyDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileKeys;
 import com.vladsch.md.nav.parser.cache.data.dependency.RestartableProjectFileDependency;
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext;
 import com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger;
@@ -36,6 +38,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -58,6 +62,10 @@ import static com.vladsch.md.nav.util.PathInfo.isFileURI;
  * subsequent requests for identical link type and address resolution returns cached value for resolved link
  * <p>
  * Only single resolve values can be cached this way. Multi resolve and completion has to use Link resolver as before
+ * <p>
+ * Folding placeholders for links are also kept here, keyed by link element text, so folding does not need to resolve links.
+ * Placeholders are computed in the background and only carried across file mods for links whose cached target is still valid.
+ * Empty placeholders of links which did not fold are carried across file mods until a project file change invalidates the cached links.
  */
 public class MdCachedResolvedLinks {
     public static final VirtualFileManager FILE_MANAGER = VirtualFileManager.getInstance();
@@ -178,11 +186,13 @@ public class MdCachedResolvedLinks {
         final @NotNull HashMap<String, Integer> myWikis = new HashMap<>();          // linkAddress to index into cachedLinkTargets
         final @NotNull HashSet<String> myUndefinedExtensions = new HashSet<>();     // undefined extensions
         final @NotNull HashSet<String> myUndefinedNames = new HashSet<>();          // undefined file names with extensions
+        final @NotNull ConcurrentHashMap<String, String> myFoldPlaceholders = new ConcurrentHashMap<>();  // link element text to folding placeholder, empty if not folded
 
         @NotNull String myFilePath = "";
         boolean myHaveUndefinedMarkdown = false;
         boolean myIsValid = true;
         boolean myNextIsValid = true;
+        @Nullable LinkProjectFilePredicate myFilePredicate = null;                 // project file predicate of this computation, not copied
 
         CachedLinkData() {
         }
@@ -213,6 +223,13 @@ public class MdCachedResolvedLinks {
 
             myUndefinedNames.clear();
             myUndefinedNames.addAll(other.myUndefinedNames);
+
+            myFoldPlaceholders.clear();
+            myFoldPlaceholders.putAll(other.myFoldPlaceholders);
+        }
+
+        void removeEmptyFoldPlaceholders() {
+            myFoldPlaceholders.values().removeIf(String::isEmpty);
         }
 
         int addCachedLinkTarget(@NotNull String targetLinkAddress, byte flags) {
@@ -308,6 +325,49 @@ public class MdCachedResolvedLinks {
             cachedLinks.remove(cachedLink.myLinkAddress);
         }
 
+        /**
+         * Names of project files which can change the resolution of the cached links, names are matched with and without extension
+         * <p>
+         * Own file, for invalidation on new dependencies, names of undefined links and wiki link pages, which resolve by name alone
+         * and names of resolved file targets.
+         *
+         * @return file names
+         */
+        @NotNull
+        Set<String> getFileNames() {
+            Set<String> fileNames = new HashSet<>();
+            fileNames.add(new PathInfo(myFilePath).getFileName());
+
+            for (Map.Entry<String, Integer> entry : myWikis.entrySet()) {
+                addLinkFileNames(fileNames, MdLinkType.WIKI, entry.getKey(), true);
+            }
+
+            for (String undefinedName : myUndefinedNames) {
+                addLinkFileNames(fileNames, MdLinkType.LINK, undefinedName, true);
+            }
+
+            for (CachedLinkTarget target : myCachedLinkTargets) {
+                if (target != null && target.isVirtualFile()) {
+                    fileNames.add(new PathInfo(target.myTargetLinkAddress).getFileName());
+                }
+            }
+            return fileNames;
+        }
+
+        static void addLinkFileNames(@NotNull Set<String> fileNames, @NotNull MdLinkType linkType, @NotNull String linkAddress, boolean isUndefined) {
+            PathInfo pathInfo = new PathInfo(linkAddress);
+
+            if (linkType == MdLinkType.WIKI) {
+                // wiki page links resolve by page name, spaces of the page file name are dashes in the link
+                String pageName = pathInfo.getFileNameNoExt();
+                fileNames.add(pageName);
+                fileNames.add(pageName.replace('-', ' '));
+            } else if (isUndefined) {
+                fileNames.add(pathInfo.getFileNameNoQuery());
+                fileNames.add(pathInfo.getFileNameNoExt());
+            }
+        }
+
         boolean isNewVirtualFile(CachedLink cachedLink) {
             return !myCachedLinkTargetIndexMap.containsKey(cachedLink.myTargetLinkAddress);
         }
@@ -406,7 +466,8 @@ public class MdCachedResolvedLinks {
                     if (out != null) out.append("Computing CACHED_LINKS: for ").append(filePath).mark();
 
                     MdCachedFileElements.findChildrenOfAnyType(file, false, false, false, LINK_REF_CLASSES, link -> {
-                        String linkText = Escaping.unescapeString(link.getText(), true);
+                        String elementText = link.getText();
+                        String linkText = Escaping.unescapeString(elementText, true);
 
                         if (!linkText.isEmpty()) {
                             MdLinkType linkType;
@@ -426,6 +487,12 @@ public class MdCachedResolvedLinks {
 
                             String linkTextForCache = removeSuffix(new PathInfo(decodedText).getFilePathNoQuery(), "/");
                             CachedLink cachedLink = persistentLinks.getCachedLink(linkType, linkTextForCache);
+
+                            // NOTE: placeholder is kept only for a link whose resolved target is still valid, links which did not fold
+                            //  keep their empty placeholder unless their target was invalidated, so only links changed by an edit are resolved again
+                            boolean keepPlaceholder = false;
+                            boolean keepEmptyPlaceholder = true;
+
                             if (cachedLink != null) {
                                 // NOTE: undefined links get invalidated when file content is regenerated
                                 if (!cachedLink.isUndefined()) {
@@ -450,9 +517,11 @@ public class MdCachedResolvedLinks {
                                     }
 
                                     if (isValid) {
+                                        keepPlaceholder = true;
                                         cachedLinkData.addCachedLink(cachedLink);
                                         if (out != null) out.append("  Keeping cached link type: ").append(linkType).append(" link: ").append(linkTextForCache).append(" to ").append(cachedLink.myTargetLinkAddress).mark();
                                     } else {
+                                        keepEmptyPlaceholder = false;
                                         if (out != null) {
                                             persistentLinks.removeCachedLink(cachedLink);
                                             out.append("  Removing invalidated cached link type: ").append(linkType).append(" link: ").append(linkTextForCache).append(" to ").append(cachedLink.myTargetLinkAddress).mark();
@@ -462,6 +531,11 @@ public class MdCachedResolvedLinks {
                             } else {
                                 if (out != null) out.append("  No cached link for type: ").append(linkType).append(" link: ").append(linkTextForCache).mark();
                             }
+
+                            String placeholder = persistentLinks.myFoldPlaceholders.get(elementText);
+                            if (placeholder != null && (placeholder.isEmpty() ? keepEmptyPlaceholder : keepPlaceholder)) {
+                                cachedLinkData.myFoldPlaceholders.put(elementText, placeholder);
+                            }
                         }
                     });
 
@@ -492,7 +566,8 @@ public class MdCachedResolvedLinks {
                 }
 
                 // NOTE: always have dependency on project files since at any time an undefined link can become defined or dependency could be added or invalidated by content change
-                context.addDependency(new LinkProjectFilePredicate(file, cachedLinkData));
+                cachedLinkData.myFilePredicate = new LinkProjectFilePredicate(file, cachedLinkData);
+                context.addDependency(cachedLinkData.myFilePredicate);
 
                 HelpersKt.debug(LOG_CACHE, () -> String.format("Kept CACHED_LINKS: links: %d, images: %d wikis: %d for %s@%x", cachedLinkData.myLinks.size(), cachedLinkData.myImages.size(), cachedLinkData.myWikis.size(), filePath, file.hashCode()));
             }
@@ -520,6 +595,17 @@ public class MdCachedResolvedLinks {
             this.cachedLinkData = cachedLinkData;
         }
 
+        /**
+         * Links added after compute add their names through {@link #addFileKeys(MdFile, CachedLinkData, CachedLink)}
+         *
+         * @return names of files which can change the resolution of links
+         */
+        @NotNull
+        @Override
+        public ProjectFileKeys getFileKeys() {
+            return ProjectFileKeys.ofFileNames(cachedLinkData.getFileNames());
+        }
+
         @Override
         public boolean test(@NotNull PsiFile psiFile) {
             boolean isValid = cachedLinkData.myIsValid;
@@ -568,6 +654,9 @@ public class MdCachedResolvedLinks {
                     persistentLinks.copyFrom(cachedLinkData);
                 }
 
+                // links which did not fold are resolved again since the change can add their target
+                CachedData.get((MdFile) myFile, CACHED_PERSISTENT_LINKS).removeEmptyFoldPlaceholders();
+
                 cachedLinkData.myIsValid = false;
                 cachedLinkData.myNextIsValid = false;
             }
@@ -586,6 +675,20 @@ public class MdCachedResolvedLinks {
         }
     }
 
+    static void addFileKeys(@NotNull MdFile containingFile, @NotNull CachedLinkData cachedLinkData, @NotNull CachedLink cachedLink) {
+        LinkProjectFilePredicate filePredicate = cachedLinkData.myFilePredicate;
+        if (filePredicate == null) return;
+
+        Set<String> fileNames = new HashSet<>();
+        CachedLinkData.addLinkFileNames(fileNames, cachedLink.myLinkType, cachedLink.myLinkAddress, cachedLink.isUndefined());
+        if (cachedLink.isVirtualFile()) fileNames.add(new PathInfo(cachedLink.myTargetLinkAddress).getFileName());
+
+        if (!fileNames.isEmpty()) {
+            DataKeyDependency dependency = ProjectCachedData.fileCachedData(containingFile).getDependency(CACHED_LINKS);
+            ProjectFileMonitor.getInstance(containingFile.getProject()).addFileKeys(dependency, filePredicate, ProjectFileKeys.ofFileNames(fileNames));
+        }
+    }
+
     public static boolean hasCachedLink(@NotNull MdFile containingFile, @NotNull LinkRef linkRef) {
         if (getDebugSettings().getUseFileLinkCache()) {
             String linkRefFilePath = linkRef.getFilePath();
@@ -690,11 +793,44 @@ public class MdCachedResolvedLinks {
             }
 
             if (cachedLinkAdded) {
+                addFileKeys(containingFile, cachedLinkData, cachedLink);
                 HelpersKt.debug(LOG_CACHE_DETAIL, () -> String.format("Add cached link for %s type: %s link: %s to %s", containingFile.getName(), linkType, linkRefFilePath, cachedLink.myTargetLinkAddress));
             }
         }
     }
 
+    /**
+     * Get cached folding placeholder for a link element
+     *
+     * @param containingFile file containing the link
+     * @param linkRefElement link element
+     *
+     * @return placeholder, empty if link is not folded, null if not computed
+     */
+    @Nullable
+    public static String getCachedFoldPlaceholder(@NotNull MdFile containingFile, @NotNull MdLinkRefElement linkRefElement) {
+        return CachedData.get(containingFile, CACHED_LINKS).myFoldPlaceholders.get(linkRefElement.getText());
+    }
+
+    /**
+     * Add folding placeholder for a link element
+     *
+     * @param containingFile file containing the link
+     * @param linkRefElement link element
+     * @param placeholder    placeholder text, empty if link is not folded
+     *
+     * @return true if placeholder was added or changed
+     */
+    public static boolean addCachedFoldPlaceholder(@NotNull MdFile containingFile, @NotNull MdLinkRefElement linkRefElement, @NotNull String placeholder) {
+        String elementText = linkRefElement.getText();
+        CachedLinkData persistentLinks = CachedData.get(containingFile, CACHED_PERSISTENT_LINKS);
+        CachedLinkData cachedLinkData = CachedData.get(containingFile, CACHED_LINKS);
+
+        persistentLinks.myFoldPlaceholders.put(elementText, placeholder);
+        String previous = cachedLinkData.myFoldPlaceholders.put(elementText, placeholder);
+        return !placeholder.equals(previous);
+    }
+
     public static void addUndefinedCachedLink(@NotNull MdFile containingFile, @NotNull LinkRef linkRef) {
         String linkRefFilePath = linkRef.isNormalized() ? linkRef.getFilePath() : Escaping.unescapeString(linkRef.getFilePath());
 
@@ -710,11 +846,11 @@ public class MdCachedResolvedLinks {
                 // NOTE: using the cached data set/data key lock so only compute or mods to this data key for this file will block another thread
                 ReentrantLock lock = ProjectCachedData.fileCachedData(containingFile).getKeyLock(CACHED_LINKS);
                 boolean cachedLinkAdded;
+                // FIX: markdown extensions can be added so this test is insufficient. need to test FileTypeRegistry for extension being markdown
+                CachedLink cachedLink = CachedLink.cacheUndefinedLink(linkType, linkRefPathForCache, linkRef.isMarkdownExt());
 
                 try {
                     lock.lock();
-                    // FIX: markdown extensions can be added so this test is insufficient. need to test FileTypeRegistry for extension being markdown
-                    CachedLink cachedLink = CachedLink.cacheUndefinedLink(linkType, linkRefPathForCache, linkRef.isMarkdownExt());
                     cachedLinkAdded = cachedLinkData.addCachedLink(cachedLink);
                     persistentLinks.addCachedLink(cachedLink);
                 } finally {
@@ -722,6 +858,7 @@ public class MdCachedResolvedLinks {
                 }
 
                 if (cachedLinkAdded) {
+                    addFileKeys(containingFile, cachedLinkData, cachedLink);
                     HelpersKt.debug(LOG_CACHE_DETAIL, () -> String.format("Add undefined cached link type: %s link: %s", linkType, linkRefPathForCache));
                 }
             }
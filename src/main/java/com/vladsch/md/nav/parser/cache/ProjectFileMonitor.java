@@ -6,9 +6,10 @@ import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -23,6 +24,7 @@ import com.intellij.util.Alarm;
 import com.intellij.util.messages.MessageBusConnection;
 import com.vladsch.md.nav.parser.cache.data.dependency.DataKeyDependency;
 import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileKeys;
 import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate;
 import com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger;
 import com.vladsch.plugin.util.HelpersKt;
@@ -30,7 +32,9 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class ProjectFileMonitor implements Disposable {
@@ -46,13 +50,20 @@ public class ProjectFileMonitor implements Disposable {
     }
 
     final @NotNull Project myProject;
-    final @NotNull HashSet<ProjectFileDependency> myDataKeyDependencies = new HashSet<>();
+
+    // all dependencies with keys of files which can invalidate them, null keys for any file
+    final @NotNull HashMap<ProjectFileDependency, ProjectFileKeys> myDataKeyDependencies = new HashMap<>();
+    final @NotNull HashSet<ProjectFileDependency> myAnyFileDependencies = new HashSet<>();
+    final @NotNull HashMap<String, HashSet<ProjectFileDependency>> myFileNameDependencies = new HashMap<>();
+    final @NotNull HashMap<String, HashSet<ProjectFileDependency>> myExtensionDependencies = new HashMap<>();
+    final @NotNull HashMap<String, HashSet<ProjectFileDependency>> myDirectoryDependencies = new HashMap<>();
+    final @NotNull HashMap<DataKeyDependency, ProjectFileDependency> myRegisteredDependencies = new HashMap<>();
     final Alarm myAlarm;
 
     public ProjectFileMonitor(@NotNull Project project) {
         myProject = project;
         Disposer.register(myProject, this);
-        myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, myProject);
+        myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, myProject);
 
         final Application application = ApplicationManager.getApplication();
         MessageBusConnection messageBusConnection = project.getMessageBus().connect(this);
@@ -65,17 +76,18 @@ public class ProjectFileMonitor implements Disposable {
              */
             @Override
             public void daemonStarting(@NotNull Collection<? extends FileEditor> fileEditors) {
-                PsiManager psiManager = PsiManagerEx.getInstance(myProject);
+                ArrayList<VirtualFile> virtualFiles = new ArrayList<>();
                 for (FileEditor fileEditor : fileEditors) {
                     VirtualFile virtualFile = fileEditor.getFile();
                     // ISSUE: diagnostic/4439
                     if (virtualFile != null && !(virtualFile instanceof LightVirtualFile) && virtualFile.isValid()) {
-                        PsiFile psiFile = psiManager.findFile(virtualFile);
-                        if (psiFile != null) {
-                            checkDependencies(true, psiFile);
-                        }
+                        virtualFiles.add(virtualFile);
                     }
                 }
+
+                if (!virtualFiles.isEmpty() && !myAlarm.isDisposed()) {
+                    myAlarm.addRequest(() -> checkDependencies(true, virtualFiles), 0);
+                }
             }
         });
 
@@ -83,7 +95,6 @@ public class ProjectFileMonitor implements Disposable {
             @Override
             public void after(@NotNull List<? extends VFileEvent> events) {
                 ArrayList<VirtualFile> virtualFiles = new ArrayList<>();
-                PsiManager psiManager = PsiManagerEx.getInstance(myProject);
                 for (VFileEvent event : events) {
                     VirtualFile virtualFile = event.getFile();
                     if (virtualFile != null && virtualFile.isValid()) {
@@ -92,23 +103,15 @@ public class ProjectFileMonitor implements Disposable {
                 }
 
                 if (!virtualFiles.isEmpty() && !myAlarm.isDisposed()) {
+                    // NOTE: in tests there should be no delay otherwise the possible rescan
+                    //  is triggered in the middle of highlighting for full spec test case
+                    //  for release the delay is added just in case there was an external
+                    //  jar modification and the jar needs to be re-indexed, otherwise an
+                    //  exception that stub is invalid is generated by the IDE.
                     myAlarm.addRequest(() -> {
-                        if (myProject.isDisposed()) return;
-
-                        for (VirtualFile virtualFile : virtualFiles) {
-                            if (virtualFile.isValid()) {
-                                PsiFile psiFile = psiManager.findFile(virtualFile);
-                                if (psiFile != null) {
-                                    checkDependencies(false, psiFile);
-                                }
-                            }
-                        }
-                        // NOTE: in tests there should be no delay otherwise the possible rescan
-                        //  is triggered in the middle of highlighting for full spec test case
-                        //  for release the delay is added just in case there was an external
-                        //  jar modification and the jar needs to be re-indexed, otherwise an
-                        //  exception that stub is invalid is generated by the IDE.
-                    }, application.isUnitTestMode() ? 0 : 100, ModalityState.NON_MODAL);
+                        removeInvalidDependencies();
+                        checkDependencies(false, virtualFiles);
+                    }, application.isUnitTestMode() ? 0 : 100);
                 }
             }
         });
@@ -116,40 +119,131 @@ public class ProjectFileMonitor implements Disposable {
 
     @Override
     public void dispose() {
-        myDataKeyDependencies.clear();
+        synchronized (myDataKeyDependencies) {
+            myDataKeyDependencies.clear();
+            myAnyFileDependencies.clear();
+            myFileNameDependencies.clear();
+            myExtensionDependencies.clear();
+            myDirectoryDependencies.clear();
+            myRegisteredDependencies.clear();
+        }
     }
 
-    public void checkDependencies(boolean fromDaemonCodeAnalyzer, @NotNull PsiFile psiFile) {
-        HashSet<ProjectFileDependency> dependencies;
+    void checkDependencies(boolean fromDaemonCodeAnalyzer, @NotNull List<VirtualFile> virtualFiles) {
+        PsiManager psiManager = PsiManagerEx.getInstance(myProject);
+
+        for (VirtualFile virtualFile : virtualFiles) {
+            if (myProject.isDisposed()) return;
+
+            ReadAction.run(() -> {
+                if (!myProject.isDisposed() && virtualFile.isValid()) {
+                    PsiFile psiFile = psiManager.findFile(virtualFile);
+                    if (psiFile != null) {
+                        checkDependencies(fromDaemonCodeAnalyzer, psiFile);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Get dependencies which can be invalidated by a change to the file
+     *
+     * @param virtualFile changed file
+     *
+     * @return dependencies to test
+     */
+    @NotNull
+    Collection<ProjectFileDependency> getFileDependencies(@NotNull VirtualFile virtualFile) {
+        LinkedHashSet<ProjectFileDependency> dependencies = new LinkedHashSet<>();
 
         synchronized (myDataKeyDependencies) {
-            dependencies = new HashSet<>(myDataKeyDependencies);
+            dependencies.addAll(myAnyFileDependencies);
+
+            if (!myFileNameDependencies.isEmpty()) {
+                addDependencies(dependencies, myFileNameDependencies, ProjectFileKeys.normalizeKey(virtualFile.getName()));
+                addDependencies(dependencies, myFileNameDependencies, ProjectFileKeys.normalizeKey(virtualFile.getNameWithoutExtension()));
+            }
+
+            String extension = virtualFile.getExtension();
+            if (extension != null) addDependencies(dependencies, myExtensionDependencies, ProjectFileKeys.normalizeKey(extension));
+
+            if (!myDirectoryDependencies.isEmpty()) {
+                for (VirtualFile parent = virtualFile.getParent(); parent != null; parent = parent.getParent()) {
+                    addDependencies(dependencies, myDirectoryDependencies, parent.getPath());
+                }
+            }
         }
+        return dependencies;
+    }
+
+    private static void addDependencies(@NotNull Collection<ProjectFileDependency> dependencies, @NotNull HashMap<String, HashSet<ProjectFileDependency>> keyMap, @NotNull String key) {
+        HashSet<ProjectFileDependency> keyDependencies = keyMap.get(key);
+        if (keyDependencies != null) dependencies.addAll(keyDependencies);
+    }
+
+    /**
+     * Remove dependencies whose data key was invalidated by other means, they are otherwise only removed when a change
+     * to one of their files is tested
+     */
+    void removeInvalidDependencies() {
+        ArrayList<ProjectFileDependency> invalidDependencies = new ArrayList<>();
+
+        synchronized (myDataKeyDependencies) {
+            for (ProjectFileDependency dependency : myDataKeyDependencies.keySet()) {
+                if (!dependency.getDataKeyDependency().isValid()) invalidDependencies.add(dependency);
+            }
+
+            for (ProjectFileDependency dependency : invalidDependencies) {
+                removeDependency(dependency);
+            }
+        }
+
+        for (ProjectFileDependency dependency : invalidDependencies) {
+            dependency.getDataKeyDependency().invalidateDependency();
+            HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor: Removing invalid project file cache monitor for %s", dependency.getDataKeyDependency()));
+        }
+    }
+
+    public void checkDependencies(boolean fromDaemonCodeAnalyzer, @NotNull PsiFile psiFile) {
+        VirtualFile virtualFile = psiFile.getVirtualFile();
+        if (virtualFile == null) return;
+
+        Collection<ProjectFileDependency> dependencies = getFileDependencies(virtualFile);
 
         for (ProjectFileDependency dependency : dependencies) {
             boolean isValid = false;
 
             DataKeyDependency keyDependency = dependency.getDataKeyDependency();
-            if (keyDependency.isValid()) {
-                // it is still valid, so we need to invalidate it
-                try {
-                    if (dependency.getFilePredicate().test(psiFile)) {
-                        isValid = true;
-                    }
-                } catch (Throwable e) {
-                    LOG.error("Project file dependency exception " + dependency, e);
+            if (!keyDependency.isValid()) {
+                // already invalidated by other means, dependent file analysis was restarted by that invalidation,
+                //  restarting it again would only reschedule the analyzer on every pass
+                synchronized (myDataKeyDependencies) {
+                    removeDependency(dependency);
                 }
+                keyDependency.invalidateDependency();
+                continue;
+            }
+
+            try {
+                if (dependency.getFilePredicate().test(psiFile)) {
+                    isValid = true;
+                }
+            } catch (ProcessCanceledException e) {
+                throw e;
+            } catch (Throwable e) {
+                LOG.error("Project file dependency exception " + dependency, e);
             }
 
             if (!isValid) {
                 synchronized (myDataKeyDependencies) {
-                    myDataKeyDependencies.remove(dependency);
+                    removeDependency(dependency);
                 }
 
                 dependency.getDataKeyDependency().invalidateDependency();
 
                 PsiFile dependentFile = dependency.getFilePredicate().getDependentFile();
-                String onFilePath = psiFile.getVirtualFile().getPath();
+                String onFilePath = virtualFile.getPath();
 
                 if (dependentFile != null && dependentFile.isValid()) {
                     boolean selfInvalidation = dependentFile.equals(psiFile);
@@ -158,10 +252,13 @@ public class ProjectFileMonitor implements Disposable {
                     String finalOnFilePath = onFilePath;
                     HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Removing project file cache monitor for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependentFile.getVirtualFile().getPath(), finalOnFilePath));
 
+                    // NOTE: when checked in the background the analyzer could already be running on the file with invalid data
+                    boolean restartSelf = fromDaemonCodeAnalyzer && !ApplicationManager.getApplication().isDispatchThread();
+
                     Project project = dependentFile.getProject();
-                    if (!project.isDisposed() && dependentFile.isValid() && !selfInvalidation) {
+                    if (!project.isDisposed() && dependentFile.isValid() && (!selfInvalidation || restartSelf)) {
                         ApplicationManager.getApplication().invokeLater(() -> {
-                            if (!project.isDisposed()) {
+                            if (!project.isDisposed() && dependentFile.isValid()) {
                                 DaemonCodeAnalyzer.getInstance(project).restart(dependentFile);
                                 HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Restarted code analyzer for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependentFile.getVirtualFile().getPath(), finalOnFilePath));
                             }
@@ -175,12 +272,82 @@ public class ProjectFileMonitor implements Disposable {
         }
     }
 
+    // NOTE: must be called with myDataKeyDependencies locked
+    private void removeDependency(@NotNull ProjectFileDependency dependency) {
+        if (!myDataKeyDependencies.containsKey(dependency)) return;
+
+        ProjectFileKeys fileKeys = myDataKeyDependencies.remove(dependency);
+        myRegisteredDependencies.remove(dependency.getDataKeyDependency());
+
+        if (fileKeys == null) {
+            myAnyFileDependencies.remove(dependency);
+        } else {
+            removeKeyDependency(myFileNameDependencies, fileKeys.getFileNames(), dependency);
+            removeKeyDependency(myExtensionDependencies, fileKeys.getExtensions(), dependency);
+            removeKeyDependency(myDirectoryDependencies, fileKeys.getDirectories(), dependency);
+        }
+    }
+
+    private static void removeKeyDependency(@NotNull HashMap<String, HashSet<ProjectFileDependency>> keyMap, @NotNull Collection<String> keys, @NotNull ProjectFileDependency dependency) {
+        for (String key : keys) {
+            HashSet<ProjectFileDependency> keyDependencies = keyMap.get(key);
+            if (keyDependencies != null) {
+                keyDependencies.remove(dependency);
+                if (keyDependencies.isEmpty()) keyMap.remove(key);
+            }
+        }
+    }
+
+    private static void addKeyDependency(@NotNull HashMap<String, HashSet<ProjectFileDependency>> keyMap, @NotNull Collection<String> keys, @NotNull ProjectFileDependency dependency) {
+        for (String key : keys) {
+            keyMap.computeIfAbsent(key, k -> new HashSet<>()).add(dependency);
+        }
+    }
+
+    private void addKeyDependencies(@NotNull ProjectFileKeys fileKeys, @NotNull ProjectFileDependency dependency) {
+        addKeyDependency(myFileNameDependencies, fileKeys.getFileNames(), dependency);
+        addKeyDependency(myExtensionDependencies, fileKeys.getExtensions(), dependency);
+        addKeyDependency(myDirectoryDependencies, fileKeys.getDirectories(), dependency);
+    }
+
     @NotNull
     public ProjectFileDependency getDependency(@NotNull DataKeyDependency dependency, @NotNull ProjectFilePredicate predicate) {
         ProjectFileDependency fileDependency = new ProjectFileDependency(dependency, predicate);
         synchronized (myDataKeyDependencies) {
-            myDataKeyDependencies.add(fileDependency);
+            // NOTE: an equal dependency of an earlier computation is replaced, its keys and predicate state are stale
+            removeDependency(fileDependency);
+
+            ProjectFileKeys fileKeys = predicate.getFileKeys();
+            myDataKeyDependencies.put(fileDependency, fileKeys);
+            myRegisteredDependencies.put(dependency, fileDependency);
+
+            if (fileKeys == null) {
+                myAnyFileDependencies.add(fileDependency);
+            } else {
+                addKeyDependencies(fileKeys, fileDependency);
+            }
         }
         return fileDependency;
     }
+
+    /**
+     * Add keys to a monitored predicate, for predicates whose keys grow after the dependency was added
+     *
+     * @param dependency data key dependency of the predicate
+     * @param predicate  predicate, keys are not added if the dependency is monitored with another predicate
+     * @param fileKeys   additional keys of files which can invalidate the dependency
+     */
+    public void addFileKeys(@NotNull DataKeyDependency dependency, @NotNull ProjectFilePredicate predicate, @NotNull ProjectFileKeys fileKeys) {
+        synchronized (myDataKeyDependencies) {
+            ProjectFileDependency fileDependency = myRegisteredDependencies.get(dependency);
+            if (fileDependency == null || fileDependency.getFilePredicate() != predicate) return;
+
+            ProjectFileKeys dependencyKeys = myDataKeyDependencies.get(fileDependency);
+            // tested for any file already
+            if (dependencyKeys == null) return;
+
+            myDataKeyDependencies.put(fileDependency, dependencyKeys.union(fileKeys));
+            addKeyDependencies(fileKeys, fileDependency);
+        }
+    }
 }
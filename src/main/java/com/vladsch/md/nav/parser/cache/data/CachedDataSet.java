@@ -9,7 +9,7 @@ import com.vladsch.md.nav.parser.cache.data.dependency.VersionedData;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class CachedDataSet implements CachedDataHolder {
@@ -24,8 +24,10 @@ public class CachedDataSet implements CachedDataHolder {
     }
 
     private final @NotNull String myName;
-    private final @NotNull HashMap<CachedDataKey<?, ?>, SoftReference<VersionedData>> myCachedDataSet = new HashMap<>();
-    private final @NotNull HashMap<CachedDataKey<?, ?>, ReentrantLock> myComputingKeyLocks = new HashMap<>();
+
+    // NOTE: reads are lock free, modifications synchronize on the map so time stamps are assigned in modification order
+    private final @NotNull ConcurrentHashMap<CachedDataKey<?, ?>, SoftReference<VersionedData>> myCachedDataSet = new ConcurrentHashMap<>();
+    private final @NotNull ConcurrentHashMap<CachedDataKey<?, ?>, ReentrantLock> myComputingKeyLocks = new ConcurrentHashMap<>();
     private long myTimeStamp = 0;
 
     public CachedDataSet(@NotNull String name) {
@@ -55,12 +57,7 @@ public class CachedDataSet implements CachedDataHolder {
     @Override
     public boolean isDependent(@NotNull CachedDataKey<?, ?> dataKey, @Nullable DataDependency dependency) {
         if (dependency != null) {
-            VersionedData data;
-
-            synchronized (myCachedDataSet) {
-                SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-                data = reference != null ? reference.get() : null;
-            }
+            VersionedData data = getVersionedData(dataKey);
 
             if (data != null) {
                 return data.isDependent(dependency);
@@ -71,51 +68,44 @@ public class CachedDataSet implements CachedDataHolder {
 
     @Override
     public long getVersion(@NotNull CachedDataKey<?, ?> dataKey) {
-        VersionedData data;
-
-        Object value = getOrNull(dataKey);
-
-        if (value != null) {
-            synchronized (myCachedDataSet) {
-                SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-                data = reference != null ? reference.get() : null;
-            }
-
-            if (data != null) {
-                return data.version;
-            }
-        }
-
-        return -1;
+        VersionedData data = getVersionedData(dataKey);
+        return data != null && data.isValid() ? data.version : -1;
     }
 
     @Override
     public boolean isEmpty() {
-        synchronized (myCachedDataSet) {
-            return myCachedDataSet.isEmpty();
-        }
+        return myCachedDataSet.isEmpty();
     }
 
     @Override
     public ReentrantLock getKeyLock(@NotNull CachedDataKey<?, ?> dataKey) {
         ReentrantLock lock = myComputingKeyLocks.get(dataKey);
         if (lock == null) {
-            synchronized (myComputingKeyLocks) {
-                lock = myComputingKeyLocks.computeIfAbsent(dataKey, k -> new ReentrantLock());
-            }
+            lock = myComputingKeyLocks.computeIfAbsent(dataKey, k -> new ReentrantLock());
         }
         return lock;
     }
 
     @Nullable
-    public Object getOrNull(@NotNull CachedDataKey<?, ?> dataKey) {
-        VersionedData data;
-
-        synchronized (myCachedDataSet) {
-            SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-            data = reference != null ? reference.get() : null;
-        }
+    private VersionedData getVersionedData(@NotNull CachedDataKey<?, ?> dataKey) {
+        SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
+        return reference != null ? reference.get() : null;
+    }
 
+    /**
+     * Get valid value without taking any locks or allocating
+     * <p>
+     * Used by the transaction manager for the optimistic read, only values whose dependency versions
+     * are unchanged are returned, otherwise the caller falls back to the locking path.
+     *
+     * @param dataKey data key
+     *
+     * @return valid value or null
+     */
+    @Nullable
+    @Override
+    public Object getOrNull(@NotNull CachedDataKey<?, ?> dataKey) {
+        VersionedData data = getVersionedData(dataKey);
         return data != null && data.isValid() ? data.value : null;
     }
 
@@ -154,9 +144,7 @@ public class CachedDataSet implements CachedDataHolder {
     }
 
     public boolean contains(@NotNull CachedDataKey<?, ?> key) {
-        synchronized (myCachedDataSet) {
-            return myCachedDataSet.containsKey(key);
-        }
+        return myCachedDataSet.containsKey(key);
     }
 
     @Override
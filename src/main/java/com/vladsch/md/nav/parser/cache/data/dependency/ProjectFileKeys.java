@@ -0,0 +1,111 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.cache.data.dependency;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Files whose change can invalidate a {@link ProjectFilePredicate}
+ * <p>
+ * A file matches if its name or its name without extension is in the file names, its extension is in the extensions
+ * or it is under one of the directories. Names and extensions are compared ignoring case since README.MD is as much
+ * a Markdown file as README.md, a name without extension lets a link to `page` be keyed for page.md.
+ */
+final public class ProjectFileKeys {
+    private final @NotNull Set<String> myFileNames;
+    private final @NotNull Set<String> myExtensions;
+    private final @NotNull Set<String> myDirectories;
+
+    public ProjectFileKeys(@NotNull Collection<String> fileNames, @NotNull Collection<String> extensions, @NotNull Collection<String> directories) {
+        myFileNames = normalized(fileNames);
+        myExtensions = normalized(extensions);
+        myDirectories = directories.isEmpty() ? Collections.emptySet() : new HashSet<>(directories);
+    }
+
+    @NotNull
+    private static Set<String> normalized(@NotNull Collection<String> keys) {
+        if (keys.isEmpty()) return Collections.emptySet();
+
+        Set<String> normalized = new HashSet<>(keys.size());
+        for (String key : keys) {
+            normalized.add(normalizeKey(key));
+        }
+        return normalized;
+    }
+
+    @NotNull
+    public static ProjectFileKeys ofExtensions(@NotNull String... extensions) {
+        return new ProjectFileKeys(Collections.emptySet(), Arrays.asList(extensions), Collections.emptySet());
+    }
+
+    @NotNull
+    public static ProjectFileKeys ofFileNames(@NotNull Collection<String> fileNames) {
+        return new ProjectFileKeys(fileNames, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * @param key file name or extension
+     *
+     * @return key as used for lookup
+     */
+    @NotNull
+    public static String normalizeKey(@NotNull String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param other keys to add
+     *
+     * @return keys matching files matched by either
+     */
+    @NotNull
+    public ProjectFileKeys union(@NotNull ProjectFileKeys other) {
+        Set<String> fileNames = new HashSet<>(myFileNames);
+        fileNames.addAll(other.myFileNames);
+        Set<String> extensions = new HashSet<>(myExtensions);
+        extensions.addAll(other.myExtensions);
+        Set<String> directories = new HashSet<>(myDirectories);
+        directories.addAll(other.myDirectories);
+        return new ProjectFileKeys(fileNames, extensions, directories);
+    }
+
+    /**
+     * @return lower case file names
+     */
+    @NotNull
+    public Set<String> getFileNames() {
+        return myFileNames;
+    }
+
+    /**
+     * @return lower case extensions
+     */
+    @NotNull
+    public Set<String> getExtensions() {
+        return myExtensions;
+    }
+
+    /**
+     * @return directory paths without trailing /
+     */
+    @NotNull
+    public Set<String> getDirectories() {
+        return myDirectories;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectFileKeys{" +
+                "fileNames=" + myFileNames +
+                ", extensions=" + myExtensions +
+                ", directories=" + myDirectories +
+                '}';
+    }
+}
@@ -10,7 +10,7 @@ import java.util.function.Predicate;
 
 public interface ProjectFilePredicate extends Predicate<PsiFile> {
     /**
-     * NOTE: not invoked on ADT nor inside read action, have to do all that manually
+     * NOTE: invoked on a pooled thread inside a read action, restarting code analysis has to be done on the EDT
      * if false is returned then key for the dependency will be invalidated.
      * CachedDataSet and CachedDataKey determined by where dependency was added.
      * <p>
@@ -32,4 +32,15 @@ public interface ProjectFilePredicate extends Predicate<PsiFile> {
     default PsiFile getDependentFile() {
         return null;
     }
+
+    /**
+     * Override to limit the files for which the predicate is tested, keys are taken once when the dependency is added,
+     * keys of later additions are added with {@link com.vladsch.md.nav.parser.cache.ProjectFileMonitor#addFileKeys}
+     *
+     * @return keys of files which can invalidate the dependency or null if any file can
+     */
+    @Nullable
+    default ProjectFileKeys getFileKeys() {
+        return null;
+    }
 }
@@ -14,7 +14,7 @@ public class RestartableProjectFileDependency implements ProjectFilePredicate {
     }
 
     /**
-     * NOTE: not invoked on ADT nor inside read action, have to do all that manually
+     * NOTE: invoked on a pooled thread inside a read action, restarting code analysis has to be done on the EDT
      * if false is returned then key for the dependency will be invalidated.
      * CachedDataSet and CachedDataKey determined by where dependency was added.
      * <p>
@@ -2,6 +2,7 @@
 
 package com.vladsch.md.nav.parser.cache.data.transaction;
 
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.vladsch.flexmark.util.sequence.RepeatedSequence;
 import com.vladsch.md.nav.parser.cache.ProjectFileMonitor;
@@ -16,6 +17,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Stack;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger.INDENT;
@@ -26,6 +28,13 @@ import static com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger.L
 public class CachedTransactionManager implements LogIndenter {
     public static final String ADD_DEPENDENCY = "ADD_DEPENDENCY: ";
 
+    // contention statistics for all threads, LongAdder since these are updated on every get
+    private static final LongAdder ourOptimisticHits = new LongAdder();
+    private static final LongAdder ourLockedHits = new LongAdder();
+    private static final LongAdder ourComputes = new LongAdder();
+    private static final LongAdder ourLockContentions = new LongAdder();
+    private static final LongAdder ourLockWaitNanos = new LongAdder();
+
     private final @NotNull Stack<CachedDataTransaction<?, ?>> myOpenTransactions = new Stack<>();
 
     final @NotNull DataDependencyManager myManager;
@@ -54,19 +63,59 @@ public class CachedTransactionManager implements LogIndenter {
 
     public <H extends CachedDataOwner, T> T get(@NotNull H host, @NotNull CachedDataKey<H, T> dataKey) {
         if (myOpenTransactions.size() == 0) {
+            Application application = ApplicationManager.getApplication();
+
+            if (application.isReadAccessAllowed()) {
+                T value = getOptimistic(host, dataKey);
+                if (value != null) return value;
+            }
+
             Object[] result = new Object[] { null };
 
-            ApplicationManager.getApplication().runReadAction(() -> {
+            application.runReadAction(() -> {
                 result[0] = getRaw(host, dataKey);
             });
 
             //noinspection unchecked
             return (T) result[0];
         } else {
+            T value = getOptimistic(host, dataKey);
+
+            if (value != null) {
+                // open transaction depends on this key, even if this time around the key is valid
+                myOpenTransactions.peek().addDependency(host.getCachedData().getDependency(dataKey));
+                return value;
+            }
+
             return getRaw(host, dataKey);
         }
     }
 
+    /**
+     * Get a valid cached value without locking or allocating
+     * <p>
+     * A value whose dependencies have not changed versions is returned as is, anything else goes through
+     * {@link #getRaw(CachedDataOwner, CachedDataKey)} which takes the key lock and computes the value if needed.
+     * Skipped when compute debug logging is enabled so the GET trace is complete.
+     *
+     * @param host    data host
+     * @param dataKey data key
+     *
+     * @return valid value or null if key needs to go through the locking path
+     */
+    private <H extends CachedDataOwner, T> T getOptimistic(@NotNull H host, @NotNull CachedDataKey<H, T> dataKey) {
+        if (LOG_COMPUTE.isDebugEnabled()) return null;
+
+        //noinspection unchecked
+        T value = (T) host.getCachedData().getOrNull(dataKey);
+
+        if (value != null && dataKey.isValid(value)) {
+            ourOptimisticHits.increment();
+            return value;
+        }
+        return null;
+    }
+
     private <H extends CachedDataOwner, T> T getRaw(@NotNull H host, @NotNull CachedDataKey<H, T> dataKey) {
         HashMap<DataDependency, Long> versionedDependencies = new HashMap<>();
 
@@ -127,9 +176,15 @@ public class CachedTransactionManager implements LogIndenter {
         }
 
         ReentrantLock lock = cachedData.getKeyLock(dataKey);
-        try {
+        if (!lock.tryLock()) {
+            // another thread is computing this key
+            ourLockContentions.increment();
+            long start = System.nanoTime();
             lock.lock();
+            ourLockWaitNanos.add(System.nanoTime() - start);
+        }
 
+        try {
             try {
                 myOpenTransactions.push(transaction);
 
@@ -159,6 +214,7 @@ public class CachedTransactionManager implements LogIndenter {
                             // this transaction is at size-1, parent at size-2
                             myOpenTransactions.get(myOpenTransactions.size() - 2).addDependency(cachedData.getDependency(dataKey));
                         }
+                        ourLockedHits.increment();
                         return value;
                     }
 
@@ -169,6 +225,7 @@ public class CachedTransactionManager implements LogIndenter {
                 }
 
                 if (LOG_COMPUTE.isDebugEnabled()) LOG_COMPUTE.debug("COMPUTING: " + cachedData.getDataKeyWithCacheDescription(dataKey));
+                ourComputes.increment();
                 value = dataKey.compute(transaction);
                 assert dataKey.isValid(value);
 
@@ -209,6 +266,31 @@ public class CachedTransactionManager implements LogIndenter {
         }
     }
 
+    public static void resetStatistics() {
+        ourOptimisticHits.reset();
+        ourLockedHits.reset();
+        ourComputes.reset();
+        ourLockContentions.reset();
+        ourLockWaitNanos.reset();
+    }
+
+    /**
+     * Statistics for all transaction managers
+     * <p>
+     * optimistic: valid values returned without locking, locked: valid values found after taking the key lock,
+     * computed: values computed, contended: key lock was held by another thread, with total wait time for these
+     *
+     * @return statistics string
+     */
+    @NotNull
+    public static String getStatistics() {
+        long optimistic = ourOptimisticHits.sum();
+        long locked = ourLockedHits.sum();
+        long computed = ourComputes.sum();
+        long total = optimistic + locked + computed;
+        return String.format("optimistic: %d, locked: %d, computed: %d, optimistic rate: %d%%, contended: %d, wait: %dms", optimistic, locked, computed, total == 0 ? 0 : optimistic * 100 / total, ourLockContentions.sum(), ourLockWaitNanos.sum() / 1_000_000);
+    }
+
     private int getComputingKeyIndex(@NotNull CachedDataTransaction<?, ?> transaction) {
         CachedDataKey<?, ?> dataKey = transaction.getDataKey();
         CachedDataSet cachedData = transaction.myCachedData;
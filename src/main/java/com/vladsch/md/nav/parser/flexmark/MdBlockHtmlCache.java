@@ -0,0 +1,144 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.vladsch.flexmark.util.sequence.TagRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered HTML of top level blocks, reused by {@link MdBlockHtmlCacheNodeRenderer} for blocks which did not change
+ * <p>
+ * Entries are only valid for the context key given to {@link #startRender(Object)}, which should change whenever
+ * rendering results could change for the same block text: rendering profile, HTML generator or state of link targets.
+ * Entries not used by the last completed render are discarded so the cache does not outgrow the document.
+ */
+public class MdBlockHtmlCache {
+    public static class Entry {
+        public final int startOffset;
+        public final @NotNull String html;
+        public final @NotNull List<TagRange> tagRanges;
+
+        public Entry(int startOffset, @NotNull String html, @NotNull List<TagRange> tagRanges) {
+            this.startOffset = startOffset;
+            this.html = html;
+            this.tagRanges = tagRanges;
+        }
+    }
+
+    private static class CachedEntry {
+        final @NotNull Entry entry;
+        int generation;
+
+        CachedEntry(@NotNull Entry entry, int generation) {
+            this.entry = entry;
+            this.generation = generation;
+        }
+    }
+
+    public class Render {
+        final @NotNull Object contextKey;
+        final int generation;
+
+        Render(@NotNull Object contextKey, int generation) {
+            this.contextKey = contextKey;
+            this.generation = generation;
+        }
+
+        @Nullable
+        public Entry get(@NotNull String blockKey) {
+            Entry entry = MdBlockHtmlCache.this.get(this, blockKey);
+            if (entry != null) myHits.incrementAndGet();
+            else myMisses.incrementAndGet();
+            return entry;
+        }
+
+        public void put(@NotNull String blockKey, @NotNull Entry entry) {
+            MdBlockHtmlCache.this.put(this, blockKey, entry);
+        }
+
+        /**
+         * Render completed, remove entries not used by it
+         */
+        public void finish() {
+            MdBlockHtmlCache.this.finish(this);
+        }
+    }
+
+    final private HashMap<String, CachedEntry> myEntries = new HashMap<>();
+    private @Nullable Object myContextKey = null;
+    private int myGeneration = 0;
+
+    final private AtomicLong myHits = new AtomicLong();
+    final private AtomicLong myMisses = new AtomicLong();
+
+    /**
+     * Start a new render
+     *
+     * @param contextKey key of rendering context, compared with equals() to the previous render's key, all entries
+     *                   are discarded if they differ
+     *
+     * @return render to use for cache access
+     */
+    @NotNull
+    public synchronized Render startRender(@NotNull Object contextKey) {
+        if (!contextKey.equals(myContextKey)) {
+            myEntries.clear();
+            myContextKey = contextKey;
+        }
+        return new Render(contextKey, ++myGeneration);
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        myContextKey = null;
+    }
+
+    synchronized Entry get(@NotNull Render render, @NotNull String blockKey) {
+        if (!render.contextKey.equals(myContextKey)) return null;
+
+        CachedEntry cachedEntry = myEntries.get(blockKey);
+        if (cachedEntry == null) return null;
+
+        cachedEntry.generation = Math.max(cachedEntry.generation, render.generation);
+        return cachedEntry.entry;
+    }
+
+    synchronized void put(@NotNull Render render, @NotNull String blockKey, @NotNull Entry entry) {
+        // rendered with a stale context, a newer render changed it
+        if (!render.contextKey.equals(myContextKey)) return;
+
+        myEntries.put(blockKey, new CachedEntry(entry, render.generation));
+    }
+
+    synchronized void finish(@NotNull Render render) {
+        // only the latest render decides what is used, an earlier cancelled one may still be finishing
+        if (render.generation != myGeneration) return;
+
+        myEntries.values().removeIf(cachedEntry -> cachedEntry.generation < render.generation);
+    }
+
+    public long getHits() {
+        return myHits.get();
+    }
+
+    public long getMisses() {
+        return myMisses.get();
+    }
+
+    public synchronized int size() {
+        return myEntries.size();
+    }
+
+    @NotNull
+    String getStatistics() {
+        long hits = myHits.get();
+        long misses = myMisses.get();
+        long total = hits + misses;
+        return String.format("blocks: %d, hits: %d, misses: %d, hit rate: %d%%", size(), hits, misses, total == 0 ? 0 : hits * 100 / total);
+    }
+}
@@ -0,0 +1,181 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.ext.enumerated.reference.EnumeratedReferenceLink;
+import com.vladsch.flexmark.ext.enumerated.reference.EnumeratedReferenceText;
+import com.vladsch.flexmark.ext.footnotes.Footnote;
+import com.vladsch.flexmark.ext.toc.TocBlockBase;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRendererFactory;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.ReferenceNode;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.sequence.TagRange;
+import com.vladsch.md.nav.util.Md5Utils;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders top level blocks of the document, reusing HTML from {@link MdBlockHtmlCache} for blocks which did not change
+ * <p>
+ * A block is keyed by its type, text, heading id and the text of all reference definitions in the document.
+ * Blocks whose rendering depends on other blocks, like nested headings, TOC, footnote and enumerated references,
+ * are always rendered. Cached HTML of a block which moved has its source offset attributes and tag ranges shifted.
+ */
+public class MdBlockHtmlCacheNodeRenderer implements NodeRenderer {
+    final private @NotNull MdBlockHtmlCache.Render myCacheRender;
+    final private @NotNull Pattern myOffsetAttributePattern;
+
+    public MdBlockHtmlCacheNodeRenderer(DataHolder options) {
+        MdBlockHtmlCache.Render cacheRender = MdNavigatorExtension.BLOCK_HTML_CACHE.get(options);
+        if (cacheRender == null) throw new IllegalStateException("BLOCK_HTML_CACHE is guaranteed to be not null when renderer is used");
+        myCacheRender = cacheRender;
+
+        String sourcePositionAttribute = HtmlRenderer.SOURCE_POSITION_ATTRIBUTE.get(options);
+        String offsetAttributes = sourcePositionAttribute.isEmpty() ? Pattern.quote(FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE)
+                : Pattern.quote(sourcePositionAttribute) + "|" + Pattern.quote(FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE);
+        myOffsetAttributePattern = Pattern.compile("\\s(?:" + offsetAttributes + ")=\"(\\d+)(?:-(\\d+))?\"");
+    }
+
+    @Override
+    public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+        return new HashSet<>(Collections.singletonList(new NodeRenderingHandler<>(Document.class, this::render)));
+    }
+
+    private static boolean isContextDependent(@NotNull Node node) {
+        return node instanceof Heading
+                || node instanceof TocBlockBase
+                || node instanceof Footnote
+                || node instanceof EnumeratedReferenceText
+                || node instanceof EnumeratedReferenceLink;
+    }
+
+    void render(Document document, NodeRendererContext context, HtmlWriter html) {
+        if (document != context.getDocument()) {
+            // included document, cache is only for the main document blocks
+            context.delegateRender();
+            return;
+        }
+
+        ArrayList<Node> blocks = new ArrayList<>();
+        ArrayList<Boolean> cacheable = new ArrayList<>();
+        Md5Utils referencesMd5 = new Md5Utils();
+
+        // reference definitions affect rendering of all blocks which could refer to them
+        for (Node block : document.getChildren()) {
+            boolean isCacheable = !(block instanceof TocBlockBase);
+            if (block instanceof ReferenceNode) referencesMd5.add(block.getChars());
+
+            for (Node node : block.getDescendants()) {
+                if (node instanceof ReferenceNode) {
+                    referencesMd5.add(node.getChars());
+                } else if (isCacheable && isContextDependent(node)) {
+                    isCacheable = false;
+                }
+            }
+
+            blocks.add(block);
+            cacheable.add(isCacheable);
+        }
+
+        String referencesHash = referencesMd5.getMd5();
+        ArrayList<TagRange> tagRanges = HtmlRenderer.TAG_RANGES.get(document);
+
+        for (int i = 0; i < blocks.size(); i++) {
+            ProgressManager.checkCanceled();
+
+            Node block = blocks.get(i);
+            if (!cacheable.get(i)) {
+                context.render(block);
+                continue;
+            }
+
+            String headingId = block instanceof Heading ? context.getNodeId(block) : null;
+            String blockKey = Md5Utils.md5(block.getClass().getName(), headingId == null ? "" : headingId, referencesHash, block.getChars());
+            int startOffset = block.getStartOffset();
+
+            MdBlockHtmlCache.Entry entry = myCacheRender.get(blockKey);
+            if (entry != null) {
+                if (entry.startOffset != startOffset) {
+                    entry = shiftEntry(entry, startOffset);
+                    myCacheRender.put(blockKey, entry);
+                }
+
+                html.raw(entry.html);
+                tagRanges.addAll(entry.tagRanges);
+            } else {
+                // render to its own writer to capture block HTML, tag ranges are added to the document's list
+                int tagRangesStart = tagRanges.size();
+                NodeRendererContext subContext = context.getSubContext(false);
+                subContext.render(block);
+
+                String blockHtml = subContext.getHtmlWriter().toString();
+                List<TagRange> blockTagRanges = new ArrayList<>(tagRanges.subList(tagRangesStart, tagRanges.size()));
+                myCacheRender.put(blockKey, new MdBlockHtmlCache.Entry(startOffset, blockHtml, blockTagRanges));
+
+                html.raw(blockHtml);
+            }
+        }
+
+        myCacheRender.finish();
+    }
+
+    @NotNull
+    private MdBlockHtmlCache.Entry shiftEntry(@NotNull MdBlockHtmlCache.Entry entry, int startOffset) {
+        int delta = startOffset - entry.startOffset;
+        String html = entry.html;
+        Matcher matcher = myOffsetAttributePattern.matcher(html);
+        StringBuilder sb = null;
+        int lastEnd = 0;
+
+        while (matcher.find()) {
+            if (sb == null) sb = new StringBuilder(html.length() + 16);
+
+            sb.append(html, lastEnd, matcher.start(1));
+            sb.append(Integer.parseInt(matcher.group(1)) + delta);
+
+            if (matcher.group(2) != null) {
+                sb.append(html, matcher.end(1), matcher.start(2));
+                sb.append(Integer.parseInt(matcher.group(2)) + delta);
+                lastEnd = matcher.end(2);
+            } else {
+                lastEnd = matcher.end(1);
+            }
+        }
+
+        if (sb != null) {
+            sb.append(html, lastEnd, html.length());
+            html = sb.toString();
+        }
+
+        ArrayList<TagRange> tagRanges = new ArrayList<>(entry.tagRanges.size());
+        for (TagRange tagRange : entry.tagRanges) {
+            tagRanges.add(tagRange.withRange(tagRange.getStart() + delta, tagRange.getEnd() + delta));
+        }
+
+        return new MdBlockHtmlCache.Entry(startOffset, html, tagRanges);
+    }
+
+    public static class Factory implements NodeRendererFactory {
+        @NotNull
+        @Override
+        public NodeRenderer apply(@NotNull final DataHolder options) {
+            return new MdBlockHtmlCacheNodeRenderer(options);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRendererFactory;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.parser.InlineParser;
+import com.vladsch.flexmark.parser.InlineParserExtension;
+import com.vladsch.flexmark.parser.InlineParserExtensionFactory;
+import com.vladsch.flexmark.parser.LightInlineParser;
+import com.vladsch.flexmark.parser.block.BlockParserFactory;
+import com.vladsch.flexmark.parser.block.BlockStart;
+import com.vladsch.flexmark.parser.block.CustomBlockParserFactory;
+import com.vladsch.flexmark.parser.block.MatchedBlockParser;
+import com.vladsch.flexmark.parser.block.ParserState;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.data.DataHolder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cancellation points for parsing and rendering in a cancellable read action, used when
+ * {@link MdNavigatorExtension#CHECK_CANCELED} is set
+ * <p>
+ * Block parsing is checked on every line, inline parsing on every line of inline content and after every block,
+ * rendering before every top level block.
+ */
+public class MdCheckCanceledExtension {
+    private MdCheckCanceledExtension() {
+
+    }
+
+    static class BlockFactory implements CustomBlockParserFactory {
+        @NotNull
+        @Override
+        public BlockParserFactory apply(@NotNull DataHolder options) {
+            return new BlockParserFactory() {
+                @Nullable
+                @Override
+                public BlockStart tryStart(ParserState state, MatchedBlockParser matchedBlockParser) {
+                    ProgressManager.checkCanceled();
+                    return BlockStart.none();
+                }
+            };
+        }
+
+        @Nullable
+        @Override
+        public Set<Class<?>> getAfterDependents() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public Set<Class<?>> getBeforeDependents() {
+            return null;
+        }
+
+        @Override
+        public boolean affectsGlobalScope() {
+            return false;
+        }
+    }
+
+    static class InlineFactory implements InlineParserExtensionFactory {
+        @NotNull
+        @Override
+        public CharSequence getCharacters() {
+            // end of line is already a special character, extension is invoked once per line and never consumes it
+            return "\n";
+        }
+
+        @NotNull
+        @Override
+        public InlineParserExtension apply(@NotNull LightInlineParser inlineParser) {
+            return new InlineParserExtension() {
+                @Override
+                public void finalizeDocument(@NotNull InlineParser inlineParser) {
+
+                }
+
+                @Override
+                public void finalizeBlock(@NotNull InlineParser inlineParser) {
+                    ProgressManager.checkCanceled();
+                }
+
+                @Override
+                public boolean parse(@NotNull LightInlineParser inlineParser) {
+                    ProgressManager.checkCanceled();
+                    return false;
+                }
+            };
+        }
+
+        @Nullable
+        @Override
+        public Set<Class<?>> getAfterDependents() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public Set<Class<?>> getBeforeDependents() {
+            return null;
+        }
+
+        @Override
+        public boolean affectsGlobalScope() {
+            return false;
+        }
+    }
+
+    static class RendererFactory implements NodeRendererFactory {
+        @NotNull
+        @Override
+        public NodeRenderer apply(@NotNull DataHolder options) {
+            return new NodeRenderer() {
+                @Override
+                public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+                    return new HashSet<>(Collections.singletonList(new NodeRenderingHandler<>(Document.class, this::render)));
+                }
+
+                void render(Document document, NodeRendererContext context, HtmlWriter html) {
+                    if (document != context.getDocument()) {
+                        context.delegateRender();
+                        return;
+                    }
+
+                    for (Node block : document.getChildren()) {
+                        ProgressManager.checkCanceled();
+                        context.render(block);
+                    }
+                }
+            };
+        }
+    }
+}
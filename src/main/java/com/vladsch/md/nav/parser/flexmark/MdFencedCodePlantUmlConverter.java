@@ -2,12 +2,14 @@
 
 package com.vladsch.md.nav.parser.flexmark;
 
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
 import com.vladsch.flexmark.util.html.Attributes;
 import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.flexmark.util.sequence.Escaping;
 import com.vladsch.md.nav.MdBundle;
 import com.vladsch.md.nav.MdImageCache;
+import com.vladsch.md.nav.MdProjectComponent;
 import com.vladsch.md.nav.parser.api.MdFencedCodeImage;
 import com.vladsch.md.nav.parser.api.MdFencedCodeImageConverter;
 import com.vladsch.md.nav.parser.api.MdImageFencedCode;
@@ -20,8 +22,15 @@ import net.sourceforge.plantuml.SourceStringReader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,6 +41,7 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
     final public static String PLANTUML_LANGUAGE_INFO = "plantuml";
     final public static String[] INFO_STRINGS = { PLANTUML_LANGUAGE_INFO, PUML_LANGUAGE_INFO };
     final public static String PLANT_UML_CACHE_SIGNATURE = "PlantUML:";
+    final public static String PLANT_UML_PLACEHOLDER_SIGNATURE = "PlantUML:placeholder";
     public static final String EMBEDDED = "EMBEDDED";
     final public static String[] CONVERSION_VARIANTS = {
             "NONE",
@@ -53,7 +63,8 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             MdBundle.message("plant-uml.conversion.gravizo-svg.description"),
     };
 
-    private static final Pattern UML_INCLUDE_PATTERN = Pattern.compile("^\\s*!include\\s+(.+)\\s*$", Pattern.MULTILINE);
+    private static final Pattern UML_INCLUDE_PATTERN = Pattern.compile("^\\s*!(?:include|include_many|include_once|includesub|import)\\s+(.+)\\s*$", Pattern.MULTILINE);
+    private static final Pattern UML_IMAGE_PATTERN = Pattern.compile("<img:([^>{]+)(?:\\{[^}>]*})?>");
 
     @NotNull
     @Override
@@ -141,6 +152,12 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
     @Nullable
     @Override
     public MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver) {
+        return imageUrl(content, info, variant, renderingProfile, resolver, false);
+    }
+
+    @Nullable
+    @Override
+    public MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver, boolean deferConversion) {
         PlantUmlConversionType conversionType = PlantUmlConversionType.ADAPTER.findEnumNameOrNull(variant);
         if (conversionType == null) {
             conversionType = PlantUmlConversionType.NONE;
@@ -150,10 +167,10 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             boolean embedded = conversionType.isEmbedded();
 
             if ((info.equals(PUML_LANGUAGE_INFO))) {
-                String url = getUrl(content, resolver, conversionType, true, !embedded);
+                String url = getUrl(content, resolver, conversionType, true, !embedded, deferConversion);
                 return new MdFencedCodeImage(url, conversionType.extension, true, null, null);
             } else if (info.equals(PLANTUML_LANGUAGE_INFO)) {
-                String url = getUrl(content, resolver, conversionType, true, !embedded);
+                String url = getUrl(content, resolver, conversionType, true, !embedded, deferConversion);
                 return new MdFencedCodeImage(url, conversionType.extension, true, null, null);
             }
         }
@@ -161,7 +178,7 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
     }
 
     @NotNull
-    private String getUrl(@NotNull String content, @NotNull MdLinkResolver resolver, PlantUmlConversionType plantUmlFencedCode, boolean wrapInStartEnd, boolean suffixSemi) {
+    private String getUrl(@NotNull String content, @NotNull MdLinkResolver resolver, PlantUmlConversionType plantUmlFencedCode, boolean wrapInStartEnd, boolean suffixSemi, boolean deferConversion) {
         StringBuilder contentText = new StringBuilder();
         CharSequence[] contentLines = content.split("\n");
         int iMax = contentLines.length;
@@ -226,49 +243,119 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             url = plantUmlFencedCode.urlPrefix() + contentUml;
         } else {
             Md5Utils md5 = new Md5Utils();
-            CharSequence contentUml = contentText.toString();
-
             md5.add(contentText);
 
-            Matcher matcher = UML_INCLUDE_PATTERN.matcher(contentText);
-            while (matcher.find()) {
-                String path = matcher.group(1);
-                if (!path.startsWith("<") && !path.endsWith(">")) {
-                    File file = PathInfo.isAbsolute(path) ? new File(path) : new File(resolver.getContainingFile().getPath(), path);
-                    if (file.exists() && file.isFile()) {
-                        md5.add(file);
-                    }
-                }
-            }
-
+            // includes are resolved relative to the containing file's directory, user.dir is JVM global and cannot be changed while diagrams are generated in parallel
+            File baseDir = new File(resolver.getContainingFile().getFilePath()).getParentFile();
+            String contentUml = resolveIncludes(contentText, baseDir != null && baseDir.isDirectory() ? baseDir : null, md5);
             String contentMd5 = md5.getMd5();
 
-            File imageFile = MdImageCache.getInstance().getImageFile(PLANT_UML_CACHE_SIGNATURE + contentMd5, plantUmlFencedCode.extension, file -> {
-                File parentDir = new File(resolver.getContainingFile().getFilePath()).getParentFile();
-                String savedDir = null;
-
-                if (parentDir != null && parentDir.exists() && parentDir.isDirectory()) {
-                    savedDir = System.getProperty("user.dir");
-                    String absolutePath = parentDir.getAbsolutePath();
-                    System.setProperty("user.dir", absolutePath);
-                }
-
+            Consumer<File> fileWriter = file -> {
+                SourceStringReader planUmlReader = new SourceStringReader(contentUml);
                 try {
-                    SourceStringReader planUmlReader = new SourceStringReader(contentUml.toString());
-                    try {
-                        planUmlReader.outputImage(file);
-                    } catch (IOException | IllegalArgumentException e) {
-                        e.printStackTrace();
-                    }
-                } finally {
-                    if (savedDir != null) {
-                        System.setProperty("user.dir", savedDir);
+                    planUmlReader.outputImage(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            File imageFile;
+            if (deferConversion) {
+                Project project = resolver.getProject();
+                imageFile = MdImageCache.getInstance().getImageFileOrSchedule(PLANT_UML_CACHE_SIGNATURE + contentMd5, plantUmlFencedCode.extension, fileWriter, () -> {
+                    if (project != null && !project.isDisposed()) {
+                        MdProjectComponent.getInstance(project).imageFilesChanged();
                     }
+                });
+
+                if (imageFile == null) {
+                    imageFile = getPlaceholderFile();
                 }
-            });
+            } else {
+                imageFile = MdImageCache.getInstance().getImageFile(PLANT_UML_CACHE_SIGNATURE + contentMd5, plantUmlFencedCode.extension, fileWriter);
+            }
 
             url = "file://" + FileUtil.toSystemIndependentName(imageFile.getPath());
         }
         return url;
     }
+
+    /**
+     * Replace relative include, import and image paths with absolute paths and add referenced files to md5
+     *
+     * @param contentText diagram text
+     * @param baseDir     directory for relative paths
+     * @param md5         md5 of diagram content
+     *
+     * @return diagram text with resolved paths
+     */
+    @NotNull
+    static String resolveIncludes(@NotNull CharSequence contentText, @Nullable File baseDir, @NotNull Md5Utils md5) {
+        String resolved = resolvePaths(contentText, UML_INCLUDE_PATTERN, baseDir, md5);
+        return resolvePaths(resolved, UML_IMAGE_PATTERN, baseDir, md5);
+    }
+
+    @NotNull
+    private static String resolvePaths(@NotNull CharSequence contentText, @NotNull Pattern pattern, @Nullable File baseDir, @NotNull Md5Utils md5) {
+        StringBuilder sb = null;
+        int lastPos = 0;
+
+        Matcher matcher = pattern.matcher(contentText);
+        while (matcher.find()) {
+            String path = matcher.group(1).trim();
+            if (path.startsWith("<") || path.endsWith(">")) continue;
+
+            // !include file!id, file!1 or !includesub file!BLOCK select part of the file
+            String suffix = "";
+            int pos = path.lastIndexOf('!');
+            if (pos > 0) {
+                suffix = path.substring(pos);
+                path = path.substring(0, pos);
+            }
+
+            boolean isAbsolute = PathInfo.isAbsolute(path);
+            File file = isAbsolute ? new File(path) : new File(baseDir, path);
+            if ((isAbsolute || baseDir != null) && file.exists() && file.isFile()) {
+                md5.add(file);
+
+                if (!isAbsolute) {
+                    if (sb == null) sb = new StringBuilder(contentText.length() + 256);
+                    sb.append(contentText, lastPos, matcher.start(1));
+                    sb.append(FileUtil.toSystemIndependentName(file.getAbsolutePath())).append(suffix);
+                    lastPos = matcher.end(1);
+                }
+            }
+        }
+
+        if (sb == null) return contentText.toString();
+        sb.append(contentText, lastPos, contentText.length());
+        return sb.toString();
+    }
+
+    /**
+     * Image shown while the diagram is generated in the background
+     *
+     * @return placeholder image file
+     */
+    @NotNull
+    static File getPlaceholderFile() {
+        return MdImageCache.getInstance().getImageFile(PLANT_UML_PLACEHOLDER_SIGNATURE, ".png", file -> {
+            BufferedImage image = new BufferedImage(200, 40, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setColor(Color.GRAY);
+                graphics.drawRect(0, 0, 199, 39);
+                graphics.drawString(MdBundle.message("plant-uml.conversion.pending"), 10, 24);
+            } finally {
+                graphics.dispose();
+            }
+
+            try {
+                ImageIO.write(image, "png", file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
 }
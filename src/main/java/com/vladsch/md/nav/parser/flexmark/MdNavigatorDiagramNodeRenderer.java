@@ -48,11 +48,13 @@ public class MdNavigatorDiagramNodeRenderer implements NodeRenderer {
 
     final private @NotNull Supplier<? extends MdRenderingProfile> myRenderingProfileSupplier;
     final private @NotNull Supplier<? extends MdLinkResolver> myLinkResolverSupplier;
+    final private boolean myDeferImageConversion;
     private MdFencedCodeImageConversionManager myImageConversionManager;
 
     public MdNavigatorDiagramNodeRenderer(DataHolder options) {
         myLinkResolverSupplier = MdNavigatorExtension.LINK_RESOLVER.get(options);
         myRenderingProfileSupplier = MdNavigatorExtension.RENDERING_PROFILE.get(options);
+        myDeferImageConversion = MdNavigatorExtension.DEFER_IMAGE_CONVERSION.get(options);
     }
 
     @Nullable
@@ -95,7 +97,7 @@ public class MdNavigatorDiagramNodeRenderer implements NodeRenderer {
                 MdFencedCodeImageConverter converter = imageConversionManager.getImageConverter(infoString, conversionVariant);
                 if (converter != null) {
                     String content = nodeInfo.getBuilder().addAll(node.getContentLines()).toString();
-                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver);
+                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver, myDeferImageConversion);
                     if (codeImage != null) {
                         renderImageUrl(codeImage.url, node.getChars(), context, html, codeImage.imageAttributes, codeImage.isBlock, codeImage.blockAttributes);
                     } else {
@@ -123,7 +125,7 @@ public class MdNavigatorDiagramNodeRenderer implements NodeRenderer {
                 MdFencedCodeImageConverter converter = imageConversionManager.getImageConverter(infoString, conversionVariant);
                 if (converter != null) {
                     String content = node.getText().toString();
-                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver);
+                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver, myDeferImageConversion);
                     if (codeImage != null) {
                         renderImageUrl(codeImage.url, node.getChars(), context, html, codeImage.imageAttributes, false, null);
                         return;
@@ -4,6 +4,7 @@ package com.vladsch.md.nav.parser.flexmark;
 
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.html.renderer.LinkStatus;
+import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.data.DataKey;
 import com.vladsch.flexmark.util.data.MutableDataHolder;
 import com.vladsch.flexmark.util.data.NullableDataKey;
@@ -15,7 +16,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Map;
 import java.util.function.Supplier;
 
-public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRenderer.HtmlRendererExtension {
+public class MdNavigatorExtension implements Parser.ParserExtension, HtmlRenderer.HtmlRendererExtension {
     final static public DataKey<Supplier<? extends MdLinkResolver>> LINK_RESOLVER = new DataKey<>("LINK_RESOLVER", (Supplier<? extends MdLinkResolver>) () -> null);
     final static public DataKey<Supplier<? extends MdRenderingProfile>> RENDERING_PROFILE = new DataKey<>("RENDERING_PROFILE", (Supplier<? extends MdRenderingProfile>) () -> null);
     final static public NullableDataKey<Map<String, String>> HTML_IMAGE_FILE_MAP = new NullableDataKey<>("HTML_IMAGE_FILE_MAP");
@@ -27,15 +28,31 @@ public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRen
     final static public DataKey<Boolean> IS_WIKI_PAGE = new DataKey<>("IS_WIKI_PAGE", false);
     final static public DataKey<Boolean> LINK_TO_EXPORTED_HTML = new DataKey<>("LINK_TO_EXPORTED_HTML", false);
     final static public DataKey<Boolean> HTML_EXPORT = new DataKey<>("HTML_EXPORT", false);
+    final static public DataKey<Boolean> DEFER_IMAGE_CONVERSION = new DataKey<>("DEFER_IMAGE_CONVERSION", false);
+    final static public DataKey<Boolean> CHECK_CANCELED = new DataKey<>("CHECK_CANCELED", false);
     final static public LinkStatus LOCAL_ONLY = new LinkStatus("LOCAL_ONLY");
     final static public String FILE_URI_PREFIX = "file://";
     final public static String SOURCE_POSITION_ATTRIBUTE_NAME = "md-pos";
     final static public NullableDataKey<Map<Range, String>> HIGHLIGHT_RANGES = new NullableDataKey<>("HIGHLIGHT_RANGES");
+    final static public NullableDataKey<MdBlockHtmlCache.Render> BLOCK_HTML_CACHE = new NullableDataKey<>("BLOCK_HTML_CACHE");
 
     static public MdNavigatorExtension create() {
         return new MdNavigatorExtension();
     }
 
+    @Override
+    public void parserOptions(final MutableDataHolder options) {
+
+    }
+
+    @Override
+    public void extend(Parser.Builder parserBuilder) {
+        if (CHECK_CANCELED.get(parserBuilder)) {
+            parserBuilder.customBlockParserFactory(new MdCheckCanceledExtension.BlockFactory());
+            parserBuilder.customInlineParserExtensionFactory(new MdCheckCanceledExtension.InlineFactory());
+        }
+    }
+
     @Override
     public void rendererOptions(@NotNull final MutableDataHolder options) {
 
@@ -51,6 +68,12 @@ public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRen
                 rendererBuilder.attributeProviderFactory(new FlexmarkAttributeProvider.Factory());
                 if (HIGHLIGHT_RANGES.get(rendererBuilder) != null) {
                     rendererBuilder.nodeRendererFactory(new MdNavigatorNodeRenderer.Factory());
+                } else if (BLOCK_HTML_CACHE.get(rendererBuilder) != null && !(USE_SWING_ATTRIBUTES.get(rendererBuilder) && IS_WIKI_PAGE.get(rendererBuilder))) {
+                    // highlight ranges are document offsets and swing wiki page first heading attributes depend on rendering all blocks
+                    rendererBuilder.nodeRendererFactory(new MdBlockHtmlCacheNodeRenderer.Factory());
+                } else if (CHECK_CANCELED.get(rendererBuilder)) {
+                    // block cache renderer already checks before each top level block
+                    rendererBuilder.nodeRendererFactory(new MdCheckCanceledExtension.RendererFactory());
                 }
                 break;
         }
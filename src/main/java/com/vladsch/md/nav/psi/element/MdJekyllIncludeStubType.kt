@@ -11,6 +11,7 @@ import com.intellij.psi.tree.IElementType
 import com.intellij.util.CharTable
 import com.vladsch.md.nav.MdLanguage
 import com.vladsch.md.nav.psi.index.MdLinkElementIndex
+import com.vladsch.md.nav.psi.index.MdLinkTargetIndex
 import com.vladsch.md.nav.psi.util.MdTypes
 import java.io.IOException
 
@@ -40,6 +41,10 @@ class MdJekyllIncludeStubType(debugName: String) :
 
     override fun indexStub(stub: MdJekyllIncludeStub, sink: IndexSink) {
         sink.occurrence(MdLinkElementIndex.KEY, stub.linkRefWithAnchorText)
+
+        for (key in MdLinkTargetIndex.getLinkKeys(stub.linkRefWithAnchorText)) {
+            sink.occurrence(MdLinkTargetIndex.KEY, key)
+        }
     }
 
     override fun createStub(tree: LighterAST, node: LighterASTNode, parentStub: StubElement<*>): MdJekyllIncludeStub {
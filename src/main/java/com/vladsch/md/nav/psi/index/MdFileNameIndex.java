@@ -0,0 +1,109 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.ArchiveFileSystem;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.ScalarIndexExtension;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.vladsch.md.nav.parser.MdFileElementType;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Index of project files by lower-cased file name and every prefix of the file name ending before a '.'
+ * <p>
+ * The platform file name index only supports exact names, this one also finds names with any extension. Files inside
+ * archives are not indexed, so library jars do not add to the index size.
+ * <p>
+ * A link to "Page" can resolve to "Page", "page.md" or "Page.kt.md" so lookup by "page" returns all candidates
+ * which then need to be verified against the link matcher's pattern.
+ */
+public class MdFileNameIndex extends ScalarIndexExtension<String> {
+    @NonNls public static final ID<String, Void> NAME = ID.create("markdown.file-name.index");
+    private final MyDataIndexer myDataIndexer = new MyDataIndexer();
+
+    @Override
+    @NotNull
+    public ID<String, Void> getName() {
+        return NAME;
+    }
+
+    @Override
+    @NotNull
+    public DataIndexer<String, Void, FileContent> getIndexer() {
+        return myDataIndexer;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        // contents of library jars and other archives are never link targets
+        return file -> !file.isDirectory() && !(file.getFileSystem() instanceof ArchiveFileSystem);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return false;
+    }
+
+    @Override
+    public int getVersion() {
+        // input filter changed, archive contents are no longer indexed
+        return MdFileElementType.MD_INDEX_VERSION + 1;
+    }
+
+    @NotNull
+    static Map<String, Void> getKeys(@NotNull String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        Map<String, Void> keys = new HashMap<>();
+        keys.put(name, null);
+
+        int pos = name.indexOf('.', 1);
+        while (pos > 0) {
+            keys.put(name.substring(0, pos), null);
+            pos = name.indexOf('.', pos + 1);
+        }
+        return keys;
+    }
+
+    private static class MyDataIndexer implements DataIndexer<String, Void, FileContent> {
+        MyDataIndexer() {}
+
+        @Override
+        @NotNull
+        public Map<String, Void> map(@NotNull final FileContent inputData) {
+            return getKeys(inputData.getFileName());
+        }
+    }
+
+    /**
+     * Get files whose name is fileName, ignoring case, or starts with fileName followed by '.'
+     *
+     * @param fileName file name without extension or with partial extension
+     * @param scope    search scope
+     *
+     * @return candidate files, caller must verify case sensitive match
+     */
+    @NotNull
+    public static Collection<VirtualFile> getFilesByNamePrefix(@NotNull String fileName, @NotNull GlobalSearchScope scope) {
+        return FileBasedIndex.getInstance().getContainingFiles(NAME, fileName.toLowerCase(Locale.ROOT), scope);
+    }
+}
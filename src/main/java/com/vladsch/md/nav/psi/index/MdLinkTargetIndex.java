@@ -0,0 +1,90 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.psi.stubs.StubIndexKey;
+import com.vladsch.md.nav.psi.element.MdLinkElement;
+import com.vladsch.md.nav.util.LinkRef;
+import com.vladsch.md.nav.util.PathInfo;
+import com.vladsch.md.nav.util.WikiLinkRef;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Index of link elements by the file name their link address refers to
+ * <p>
+ * Each link is indexed under the file name without extension of its decoded address and under the wiki page name of
+ * its address, so references to a file are looked up by the file's keys instead of testing every link address.
+ * Keys only select candidates, the links still need to be resolved to verify they refer to the file.
+ */
+public class MdLinkTargetIndex extends MdStubIndexExtension<MdLinkElement> {
+    public static final StubIndexKey<String, MdLinkElement> KEY = StubIndexKey.createIndexKey("markdown.link-target.index");
+    private static final MdLinkTargetIndex ourInstance = new MdLinkTargetIndex();
+
+    // keeps wiki page name keys apart from file name keys, file names do not start with it in practice
+    public static final String WIKI_KEY_PREFIX = "[[";
+
+    public static MdLinkTargetIndex getInstance() {
+        return ourInstance;
+    }
+
+    @NotNull
+    public StubIndexKey<String, MdLinkElement> getKey() {
+        return KEY;
+    }
+
+    /**
+     * Keys under which a link is indexed
+     *
+     * @param linkRefWithAnchorText link address with anchor, as stored in the link element stub
+     *
+     * @return index keys
+     */
+    @NotNull
+    public static Set<String> getLinkKeys(@NotNull String linkRefWithAnchorText) {
+        Set<String> keys = new LinkedHashSet<>();
+        int pos = linkRefWithAnchorText.indexOf('#');
+        String linkAddress = pos >= 0 ? linkRefWithAnchorText.substring(0, pos) : linkRefWithAnchorText;
+
+        keys.add(new PathInfo(LinkRef.urlDecode(linkAddress)).getFileNameNoExt());
+
+        String wikiPageName = WikiLinkRef.linkAsFile(linkAddress);
+        keys.add(WIKI_KEY_PREFIX + wikiPageName);
+
+        if (pos >= 0) {
+            // wiki page names can contain anchor looking text
+            keys.add(WIKI_KEY_PREFIX + wikiPageName + linkRefWithAnchorText.substring(pos));
+        }
+        return keys;
+    }
+
+    /**
+     * Keys of links which can refer to a file
+     *
+     * @param fileName   name of the file
+     * @param isWikiPage true if the file is a wiki page, whose links use wiki page names
+     *
+     * @return index keys to look up
+     */
+    @NotNull
+    public static Set<String> getFileKeys(@NotNull String fileName, boolean isWikiPage) {
+        Set<String> keys = new LinkedHashSet<>();
+        PathInfo pathInfo = new PathInfo(fileName);
+
+        if (!isWikiPage) {
+            keys.add(pathInfo.getFileNameNoExt());
+        } else {
+            for (String name : new String[] { pathInfo.getFileNameNoExt(), pathInfo.getFileName() }) {
+                keys.add(WIKI_KEY_PREFIX + WikiLinkRef.linkAsFile(name));
+
+                int pos = name.indexOf('#');
+                if (pos >= 0) {
+                    keys.add(WIKI_KEY_PREFIX + WikiLinkRef.linkAsFile(name.substring(0, pos)) + name.substring(pos));
+                }
+            }
+        }
+        return keys;
+    }
+}
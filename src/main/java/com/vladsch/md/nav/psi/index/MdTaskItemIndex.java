@@ -0,0 +1,279 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.lang.LighterAST;
+import com.intellij.lang.LighterASTNode;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.PsiDependentFileContent;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.parser.MdFileElementType;
+import com.vladsch.md.nav.psi.element.MdTaskItemType;
+import com.vladsch.md.nav.psi.util.MdTokenSets;
+import com.vladsch.md.nav.psi.util.MdTypes;
+import com.vladsch.md.nav.util.format.TaskItemCounts;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of task list items of Markdown files
+ * <p>
+ * Files with task items have a single key whose value holds the offset and state of every task item in the file, taken
+ * from the same lighter AST as stubs. Task counts of a file are available without its PSI, see
+ * {@link com.vladsch.md.nav.util.format.MdTaskItemStatsManager} for project totals.
+ */
+public class MdTaskItemIndex extends FileBasedIndexExtension<String, MdTaskItemIndex.TaskItems> {
+    @NonNls public static final ID<String, TaskItems> NAME = ID.create("markdown.task-item.index");
+    @NonNls public static final String TASK_ITEMS_KEY = "task-items";
+
+    private final MyDataIndexer myDataIndexer = new MyDataIndexer();
+    private final MyDataExternalizer myDataExternalizer = new MyDataExternalizer();
+
+    /**
+     * Task items of a file, in file order
+     */
+    public static class TaskItems {
+        static final byte INCOMPLETE = 0;
+        static final byte COMPLETE = 1;
+        static final byte EMPTY = 2;
+
+        final int[] myOffsets;
+        final byte[] myStates;
+
+        TaskItems(int[] offsets, byte[] states) {
+            myOffsets = offsets;
+            myStates = states;
+        }
+
+        public int size() {
+            return myOffsets.length;
+        }
+
+        /**
+         * @param index task item index
+         *
+         * @return start offset of task list item in the file
+         */
+        public int getOffset(int index) {
+            return myOffsets[index];
+        }
+
+        @NotNull
+        public MdTaskItemType getTaskItemType(int index) {
+            return myStates[index] == COMPLETE ? MdTaskItemType.COMPLETE : MdTaskItemType.INCOMPLETE;
+        }
+
+        public boolean isEmptyItem(int index) {
+            return myStates[index] == EMPTY;
+        }
+
+        /**
+         * @return counts of items, empty items are only counted as empty
+         */
+        @NotNull
+        public TaskItemCounts getCounts() {
+            TaskItemCounts counts = new TaskItemCounts();
+            for (byte state : myStates) {
+                switch (state) {
+                    case COMPLETE:
+                        counts.completeItems++;
+                        break;
+                    case EMPTY:
+                        counts.emptyItems++;
+                        break;
+                    default:
+                        counts.incompleteItems++;
+                        break;
+                }
+            }
+            return counts;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TaskItems)) return false;
+
+            TaskItems items = (TaskItems) o;
+            return Arrays.equals(myOffsets, items.myOffsets) && Arrays.equals(myStates, items.myStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(myOffsets) + Arrays.hashCode(myStates);
+        }
+    }
+
+    @Override
+    @NotNull
+    public ID<String, TaskItems> getName() {
+        return NAME;
+    }
+
+    @Override
+    @NotNull
+    public DataIndexer<String, TaskItems, FileContent> getIndexer() {
+        return myDataIndexer;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<TaskItems> getValueExternalizer() {
+        return myDataExternalizer;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(MdFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return MdFileElementType.MD_INDEX_VERSION;
+    }
+
+    private static class MyDataIndexer implements DataIndexer<String, TaskItems, FileContent> {
+        MyDataIndexer() {}
+
+        @Override
+        @NotNull
+        public Map<String, TaskItems> map(@NotNull final FileContent inputData) {
+            LighterAST tree = ((PsiDependentFileContent) inputData).getLighterAST();
+            TaskItemsBuilder builder = new TaskItemsBuilder();
+            builder.addTaskItems(tree, tree.getRoot());
+
+            if (builder.size == 0) return Collections.emptyMap();
+            return Collections.singletonMap(TASK_ITEMS_KEY, builder.build());
+        }
+    }
+
+    private static class TaskItemsBuilder {
+        int[] offsets = new int[16];
+        byte[] states = new byte[16];
+        int size;
+
+        TaskItemsBuilder() {}
+
+        void addTaskItems(@NotNull LighterAST tree, @NotNull LighterASTNode node) {
+            List<LighterASTNode> children = tree.getChildren(node);
+            IElementType type = node.getTokenType();
+
+            if ((type == MdTypes.BULLET_LIST_ITEM || type == MdTypes.ORDERED_LIST_ITEM) && children.size() > 1) {
+                // same as MdListItem, task item marker follows the list item marker
+                IElementType markerType = children.get(1).getTokenType();
+                if (MdTokenSets.TASK_LIST_ITEM_MARKERS.contains(markerType)) {
+                    add(node.getStartOffset(), markerType == MdTypes.TASK_DONE_ITEM_MARKER ? TaskItems.COMPLETE : isEmptyItem(children) ? TaskItems.EMPTY : TaskItems.INCOMPLETE);
+                }
+            }
+
+            for (LighterASTNode child : children) {
+                addTaskItems(tree, child);
+            }
+        }
+
+        static boolean isEmptyItem(@NotNull List<LighterASTNode> children) {
+            for (LighterASTNode child : children) {
+                if (!MdTokenSets.LIST_ITEM_MARKER_OR_WHITESPACE_SET.contains(child.getTokenType())) {
+                    return MdTokenSets.EOL_OR_BLANK_LINE_SET.contains(child.getTokenType());
+                }
+            }
+            return true;
+        }
+
+        void add(int offset, byte state) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            offsets[size] = offset;
+            states[size] = state;
+            size++;
+        }
+
+        @NotNull
+        TaskItems build() {
+            return new TaskItems(Arrays.copyOf(offsets, size), Arrays.copyOf(states, size));
+        }
+    }
+
+    private static class MyDataExternalizer implements DataExternalizer<TaskItems> {
+        MyDataExternalizer() {}
+
+        @Override
+        public void save(@NotNull DataOutput out, TaskItems value) throws IOException {
+            int size = value.size();
+            DataInputOutputUtil.writeINT(out, size);
+
+            // offsets are ascending, store differences
+            int lastOffset = 0;
+            for (int i = 0; i < size; i++) {
+                DataInputOutputUtil.writeINT(out, value.myOffsets[i] - lastOffset);
+                out.writeByte(value.myStates[i]);
+                lastOffset = value.myOffsets[i];
+            }
+        }
+
+        @Override
+        public TaskItems read(@NotNull DataInput in) throws IOException {
+            int size = DataInputOutputUtil.readINT(in);
+            int[] offsets = new int[size];
+            byte[] states = new byte[size];
+
+            int lastOffset = 0;
+            for (int i = 0; i < size; i++) {
+                lastOffset += DataInputOutputUtil.readINT(in);
+                offsets[i] = lastOffset;
+                states[i] = in.readByte();
+            }
+            return new TaskItems(offsets, states);
+        }
+    }
+
+    /**
+     * Get task items of a file from the index
+     *
+     * @param project project
+     * @param file    file
+     *
+     * @return task items or null if the file has none
+     */
+    @Nullable
+    public static TaskItems getTaskItems(@NotNull Project project, @NotNull VirtualFile file) {
+        List<TaskItems> values = FileBasedIndex.getInstance().getValues(NAME, TASK_ITEMS_KEY, GlobalSearchScope.fileScope(project, file));
+        return values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -11,13 +11,12 @@ import com.intellij.psi.PsiReference
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.util.Processor
 import com.vladsch.md.nav.psi.element.*
-import com.vladsch.md.nav.psi.index.MdLinkElementIndex
+import com.vladsch.md.nav.psi.index.MdLinkTargetIndex
 import com.vladsch.md.nav.psi.index.MdReferenceableTextIndex
 import com.vladsch.md.nav.psi.text.MdPlainTextElementImpl
 import com.vladsch.md.nav.psi.text.MdPlainTextElementPsiReference
 import com.vladsch.md.nav.util.*
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
-import java.util.regex.PatternSyntaxException
 
 class MdIndexUtil {
     companion object {
@@ -44,65 +43,16 @@ class MdIndexUtil {
 
             val pathInfo = PathInfo(refElement.name)
             val fileNameNoExt = pathInfo.fileNameNoExt
-            val fileName = pathInfo.fileName
-            val keys = ArrayList<String>()
-
-            MdLinkElementIndex.getInstance().processAllKeys(project) { key ->
-                //                System.out.println("Key: $key")
-                val linkRefAddress: String
-                var linkAnchor: String? = null
-                val pos = key.indexOf('#')
-                if (pos >= 0) {
-                    // chop off at last # and use that
-                    if (matchLinkAnchor) linkAnchor = "#" + key.substring(pos + 1)
-                    linkRefAddress = linkAsFileName(key.substring(0, pos))
-                } else {
-                    linkRefAddress = linkAsFileName(key)
-                }
-
-                if (useWikiPageMatching) {
-                    // have to match several characters for spaces
-                    var handled = false
-                    try {
-                        val regex = WikiLinkRef.linkAsFileRegex(linkRefAddress).toRegex()
-                        if (fileNameNoExt.matches(regex) || fileName.matches(regex)) {
-                            // have possible match, we process this key now
-                            keys.add(key)
-                            handled = true
-                        }
-                    } catch (e: PatternSyntaxException) {
-                        // invalid link address, happens when url is wrapped in ()
-                        handled = true
-                    }
+            val processedLinks = HashSet<MdLinkElement<*>>()
 
-                    if (linkAnchor != null && !handled) {
-                        // wiki pages can have anchor looking text embedded in them, include matches just in case
-                        try {
-                            val regex1 = "$linkRefAddress\\Q$linkAnchor\\E".toRegex()
-                            if (fileNameNoExt.matches(regex1) || fileName.matches(regex1)) {
-                                // have possible match, we process this key now
-                                keys.add(key)
-                            }
-                        } catch (e: PatternSyntaxException) {
-                            // invalid link address, happens when url is wrapped in ()
-                        }
-                    }
-                } else {
-                    if (fileNameNoExt == linkRefAddress) {
-                        // have possible match, we process this key now
-                        keys.add(key)
-                    }
-                }
-
-                true
-            }
-
-            for (key in keys) {
+            // only links whose address can refer to the file by name are candidates
+            for (key in MdLinkTargetIndex.getFileKeys(refElement.name, useWikiPageMatching)) {
                 try {
-                    val links: MutableCollection<*> = MdLinkElementIndex.getInstance().get(key, project, effectiveSearchScope)
+                    val links: MutableCollection<*> = MdLinkTargetIndex.getInstance().get(key, project, effectiveSearchScope)
                     for (link in links) {
                         // diagnostic/3117, ClassCastException: cannot be cast to MdLinkElement
                         if (link !is MdLinkElement<*>) continue
+                        if (!processedLinks.add(link)) continue
                         assert(MdPsiImplUtil.inScope(effectiveSearchScope, link.containingFile))
 
                         val reference = link.linkRefElement?.reference ?: continue
@@ -121,7 +71,7 @@ class MdIndexUtil {
                 }
             }
 
-            keys.clear()
+            val keys = ArrayList<String>()
 
             // plain text file reference search with processing
             MdReferenceableTextIndex.getInstance().processAllKeys(project) { key ->
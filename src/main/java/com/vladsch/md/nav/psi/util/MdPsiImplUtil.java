@@ -12,6 +12,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.impl.source.tree.LeafPsiElement;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.vladsch.flexmark.util.misc.CharPredicate;
 import com.vladsch.flexmark.util.misc.Utils;
 import com.vladsch.flexmark.util.sequence.BasedSequence;
@@ -759,6 +760,20 @@ public class MdPsiImplUtil {
             String referenceId,
             boolean wantOuterElements
     ) {
+        if (referenceId != null && (!wantOuterElements || PsiTreeUtil.getContextOfType(containingFile, MdFile.class) == null)) {
+            // cached map has candidates ignoring case, filter the same as the full scan below
+            ArrayList<MdAnchorTarget> elements = new ArrayList<>();
+            for (MdAnchorTarget anchorTarget : MdCachedFileElements.getAnchorTargets(containingFile, referenceId)) {
+                if (anchorTarget instanceof MdRefAnchor) {
+                    if (anchorTarget.isReferenceFor(referenceId)) elements.add(anchorTarget);
+                } else if (anchorTarget instanceof MdAttributeIdValue) {
+                    if (referenceId.equals(anchorTarget.getText())) elements.add(anchorTarget);
+                } else if (referenceId.equals(anchorTarget.getAnchorReferenceId())) {
+                    elements.add(anchorTarget);
+                }
+            }
+            return elements;
+        }
 
         List<MdRefAnchor> anchors = getRefAnchorElements(containingFile, referenceId, wantOuterElements);
         ArrayList<MdAnchorTarget> elements = new ArrayList<>(anchors);
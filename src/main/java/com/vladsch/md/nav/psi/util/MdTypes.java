@@ -3,6 +3,7 @@ package com.vladsch.md.nav.psi.util;
 
 import com.intellij.psi.tree.IElementType;
 import com.vladsch.md.nav.flex.psi.*;
+import com.vladsch.md.nav.parser.MdReparseableElementType;
 import com.vladsch.md.nav.parser.api.MdTypeFactoryRegistry;
 import com.vladsch.md.nav.psi.element.*;
 
@@ -26,7 +27,7 @@ public interface MdTypes {
     IElementType ABBREVIATED = new MdTokenType("ABBREVIATED");
     IElementType ABBREVIATED_TEXT = new MdTokenType("ABBREVIATED_TEXT");
     IElementType ANCHOR_LINK = new MdTokenType("ANCHOR_LINK");
-    IElementType BLOCK_QUOTE = new MdTokenType("BLOCK_QUOTE");
+    IElementType BLOCK_QUOTE = new MdReparseableElementType("BLOCK_QUOTE");
     IElementType BLOCK_QUOTE_MARKER = new MdTokenType("BLOCK_QUOTE_MARKER");
     IElementType ASIDE_BLOCK = new MdTokenType("ASIDE_BLOCK");
     IElementType ASIDE_BLOCK_MARKER = new MdTokenType("ASIDE_BLOCK_MARKER");
@@ -67,7 +68,7 @@ public interface MdTypes {
     IElementType STRIKETHROUGH = new MdTokenType("STRIKETHROUGH");
     IElementType STRIKETHROUGH_TEXT = new MdTokenType("STRIKETHROUGH_TEXT");
     IElementType STRIKETHROUGH_MARKER = new MdTokenType("STRIKETHROUGH_MARKER");
-    IElementType TABLE = new MdTokenType("TABLE");
+    IElementType TABLE = new MdReparseableElementType("TABLE");
     IElementType TABLE_BODY = new MdTokenType("TABLE_BODY");
     IElementType TABLE_HEADER = new MdTokenType("TABLE_HEADER");
     IElementType TABLE_ROW = new MdTokenType("TABLE_ROW");
@@ -122,7 +123,7 @@ public interface MdTypes {
     IElementType TASK_ITEM_MARKER = new MdTokenType("TASK_ITEM_MARKER");
     IElementType TASK_DONE_ITEM_MARKER = new MdTokenType("TASK_DONE_ITEM_MARKER");
     IElementType TEXT = new MdTokenType("TEXT");
-    IElementType PARAGRAPH_BLOCK = new MdTokenType("PARAGRAPH_BLOCK");
+    IElementType PARAGRAPH_BLOCK = new MdReparseableElementType("PARAGRAPH_BLOCK");
     IElementType TEXT_BLOCK = new MdTokenType("TEXT_BLOCK");
 
     IElementType VERBATIM_OPEN = new MdTokenType("VERBATIM_OPEN");
@@ -234,8 +235,8 @@ public interface MdTypes {
     IElementType TOC_KEYWORD = new MdElementType("TOC_KEYWORD");
 
     IElementType HEADER_TEXT = new MdElementType("HEADER_TEXT");
-    IElementType SETEXT_HEADER = new MdElementType("SETEXT_HEADER");
-    IElementType ATX_HEADER = new MdElementType("ATX_HEADER");
+    IElementType SETEXT_HEADER = new MdReparseableElementType("SETEXT_HEADER");
+    IElementType ATX_HEADER = new MdReparseableElementType("ATX_HEADER");
 
     IElementType HTML_BLOCK = new MdElementType("HTML_BLOCK");
     IElementType HTML_BLOCK_TEXT = new MdElementType("HTML_BLOCK_TEXT");
@@ -294,7 +295,7 @@ public interface MdTypes {
     IElementType FLEXMARK_EXAMPLE_OPTION_FILE_EOL_NAME = new MdElementType("FLEXMARK_EXAMPLE_OPTION_FILE_EOL_NAME");
     IElementType FLEXMARK_EXAMPLE_OPTION_DISABLED_NAME = new MdElementType("FLEXMARK_EXAMPLE_OPTION_DISABLED_NAME");
 
-    IElementType VERBATIM = new MdElementType("VERBATIM");
+    IElementType VERBATIM = new MdReparseableElementType("VERBATIM");
     IElementType VERBATIM_LANG = new MdElementType("VERBATIM_LANG");
 
     MdWikiLinkStubElementType WIKI_LINK = new MdWikiLinkStubElementType("WIKI_LINK");
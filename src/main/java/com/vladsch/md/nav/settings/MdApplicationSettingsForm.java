@@ -65,6 +65,8 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
     JComboBox<String> myDocumentIcon;
     JComboBox<String> myWikiIcon;
     private JLabel myImageCacheUse;
+    JSpinner myImageCacheMaxSize;
+    JSpinner myImageCacheMaxAge;
     private JButton myClearImageCache;
     private JPanel myAddToCopyPathPanel;
 
@@ -88,6 +90,8 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
                         component(myCopyUpsourcePathWithLineNumbers, i::getCopyUpsourcePathWithLineNumbers, i::setCopyUpsourcePathWithLineNumbers),
                         component(myUseUpsourceURL, i::getUseUpsourceURL, i::setUseUpsourceURL),
                         component(myZoomFactor, i::getZoomFactor, i::setZoomFactor),
+                        component(myImageCacheMaxSize, i::getImageCacheMaxSize, i::setImageCacheMaxSize),
+                        component(myImageCacheMaxAge, i::getImageCacheMaxAge, i::setImageCacheMaxAge),
                         component(DocumentIconTypes.ADAPTER, myDocumentIcon, i::getDocumentIcon, i::setDocumentIcon),
                         component(DocumentIconTypes.ADAPTER, myWikiIcon, i::getWikiIcon, i::setWikiIcon),
                 };
@@ -119,12 +123,12 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
             imageCacheSizeType = "MB";
             imageCacheUse /= 1024 * 1024;
         }
-        myImageCacheUse.setText(String.format("%,d: %,d %s", cachedFiles, imageCacheUse, imageCacheSizeType));
+        myImageCacheUse.setText(String.format("%,d: %,d %s, %s", cachedFiles, imageCacheUse, imageCacheSizeType, MdImageCache.getInstance().getStatistics()));
     }
 
     void clearImageCache() {
         MdImageCache.getInstance().clearCache();
-        myImageCacheUse.setText("0: 0 B");
+        myImageCacheUse.setText(String.format("0: 0 B, %s", MdImageCache.getInstance().getStatistics()));
     }
 
     private void createUIComponents() {
@@ -146,6 +150,11 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
         JSpinner.NumberEditor decimalFormat = new JSpinner.NumberEditor(myZoomFactor, "0.00");
         myZoomFactor.setEditor(decimalFormat);
 
+        final SpinnerNumberModel imageCacheSizeModel = new SpinnerNumberModel(MdDocumentSettings.DEFAULT_IMAGE_CACHE_MAX_SIZE, MdDocumentSettings.MIN_IMAGE_CACHE_MAX_SIZE, MdDocumentSettings.MAX_IMAGE_CACHE_MAX_SIZE, 10);
+        myImageCacheMaxSize = new JSpinner(imageCacheSizeModel);
+        final SpinnerNumberModel imageCacheAgeModel = new SpinnerNumberModel(MdDocumentSettings.DEFAULT_IMAGE_CACHE_MAX_AGE, MdDocumentSettings.MIN_IMAGE_CACHE_MAX_AGE, MdDocumentSettings.MAX_IMAGE_CACHE_MAX_AGE, 1);
+        myImageCacheMaxAge = new JSpinner(imageCacheAgeModel);
+
         myPopupMenuActions = new JBPopupMenu("Actions");
         final JBMenuItem copyToProjectDefaults = new JBMenuItem(MdBundle.message("settings.actions.popup.copy-to-project-defaults.label"));
         final JBMenuItem copyFromProjectDefaults = new JBMenuItem(MdBundle.message("settings.actions.popup.copy-from-project-defaults.label"));
@@ -26,6 +26,9 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
     var showSizePreferencesDialog: Boolean = false
     var showTextHexDialog: Boolean = false
     var useFileLinkCache: Boolean = true
+    var useLexerDataCache: Boolean = true
+    var useIncrementalLexer: Boolean = true
+    var usePreviewDomPatching: Boolean = true
 
     @Deprecated("Use DocumentSettings instead")
     var yandexFromLanguage: String = "de"
@@ -61,6 +64,9 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         this.showSizePreferencesDialog = other.showSizePreferencesDialog
         this.showTextHexDialog = other.showTextHexDialog
         this.useFileLinkCache = other.useFileLinkCache
+        this.useLexerDataCache = other.useLexerDataCache
+        this.useIncrementalLexer = other.useIncrementalLexer
+        this.usePreviewDomPatching = other.usePreviewDomPatching
 
         if (withExtensions) mySettingsExtensions.copyFrom(other)
     }
@@ -89,7 +95,10 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         StringAttribute("translateTo", true, { yandexToLanguage }, { yandexToLanguage = it }),
         StringAttribute("translateKey", true, { yandexKey }, { yandexKey = it }),
         BooleanAttribute("showTextHexDialog", { showTextHexDialog }, { showTextHexDialog = it }),
-        BooleanAttribute("useFileLinkCache", { useFileLinkCache }, { useFileLinkCache = it })
+        BooleanAttribute("useFileLinkCache", { useFileLinkCache }, { useFileLinkCache = it }),
+        BooleanAttribute("useLexerDataCache", { useLexerDataCache }, { useLexerDataCache = it }),
+        BooleanAttribute("useIncrementalLexer", { useIncrementalLexer }, { useIncrementalLexer = it }),
+        BooleanAttribute("usePreviewDomPatching", { usePreviewDomPatching }, { usePreviewDomPatching = it })
     ))
 
     companion object {
@@ -116,6 +125,9 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         if (showSizePreferencesDialog != other.showSizePreferencesDialog) return false
         if (showTextHexDialog != other.showTextHexDialog) return false
         if (useFileLinkCache != other.useFileLinkCache) return false
+        if (useLexerDataCache != other.useLexerDataCache) return false
+        if (useIncrementalLexer != other.useIncrementalLexer) return false
+        if (usePreviewDomPatching != other.usePreviewDomPatching) return false
 
         return mySettingsExtensions == other
     }
@@ -138,6 +150,9 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         result += 31 * result + showSizePreferencesDialog.hashCode()
         result += 31 * result + showTextHexDialog.hashCode()
         result += 31 * result + useFileLinkCache.hashCode()
+        result += 31 * result + useLexerDataCache.hashCode()
+        result += 31 * result + useIncrementalLexer.hashCode()
+        result += 31 * result + usePreviewDomPatching.hashCode()
         return result
     }
 }
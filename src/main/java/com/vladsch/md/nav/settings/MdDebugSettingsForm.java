@@ -4,7 +4,11 @@ package com.vladsch.md.nav.settings;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.ui.components.JBCheckBox;
+import com.vladsch.md.nav.MdBundle;
+import com.vladsch.md.nav.parser.LexerDataCache;
+import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionManager;
 import com.vladsch.md.nav.settings.api.ApplicationSettingsContainer;
+import com.vladsch.md.nav.vcs.MdLinkPatternCache;
 import com.vladsch.plugin.util.ui.Settable;
 import com.vladsch.plugin.util.ui.SettingsComponents;
 import org.jetbrains.annotations.NotNull;
@@ -36,6 +40,12 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
     JBCheckBox myShowSizePreferencesDialog;
     JBCheckBox myShowTextHexDialog;
     JBCheckBox myUseFileLinkCache;
+    JBCheckBox myUseLexerDataCache;
+    JBCheckBox myUseIncrementalLexer;
+    JBCheckBox myUsePreviewDomPatching;
+    JLabel myCacheStatistics;
+    JLabel myTransactionStatistics;
+    JLabel myLinkPatternStatistics;
     private JPanel myExtensionsPanel;
 
     @Nullable private ActionListener myUpdateListener;
@@ -69,6 +79,9 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
                         notrace("ShowSizePreferencesDialog", component(myShowSizePreferencesDialog, i::getShowSizePreferencesDialog, i::setShowSizePreferencesDialog)),
                         notrace("ShowTextHexDialog", component(myShowTextHexDialog, i::getShowTextHexDialog, i::setShowTextHexDialog)),
                         notrace("UseFileLinkCache", component(myUseFileLinkCache, i::getUseFileLinkCache, i::setUseFileLinkCache)),
+                        notrace("UseLexerDataCache", component(myUseLexerDataCache, i::getUseLexerDataCache, i::setUseLexerDataCache)),
+                        notrace("UseIncrementalLexer", component(myUseIncrementalLexer, i::getUseIncrementalLexer, i::setUseIncrementalLexer)),
+                        notrace("UsePreviewDomPatching", component(myUsePreviewDomPatching, i::getUsePreviewDomPatching, i::setUsePreviewDomPatching)),
                 };
             }
         };
@@ -98,7 +111,9 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
     }
 
     public void updateFormOnReshow(boolean isInitialShow) {
-
+        myCacheStatistics.setText(MdBundle.message("debug.cache-statistics.label", LexerDataCache.getInstance().getStatistics()));
+        myTransactionStatistics.setText(MdBundle.message("debug.transaction-statistics.label", CachedTransactionManager.getStatistics()));
+        myLinkPatternStatistics.setText(MdBundle.message("debug.link-pattern-statistics.label", MdLinkPatternCache.getOpenProjectStatistics()));
     }
 
     @Override
@@ -21,6 +21,8 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
     var hideToolbar: Boolean = false
     var htmlLangInjections: Boolean = true
     var iconGutters: Boolean = true
+    var imageCacheMaxAge: Int = DEFAULT_IMAGE_CACHE_MAX_AGE
+    var imageCacheMaxSize: Int = DEFAULT_IMAGE_CACHE_MAX_SIZE
     var joinStripPrefix: Boolean = false
     var maxBreadcrumbText: Int = DEFAULT_MAX_BREADCRUMB_TEXT
     var multiLineImageUrlInjections: Boolean = true
@@ -109,6 +111,8 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         this.hideToolbar = other.hideToolbar
         this.htmlLangInjections = other.htmlLangInjections
         this.iconGutters = other.iconGutters
+        this.imageCacheMaxAge = other.imageCacheMaxAge
+        this.imageCacheMaxSize = other.imageCacheMaxSize
         this.joinStripPrefix = other.joinStripPrefix
         this.maxBreadcrumbText = other.maxBreadcrumbText
         this.multiLineImageUrlInjections = other.multiLineImageUrlInjections
@@ -159,6 +163,8 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
             BooleanAttribute("hideToolbar", { hideToolbar }, { hideToolbar = it }),
             BooleanAttribute("htmlLangInjections", { htmlLangInjections }, { htmlLangInjections = it }),
             BooleanAttribute("iconGutters", { iconGutters }, { iconGutters = it }),
+            IntAttribute("imageCacheMaxAge", { imageCacheMaxAge }, { imageCacheMaxAge = if (it in MIN_IMAGE_CACHE_MAX_AGE .. MAX_IMAGE_CACHE_MAX_AGE) it else DEFAULT_IMAGE_CACHE_MAX_AGE }),
+            IntAttribute("imageCacheMaxSize", { imageCacheMaxSize }, { imageCacheMaxSize = if (it in MIN_IMAGE_CACHE_MAX_SIZE .. MAX_IMAGE_CACHE_MAX_SIZE) it else DEFAULT_IMAGE_CACHE_MAX_SIZE }),
             BooleanAttribute("joinStripPrefix", { joinStripPrefix }, { joinStripPrefix = it }),
             IntAttribute("maxBreadcrumbText", { maxBreadcrumbText }, { maxBreadcrumbText = it }),
             BooleanAttribute("multiLineImageUrlInjections", { multiLineImageUrlInjections }, { multiLineImageUrlInjections = it }),
@@ -209,6 +215,12 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         const val DEFAULT_PREVIEW_DELAY: Int = 500
         const val MIN_PREVIEW_DELAY: Int = 50
         const val MAX_PREVIEW_DELAY: Int = 1000
+        const val DEFAULT_IMAGE_CACHE_MAX_AGE: Int = 30 // days
+        const val MIN_IMAGE_CACHE_MAX_AGE: Int = 1
+        const val MAX_IMAGE_CACHE_MAX_AGE: Int = 365
+        const val DEFAULT_IMAGE_CACHE_MAX_SIZE: Int = 100 // MB
+        const val MIN_IMAGE_CACHE_MAX_SIZE: Int = 10
+        const val MAX_IMAGE_CACHE_MAX_SIZE: Int = 10000
     }
 
     override fun equals(other: Any?): Boolean {
@@ -225,6 +237,8 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         if (hideToolbar != other.hideToolbar) return false
         if (htmlLangInjections != other.htmlLangInjections) return false
         if (iconGutters != other.iconGutters) return false
+        if (imageCacheMaxAge != other.imageCacheMaxAge) return false
+        if (imageCacheMaxSize != other.imageCacheMaxSize) return false
         if (joinStripPrefix != other.joinStripPrefix) return false
         if (maxBreadcrumbText != other.maxBreadcrumbText) return false
         if (multiLineImageUrlInjections != other.multiLineImageUrlInjections) return false
@@ -268,6 +282,8 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         result += 31 * result + hideToolbar.hashCode()
         result += 31 * result + htmlLangInjections.hashCode()
         result += 31 * result + iconGutters.hashCode()
+        result += 31 * result + imageCacheMaxAge.hashCode()
+        result += 31 * result + imageCacheMaxSize.hashCode()
         result += 31 * result + joinStripPrefix.hashCode()
         result += 31 * result + maxBreadcrumbText.hashCode()
         result += 31 * result + multiLineImageUrlInjections.hashCode()
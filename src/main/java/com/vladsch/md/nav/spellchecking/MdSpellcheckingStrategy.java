@@ -13,6 +13,7 @@ import com.intellij.spellchecker.tokenizer.SpellcheckingStrategy;
 import com.intellij.spellchecker.tokenizer.Tokenizer;
 import com.vladsch.md.nav.parser.LexParserState;
 import com.vladsch.md.nav.parser.MdParserDefinition;
+import com.vladsch.md.nav.parser.MdReparseableElementType;
 import com.vladsch.md.nav.psi.element.MdElementType;
 import com.vladsch.md.nav.psi.element.MdNamedElement;
 import com.vladsch.md.nav.psi.util.MdTokenSets;
@@ -257,7 +258,7 @@ public class MdSpellcheckingStrategy extends SpellcheckingStrategy {
     public Tokenizer<?> getTokenizer(PsiElement element) {
         IElementType elementType = element.getNode().getElementType();
 
-        if (elementType instanceof MdTokenType || elementType instanceof MdElementType) {
+        if (elementType instanceof MdTokenType || elementType instanceof MdElementType || elementType instanceof MdReparseableElementType) {
             // don't spell check individual TEXT elements or the inline emphasis ones, let the parent element be spell checked as a whole so the words are not broken
             if (elementType != COMMENT_TEXT
                     && elementType != BLOCK_COMMENT_TEXT
@@ -4,13 +4,19 @@ package com.vladsch.md.nav.todo;
 import com.intellij.lexer.Lexer;
 import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
 import com.intellij.psi.impl.cache.impl.id.LexerBasedIdIndexer;
-import com.vladsch.md.nav.parser.MdLexParser;
 import org.jetbrains.annotations.NotNull;
 
 public class MdIdIndexer extends LexerBasedIdIndexer {
 
+    /**
+     * Only comments are indexed so a full parse is not needed, {@link MdIndexingLexer} finds comments outside of code
+     *
+     * @param consumer occurrence consumer
+     *
+     * @return filter lexer for id and todo indexing
+     */
     public static Lexer createIndexingLexer(OccurrenceConsumer consumer) {
-        return new MdFilterLexer(MdLexParser.createLexer(null), consumer);
+        return new MdFilterLexer(new MdIndexingLexer(), consumer);
     }
 
     @NotNull
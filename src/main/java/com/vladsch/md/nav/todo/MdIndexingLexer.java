@@ -0,0 +1,308 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.todo;
+
+import com.intellij.lexer.LexerBase;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.vladsch.md.nav.parser.MdPlainTextLexer.HTML_COMMENT_CLOSE_LENGTH;
+import static com.vladsch.md.nav.parser.MdPlainTextLexer.HTML_COMMENT_OPEN_LENGTH;
+import static com.vladsch.md.nav.psi.util.MdTypes.CODE_TEXT;
+import static com.vladsch.md.nav.psi.util.MdTypes.COMMENT_CLOSE;
+import static com.vladsch.md.nav.psi.util.MdTypes.COMMENT_OPEN;
+import static com.vladsch.md.nav.psi.util.MdTypes.COMMENT_TEXT;
+import static com.vladsch.md.nav.psi.util.MdTypes.TEXT;
+import static com.vladsch.md.nav.psi.util.MdTypes.VERBATIM_CONTENT;
+
+/**
+ * Single pass lexer used for id and todo indexing
+ * <p>
+ * Only HTML comments, code spans and fenced code blocks are recognized, everything else is TEXT.
+ * Code is recognized so that comment markers in code are not taken as comments, which is all
+ * {@link MdFilterLexer} needs, without a full flexmark parse of every indexed file.
+ * <p>
+ * Code spans and fenced code are returned as a single token, comments as open, text and close tokens.
+ * The only state carried between tokens is being inside a comment.
+ */
+public class MdIndexingLexer extends LexerBase {
+    public static final int STATE_TEXT = 0;
+    public static final int STATE_COMMENT = 1;
+
+    private CharSequence myBuffer = "";
+    private int myBufferEnd = 0;
+    private int myTokenStart = 0;
+    private int myTokenEnd = 0;
+    private int myTokenState = STATE_TEXT;
+    private IElementType myTokenType = null;
+
+    // code span or fenced code found while scanning text, returned after the preceding text token
+    private int myPendingEnd = -1;
+    private IElementType myPendingType = null;
+
+    public MdIndexingLexer() {
+    }
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        myBuffer = buffer;
+        myBufferEnd = endOffset;
+        myTokenStart = myTokenEnd = startOffset;
+        myTokenState = initialState == STATE_COMMENT ? STATE_COMMENT : STATE_TEXT;
+        myTokenType = null;
+        myPendingEnd = -1;
+        myPendingType = null;
+        advanceToken(myTokenState);
+    }
+
+    @Override
+    public int getState() {
+        return myTokenState;
+    }
+
+    @Nullable
+    @Override
+    public IElementType getTokenType() {
+        return myTokenType;
+    }
+
+    @Override
+    public int getTokenStart() {
+        return myTokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+        return myTokenEnd;
+    }
+
+    @Override
+    public void advance() {
+        advanceToken(myTokenType == COMMENT_OPEN || myTokenType == COMMENT_TEXT ? STATE_COMMENT : STATE_TEXT);
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+        return myBuffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+        return myBufferEnd;
+    }
+
+    private void advanceToken(int state) {
+        int offset = myTokenEnd;
+        myTokenStart = offset;
+        myTokenState = state;
+
+        if (offset >= myBufferEnd) {
+            myTokenType = null;
+            return;
+        }
+
+        if (myPendingType != null) {
+            myTokenType = myPendingType;
+            myTokenEnd = myPendingEnd;
+            myPendingType = null;
+            myPendingEnd = -1;
+            return;
+        }
+
+        if (state == STATE_COMMENT) {
+            if (isCommentClose(offset)) {
+                myTokenType = COMMENT_CLOSE;
+                myTokenEnd = offset + HTML_COMMENT_CLOSE_LENGTH;
+            } else {
+                int end = offset;
+                while (end < myBufferEnd && !isCommentClose(end)) end++;
+                myTokenType = COMMENT_TEXT;
+                myTokenEnd = end;
+            }
+            return;
+        }
+
+        int end = scanText(offset);
+        if (end > offset) {
+            myTokenType = TEXT;
+            myTokenEnd = end;
+        } else if (myPendingType != null) {
+            myTokenType = myPendingType;
+            myTokenEnd = myPendingEnd;
+            myPendingType = null;
+            myPendingEnd = -1;
+        } else {
+            // stopped at comment open
+            myTokenType = COMMENT_OPEN;
+            myTokenEnd = offset + HTML_COMMENT_OPEN_LENGTH;
+        }
+    }
+
+    /**
+     * Scan plain text up to the next comment, code span or fenced code
+     *
+     * @param offset start of text
+     *
+     * @return end of text, when a code span or fenced code stopped the scan it is set as pending
+     */
+    private int scanText(int offset) {
+        int i = offset;
+        boolean lineStart = offset == 0 || myBuffer.charAt(offset - 1) == '\n';
+
+        while (i < myBufferEnd) {
+            if (lineStart) {
+                int fenceEnd = fencedCodeEnd(i);
+                if (fenceEnd > 0) {
+                    setPending(VERBATIM_CONTENT, fenceEnd);
+                    return i;
+                }
+                lineStart = false;
+            }
+
+            char c = myBuffer.charAt(i);
+            switch (c) {
+                case '\n':
+                    lineStart = true;
+                    i++;
+                    break;
+
+                case '\\':
+                    // escaped char cannot start a comment or code span
+                    i += i + 1 < myBufferEnd && myBuffer.charAt(i + 1) != '\n' ? 2 : 1;
+                    break;
+
+                case '<':
+                    if (isCommentOpen(i)) return i;
+                    i++;
+                    break;
+
+                case '`': {
+                    int runEnd = backtickRunEnd(i);
+                    int spanEnd = codeSpanEnd(runEnd, runEnd - i);
+                    if (spanEnd > 0) {
+                        setPending(CODE_TEXT, spanEnd);
+                        return i;
+                    }
+                    i = runEnd;
+                    break;
+                }
+
+                default:
+                    i++;
+                    break;
+            }
+        }
+        return myBufferEnd;
+    }
+
+    private void setPending(@NotNull IElementType type, int end) {
+        myPendingType = type;
+        myPendingEnd = end;
+    }
+
+    private boolean isCommentOpen(int offset) {
+        return offset + 3 < myBufferEnd &&
+                myBuffer.charAt(offset) == '<' &&
+                myBuffer.charAt(offset + 1) == '!' &&
+                myBuffer.charAt(offset + 2) == '-' &&
+                myBuffer.charAt(offset + 3) == '-';
+    }
+
+    private boolean isCommentClose(int offset) {
+        return offset + 2 < myBufferEnd &&
+                myBuffer.charAt(offset) == '-' &&
+                myBuffer.charAt(offset + 1) == '-' &&
+                myBuffer.charAt(offset + 2) == '>';
+    }
+
+    private int backtickRunEnd(int offset) {
+        int i = offset;
+        while (i < myBufferEnd && myBuffer.charAt(i) == '`') i++;
+        return i;
+    }
+
+    private int lineEnd(int offset) {
+        int i = offset;
+        while (i < myBufferEnd && myBuffer.charAt(i) != '\n') i++;
+        return i;
+    }
+
+    private int skipBlanks(int offset, int end) {
+        int i = offset;
+        while (i < end) {
+            char c = myBuffer.charAt(i);
+            if (c != ' ' && c != '\t') break;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Find the end of a code span, closing run of backticks must have the same length and be in the same paragraph
+     *
+     * @param offset    offset after opening backticks
+     * @param runLength number of opening backticks
+     *
+     * @return end of closing backticks or -1 if the span is not closed
+     */
+    private int codeSpanEnd(int offset, int runLength) {
+        int i = offset;
+        while (i < myBufferEnd) {
+            char c = myBuffer.charAt(i);
+            if (c == '`') {
+                int runEnd = backtickRunEnd(i);
+                if (runEnd - i == runLength) return runEnd;
+                i = runEnd;
+            } else if (c == '\n') {
+                int next = skipBlanks(i + 1, myBufferEnd);
+                if (next >= myBufferEnd || myBuffer.charAt(next) == '\n') return -1;
+                i = next;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Test for fenced code start at a line start. Fences are allowed any indent so fenced code in list items is recognized.
+     *
+     * @param offset start of line
+     *
+     * @return end of fenced code, after closing fence line or end of buffer if not closed, -1 if no fence
+     */
+    private int fencedCodeEnd(int offset) {
+        int lineEnd = lineEnd(offset);
+        int i = skipBlanks(offset, lineEnd);
+        if (i >= lineEnd) return -1;
+
+        char fenceChar = myBuffer.charAt(i);
+        if (fenceChar != '`' && fenceChar != '~') return -1;
+
+        int fenceStart = i;
+        while (i < lineEnd && myBuffer.charAt(i) == fenceChar) i++;
+        int fenceLength = i - fenceStart;
+        if (fenceLength < 3) return -1;
+
+        if (fenceChar == '`') {
+            // info string of backtick fence cannot contain backticks
+            for (int j = i; j < lineEnd; j++) {
+                if (myBuffer.charAt(j) == '`') return -1;
+            }
+        }
+
+        int lineStart = lineEnd + 1;
+        while (lineStart < myBufferEnd) {
+            lineEnd = lineEnd(lineStart);
+            i = skipBlanks(lineStart, lineEnd);
+            int closeStart = i;
+            while (i < lineEnd && myBuffer.charAt(i) == fenceChar) i++;
+            if (i - closeStart >= fenceLength && skipBlanks(i, lineEnd) == lineEnd) {
+                return Math.min(lineEnd + 1, myBufferEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return myBufferEnd;
+    }
+}
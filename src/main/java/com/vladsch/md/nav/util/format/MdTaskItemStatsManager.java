@@ -0,0 +1,251 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.util.format;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.IndexNotReadyException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.messages.MessageBusConnection;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.psi.index.MdTaskItemIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project totals of task items from {@link MdTaskItemIndex}
+ * <p>
+ * Counts of every file with task items are kept and only files changed since the last request are read from the index
+ * again, files are never parsed for this. All files are read again after index or project root changes.
+ * <p>
+ * Only project Markdown files and files with counts are recorded as changed, so changes are bounded by the project's
+ * Markdown files. Deleted or moved directories mark only files with counts under them.
+ */
+public class MdTaskItemStatsManager implements Disposable {
+    @NotNull
+    public static MdTaskItemStatsManager getInstance(@NotNull Project project) {
+        return project.getService(MdTaskItemStatsManager.class);
+    }
+
+    final @NotNull Project myProject;
+    final Object myLock = new Object();
+    final @NotNull Set<VirtualFile> myChangedFiles = ContainerUtil.newConcurrentSet();
+    volatile boolean myReadAllFiles = true;
+
+    // modified with myLock held, concurrent so file events can test for files with counts
+    final @NotNull ConcurrentHashMap<VirtualFile, TaskItemCounts> myFileCounts = new ConcurrentHashMap<>();
+    // guarded by myLock
+    final @NotNull TaskItemCounts myTotalCounts = new TaskItemCounts();
+    int myReadFileCount = 0;
+
+    public MdTaskItemStatsManager(@NotNull Project project) {
+        myProject = project;
+        Disposer.register(myProject, this);
+
+        MessageBusConnection messageBusConnection = project.getMessageBus().connect(this);
+
+        messageBusConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                if (myReadAllFiles || myProject.isDisposed()) return;
+
+                for (VFileEvent event : events) {
+                    VirtualFile file = event instanceof VFileCopyEvent ? ((VFileCopyEvent) event).findCreatedFile() : event.getFile();
+                    if (file != null) fileChanged(file);
+                }
+            }
+        });
+
+        messageBusConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+            @Override
+            public void rootsChanged(@NotNull ModuleRootEvent event) {
+                myReadAllFiles = true;
+            }
+        });
+
+        messageBusConnection.subscribe(DumbService.DUMB_MODE, new DumbService.DumbModeListener() {
+            @Override
+            public void exitDumbMode() {
+                myReadAllFiles = true;
+            }
+        });
+
+        // unsaved changes are indexed from the document
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                VirtualFile file = FileDocumentManager.getInstance().getFile(event.getDocument());
+                if (file != null && !myReadAllFiles && isProjectMarkdownFile(file)) {
+                    myChangedFiles.add(file);
+                }
+            }
+        }, this);
+    }
+
+    boolean isProjectMarkdownFile(@NotNull VirtualFile file) {
+        return file.isValid() && FileTypeRegistry.getInstance().isFileOfType(file, MdFileType.INSTANCE)
+                && ProjectRootManager.getInstance(myProject).getFileIndex().isInContent(file);
+    }
+
+    void fileChanged(@NotNull VirtualFile file) {
+        if (file.isDirectory()) {
+            // deleted or moved out, files under it with counts are removed or moved with it
+            for (VirtualFile countedFile : myFileCounts.keySet()) {
+                if (VfsUtilCore.isAncestor(file, countedFile, true)) {
+                    myChangedFiles.add(countedFile);
+                }
+            }
+
+            // created, copied or moved in, its Markdown files are new
+            if (file.isValid() && ProjectRootManager.getInstance(myProject).getFileIndex().isInContent(file)) {
+                ProjectRootManager.getInstance(myProject).getFileIndex().iterateContentUnderDirectory(file, child -> {
+                    if (!child.isDirectory() && !myFileCounts.containsKey(child) && isProjectMarkdownFile(child)) {
+                        myChangedFiles.add(child);
+                    }
+                    return true;
+                });
+            }
+        } else if (myFileCounts.containsKey(file) || isProjectMarkdownFile(file)) {
+            // deleted or renamed files need their counts removed even if no longer Markdown
+            myChangedFiles.add(file);
+        }
+    }
+
+    /**
+     * Task item counts of all project files
+     *
+     * @return counts, null if indices are not available
+     */
+    @Nullable
+    public TaskItemCounts getTaskItemCounts() {
+        return ReadAction.compute(() -> {
+            synchronized (myLock) {
+                try {
+                    updateCounts();
+                    return new TaskItemCounts(myTotalCounts);
+                } catch (IndexNotReadyException e) {
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Task item counts of a file
+     *
+     * @param file file
+     *
+     * @return counts, null if the file has no task items or indices are not available
+     */
+    @Nullable
+    public TaskItemCounts getTaskItemCounts(@NotNull VirtualFile file) {
+        return ReadAction.compute(() -> {
+            synchronized (myLock) {
+                try {
+                    updateCounts();
+                    TaskItemCounts counts = myFileCounts.get(file);
+                    return counts == null ? null : new TaskItemCounts(counts);
+                } catch (IndexNotReadyException e) {
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return project files with task items
+     */
+    @NotNull
+    public List<VirtualFile> getTaskItemFiles() {
+        return ReadAction.compute(() -> {
+            synchronized (myLock) {
+                try {
+                    updateCounts();
+                    return new ArrayList<>(myFileCounts.keySet());
+                } catch (IndexNotReadyException e) {
+                    return new ArrayList<>();
+                }
+            }
+        });
+    }
+
+    private void updateCounts() {
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(myProject);
+
+        if (myReadAllFiles) {
+            // cleared first so changes during the read are not lost
+            myReadAllFiles = false;
+            myChangedFiles.clear();
+
+            HashMap<VirtualFile, TaskItemCounts> fileCounts = new HashMap<>();
+            TaskItemCounts totalCounts = new TaskItemCounts();
+
+            try {
+                FileBasedIndex.getInstance().processValues(MdTaskItemIndex.NAME, MdTaskItemIndex.TASK_ITEMS_KEY, null, (file, value) -> {
+                    TaskItemCounts counts = value.getCounts();
+                    fileCounts.put(file, counts);
+                    totalCounts.add(counts);
+                    return true;
+                }, scope);
+            } catch (IndexNotReadyException e) {
+                myReadAllFiles = true;
+                throw e;
+            }
+
+            myFileCounts.clear();
+            myFileCounts.putAll(fileCounts);
+            myTotalCounts.copy(totalCounts);
+        } else if (!myChangedFiles.isEmpty()) {
+            List<VirtualFile> changedFiles = new ArrayList<>(myChangedFiles);
+
+            for (VirtualFile file : changedFiles) {
+                MdTaskItemIndex.TaskItems taskItems = null;
+                if (file.isValid() && scope.contains(file)) {
+                    taskItems = MdTaskItemIndex.getTaskItems(myProject, file);
+                    myReadFileCount++;
+                }
+
+                myChangedFiles.remove(file);
+                TaskItemCounts oldCounts = myFileCounts.remove(file);
+                if (oldCounts != null) myTotalCounts.remove(oldCounts);
+
+                if (taskItems != null) {
+                    TaskItemCounts counts = taskItems.getCounts();
+                    myFileCounts.put(file, counts);
+                    myTotalCounts.add(counts);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+
+    }
+}
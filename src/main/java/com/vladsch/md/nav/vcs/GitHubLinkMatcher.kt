@@ -67,6 +67,12 @@ open class GitHubLinkMatcher(val projectResolver: MdLinkResolver.ProjectResolver
     var linkFileMatch: String? = null
         private set
 
+    // exact path matched by linkFileMatch when it has no wildcards, used to match without regex
+    var linkFileExactPath: String? = null
+        private set
+
+    private var linkFileExactPathDrivePrefix: Boolean = false
+
     // if in the main repo then this will be set to the branch or tag from the link
     var branchOrTag: String? = null
         private set
@@ -151,7 +157,22 @@ open class GitHubLinkMatcher(val projectResolver: MdLinkResolver.ProjectResolver
     fun patternRegex(looseMatch: Boolean): Regex? {
         computeMatchText(wasURI = false, wasRepoRel = false)
         if (isOnlyCompletionMatchValid && !looseMatch) return null
-        return (if (looseMatch) linkLooseMatch else linkAllMatch)?.toRegex(RegexOption.IGNORE_CASE)
+        val pattern = (if (looseMatch) linkLooseMatch else linkAllMatch) ?: return null
+        return MdLinkPatternCache.getInstance(projectResolver.project).getRegex(pattern, ignoreCase = true)
+    }
+
+    /**
+     * Test path against linkFileMatch without using regex, only valid if linkFileExactPath is not null
+     *
+     * @param path file path
+     * @return true if path is matched by linkFileMatch
+     */
+    fun isLinkFileExactMatch(path: String): Boolean {
+        val exactPath = linkFileExactPath ?: return false
+        if (path == exactPath) return true
+
+        // root prefix pattern allows a windows drive prefix
+        return linkFileExactPathDrivePrefix && path.length == exactPath.length + 2 && path[0] in 'A'..'Z' && path[1] == ':' && path.endsWith(exactPath)
     }
 
     @Suppress("UNUSED_PARAMETER")
@@ -583,6 +604,10 @@ open class GitHubLinkMatcher(val projectResolver: MdLinkResolver.ProjectResolver
                 // only exact matches for files, the rest are loose matches
                 fileName = fileNameNoExt
                 linkFileMatch = "^$fixedPrefixPattern$filenamePattern$"
+                if (filePath.isNotEmpty() && !filePath.contains("\\E") && !fixedPrefix.contains("\\E")) {
+                    linkFileExactPath = fixedPrefix + filePath
+                    linkFileExactPathDrivePrefix = fixedPrefix.startsWith('/')
+                }
                 fileNameExtPattern = "^$filenamePattern$"
                 linkAllMatch = linkFileMatch
                 linkAllMatchExtensions = if (linkRef.hasExt) arrayListOf(ext) else arrayListOf(*linkExtensions)
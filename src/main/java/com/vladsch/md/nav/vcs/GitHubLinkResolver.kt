@@ -17,12 +17,14 @@ import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiFile
 import com.intellij.psi.search.FileTypeIndex
 import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.Processor
 import com.vladsch.flexmark.util.sequence.Escaping
 import com.vladsch.md.nav.parser.api.MdLinkMapProvider
 import com.vladsch.md.nav.parser.cache.MdCachedResolvedLinks
 import com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger
 import com.vladsch.md.nav.psi.element.MdFile
 import com.vladsch.md.nav.psi.element.MdLinkElement
+import com.vladsch.md.nav.psi.index.MdFileNameIndex
 import com.vladsch.md.nav.psi.util.MdPsiImplUtil
 import com.vladsch.md.nav.settings.MdRenderingProfile
 import com.vladsch.md.nav.settings.MdRenderingProfileManager
@@ -86,6 +88,9 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
             GITHUB_PULSE_NAME
         )
 
+        private val GITHUB_NON_FILE_LINK_REGEX: List<Regex> = GITHUB_NON_FILE_LINKS.map { "^.*../$it\\b.*$".toRegex() }
+        private val MAIL_ADDRESS_REGEX: Regex = "^.+@.+\\.\\+$".toRegex()
+
         @JvmField
         val GITHUB_TARGET_LINKS: Array<String> = arrayOf(
             GITHUB_FORK_NAME,
@@ -148,7 +153,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                 url.startsWith("https://raw.githubusercontent.com/") -> MdIcons.LinkTypes.GitHub
                 url.startsWith("http://raw.githubusercontent.com/") -> MdIcons.LinkTypes.GitHub
                 url.startsWith("mailto:") -> MdIcons.LinkTypes.Mail
-                url.matches("^.+@.+\\.\\+$".toRegex()) -> MdIcons.LinkTypes.Mail
+                url.matches(MAIL_ADDRESS_REGEX) -> MdIcons.LinkTypes.Mail
                 PathInfo.isURL(url) -> MdIcons.LinkTypes.Web
                 PathInfo.isCustomURI(url) -> MdIcons.LinkTypes.CustomUri
                 else -> {
@@ -164,8 +169,8 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
         if (linkRef.isRelative || linkRef.isRepoRelative) {
             // should be a github link or unresolved
-            for (link in GITHUB_NON_FILE_LINKS) {
-                if (linkRef.filePath.matches("^.*../$link\\b.*$".toRegex())) {
+            for (linkRegex in GITHUB_NON_FILE_LINK_REGEX) {
+                if (linkRef.filePath.matches(linkRegex)) {
                     val resolved = resolve(linkRef, Want(Local.NONE, Remote.NONE, Links.URL), null)
                     if (resolved is LinkRef) linkRef = resolved
                     break
@@ -193,6 +198,8 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
     private var matcher: GitHubLinkMatcher? = null
 
+    private val linkPatternCache: MdLinkPatternCache by lazy { MdLinkPatternCache.getInstance(project) }
+
     val renderingProfile: MdRenderingProfile by lazy {
         renderingProfile ?: MdRenderingProfileManager.getInstance(project).getRenderingProfile(containingFile.virtualFile)
     }
@@ -770,19 +777,23 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
         // FIX: need to have a flag or to modify the regex to exclude wiki matches when exact matching in the repo
         val allMatchWiki =
-            if (wantLooseMatch(options)) linkLooseMatch.toRegex(RegexOption.IGNORE_CASE)
-            else if (wantCompletionMatch(options)) linkCompletionMatch.toRegex(RegexOption.IGNORE_CASE)
-            else if (linkMatcher.wikiMatchingRules) linkAllMatch.toRegex(RegexOption.IGNORE_CASE)
-            else linkMatcher.linkFileMatch!!.toRegex()
+            if (wantLooseMatch(options)) linkPatternCache.getRegex(linkLooseMatch, ignoreCase = true)
+            else if (wantCompletionMatch(options)) linkPatternCache.getRegex(linkCompletionMatch, ignoreCase = true)
+            else if (linkMatcher.wikiMatchingRules) linkPatternCache.getRegex(linkAllMatch, ignoreCase = true)
+            else linkPatternCache.getRegex(linkMatcher.linkFileMatch!!)
 
         val allMatchNonWiki =
             if (wantLooseMatch(options)) allMatchWiki
             else if (wantCompletionMatch(options)) allMatchWiki
-            else if (linkMatcher.wikiMatchingRules) linkAllMatch.toRegex()
+            else if (linkMatcher.wikiMatchingRules) linkPatternCache.getRegex(linkAllMatch)
             else allMatchWiki
 
         val fixedPrefix = linkMatcher.fixedPrefix
 
+        // exact relative file path links do not need regex matching
+        val useExactPathMatch = !wantLooseMatch(options) && !wantCompletionMatch(options) && !linkMatcher.wikiMatchingRules && linkMatcher.linkFileExactPath != null
+        val pathMatches = { path: String, pattern: Regex -> if (useExactPathMatch) linkMatcher.isLinkFileExactMatch(path) else path.matches(pattern) }
+
         if (!linkMatcher.gitHubLinks) {
             val allExtensions =
                 if (wantLooseMatch(options)) linkMatcher.linkLooseMatchExtensions
@@ -830,8 +841,12 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     var triedQuickMatch: Long = 0
                     var triedPrefixMatch: Long = 0
                     var triedMatch: Long = 0
+                    // exact file name matching only needs files with the link's name, these come straight from the file name index
+                    val nameCandidates = if (completionMatch || linkMatcher.wikiMatchingRules || fileNameNoDot.isEmpty()) null
+                    else MdFileNameIndex.getFilesByNamePrefix(fileNameNoDot, projectScope)
+
                     for (type in targetFileTypes) {
-                        FileTypeIndex.processFiles(type, { virtualFile ->
+                        val processor = Processor<VirtualFile> { virtualFile ->
                             //println("checking file type: $type, path: ${virtualFile.path}")
                             val fileName = virtualFile.name
                             triedQuickMatch++
@@ -839,7 +854,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                                 triedPrefixMatch++
                                 if (virtualFile.path.startsWith(fixedPrefix)) {
                                     triedMatch++
-                                    if (virtualFile.path.matches(matchPattern)) {
+                                    if (pathMatches(virtualFile.path, matchPattern)) {
                                         val fileRef = ProjectFileRef(virtualFile, project)
                                         val newFileRef = if (rawGitHubLink) FileRef(fileRef) else fileRef
                                         if (rawGitHubLink) newFileRef.isRawFile = true
@@ -848,7 +863,15 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                                 }
                             }
                             true
-                        }, projectScope)
+                        }
+
+                        if (nameCandidates == null) {
+                            FileTypeIndex.processFiles(type, processor, projectScope)
+                        } else {
+                            for (virtualFile in nameCandidates) {
+                                if (virtualFile.isValid && virtualFile.fileType == type) processor.process(virtualFile)
+                            }
+                        }
 
                         if (includeNoExtFiles && type == PlainTextFileType.INSTANCE) {
                             // #741, links
@@ -862,7 +885,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                                         triedPrefixMatch++
                                         if (virtualFile.path.startsWith(fixedPrefix)) {
                                             triedMatch++
-                                            if (virtualFile.path.matches(matchPattern)) {
+                                            if (pathMatches(virtualFile.path, matchPattern)) {
                                                 val fileRef = ProjectFileRef(virtualFile, project)
                                                 val newFileRef = if (rawGitHubLink) FileRef(fileRef) else fileRef
                                                 if (rawGitHubLink) newFileRef.isRawFile = true
@@ -877,20 +900,19 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
                     // need to try all directories under the project tree and modules because without loose matching does not get any hits
                     if (includeDirsInCompletion && includeNoExtFiles && !rawGitHubLink) {
-                        // create a list of directories by removing file name from collected files
-                        val projectDirectories = MdLinkResolverManager.getInstance(project).getProjectDirectories()
-
-                        // NOTE: the returned array has nulls so should be checked.
-                        for (virtualFile: VirtualFile? in projectDirectories) {
-                            virtualFile ?: continue
+                        // directories are kept by name so only candidates need to be checked
+                        val projectDirectories = MdLinkResolverManager.getInstance(project).projectDirectories
+                        val dirCandidates = if (completionMatch || linkMatcher.wikiMatchingRules || fileNameNoDot.isEmpty()) projectDirectories.getDirectories()
+                        else projectDirectories.getDirectories(fileNameNoDot, fileNameDot)
 
+                        for (virtualFile in dirCandidates) {
                             val fileName = virtualFile.name
                             triedQuickMatch++
                             if (completionMatch || linkMatcher.wikiMatchingRules || fileName.length == fileNameNoDot.length && fileName == fileNameNoDot || fileName.length >= fileNameDot.length && fileName.startsWith(fileNameDot)) {
                                 triedPrefixMatch++
                                 if (virtualFile.path.startsWith(fixedPrefix)) {
                                     triedMatch++
-                                    if (virtualFile.path.matches(matchPattern)) {
+                                    if (pathMatches(virtualFile.path, matchPattern)) {
                                         val fileRef = ProjectFileRef(virtualFile, project)
                                         if (!fileRef.isUnderWikiDir) {
                                             if (!matches.contains(fileRef)) {
@@ -946,7 +968,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     // these match raw file content
                     // case sensitive: linkFileMatch = "^$fixedPrefix$filenamePattern$"
                     // case sensitive: linkFileAnchorMatch = "^$fixedPrefix$filenamePattern$anchorPattern$"
-                    val fileOrAnchorMatch = (if (linkMatcher.linkFileAnchorMatch == null) linkMatcher.linkFileMatch else linkMatcher.linkFileMatch + "|" + linkMatcher.linkFileAnchorMatch)?.toRegex()
+                    val fileOrAnchorMatch = (if (linkMatcher.linkFileAnchorMatch == null) linkMatcher.linkFileMatch else linkMatcher.linkFileMatch + "|" + linkMatcher.linkFileAnchorMatch)?.let { linkPatternCache.getRegex(it) }
                     if (fileOrAnchorMatch != null) {
                         for (fileRef in matches) {
                             if (fileRef is FileRef && fileRef.filePath.matches(fileOrAnchorMatch)) {
@@ -961,7 +983,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
                     // these match raw file content and images
                     // case sensitive: linkFileMatch = "^$fixedPrefix$filenamePattern$"
-                    val fileMatch = linkMatcher.linkFileMatch?.toRegex()
+                    val fileMatch = linkMatcher.linkFileMatch?.let { linkPatternCache.getRegex(it) }
                     if (fileMatch != null) {
                         for (fileRef in matches) {
                             if (fileRef is FileRef) {
@@ -1002,7 +1024,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     }
                 }
 
-                val linkFileMatchRegex = linkMatcher.linkFileMatch?.toRegex() ?: linkAllMatch.toRegex()
+                val linkFileMatchRegex = linkPatternCache.getRegex(linkMatcher.linkFileMatch ?: linkAllMatch)
                 resolved.sortWith(Comparator { self, other ->
                     val selfMatch = self.filePath.matches(linkFileMatchRegex)
                     val otherMatch = other.filePath.matches(linkFileMatchRegex)
@@ -0,0 +1,94 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.ProjectManager
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Compiled link matching patterns, keyed by pattern text and options
+ *
+ * The same link text is resolved by the annotator, line markers, folding and completion, each resolve
+ * generating identical patterns from the link matcher. Compiled patterns are immutable so can be shared.
+ */
+class MdLinkPatternCache(private val maxEntries: Int = MAX_CACHED_ENTRIES) {
+    companion object {
+        const val MAX_CACHED_ENTRIES: Int = 512
+
+        // used when there is no project, ie. tests
+        private val DEFAULT = MdLinkPatternCache()
+
+        @JvmStatic
+        fun getInstance(project: Project?): MdLinkPatternCache {
+            return if (project == null || project.isDefault) DEFAULT
+            else MdLinkResolverManager.getInstance(project).linkPatternCache
+        }
+
+        /**
+         * Statistics totals of all open projects' caches, for debug settings
+         */
+        @JvmStatic
+        fun getOpenProjectStatistics(): String {
+            var hits = 0L
+            var misses = 0L
+            var size = 0
+            for (project in ProjectManager.getInstance().openProjects) {
+                if (project.isDisposed) continue
+                val cache = getInstance(project)
+                hits += cache.hits
+                misses += cache.misses
+                size += cache.size
+            }
+            return formatStatistics(hits, misses, size)
+        }
+
+        private fun formatStatistics(hits: Long, misses: Long, size: Int): String {
+            val total = hits + misses
+            return String.format("hits: %d, misses: %d, hit rate: %d%%, size: %d", hits, misses, if (total == 0L) 0 else hits * 100 / total, size)
+        }
+    }
+
+    private data class CacheKey(val pattern: String, val ignoreCase: Boolean)
+
+    private val myCache = object : LinkedHashMap<CacheKey, Regex>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, Regex>?): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    private val myHits = AtomicLong()
+    private val myMisses = AtomicLong()
+
+    fun getRegex(pattern: String, ignoreCase: Boolean = false): Regex {
+        val key = CacheKey(pattern, ignoreCase)
+        var regex = synchronized(myCache) { myCache[key] }
+
+        if (regex != null) {
+            myHits.incrementAndGet()
+        } else {
+            myMisses.incrementAndGet()
+            regex = if (ignoreCase) pattern.toRegex(RegexOption.IGNORE_CASE) else pattern.toRegex()
+            synchronized(myCache) { myCache[key] = regex }
+        }
+        return regex
+    }
+
+    fun clear() {
+        synchronized(myCache) { myCache.clear() }
+    }
+
+    val hits: Long get() = myHits.get()
+    val misses: Long get() = myMisses.get()
+    val size: Int get() = synchronized(myCache) { myCache.size }
+
+    fun resetStatistics() {
+        myHits.set(0)
+        myMisses.set(0)
+    }
+
+    fun getStatistics(): String {
+        return formatStatistics(myHits.get(), myMisses.get(), size)
+    }
+}
@@ -6,6 +6,7 @@ import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.ModalityState
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectRootManager
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.vcs.FileStatus
 import com.intellij.openapi.vcs.FileStatusManager
@@ -52,12 +53,23 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         }
     }
 
-    private val projectDirectories = ArrayList<VirtualFile>()
-    private var rescanProjectDirectories = true
+    // directories maintained from VFS events, only rescanned when vcs roots change
+    val projectDirectories = MdProjectDirectories(project)
     private val onProjectSettingsChangedActivities: ArrayList<MdOnProjectSettingsChangedActivity> = ArrayList()
     private val inProjectSettingsChangedActivity = ConcurrentHashMap<MdOnProjectSettingsChangedActivity, Long>()
     private val projectSettingsChangedAlarm = Alarm(this)
 
+    // compiled link matcher patterns shared by all resolvers in the project
+    val linkPatternCache = MdLinkPatternCache()
+
+    // project link validation results
+    val linkValidator = MdProjectLinkValidator(project)
+
+    // incremented when project content files are created, deleted, moved or renamed, ie. link resolution could change
+    @Volatile
+    var fileStructureModificationCount: Long = 0
+        private set
+
     @Suppress("PrivatePropertyName")
     private val VCS_MAPS_LOCK = Object()
 
@@ -79,44 +91,11 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         return onProjectSettingsChangedActivities.find { klass.isInstance(it) } as? T
     }
 
-    fun getProjectDirectories(): ArrayList<VirtualFile> {
-        if (rescanProjectDirectories && !project.isDisposed) {
-            val allVersionedRoots = ProjectLevelVcsManager.getInstance(project).allVersionedRoots
-            allVersionedRoots.sortByDescending { it.name }
-            val dirsToVisit = mutableListOf<VirtualFile>(*allVersionedRoots)
-            val dirsVisited = mutableSetOf<VirtualFile>()
-            val triedDirs = HashSet<VirtualFile>() // don't list roots in the completion list
-            triedDirs.addAll(allVersionedRoots)
-            val projectDirectories = ArrayList<VirtualFile>()
-            projectDirectories.clear()
-
-            val baseDir = project.getProjectBaseDirectory()
-            if (baseDir != null) dirsToVisit.add(baseDir)
-
-            while (dirsToVisit.isNotEmpty()) {
-                val parentDir = dirsToVisit.removeAt(0)
-                if (!parentDir.isValid) continue
-
-                if (!dirsVisited.contains(parentDir)) {
-                    dirsVisited.add(parentDir)
-
-                    if (!triedDirs.contains(parentDir)) {
-                        triedDirs.add(parentDir)
-                        projectDirectories.add(parentDir)
-                    }
-
-                    parentDir.children.filterTo(dirsToVisit) { it.isDirectory && it.isInLocalFileSystem && !dirsVisited.contains(it) && !it.name.startsWith(".") }
-                }
-            }
-
-            synchronized(this.projectDirectories) {
-                this.projectDirectories.clear()
-                this.projectDirectories.addAll(projectDirectories)
-                rescanProjectDirectories = false
-            }
-        }
-
-        return ArrayList(projectDirectories)
+    /**
+     * @return all project directories, the list is shared and must not be modified
+     */
+    fun getProjectDirectories(): List<VirtualFile> {
+        return projectDirectories.getDirectories()
     }
 
     override fun getGitHubRepo(path: String?): GitHubVcsRoot? {
@@ -272,46 +251,77 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         }
 
         clearVcsMaps(gitHubVcsMap)
-        rescanProjectDirectories = true
+        projectDirectories.invalidate()
     }
 
     override fun dispose() {
         onProjectSettingsChangedActivities.clear()
+        linkPatternCache.clear()
+        linkValidator.clear()
     }
 
-    private fun fileSystemChanged(file: VirtualFile) {
+    /**
+     * Any project content file can be a link target, other projects, ignored files like .git and excluded build output are not
+     */
+    private fun isInContent(file: VirtualFile?): Boolean {
+        return file != null && file.isValid && ProjectRootManager.getInstance(project).fileIndex.isInContent(file)
+    }
+
+    private fun fileCreated(file: VirtualFile) {
+        if (project.isDisposed || !isInContent(file)) return
+        fileStructureModificationCount++
+        linkValidator.fileAdded(file)
+        if (file.isDirectory) projectDirectories.directoryCreated(file)
+    }
+
+    private fun fileMoved(file: VirtualFile, fromParent: VirtualFile?) {
         if (project.isDisposed) return
-        if (file.isDirectory) rescanProjectDirectories = true
+
+        if (isInContent(file)) {
+            fileStructureModificationCount++
+            linkValidator.fileAdded(file)
+            if (file.isDirectory) projectDirectories.directoryMoved(file)
+        } else if (isInContent(fromParent)) {
+            // moved out of the project
+            fileStructureModificationCount++
+            if (file.isDirectory) projectDirectories.directoryDeleted()
+        }
+    }
+
+    private fun fileDeleted(parent: VirtualFile?) {
+        // NOTE: deleted file is no longer valid, its parent tells if it was in the project
+        if (project.isDisposed || !isInContent(parent)) return
+        fileStructureModificationCount++
+        // NOTE: deleted directories are found by validity so no need to test if file was a directory
+        projectDirectories.directoryDeleted()
     }
 
     fun vfsFireAfter(event: VFileEvent) {
         when (event) {
-            is VFileContentChangeEvent -> {
-                fileSystemChanged(event.file)
-            }
             is VFileCopyEvent -> {
-                val original = event.file
                 val copy = event.newParent.findChild(event.newChildName)
                 if (copy != null) {
-                    fileSystemChanged(original)
+                    fileCreated(copy)
                 }
             }
             is VFileCreateEvent -> {
                 val newChild = event.file
                 if (newChild != null) {
-                    fileSystemChanged(newChild)
+                    fileCreated(newChild)
                 }
             }
             is VFileDeleteEvent -> {
                 // issue #776, JavaFx Preview displays cached image for deleted file
-                fileSystemChanged(event.file)
+                fileDeleted(event.file.parent)
             }
             is VFileMoveEvent -> {
-                fileSystemChanged(event.file)
+                fileMoved(event.file, event.oldParent)
             }
             is VFilePropertyChangeEvent -> {
-                // NOTE: this one fires often when document is modified with writeable property changing
-                // fileSystemChanged(event.file)
+                // NOTE: this one fires often when document is modified with writeable property changing, only renames affect directories
+                if (event.propertyName == VirtualFile.PROP_NAME) {
+                    fileMoved(event.file, event.file.parent)
+                }
                 //            val pce = event
                 //            adapted.propertyChanged(
                 //                VirtualFilePropertyEvent(event.getRequestor(), pce.file, pce.propertyName, pce.oldValue, pce.newValue))
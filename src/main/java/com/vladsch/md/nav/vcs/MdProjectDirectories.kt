@@ -0,0 +1,247 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vcs.ProjectLevelVcsManager
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import com.vladsch.plugin.util.getProjectBaseDirectory
+import java.util.*
+
+/**
+ * Directories under project VCS roots and project base directory, excluding VCS roots and hidden directories
+ *
+ * Directories are kept by name. The full scan is only done when roots change, file system changes are recorded
+ * by [directoryCreated], [directoryMoved] and [directoryDeleted] and applied on next access.
+ *
+ * Directories are returned in breadth-first order, like the full scan they replace, so link resolution still prefers
+ * directories closer to a root. Directories at the same depth are ordered by path.
+ *
+ * @param roots roots to use instead of VCS roots and project base directory
+ */
+class MdProjectDirectories(private val project: Project, private val roots: List<VirtualFile>? = null) {
+    private val myLock = Object()
+    private val myDirectories = TreeMap<String, ArrayList<VirtualFile>>()
+    private val myDepths = HashMap<VirtualFile, Int>()
+    private val myDepthComparator = compareBy<VirtualFile>({ myDepths[it] ?: 0 }, { it.path })
+    private val myPendingCreated = LinkedHashSet<VirtualFile>()
+    private val myPendingMoved = LinkedHashSet<VirtualFile>()
+    private var myPendingDeleted = false
+    private var myNeedRescan = true
+    private var myVcsRoots: List<VirtualFile> = listOf()
+    private var myRoots: List<VirtualFile> = listOf()
+    private var myAllDirectories: List<VirtualFile>? = null
+
+    fun invalidate() {
+        synchronized(myLock) {
+            myNeedRescan = true
+        }
+    }
+
+    /**
+     * Directory created or copied
+     */
+    fun directoryCreated(directory: VirtualFile) {
+        synchronized(myLock) {
+            if (!myNeedRescan) myPendingCreated.add(directory)
+        }
+    }
+
+    /**
+     * Directory moved or renamed
+     */
+    fun directoryMoved(directory: VirtualFile) {
+        synchronized(myLock) {
+            if (!myNeedRescan) myPendingMoved.add(directory)
+        }
+    }
+
+    fun directoryDeleted() {
+        synchronized(myLock) {
+            if (!myNeedRescan) myPendingDeleted = true
+        }
+    }
+
+    /**
+     * @return all project directories, returned list is not modified by later changes
+     */
+    fun getDirectories(): List<VirtualFile> {
+        synchronized(myLock) {
+            update()
+            val allDirectories = myAllDirectories
+            if (allDirectories != null) return allDirectories
+
+            val directories = ArrayList<VirtualFile>()
+            for (named in myDirectories.values) {
+                directories.addAll(named)
+            }
+            directories.sortWith(myDepthComparator)
+
+            val unmodifiableDirectories = Collections.unmodifiableList(directories)
+            myAllDirectories = unmodifiableDirectories
+            return unmodifiableDirectories
+        }
+    }
+
+    /**
+     * Get directories with given name or whose name starts with given prefix
+     *
+     * @param name       directory name
+     * @param namePrefix directory name prefix
+     *
+     * @return matching directories
+     */
+    fun getDirectories(name: String, namePrefix: String): List<VirtualFile> {
+        synchronized(myLock) {
+            update()
+            val directories = ArrayList<VirtualFile>()
+            myDirectories[name]?.let { directories.addAll(it) }
+
+            for ((dirName, named) in myDirectories.tailMap(namePrefix, true)) {
+                if (!dirName.startsWith(namePrefix)) break
+                if (dirName != name) directories.addAll(named)
+            }
+            directories.sortWith(myDepthComparator)
+            return directories
+        }
+    }
+
+    private fun update() {
+        if (project.isDisposed) return
+
+        if (myNeedRescan) {
+            rescan()
+        } else {
+            if (myPendingDeleted) {
+                myPendingDeleted = false
+                removeIf { !it.isValid }
+            }
+
+            if (myPendingMoved.isNotEmpty()) {
+                for (directory in myPendingMoved) {
+                    if (!directory.isValid) continue
+
+                    // remove old entries for the tree then add it back if still in project
+                    removeIf { VfsUtilCore.isAncestor(directory, it, false) }
+                    if (isProjectDirectory(directory)) {
+                        addTree(directory)
+                    }
+                }
+                myPendingMoved.clear()
+            }
+
+            if (myPendingCreated.isNotEmpty()) {
+                for (directory in myPendingCreated) {
+                    // a parent created in the same batch already added this one
+                    if (directory.isValid && !contains(directory) && isProjectDirectory(directory)) {
+                        addTree(directory)
+                    }
+                }
+                myPendingCreated.clear()
+            }
+        }
+    }
+
+    private fun rescan() {
+        if (roots != null) {
+            myVcsRoots = listOf()
+            myRoots = roots
+        } else {
+            val allVersionedRoots = ProjectLevelVcsManager.getInstance(project).allVersionedRoots
+            val projectRoots = ArrayList<VirtualFile>()
+            projectRoots.addAll(allVersionedRoots)
+
+            val baseDir = project.getProjectBaseDirectory()
+            if (baseDir != null && projectRoots.none { VfsUtilCore.isAncestor(it, baseDir, false) }) projectRoots.add(baseDir)
+
+            myVcsRoots = allVersionedRoots.toList()
+            myRoots = projectRoots
+        }
+
+        myDirectories.clear()
+        myDepths.clear()
+        myAllDirectories = null
+        myPendingCreated.clear()
+        myPendingMoved.clear()
+        myPendingDeleted = false
+        myNeedRescan = false
+
+        for (root in myRoots) {
+            addTree(root)
+        }
+    }
+
+    private fun isRoot(directory: VirtualFile): Boolean {
+        return myRoots.contains(directory)
+    }
+
+    private fun isProjectDirectory(directory: VirtualFile): Boolean {
+        if (!directory.isDirectory || !directory.isInLocalFileSystem) return false
+
+        var file: VirtualFile? = directory
+        while (file != null) {
+            if (isRoot(file)) return true
+            if (file.name.startsWith(".")) return false
+            file = file.parent
+        }
+        return false
+    }
+
+    private fun getDepth(directory: VirtualFile): Int {
+        var depth = 0
+        var file: VirtualFile? = directory
+        while (file != null && !isRoot(file)) {
+            depth++
+            file = file.parent
+        }
+        return depth
+    }
+
+    private fun addTree(directory: VirtualFile) {
+        val dirsToVisit = ArrayDeque<Pair<VirtualFile, Int>>()
+        dirsToVisit.add(Pair(directory, getDepth(directory)))
+
+        while (dirsToVisit.isNotEmpty()) {
+            val (parentDir, depth) = dirsToVisit.removeFirst()
+            if (!parentDir.isValid) continue
+
+            // don't list vcs roots
+            if (!myVcsRoots.contains(parentDir)) add(parentDir, depth)
+
+            for (child in parentDir.children) {
+                // nested roots are scanned on their own
+                if (child.isDirectory && child.isInLocalFileSystem && !child.name.startsWith(".") && !isRoot(child)) {
+                    dirsToVisit.add(Pair(child, depth + 1))
+                }
+            }
+        }
+    }
+
+    private fun contains(directory: VirtualFile): Boolean {
+        return myDirectories[directory.name]?.contains(directory) == true
+    }
+
+    private fun add(directory: VirtualFile, depth: Int) {
+        val named = myDirectories.computeIfAbsent(directory.name) { ArrayList(1) }
+        if (!named.contains(directory)) {
+            named.add(directory)
+            myAllDirectories = null
+        }
+        myDepths[directory] = depth
+    }
+
+    private fun removeIf(predicate: (VirtualFile) -> Boolean) {
+        val iterator = myDirectories.values.iterator()
+        while (iterator.hasNext()) {
+            val named = iterator.next()
+            val removed = named.filter(predicate)
+            if (removed.isNotEmpty()) {
+                named.removeAll(removed)
+                myDepths.keys.removeAll(removed)
+                myAllDirectories = null
+                if (named.isEmpty()) iterator.remove()
+            }
+        }
+    }
+}
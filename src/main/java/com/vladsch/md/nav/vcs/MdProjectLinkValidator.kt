@@ -0,0 +1,263 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.concurrency.JobLauncher
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Computable
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiManager
+import com.intellij.psi.search.FileTypeIndex
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.Processor
+import com.vladsch.md.nav.MdBundle
+import com.vladsch.md.nav.MdFileType
+import com.vladsch.md.nav.psi.element.MdFile
+import com.vladsch.md.nav.psi.element.MdLinkElement
+import com.vladsch.md.nav.util.*
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Validates links in all project markdown files
+ *
+ * Files are checked concurrently, each in its own read action. Results are cached per file by content hash and only
+ * re-computed when the content changes, a resolved link target is no longer valid or a file with the name of one of
+ * its links was added, moved or renamed in the project. A new file can resolve a link or change the target of a
+ * resolved link with the same name. Moving or renaming a directory changes paths of all files under it, so any file
+ * with links is re-checked.
+ */
+class MdProjectLinkValidator(private val project: Project) {
+    companion object {
+        private val LOG = Logger.getInstance("com.vladsch.md.nav.vcs")
+
+        const val ID_UNRESOLVED_LINK: String = "ID_UNRESOLVED_LINK"
+
+        /**
+         * @param id problem id, [ID_UNRESOLVED_LINK] or one of the [GitHubLinkInspector] ids
+         *
+         * @return problem description
+         */
+        @JvmStatic
+        fun getProblemDescription(id: String): String {
+            return when (id) {
+                ID_UNRESOLVED_LINK -> MdBundle.message("settings.markdown.annotator.id-unresolved-link-reference.label")
+                GitHubLinkInspector.ID_TARGET_HAS_SPACES -> MdBundle.message("settings.markdown.annotator.id-target-has-spaces.label")
+                GitHubLinkInspector.ID_CASE_MISMATCH -> MdBundle.message("settings.markdown.annotator.id-link-case-mismatch.label")
+                GitHubLinkInspector.ID_WIKI_LINK_HAS_DASHES -> MdBundle.message("settings.markdown.annotator.id-wiki-link-has-dashes.label")
+                GitHubLinkInspector.ID_NOT_UNDER_WIKI_HOME -> MdBundle.message("settings.markdown.annotator.id-not-under-wiki-home.label")
+                GitHubLinkInspector.ID_TARGET_NOT_WIKI_PAGE_EXT -> MdBundle.message("settings.markdown.annotator.id-target-not-wiki-page-ext.label")
+                GitHubLinkInspector.ID_NOT_UNDER_SOURCE_WIKI_HOME -> MdBundle.message("settings.markdown.annotator.id-not-under-source-wiki-home.label")
+                GitHubLinkInspector.ID_TARGET_NAME_HAS_ANCHOR -> MdBundle.message("settings.markdown.annotator.id-target-name-has-anchor.label")
+                GitHubLinkInspector.ID_TARGET_PATH_HAS_ANCHOR -> MdBundle.message("settings.markdown.annotator.id-target-path-has-anchor.label")
+                GitHubLinkInspector.ID_WIKI_LINK_HAS_SLASH -> MdBundle.message("settings.markdown.annotator.id-wiki-link-has-slash.label")
+                GitHubLinkInspector.ID_WIKI_LINK_HAS_SUBDIR -> MdBundle.message("settings.markdown.annotator.id-wiki-link-has-subdir.label")
+                GitHubLinkInspector.ID_WIKI_LINK_HAS_ONLY_ANCHOR -> MdBundle.message("settings.markdown.annotator.id-wiki-link-has-only-anchor.label")
+                GitHubLinkInspector.ID_LINK_TARGETS_WIKI_HAS_EXT -> MdBundle.message("settings.markdown.annotator.id-link-targets-wiki-has-ext.label")
+                GitHubLinkInspector.ID_LINK_TARGETS_WIKI_HAS_BAD_EXT -> MdBundle.message("settings.markdown.annotator.id-link-targets-wiki-has-bad-ext.label")
+                GitHubLinkInspector.ID_NOT_UNDER_SAME_REPO -> MdBundle.message("settings.markdown.annotator.id-not-under-same-repo.label")
+                GitHubLinkInspector.ID_TARGET_NOT_UNDER_VCS -> MdBundle.message("settings.markdown.annotator.id-target-not-under-vcs.label")
+                GitHubLinkInspector.ID_LINK_NEEDS_EXT -> MdBundle.message("settings.markdown.annotator.id-link-needs-ext.label")
+                GitHubLinkInspector.ID_LINK_HAS_BAD_EXT -> MdBundle.message("settings.markdown.annotator.id-link-has-bad-ext.label")
+                GitHubLinkInspector.ID_LINK_TARGET_NEEDS_EXT -> MdBundle.message("settings.markdown.annotator.id-link-target-needs-ext.label")
+                GitHubLinkInspector.ID_LINK_TARGET_HAS_BAD_EXT -> MdBundle.message("settings.markdown.annotator.id-link-target-has-bad-ext.label")
+                GitHubLinkInspector.ID_WIKI_LINK_NOT_IN_WIKI -> MdBundle.message("settings.markdown.annotator.id-wiki-link-not-in-wiki.label")
+                GitHubLinkInspector.ID_IMAGE_TARGET_NOT_IN_RAW -> MdBundle.message("settings.markdown.annotator.id-image-target-not-in-raw.label")
+                GitHubLinkInspector.ID_REPO_RELATIVE_ACROSS_VCS_ROOTS -> MdBundle.message("settings.markdown.annotator.id-repo-relative-across-vcs-roots.label")
+                else -> id
+            }
+        }
+    }
+
+    class LinkProblem(
+        val virtualFile: VirtualFile,
+        val offset: Int,
+        val lineNumber: Int,
+        val linkText: String,
+        val id: String,
+        val severity: Severity
+    ) {
+        val description: String get() = getProblemDescription(id)
+    }
+
+    class ValidationResult(
+        val files: Int,
+        val checkedFiles: Int,
+        val problems: List<LinkProblem>
+    )
+
+    private inner class FileResult(
+        val contentHash: String,
+        val structureVersion: Long,
+        val linkNames: Set<String>,
+        val targetUrls: Set<String>,
+        val problems: List<LinkProblem>
+    ) {
+        fun isValid(contentHash: String): Boolean {
+            if (this.contentHash != contentHash) return false
+
+            if (linkNames.isNotEmpty()) {
+                if (myAllChangedVersion > structureVersion) return false
+
+                for (linkName in linkNames) {
+                    val changedVersion = myChangedNames[linkName] ?: continue
+                    if (changedVersion > structureVersion) return false
+                }
+            }
+
+            val fileManager = VirtualFileManager.getInstance()
+            for (url in targetUrls) {
+                val virtualFile = fileManager.findFileByUrl(url)
+                if (virtualFile == null || !virtualFile.isValid) return false
+            }
+            return true
+        }
+    }
+
+    private val myFileResults = ConcurrentHashMap<String, FileResult>()
+
+    // link name keys of added, moved or renamed files to structure version of the change
+    private val myChangedNames = ConcurrentHashMap<String, Long>()
+    private val myStructureVersion = AtomicLong()
+
+    @Volatile
+    private var myAllChangedVersion = 0L
+
+    fun clear() {
+        myFileResults.clear()
+        myChangedNames.clear()
+    }
+
+    private fun linkNameKey(name: String): String {
+        // wiki page links use dashes for spaces in page file names
+        return name.toLowerCase(Locale.ROOT).replace(' ', '-')
+    }
+
+    /**
+     * A file was added, moved or renamed in the project, re-check files with links of the same name
+     *
+     * @param file file
+     */
+    fun fileAdded(file: VirtualFile) {
+        if (file.isDirectory && file.children.isNotEmpty()) {
+            // paths of all files under it changed
+            myAllChangedVersion = myStructureVersion.incrementAndGet()
+        } else {
+            myChangedNames[linkNameKey(file.nameWithoutExtension)] = myStructureVersion.incrementAndGet()
+        }
+    }
+
+    /**
+     * Validate links in all project markdown files
+     *
+     * @param indicator progress indicator, cancelling it stops validation
+     *
+     * @return validation results, sorted by file path and offset
+     */
+    fun validate(indicator: ProgressIndicator): ValidationResult {
+        val structureVersion = myStructureVersion.get()
+        val application = ApplicationManager.getApplication()
+        val files = application.runReadAction(Computable<List<VirtualFile>> {
+            if (project.isDisposed) listOf()
+            else ArrayList(FileTypeIndex.getFiles(MdFileType.INSTANCE, GlobalSearchScope.projectScope(project)))
+        })
+
+        // remove results of files no longer in the project
+        val fileUrls = files.mapTo(HashSet()) { it.url }
+        myFileResults.keys.retainAll(fileUrls)
+
+        val done = AtomicInteger()
+        val checked = AtomicInteger()
+        val problems = Collections.synchronizedList(ArrayList<LinkProblem>())
+
+        indicator.isIndeterminate = false
+
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, indicator, Processor { virtualFile ->
+            indicator.checkCanceled()
+
+            val fileResult = application.runReadAction(Computable<FileResult?> {
+                validateFile(virtualFile, structureVersion, checked)
+            })
+
+            if (fileResult != null) {
+                problems.addAll(fileResult.problems)
+            }
+
+            val count = done.incrementAndGet()
+            indicator.fraction = count.toDouble() / files.size
+            indicator.text2 = virtualFile.presentableUrl
+            true
+        })
+
+        indicator.checkCanceled()
+
+        LOG.debug("validated links in ${files.size} files, checked ${checked.get()}, problems: ${problems.size}")
+
+        // changes older than all results were already applied
+        val oldestVersion = myFileResults.values.minOfOrNull { it.structureVersion } ?: structureVersion
+        myChangedNames.values.removeIf { it <= oldestVersion }
+
+        val sortedProblems = ArrayList(problems)
+        sortedProblems.sortWith(Comparator { o1, o2 ->
+            val pathCompare = o1.virtualFile.path.compareTo(o2.virtualFile.path)
+            if (pathCompare != 0) pathCompare else o1.offset.compareTo(o2.offset)
+        })
+
+        return ValidationResult(files.size, checked.get(), sortedProblems)
+    }
+
+    private fun validateFile(virtualFile: VirtualFile, structureVersion: Long, checked: AtomicInteger): FileResult? {
+        if (project.isDisposed || !virtualFile.isValid) return null
+        val file = PsiManager.getInstance(project).findFile(virtualFile) as? MdFile ?: return null
+
+        val text = file.viewProvider.contents
+        val contentHash = Md5Utils.md5(text)
+        val cachedResult = myFileResults[virtualFile.url]
+        if (cachedResult != null && cachedResult.isValid(contentHash)) {
+            return cachedResult
+        }
+
+        checked.incrementAndGet()
+
+        val resolver = GitHubLinkResolver(file)
+        val document = PsiDocumentManager.getInstance(project).getDocument(file)
+        val targetUrls = HashSet<String>()
+        val linkNames = HashSet<String>()
+        val problems = ArrayList<LinkProblem>()
+
+        for (linkElement in PsiTreeUtil.findChildrenOfType(file, MdLinkElement::class.java)) {
+            val linkRef = linkElement.linkRef
+            if (linkRef.filePath.isEmpty() || resolver.isExternalUnchecked(linkRef)) continue
+
+            linkNames.add(linkNameKey(PathInfo(linkRef.filePath.removeSuffix("/")).fileNameNoExt))
+
+            val targetRef = resolver.resolve(linkRef, Want.invoke(), null) as? FileRef
+                ?: resolver.resolve(linkRef, Want.invoke(Match.LOOSE), null) as? FileRef
+
+            val offset = linkElement.textRange.startOffset
+            val lineNumber = if (document == null) 0 else document.getLineNumber(offset.coerceAtMost(document.textLength)) + 1
+
+            if (targetRef == null) {
+                problems.add(LinkProblem(virtualFile, offset, lineNumber, linkElement.text, ID_UNRESOLVED_LINK, Severity.ERROR))
+            } else {
+                targetRef.virtualFile?.let { targetUrls.add(it.url) }
+
+                for (result in resolver.inspect(linkRef, targetRef, null)) {
+                    problems.add(LinkProblem(virtualFile, offset, lineNumber, linkElement.text, result.id, result.severity))
+                }
+            }
+        }
+
+        val fileResult = FileResult(contentHash, structureVersion, linkNames, targetUrls, problems)
+        myFileResults[virtualFile.url] = fileResult
+        return fileResult
+    }
+}
@@ -89,6 +89,66 @@ var markdownNavigator;
           }
         },
         
+        patchFailed: function(reason) { },
+        
+        patchBlocks: function(startIndex, deleteCount, oldCount, insertCount, html, sourceOffsetDelta) {
+          // replace changed top level blocks of page content, page is reloaded if it does not match the expected content
+          const container = document.querySelector("article.markdown-body, article.wiki-body");
+          if (!container || container.children.length !== oldCount) {
+            markdownNavigator.patchFailed("content mismatch");
+            return;
+          }
+
+          const children = container.children;
+          const next = startIndex + deleteCount < oldCount ? children[startIndex + deleteCount] : null;
+
+          if (deleteCount > 0) {
+            const range = document.createRange();
+            range.setStartBefore(children[startIndex]);
+            range.setEndAfter(children[startIndex + deleteCount - 1]);
+            range.deleteContents();
+          }
+
+          const inserted = [];
+          if (insertCount > 0) {
+            const holder = document.createElement("div");
+            holder.innerHTML = html;
+            while (holder.firstChild) {
+              const node = holder.firstChild;
+              if (node.nodeType === Node.ELEMENT_NODE) inserted.push(node);
+              container.insertBefore(node, next);
+            }
+          }
+
+          if (sourceOffsetDelta !== 0) {
+            const shiftOffsets = function(element) {
+              for (const name of ["md-pos", "task-offset"]) {
+                const value = element.getAttribute(name);
+                if (value) element.setAttribute(name, value.split("-").map(offset => +offset + sourceOffsetDelta).join("-"));
+              }
+            };
+
+            for (let element = next; element; element = element.nextElementSibling) {
+              shiftOffsets(element);
+              element.querySelectorAll("[md-pos], [task-offset]").forEach(shiftOffsets);
+            }
+          }
+
+          if (inserted.length !== insertCount) {
+            markdownNavigator.patchFailed("inserted element mismatch");
+            return;
+          }
+
+          for (const element of inserted) {
+            prepareElements(element);
+            if (window.hljs) element.querySelectorAll("pre code").forEach(block => window.hljs.highlightBlock(block));
+            if (window.Prism) window.Prism.highlightAllUnder(element);
+          }
+
+          // let page scripts process new elements
+          document.dispatchEvent(new CustomEvent("markdownNavigatorPatch", { detail: inserted }));
+        },
+        
         setState: function(stateName, stateValue) { 
           let state = { 
             stateName: stateName,
@@ -99,48 +159,52 @@ var markdownNavigator;
         },
     }, markdownNavigator || {});
     
-    window.addEventListener("load", function() {
-       const aTags = document.getElementsByTagName('a');
-       for (let aTag of aTags) {
-         try {
-           let href = aTag.getAttribute('href');
-           aTag.addEventListener("click", function(evt) { 
-             if (href[0] !== '#') {
-               if (markdownNavigator) {
-                 evt.stopPropagation();
-                 evt.preventDefault();
-                 markdownNavigator.openLinkInBrowser(href);
-               }
-             } else {
+    // add link and task item handlers to elements under root
+    function prepareElements(root) {
+      const aTags = root.getElementsByTagName('a');
+      for (let aTag of aTags) {
+        try {
+          let href = aTag.getAttribute('href');
+          aTag.addEventListener("click", function(evt) { 
+            if (href[0] !== '#') {
+              if (markdownNavigator) {
                 evt.stopPropagation();
-             }
-           }, false);
-         } catch(e) {
-         
-         }
-       }
-       
-       const spans = document.getElementsByTagName('span');
-       for (let span of spans) {
-         try {
-           let spanClass = span.getAttribute("class")
-           if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
-             let taskOffset = listItem.getAttribute("task-offset")
-             if (taskOffset) {
-               span.addEventListener("click", function(evt) { 
-               if (markdownNavigator) {
-                   evt.stopPropagation();
-                   evt.preventDefault();
-                   markdownNavigator.toggleTask(taskOffset);
-                 }
-               }, false);
-             }
-           }
-         } catch(e) {
-         
-         }
-       }
-       
+                evt.preventDefault();
+                markdownNavigator.openLinkInBrowser(href);
+              }
+            } else {
+               evt.stopPropagation();
+            }
+          }, false);
+        } catch(e) {
+        
+        }
+      }
+      
+      const spans = root.getElementsByTagName('span');
+      for (let span of spans) {
+        try {
+          let spanClass = span.getAttribute("class")
+          if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
+            span.addEventListener("click", function(evt) { 
+              // offset is read on click, it is shifted when preceding blocks are patched
+              let taskOffset = span.parentNode.getAttribute("task-offset")
+              if (taskOffset && markdownNavigator) {
+                evt.stopPropagation();
+                evt.preventDefault();
+                markdownNavigator.toggleTask(taskOffset);
+              }
+            }, false);
+          }
+        } catch(e) {
+        
+        }
+      }
+    }
+
+    window.addEventListener("load", function() {
+       prepareElements(document);
+
        window.document.addEventListener("click", function(evt) {
           // scroll source to preview element
           let element = evt.target;
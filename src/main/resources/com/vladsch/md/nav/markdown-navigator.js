@@ -239,6 +239,60 @@ markdownNavigator = (function () {
             }
         },
 
+        patchBlocks: (startIndex, deleteCount, oldCount, insertCount, html, sourceOffsetDelta) => {
+            // replace changed top level blocks of page content, null result means page needs to be reloaded
+            const container = document.querySelector("article.markdown-body, article.wiki-body");
+            if (!container || container.children.length !== oldCount) return null;
+
+            const children = container.children;
+            const next = startIndex + deleteCount < oldCount ? children[startIndex + deleteCount] : null;
+
+            if (deleteCount > 0) {
+                if (__lastHighlight && container.contains(__lastHighlight)) __unbridged.hideHighlight();
+
+                const range = document.createRange();
+                range.setStartBefore(children[startIndex]);
+                range.setEndAfter(children[startIndex + deleteCount - 1]);
+                range.deleteContents();
+            }
+
+            const inserted = [];
+            if (insertCount > 0) {
+                const holder = document.createElement("div");
+                holder.innerHTML = html;
+                while (holder.firstChild) {
+                    const node = holder.firstChild;
+                    if (node.nodeType === Node.ELEMENT_NODE) inserted.push(node);
+                    container.insertBefore(node, next);
+                }
+            }
+
+            if (sourceOffsetDelta !== 0) {
+                const shiftOffsets = element => {
+                    for (const name of ["md-pos", "task-offset"]) {
+                        const value = element.getAttribute(name);
+                        if (value) element.setAttribute(name, value.split("-").map(offset => +offset + sourceOffsetDelta).join("-"));
+                    }
+                };
+
+                for (let element = next; element; element = element.nextElementSibling) {
+                    shiftOffsets(element);
+                    element.querySelectorAll("[md-pos], [task-offset]").forEach(shiftOffsets);
+                }
+            }
+
+            if (inserted.length !== insertCount) return null;
+
+            for (const element of inserted) {
+                if (window.hljs) element.querySelectorAll("pre code").forEach(block => window.hljs.highlightBlock(block));
+                if (window.Prism) window.Prism.highlightAllUnder(element);
+            }
+
+            // let page scripts process new elements
+            document.dispatchEvent(new CustomEvent("markdownNavigatorPatch", { detail: inserted }));
+            return inserted;
+        },
+
         setJsBridge: jsBridge => {
             // map to real JsBridge
             __consoleLog = __tmp.__consoleSetJsBridge(jsBridge);
@@ -0,0 +1,134 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import java.io.File
+import java.io.IOException
+import java.util.function.Consumer
+
+class MdImageCacheTest : BasePlatformTestCase() {
+    private lateinit var myCacheDir: File
+    private var myNow: Long = 0L
+
+    override fun setUp() {
+        super.setUp()
+        myCacheDir = FileUtil.createTempDirectory("image-cache", null)
+        myNow = System.currentTimeMillis()
+
+        File(myCacheDir, "image_a.png").writeText("0123456789")
+        File(myCacheDir, "image_b.png").writeText("0123456789")
+    }
+
+    override fun tearDown() {
+        try {
+            FileUtil.delete(myCacheDir)
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    private fun writeManifest(vararg lines: String) {
+        File(myCacheDir, MdImageCache.MANIFEST_FILE_NAME).writeText(lines.joinToString("\n", postfix = "\n"))
+    }
+
+    private fun writeDefaultManifest() {
+        writeManifest(
+            MdImageCache.MANIFEST_HEADER,
+            "${myNow - 3000}\timage_a.png\ta.png",
+            "${myNow - 2000}\timage_b.png\tb.png",
+            "${myNow - 1000}\timage_missing.png\tmissing.png",
+            "bad line"
+        )
+    }
+
+    private fun isCached(cache: MdImageCache, fileName: String): Boolean {
+        return cache.isCachedFile(File(cache.tempDirPath, fileName).path)
+    }
+
+    private fun failWriter(): Consumer<File> = Consumer { fail("image should be cached: $it") }
+
+    fun test_manifestLoad() {
+        writeDefaultManifest()
+        val cache = MdImageCache(myCacheDir)
+
+        assertEquals(2, cache.fileCount())
+        assertEquals(20L, cache.fileSize())
+        assertTrue(isCached(cache, "image_a.png"))
+        assertTrue(isCached(cache, "image_b.png"))
+        assertFalse(isCached(cache, "image_missing.png"))
+
+        assertEquals(File(cache.tempDirPath, "image_a.png"), cache.getImageFile("a", ".png", failWriter()))
+        assertEquals(1L, cache.hits)
+    }
+
+    fun test_manifestUnknownHeader() {
+        writeManifest("# MdImageCache 0", "${myNow}\timage_a.png\ta.png")
+        val cache = MdImageCache(myCacheDir)
+
+        assertEquals(0, cache.fileCount())
+    }
+
+    fun test_manifestSave() {
+        writeDefaultManifest()
+        val cache = MdImageCache(myCacheDir)
+
+        // access makes a the most recently used
+        cache.getImageFile("a", ".png", failWriter())
+        cache.saveManifest()
+
+        val loaded = MdImageCache(myCacheDir)
+        assertEquals(2, loaded.fileCount())
+
+        loaded.evictImages(15L, Long.MAX_VALUE / 2)
+        assertTrue(isCached(loaded, "image_a.png"))
+        assertFalse(isCached(loaded, "image_b.png"))
+        assertFalse(File(myCacheDir, "image_b.png").exists())
+        assertEquals(1L, loaded.evictions)
+    }
+
+    fun test_evictBySize() {
+        writeDefaultManifest()
+        val cache = MdImageCache(myCacheDir)
+
+        cache.evictImages(20L, Long.MAX_VALUE / 2)
+        assertEquals(2, cache.fileCount())
+
+        cache.evictImages(15L, Long.MAX_VALUE / 2)
+        assertFalse(isCached(cache, "image_a.png"))
+        assertTrue(isCached(cache, "image_b.png"))
+        assertFalse(File(myCacheDir, "image_a.png").exists())
+        assertEquals(1L, cache.evictions)
+    }
+
+    fun test_evictByAge() {
+        writeDefaultManifest()
+        val cache = MdImageCache(myCacheDir)
+
+        cache.evictImages(Long.MAX_VALUE / 2, 2500L)
+        assertFalse(isCached(cache, "image_a.png"))
+        assertTrue(isCached(cache, "image_b.png"))
+        assertEquals(1L, cache.evictions)
+    }
+
+    fun test_failedWriterNotCached() {
+        val cache = MdImageCache(myCacheDir)
+
+        try {
+            cache.getImageFile("c", ".png", Consumer {
+                it.writeText("partial")
+                throw IOException("image generation failed")
+            })
+        } catch (e: Throwable) {
+            // writer failure is logged as an error
+        }
+
+        assertEquals(0, cache.fileCount())
+        assertEquals(0, myCacheDir.listFiles { _, name -> name.startsWith(MdImageCache.TEMP_FILE_PREFIX) }?.size ?: 0)
+
+        // next request writes it again
+        val file = cache.getImageFile("c", ".png", Consumer { it.writeText("image") })
+        assertEquals("image", file.readText())
+        assertTrue(cache.isCachedFile(file.path))
+    }
+}
@@ -0,0 +1,183 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.actions.handlers.util
+
+import com.vladsch.flexmark.util.data.MutableDataSet
+import com.vladsch.flexmark.util.format.CharWidthProvider
+import com.vladsch.flexmark.util.format.MarkdownParagraph
+import com.vladsch.flexmark.util.format.TrackedOffset
+import com.vladsch.flexmark.util.sequence.BasedSequence
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class ParagraphRewrapperTest {
+    private val words = listOf("a", "bb", "ccc", "dddd", "lorem", "ipsum", "dolor", "sit", "amet,", "consectetur")
+
+    private fun fullWrap(text: BasedSequence, width: Int, firstWidthOffset: Int, trackedOffset: TrackedOffset?): String {
+        val formatter = MarkdownParagraph(text, text, CharWidthProvider.NULL)
+        formatter.width = width
+        formatter.firstWidthOffset = firstWidthOffset
+        formatter.keepSoftBreaks = false
+        formatter.keepHardBreaks = true
+        formatter.isRestoreTrackedSpaces = true
+        if (trackedOffset != null) formatter.addTrackedOffset(trackedOffset)
+        return formatter.wrapText().toString()
+    }
+
+    // paragraph text as it is in a document with prefix on each line
+    private fun prefixedParagraph(text: String, prefix: String): BasedSequence {
+        val document = BasedSequence.of(prefix + text.replace("\n", "\n$prefix"))
+        val builder = document.builder
+        var lineStart = 0
+        for (line in text.split('\n')) {
+            val textStart = lineStart + prefix.length
+            builder.append(document.subSequence(textStart, textStart + line.length + if (textStart + line.length < document.length) 1 else 0))
+            lineStart = textStart + line.length + 1
+        }
+        return builder.toSequence()
+    }
+
+    private fun rewrapper(paragraph: BasedSequence, width: Int, firstWidthOffset: Int): ParagraphRewrapper {
+        return ParagraphRewrapper(paragraph, width, firstWidthOffset, CharWidthProvider.NULL, true, listOf(), MutableDataSet())
+    }
+
+    private fun rewrapText(rewrapper: ParagraphRewrapper, rewrap: ParagraphRewrapper.Rewrap): String {
+        val lines = ArrayList<String>()
+        for (i in 0 until rewrap.startLine) lines.add(rewrapper.getLine(i).toString())
+        lines.add(rewrap.wrapped.toString())
+        for (i in rewrap.endLine until rewrapper.lineCount) lines.add(rewrapper.getLine(i).toString())
+        return lines.joinToString("\n")
+    }
+
+    @Test
+    fun test_sameAsFullWrap() {
+        val random = Random(1)
+
+        for (prefix in listOf("", "> ", "  * ")) {
+            var rewrapped = 0
+            for (iteration in 0 until 2000) {
+                val width = 20 + random.nextInt(30)
+                val firstWidthOffset = random.nextInt(5) - 2
+                val sb = StringBuilder()
+                for (i in 0 until 5 + random.nextInt(80)) {
+                    if (i > 0) sb.append(if (random.nextInt(15) == 0) "  \n" else " ")
+                    sb.append(words[random.nextInt(words.size)])
+                }
+
+                val wrapped = fullWrap(BasedSequence.of(sb), width, firstWidthOffset, null)
+                var pos = random.nextInt(wrapped.length + 1)
+                val edited: String
+                val c: Char
+                val isDeleted: Boolean
+
+                if (random.nextBoolean() && pos > 0 && wrapped[pos - 1] != '\n' && wrapped.length > 1) {
+                    pos--
+                    c = wrapped[pos]
+                    edited = wrapped.substring(0, pos) + wrapped.substring(pos + 1)
+                    isDeleted = true
+                } else {
+                    c = " abcxyz"[random.nextInt(7)]
+                    edited = wrapped.substring(0, pos) + c + wrapped.substring(pos)
+                    pos++
+                    isDeleted = false
+                }
+
+                val paragraph = prefixedParagraph(edited, prefix)
+                val caretLine = edited.substring(0, pos).count { it == '\n' }
+                val caretOffset = pos + (caretLine + 1) * prefix.length
+
+                val rewrapper = rewrapper(paragraph, width, firstWidthOffset)
+                val rewrap = rewrapper.rewrap(TrackedOffset.track(caretOffset, c, isDeleted)) ?: continue
+                rewrapped++
+
+                val trackedOffset = TrackedOffset.track(pos, c, isDeleted)
+                val expected = fullWrap(BasedSequence.of(edited), width, firstWidthOffset, trackedOffset)
+                val message = "width: $width, offset: $firstWidthOffset, caret: $pos\n$edited"
+                assertEquals(message, expected, rewrapText(rewrapper, rewrap))
+
+                val caretIndex = (0 until rewrap.startLine).sumOf { rewrapper.getLine(it).length + 1 } + rewrap.caretIndex
+                assertEquals(message, trackedOffset.index, caretIndex)
+            }
+            assertTrue("prefix '$prefix' rewrapped $rewrapped", rewrapped > 1500)
+        }
+    }
+
+    @Test
+    fun test_stableBreak() {
+        val text = "" +
+            "lorem ipsum dolor sit\n" +
+            "amet, consectetur bbbb\n" +
+            "ccc dddd lorem\n" +
+            "consectetur a bb ccc\n" +
+            "dddd lorem ipsum dolor\n" +
+            "sit amet, consectetur\n" +
+            "a bb ccc dddd lorem\n" +
+            "consectetur"
+
+        // typing at end of the second line moves its last word down, lines after the third keep their breaks
+        val edited = text.replace("bbbb\n", "bbbbx\n")
+        val rewrapper = rewrapper(BasedSequence.of(edited), 22, 0)
+        val rewrap = rewrapper.rewrap(TrackedOffset.track(edited.indexOf("bbbbx") + 5, 'x', false))
+
+        assertNotNull(rewrap)
+        assertEquals(0, rewrap!!.startLine)
+        assertEquals(6, rewrap.endLine)
+        assertEquals("" +
+            "lorem ipsum dolor sit\n" +
+            "amet, consectetur\n" +
+            "bbbbx ccc dddd lorem\n" +
+            "consectetur a bb ccc\n" +
+            "dddd lorem ipsum dolor\n" +
+            "sit amet, consectetur", rewrap.wrapped.toString())
+        assertEquals("lorem ipsum dolor sit\namet, consectetur\nbbbbx".length, rewrap.caretIndex)
+    }
+
+    @Test
+    fun test_distantLinesNotChecked() {
+        // only lines next to the re-wrapped range have to be wrapped, the first line is left as is
+        val text = "" +
+            "lorem\n" +
+            "ipsum dolor sit amet,\n" +
+            "consectetur a bb ccc\n" +
+            "dddd lorem ipsum dolor\n" +
+            "sit"
+
+        val edited = text + "x"
+        val rewrapper = rewrapper(BasedSequence.of(edited), 22, 0)
+        val rewrap = rewrapper.rewrap(TrackedOffset.track(edited.length, 'x', false))
+
+        assertNotNull(rewrap)
+        assertEquals(3, rewrap!!.startLine)
+        assertEquals(5, rewrap.endLine)
+        assertEquals("dddd lorem ipsum dolor\nsitx", rewrap.wrapped.toString())
+    }
+
+    @Test
+    fun test_basedWrapped() {
+        val paragraph = prefixedParagraph("lorem ipsum\ndolor sit amet", "> ")
+        val rewrapper = rewrapper(paragraph, 22, 0)
+        val rewrap = rewrapper.rewrap(TrackedOffset.track(paragraph.endOffset, null, false))
+
+        assertNotNull(rewrap)
+        val builder = paragraph.builder
+        rewrapper.appendBased(builder, rewrap!!, 0, rewrap.wrapped.length)
+        val based = builder.toSequence()
+
+        assertEquals("lorem ipsum dolor sit\namet", based.toString())
+        assertEquals(paragraph.startOffset, based.startOffset)
+        assertEquals(paragraph.endOffset, based.endOffset)
+        assertSame(paragraph.baseSequence, based.baseSequence)
+    }
+
+    @Test
+    fun test_notWrapped() {
+        // lines before the edit which are not wrapped need the paragraph to be formatted
+        val text = "lorem\nipsum\ndolor sit amet"
+        val rewrapper = rewrapper(BasedSequence.of(text), 22, 0)
+        assertNull(rewrapper.rewrap(TrackedOffset.track(text.length, 't', false)))
+    }
+}
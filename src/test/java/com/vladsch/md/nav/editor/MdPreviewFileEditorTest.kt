@@ -0,0 +1,37 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import com.vladsch.md.nav.parser.flexmark.MdBlockHtmlCache
+import com.vladsch.md.nav.settings.MdRenderingProfile
+import com.vladsch.md.nav.settings.MdRenderingProfileManager
+
+class MdPreviewFileEditorTest : BasePlatformTestCase() {
+    override fun setUp() {
+        super.setUp()
+        MdRenderingProfileManager.getProfile(project).copyFrom(MdRenderingProfile(), true)
+    }
+
+    fun test_blockCacheKeySameProfile() {
+        val renderingProfile = MdRenderingProfileManager.getProfile(project)
+        assertEquals(MdPreviewFileEditor.getBlockCacheKey(renderingProfile, "provider", 0, 0L), MdPreviewFileEditor.getBlockCacheKey(renderingProfile, "provider", 0, 0L))
+    }
+
+    fun test_blockCacheKeyProfileChangedInPlace() {
+        val renderingProfile = MdRenderingProfileManager.getProfile(project)
+        val cache = MdBlockHtmlCache()
+
+        val render = cache.startRender(MdPreviewFileEditor.getBlockCacheKey(renderingProfile, "provider", 0, 0L))
+        render.put("block", MdBlockHtmlCache.Entry(0, "<p>block</p>", listOf()))
+        render.finish()
+
+        // settings change updates the profile instance like MdProjectSettings does
+        val changed = MdRenderingProfile(renderingProfile)
+        changed.htmlSettings.addAnchorLinks = !changed.htmlSettings.addAnchorLinks
+        renderingProfile.copyFrom(changed, true)
+
+        val nextRender = cache.startRender(MdPreviewFileEditor.getBlockCacheKey(renderingProfile, "provider", 0, 0L))
+        assertNull(nextRender.get("block"))
+        assertEquals(0, cache.size())
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class HtmlBlockPatchTest {
+
+    private fun page(content: String, head: String = ""): String {
+        return "<!DOCTYPE html>\n<html>\n<head>\n$head</head>\n<body>\n<article class=\"markdown-body\">\n$content</article>\n</body>\n</html>\n"
+    }
+
+    private val oldContent = "" +
+        "<h1 md-pos=\"0-5\">A</h1>\n" +
+        "<p md-pos=\"7-10\">abc</p>\n" +
+        "<pre><code>x<p>\n</code></pre>\n" +
+        "<ul><li task-offset=\"20\" md-pos=\"18-25\"><ul><li md-pos=\"20-22\">x</li></ul></li></ul>\n" +
+        "<!-- comment -->\n" +
+        "<p md-pos=\"30-33\">end<br></p>\n"
+
+    @Test
+    fun test_same() {
+        val patch = HtmlBlockPatch.diff(page(oldContent), page(oldContent))
+        assertNotNull(patch)
+        assertEquals(true, patch!!.isEmpty)
+        assertEquals(5, patch.oldCount)
+    }
+
+    @Test
+    fun test_changed() {
+        val newContent = "" +
+            "<h1 md-pos=\"0-5\">A</h1>\n" +
+            "<p md-pos=\"7-12\">abcde</p>\n" +
+            "<pre><code>x<p>\n</code></pre>\n" +
+            "<ul><li task-offset=\"22\" md-pos=\"20-27\"><ul><li md-pos=\"22-24\">x</li></ul></li></ul>\n" +
+            "<!-- comment -->\n" +
+            "<p md-pos=\"32-35\">end<br></p>\n"
+
+        val patch = HtmlBlockPatch.diff(page(oldContent), page(newContent))!!
+        assertEquals(1, patch.startIndex)
+        assertEquals(1, patch.deleteCount)
+        assertEquals(1, patch.insertCount)
+        assertEquals(2, patch.sourceOffsetDelta)
+        assertEquals("<p md-pos=\"7-12\">abcde</p>", patch.html)
+    }
+
+    @Test
+    fun test_inserted() {
+        val newContent = "" +
+            "<h1 md-pos=\"0-5\">A</h1>\n" +
+            "<p md-pos=\"7-10\">abc</p>\n" +
+            "<p md-pos=\"12-14\">new</p>\n" +
+            "<pre><code>x<p>\n</code></pre>\n" +
+            "<ul><li task-offset=\"26\" md-pos=\"24-31\"><ul><li md-pos=\"26-28\">x</li></ul></li></ul>\n" +
+            "<!-- comment -->\n" +
+            "<p md-pos=\"36-39\">end<br></p>\n"
+
+        val patch = HtmlBlockPatch.diff(page(oldContent), page(newContent))!!
+        assertEquals(2, patch.startIndex)
+        assertEquals(0, patch.deleteCount)
+        assertEquals(1, patch.insertCount)
+        assertEquals(6, patch.sourceOffsetDelta)
+    }
+
+    @Test
+    fun test_deleted() {
+        val newContent = "" +
+            "<h1 md-pos=\"0-5\">A</h1>\n" +
+            "<pre><code>x<p>\n</code></pre>\n" +
+            "<ul><li task-offset=\"14\" md-pos=\"12-19\"><ul><li md-pos=\"14-16\">x</li></ul></li></ul>\n" +
+            "<!-- comment -->\n" +
+            "<p md-pos=\"24-27\">end<br></p>\n"
+
+        val patch = HtmlBlockPatch.diff(page(oldContent), page(newContent))!!
+        assertEquals(1, patch.startIndex)
+        assertEquals(1, patch.deleteCount)
+        assertEquals(0, patch.insertCount)
+        assertEquals(-6, patch.sourceOffsetDelta)
+        assertEquals("", patch.html)
+    }
+
+    @Test
+    fun test_inconsistentOffsets() {
+        // offsets inside a block not shifted by the same amount, block is replaced
+        val patch = HtmlBlockPatch.diff(page(oldContent), page(oldContent.replace("18-25", "19-25")))!!
+        assertEquals(3, patch.startIndex)
+        assertEquals(1, patch.deleteCount)
+        assertEquals(1, patch.insertCount)
+        assertEquals(0, patch.sourceOffsetDelta)
+    }
+
+    @Test
+    fun test_headChanged() {
+        assertNull(HtmlBlockPatch.diff(page(oldContent), page(oldContent, "<style></style>\n")))
+    }
+
+    @Test
+    fun test_topLevelText() {
+        assertNull(HtmlBlockPatch.diff(page(oldContent), page("text <p>x</p>\n")))
+    }
+
+    @Test
+    fun test_insertedScript() {
+        assertNull(HtmlBlockPatch.diff(page(oldContent), page("<div><script>var a = '</div>';</script></div>\n")))
+    }
+
+    @Test
+    fun test_unclosedElement() {
+        assertNull(HtmlBlockPatch.diff(page(oldContent), page("<div><p>x</p>\n")))
+    }
+
+    @Test
+    fun test_script() {
+        val patch = HtmlBlockPatch.diff(page("<p md-pos=\"0-3\">abc</p>\n"), page("<p md-pos=\"0-4\">a\"b\\c\n</p>\n"))!!
+        assertEquals("patch(0, 1, 1, 1, \"<p md-pos=\\\"0-4\\\">a\\\"b\\\\c\\n</p>\", 0);", patch.toScript("patch"))
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util
+
+import com.vladsch.flexmark.util.sequence.Range
+import com.vladsch.flexmark.util.sequence.TagRange
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class HtmlTagRangeIndexTest {
+
+    private val tagPriorities = mapOf("a" to 1, "span" to 2, "img" to 3)
+
+    // in rendering order, outer elements before inner ones
+    private val tagRanges = listOf(
+        TagRange.of("h1", 0, 10),
+        TagRange.of("p", 12, 60),
+        TagRange.of("a", 20, 30),
+        TagRange.of("span", 20, 30),
+        TagRange.of("img", 32, 40),
+        TagRange.of("ul", 62, 100),
+        TagRange.of("li", 62, 80),
+        TagRange.of("p", 64, 80),
+        TagRange.of("li", 80, 100),
+        TagRange.of("p", 82, 100),
+        TagRange.of("pre", 110, 130)
+    )
+
+    // linear search previously used by preview panels
+    private fun linearBestTagRange(offset: Int, lineOffsets: Range, tagRanges: List<TagRange> = this.tagRanges): TagRange? {
+        var bestTagRange: TagRange? = null
+
+        for (tagRange in tagRanges) {
+            if (tagRange.doesContain(offset)) {
+                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span <= bestTagRange.span && (tagPriorities[tagRange.tag]
+                        ?: 0) > (tagPriorities[bestTagRange.tag] ?: 0)) {
+                    bestTagRange = tagRange
+                }
+            } else if (bestTagRange == null && lineOffsets.doesOverlap(tagRange)) {
+                bestTagRange = tagRange
+            }
+        }
+        return bestTagRange
+    }
+
+    @Test
+    fun test_sameAsLinear() {
+        val index = HtmlTagRangeIndex(tagRanges.shuffled(java.util.Random(1)))
+
+        for (offset in 0..140) {
+            val lineOffsets = Range.of(offset, offset)
+            assertEquals("offset $offset", linearBestTagRange(offset, lineOffsets), index.findBestTagRange(offset, lineOffsets, tagPriorities))
+        }
+    }
+
+    @Test
+    fun test_overlappingSameAsLinear() {
+        val random = java.util.Random(1)
+
+        for (iteration in 0 until 200) {
+            // arbitrary overlapping ranges with distinct tags, as produced by malformed input
+            val ranges = List(random.nextInt(20)) { i ->
+                val start = random.nextInt(50)
+                TagRange.of("tag$i", start, start + random.nextInt(30))
+            }
+            val index = HtmlTagRangeIndex(ranges)
+
+            for (offset in 0..85) {
+                val expected = linearBestTagRange(offset, Range.of(offset, offset), ranges)
+                assertEquals("iteration $iteration offset $offset", expected?.span, index.findBestTagRange(offset, Range.of(offset, offset), tagPriorities)?.span)
+            }
+        }
+    }
+
+    @Test
+    fun test_outerRangeLargePage() {
+        // body range encloses all paragraphs, lookups jump over paragraphs which end before the offset
+        val ranges = listOf(TagRange.of("body", 0, 100_000)) + List(10_000) { TagRange.of("p", it * 10, it * 10 + 5) }
+        val index = HtmlTagRangeIndex(ranges)
+
+        assertEquals(TagRange.of("p", 55_550, 55_555), index.findBestTagRange(55_552, null, tagPriorities))
+        assertEquals(TagRange.of("body", 0, 100_000), index.findBestTagRange(55_557, null, tagPriorities))
+    }
+
+    @Test
+    fun test_priority() {
+        val index = HtmlTagRangeIndex(tagRanges)
+        assertEquals("span", index.findBestTagRange(25, null, tagPriorities)?.tag)
+        assertEquals("a", index.findBestTagRange(25, null, mapOf())?.tag)
+    }
+
+    @Test
+    fun test_lineOffsets() {
+        val index = HtmlTagRangeIndex(tagRanges)
+        assertNull(index.findBestTagRange(105, null, tagPriorities))
+        assertNull(index.findBestTagRange(105, Range.of(102, 108), tagPriorities))
+        assertEquals(TagRange.of("pre", 110, 130), index.findBestTagRange(105, Range.of(102, 112), tagPriorities))
+    }
+
+    @Test
+    fun test_empty() {
+        assertNull(HtmlTagRangeIndex.EMPTY.findBestTagRange(0, Range.of(0, 10), tagPriorities))
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.inspections.table;
+
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.MdBundle;
+import com.vladsch.md.nav.parser.MdLexParser;
+import com.vladsch.md.nav.psi.element.MdTable;
+import com.vladsch.md.nav.settings.MdParserSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class GitHubTableInspectionTest extends BasePlatformTestCase {
+    private static final String INCONSISTENT_TABLE = "" +
+            "| a | b |\n" +
+            "|---|---|\n" +
+            "| 1 |\n" +
+            "";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MdRenderingProfile renderingProfile = MdRenderingProfileManager.getProfile(getProject());
+        renderingProfile.copyFrom(new MdRenderingProfile(), true);
+        MdParserSettings parserSettings = renderingProfile.getParserSettings();
+        parserSettings.setOptionsFlags(parserSettings.getOptionsFlags() | MdLexParser.GFM_TABLE_RENDERING);
+    }
+
+    @NotNull
+    private List<String> problems(@NotNull PsiFile file) {
+        ProblemDescriptor[] descriptors = new GitHubTableInspection().checkFile(file, InspectionManager.getInstance(getProject()), false);
+        List<String> problems = new ArrayList<>();
+        if (descriptors != null) {
+            for (ProblemDescriptor descriptor : descriptors) {
+                problems.add(descriptor.getDescriptionTemplate());
+            }
+        }
+        return problems;
+    }
+
+    @NotNull
+    private static MdTable getTable(@NotNull PsiFile file) {
+        return Objects.requireNonNull(PsiTreeUtil.findChildOfType(file, MdTable.class));
+    }
+
+    private void replaceString(@NotNull PsiFile file, int start, int end, @NotNull String text) {
+        Document document = Objects.requireNonNull(PsiDocumentManager.getInstance(getProject()).getDocument(file));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.replaceString(start, end, text));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    }
+
+    public void test_consistentTable() {
+        PsiFile file = myFixture.configureByText("test.md", "| a | b |\n|---|---|\n| 1 | 2 |\n");
+        assertEmpty(problems(file));
+    }
+
+    public void test_inconsistentColumns() {
+        PsiFile file = myFixture.configureByText("test.md", INCONSISTENT_TABLE);
+        assertSameElements(problems(file), MdBundle.message("annotation.table.inconsistent-columns"));
+    }
+
+    public void test_editOutsideTable() {
+        PsiFile file = myFixture.configureByText("test.md", "text\n\n" + INCONSISTENT_TABLE);
+        assertSameElements(problems(file), MdBundle.message("annotation.table.inconsistent-columns"));
+
+        replaceString(file, 0, 0, "more ");
+        assertSameElements(problems(file), MdBundle.message("annotation.table.inconsistent-columns"));
+    }
+
+    public void test_editTable() {
+        PsiFile file = myFixture.configureByText("test.md", INCONSISTENT_TABLE);
+        assertSameElements(problems(file), MdBundle.message("annotation.table.inconsistent-columns"));
+
+        int offset = INCONSISTENT_TABLE.lastIndexOf("|");
+        replaceString(file, offset, offset, "| 2 ");
+        assertEmpty(problems(file));
+    }
+
+    public void test_reformatAvailable() {
+        PsiFile file = myFixture.configureByText("test.md", "text\n\n" + INCONSISTENT_TABLE);
+        MdTable table = getTable(file);
+        int startOffset = table.getTextOffset();
+        int endOffset = startOffset + table.getTextLength();
+
+        assertTrue(new ReformatTableQuickFix("", startOffset, endOffset).isAvailable(getProject(), null, file));
+        assertFalse(new ReformatTableQuickFix("", startOffset, endOffset - 1).isAvailable(getProject(), null, file));
+        assertFalse(new ReformatTableQuickFix("", 0, endOffset).isAvailable(getProject(), null, file));
+    }
+
+    public void test_formattedTable() {
+        PsiFile file = myFixture.configureByText("test.md", INCONSISTENT_TABLE);
+        assertEquals("" +
+                "| a | b |\n" +
+                "|---|---|\n" +
+                "| 1 |   |\n" +
+                "", ReformatTableQuickFix.getFormattedTable(getTable(file)));
+    }
+
+    public void test_formattedTableInBlockQuote() {
+        PsiFile file = myFixture.configureByText("test.md", "> " + INCONSISTENT_TABLE.replace("\n|", "\n> |"));
+        assertEquals("" +
+                "| a | b |\n" +
+                "> |---|---|\n" +
+                "> | 1 |   |\n" +
+                "", ReformatTableQuickFix.getFormattedTable(getTable(file)));
+    }
+}
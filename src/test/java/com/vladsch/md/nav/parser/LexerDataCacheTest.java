@@ -0,0 +1,97 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.settings.MdDebugSettings;
+import com.vladsch.md.nav.settings.MdHtmlSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+
+public class LexerDataCacheTest extends BasePlatformTestCase {
+    private static final String TEXT_1 = "# Heading\n\nparagraph\n\nother paragraph\n\n## Heading 2\n\nlast paragraph\n";
+    private static final String TEXT_2 = "# Other File\n\nsome text\n\nmore text\n\n## Heading 2\n\nlast text\n";
+
+    private MdRenderingProfile myRenderingProfile;
+    private MdDebugSettings mySavedDebugSettings;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRenderingProfile = MdRenderingProfileManager.getProfile(getProject());
+        myRenderingProfile.copyFrom(new MdRenderingProfile(), true);
+
+        MdDebugSettings debugSettings = MdApplicationSettings.getInstance().getDebugSettings();
+        mySavedDebugSettings = new MdDebugSettings(debugSettings);
+        debugSettings.setUseLexerDataCache(true);
+        debugSettings.setUseIncrementalLexer(true);
+
+        LexerDataCache.getInstance().clear();
+        LexerDataCache.getInstance().resetStatistics();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            MdApplicationSettings.getInstance().getDebugSettings().copyFrom(mySavedDebugSettings, true);
+            LexerDataCache.getInstance().clear();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void test_sharedResult() {
+        LexerDataCache cache = LexerDataCache.getInstance();
+        LexerData lexerData = MdLexParserManager.parseMarkdown(myRenderingProfile, TEXT_1);
+
+        assertSame(lexerData, MdLexParserManager.parseMarkdown(myRenderingProfile, new StringBuilder(TEXT_1)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void test_settingsChangedInPlace() {
+        LexerDataCache cache = LexerDataCache.getInstance();
+        LexerDataCache.ParsedText parsedText = MdLexParserManager.parseMarkdown(myRenderingProfile, TEXT_1, null);
+        assertTrue(parsedText.isParsedWith(myRenderingProfile, TEXT_1));
+
+        // html settings are part of the key, cached result is not for the changed settings
+        MdHtmlSettings htmlSettings = myRenderingProfile.getHtmlSettings();
+        htmlSettings.setNoParaTags(!htmlSettings.getNoParaTags());
+
+        assertFalse(parsedText.isParsedWith(myRenderingProfile, TEXT_1));
+        LexerDataCache.ParsedText changedText = MdLexParserManager.parseMarkdown(myRenderingProfile, TEXT_1, null);
+        assertNotSame(parsedText, changedText);
+        assertSame(changedText, MdLexParserManager.parseMarkdown(myRenderingProfile, TEXT_1, null));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void test_lexerBase() {
+        LexerDataCache cache = LexerDataCache.getInstance();
+        MdLexer lexer1 = new MdLexer(myRenderingProfile);
+        MdLexer lexer2 = new MdLexer(myRenderingProfile);
+
+        lexer1.start(TEXT_1);
+        lexer2.start(TEXT_2);
+
+        // parse of another file and a partial restart do not replace the base of the first lexer
+        lexer2.start(TEXT_2, 0, TEXT_2.indexOf("## "), 0);
+        lexer1.start(TEXT_1.replace("other paragraph", "other edited paragraph"));
+
+        assertEquals(1, cache.getIncremental());
+        assertEquals(TEXT_1.replace("other paragraph", "other edited paragraph"), lexer1.getLastParsed().text);
+        assertEquals(TEXT_2, lexer2.getLastParsed().text);
+    }
+
+    public void test_sameTextReused() {
+        MdLexer lexer1 = new MdLexer(myRenderingProfile);
+        lexer1.start(TEXT_1);
+        LexerDataCache.getInstance().clear();
+
+        MdLexer lexer2 = new MdLexer(myRenderingProfile);
+        lexer2.setLastParsed(lexer1.getLastParsed());
+        lexer2.start(TEXT_1);
+
+        assertSame(lexer1.getLexerData(), lexer2.getLexerData());
+    }
+}
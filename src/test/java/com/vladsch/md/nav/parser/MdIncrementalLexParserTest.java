@@ -0,0 +1,158 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.parser.ast.MdASTNode;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Random;
+
+public class MdIncrementalLexParserTest extends BasePlatformTestCase {
+    private static final String[] BLOCKS = {
+            "# Heading\n",
+            "Setext Heading\n==============\n",
+            "paragraph text with *emphasis* and `code`\nsecond line of paragraph\n",
+            "---\n",
+            "| a | b |\n|---|---|\n| 1 | 2 |\n",
+            "- item 1\n- item 2\n",
+            "1. ordered\n2. ordered\n",
+            "> quoted text\n",
+            "```\nfenced code\n```\n",
+            "    indented code\n",
+    };
+
+    private static final String[] INSERTS = {
+            "a", " ", "  ", "    ", "\n", "\n\n", "- ", "1. ", "> ", "# ", "|", "```", "*", "`", "[x]", "---", "text ",
+    };
+
+    private MdRenderingProfile myRenderingProfile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRenderingProfile = MdRenderingProfileManager.getProfile(getProject());
+        myRenderingProfile.copyFrom(new MdRenderingProfile(), true);
+    }
+
+    @NotNull
+    private LexerData parse(@NotNull String text) {
+        return MdLexParserManager.parseMarkdownUncached(myRenderingProfile, text);
+    }
+
+    @Nullable
+    private LexerData reparse(@NotNull String oldText, @NotNull String newText) {
+        return MdIncrementalLexParser.reparse(oldText, parse(oldText), newText, this::parse);
+    }
+
+    @NotNull
+    private static String lexerDataText(@NotNull LexerData lexerData) {
+        StringBuilder sb = new StringBuilder();
+        PackedLexerTokens tokens = lexerData.lexerTokens;
+        for (int i = 0; i < tokens.size(); i++) {
+            sb.append(tokens.getElementType(i)).append('[').append(tokens.getStart(i)).append(", ").append(tokens.getEnd(i)).append(")\n");
+        }
+        appendNode(sb, lexerData.rootNode, 0);
+        return sb.toString();
+    }
+
+    private static void appendNode(@NotNull StringBuilder sb, @NotNull MdASTNode node, int level) {
+        for (int i = 0; i < level; i++) sb.append("  ");
+        sb.append(node.getElementType()).append('[').append(node.getStartOffset()).append(", ").append(node.getEndOffset()).append(")\n");
+        for (MdASTNode child : node.getChildren()) {
+            appendNode(sb, child, level + 1);
+        }
+    }
+
+    private void assertSameAsFullParse(@NotNull String message, @Nullable LexerData lexerData, @NotNull String newText) {
+        if (lexerData != null) {
+            assertEquals(message, lexerDataText(parse(newText)), lexerDataText(lexerData));
+        }
+    }
+
+    public void test_basic() {
+        String oldText = "# Heading\n\nparagraph\n\nother paragraph\n\n## Heading 2\n\nlast paragraph\n";
+        String newText = oldText.replace("other paragraph", "other edited paragraph");
+        LexerData lexerData = reparse(oldText, newText);
+
+        assertNotNull(lexerData);
+        assertSameAsFullParse(newText, lexerData, newText);
+    }
+
+    public void test_chainedReparse() {
+        String oldText = "# Heading\n\nparagraph\n\nother paragraph\n\n## Heading 2\n\nlast *paragraph*\n\n| a | b |\n|---|---|\n| 1 | 2 |\n";
+        String editedText = oldText.replace("other paragraph", "other edited paragraph");
+        String newText = editedText.replace("# Heading\n", "# Edited Heading\n");
+
+        // second reparse shifts blocks whose children were not yet shifted by the first
+        LexerData lexerData = reparse(oldText, editedText);
+        assertNotNull(lexerData);
+        lexerData = MdIncrementalLexParser.reparse(editedText, lexerData, newText, this::parse);
+
+        assertNotNull(lexerData);
+        assertSameAsFullParse(newText, lexerData, newText);
+    }
+
+    public void test_indentedAfterList() {
+        String oldText = "- item\n\npara\n\n# Heading\n\nmore text\n\nlast text\n";
+        String newText = oldText.replace("\npara\n", "\n  para\n");
+
+        assertNull(reparse(oldText, newText));
+    }
+
+    public void test_indentedAfterQuote() {
+        String oldText = "> quote\n\npara\n\n# Heading\n\nmore text\n\nlast text\n";
+        String newText = oldText.replace("\npara\n", "\n  para\n");
+
+        assertNull(reparse(oldText, newText));
+    }
+
+    public void test_indentedAfterHeading() {
+        String oldText = "# Heading\n\npara\n\n# Heading\n\nmore text\n\nlast text\n";
+        String newText = oldText.replace("\npara\n", "\n  para\n");
+        LexerData lexerData = reparse(oldText, newText);
+
+        assertNotNull(lexerData);
+        assertSameAsFullParse(newText, lexerData, newText);
+    }
+
+    public void test_listAbsorbsIndented() {
+        String oldText = "# Heading\n\npara\n\n  indented\n\nmore text\n\nlast text\n";
+        String newText = oldText.replace("\npara\n", "\n- para\n");
+
+        assertNull(reparse(oldText, newText));
+    }
+
+    public void test_randomEdits() {
+        Random random = new Random(42);
+        int reparsed = 0;
+
+        for (int doc = 0; doc < 20; doc++) {
+            StringBuilder sb = new StringBuilder();
+            int blockCount = 6 + random.nextInt(10);
+            for (int i = 0; i < blockCount; i++) {
+                if (i > 0) sb.append(random.nextInt(4) == 0 ? "\n\n" : "\n");
+                sb.append(BLOCKS[random.nextInt(BLOCKS.length)]);
+            }
+
+            String text = sb.toString();
+            for (int edit = 0; edit < 50; edit++) {
+                int start = random.nextInt(text.length() + 1);
+                int end = random.nextBoolean() ? start : Math.min(text.length(), start + random.nextInt(6));
+                String insert = random.nextInt(3) == 0 ? "" : INSERTS[random.nextInt(INSERTS.length)];
+                String newText = text.substring(0, start) + insert + text.substring(end);
+
+                LexerData lexerData = reparse(text, newText);
+                if (lexerData != null) reparsed++;
+
+                assertSameAsFullParse("doc: " + doc + " edit: " + edit + " replace [" + start + ", " + end + ") with '" + insert + "' in:\n" + text, lexerData, newText);
+                text = newText;
+            }
+        }
+
+        // make sure the comparison is not vacuous
+        assertTrue(reparsed > 0);
+    }
+}
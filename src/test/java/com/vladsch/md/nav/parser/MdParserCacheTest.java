@@ -0,0 +1,43 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.api.ParserPurpose;
+import com.vladsch.md.nav.settings.MdPreviewSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+
+public class MdParserCacheTest extends BasePlatformTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MdRenderingProfileManager.getProfile(getProject()).copyFrom(new MdRenderingProfile(), true);
+    }
+
+    public void test_sameProfile() {
+        MdParserCache cache = new MdParserCache(getProject());
+        MdRenderingProfile renderingProfile = MdRenderingProfileManager.getProfile(getProject());
+
+        Parser parser = cache.getParser(renderingProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER);
+        assertSame(parser, cache.getParser(renderingProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER));
+        assertSame(parser, cache.getParser(new MdRenderingProfile(renderingProfile), ParserPurpose.JAVAFX, HtmlPurpose.RENDER));
+        assertNotSame(parser, cache.getParser(renderingProfile, ParserPurpose.HTML, HtmlPurpose.RENDER));
+    }
+
+    public void test_profileChangedInPlace() {
+        MdParserCache cache = new MdParserCache(getProject());
+        MdRenderingProfile renderingProfile = MdRenderingProfileManager.getProfile(getProject());
+
+        Parser parser = cache.getParser(renderingProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER);
+
+        // preview settings are not parser or html settings but change parser options
+        MdPreviewSettings previewSettings = renderingProfile.getPreviewSettings();
+        previewSettings.setSynchronizePreviewPosition(!previewSettings.getSynchronizePreviewPosition());
+
+        Parser changedParser = cache.getParser(renderingProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER);
+        assertNotSame(parser, changedParser);
+        assertSame(changedParser, cache.getParser(renderingProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER));
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.Random;
+
+public class MdReparseableElementTypeTest extends BasePlatformTestCase {
+    private static final String[] BLOCKS = {
+            "# Heading\n",
+            "## Closed Heading ##\n",
+            "paragraph text with *emphasis*\nsecond line of paragraph\n",
+            "| a | b |\n|---|---|\n| 1 | 2 |\n",
+            "- item 1\n- item 2\n",
+            "> quoted text\n",
+            "```\nfenced code\n```\n",
+            "    indented code\n",
+    };
+
+    private static final String[] INSERTS = {
+            "a", " ", "  ", "    ", "\n", "- ", "> ", "# ", "|", "```", "text ",
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MdRenderingProfileManager.getProfile(getProject()).copyFrom(new MdRenderingProfile(), true);
+    }
+
+    @NotNull
+    private String freshPsi(@NotNull String text) {
+        PsiFile file = PsiFileFactory.getInstance(getProject()).createFileFromText("fresh.md", MdFileType.INSTANCE, text);
+        return DebugUtil.psiToString(file, false, true);
+    }
+
+    private void assertEditSameAsFullParse(@NotNull PsiFile file, int start, int end, @NotNull String insert) {
+        Document document = Objects.requireNonNull(PsiDocumentManager.getInstance(getProject()).getDocument(file));
+        String oldText = document.getText();
+
+        // build PSI before the edit so the change is reparsed
+        DebugUtil.psiToString(file, false, true);
+
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.replaceString(start, end, insert));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        assertEquals("replace [" + start + ", " + end + ") with '" + insert + "' in:\n" + oldText, freshPsi(document.getText()), DebugUtil.psiToString(file, false, true));
+    }
+
+    public void test_indentedAfterList() {
+        String text = "- item\n\npara\n\n# Heading\n\nmore text\n";
+        PsiFile file = myFixture.configureByText("test.md", text);
+        int offset = text.indexOf("para");
+
+        assertEditSameAsFullParse(file, offset, offset, "  ");
+    }
+
+    public void test_listMarkerBeforeIndented() {
+        String text = "# Heading\n\npara\n\n  indented\n\nmore text\n";
+        PsiFile file = myFixture.configureByText("test.md", text);
+        int offset = text.indexOf("para");
+
+        assertEditSameAsFullParse(file, offset, offset, "- ");
+    }
+
+    public void test_indentedCodeBeforeIndented() {
+        String text = "# Heading\n\n    code\n\n    more code\n\ntext\n";
+        PsiFile file = myFixture.configureByText("test.md", text);
+        int offset = text.indexOf("code");
+
+        assertEditSameAsFullParse(file, offset, offset, "x");
+    }
+
+    public void test_atxClosingMarker() {
+        String text = "# Title #\n\ntext\n";
+        PsiFile file = myFixture.configureByText("test.md", text);
+        int offset = text.indexOf("Title");
+
+        assertEditSameAsFullParse(file, offset, offset, "New ");
+
+        // closing marker is a leaf, not a nested heading
+        String psi = DebugUtil.psiToString(file, false, true);
+        assertEquals(psi, psi.indexOf("MdAtxHeaderImpl"), psi.lastIndexOf("MdAtxHeaderImpl"));
+        assertEquals(psi, 3, psi.split("HEADER_ATX_MARKER", -1).length);
+    }
+
+    public void test_randomEdits() {
+        Random random = new Random(42);
+
+        for (int doc = 0; doc < 10; doc++) {
+            StringBuilder sb = new StringBuilder();
+            int blockCount = 6 + random.nextInt(6);
+            for (int i = 0; i < blockCount; i++) {
+                if (i > 0) sb.append("\n");
+                sb.append(BLOCKS[random.nextInt(BLOCKS.length)]);
+            }
+
+            PsiFile file = myFixture.configureByText("test" + doc + ".md", sb.toString());
+            for (int edit = 0; edit < 20; edit++) {
+                int length = file.getTextLength();
+                int start = random.nextInt(length + 1);
+                int end = random.nextBoolean() ? start : Math.min(length, start + random.nextInt(4));
+                assertEditSameAsFullParse(file, start, end, INSERTS[random.nextInt(INSERTS.length)]);
+            }
+        }
+    }
+}
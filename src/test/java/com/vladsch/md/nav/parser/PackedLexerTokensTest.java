@@ -0,0 +1,175 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.sequence.Range;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+public class PackedLexerTokensTest extends BasePlatformTestCase {
+    private static final String[] DOCUMENTS = {
+            "" +
+                    "# Heading *emphasis* `code`\n" +
+                    "\n" +
+                    "Paragraph with **strong _nested emphasis_** and [link](url \"title\") ![image](img.png)\n" +
+                    "lazy continuation with <span>html</span> and &amp; entity\n" +
+                    "\n" +
+                    "- item 1\n" +
+                    "  - [ ] task item\n" +
+                    "  - [x] done item\n" +
+                    "\n" +
+                    "    continuation paragraph\n" +
+                    "\n" +
+                    "1. ordered\n" +
+                    "2. ordered with [ref]\n" +
+                    "\n" +
+                    "> quote with *emphasis*\n" +
+                    "> > nested quote\n" +
+                    "\n" +
+                    "| a | b |\n" +
+                    "|:--|--:|\n" +
+                    "| `1` | **2** |\n" +
+                    "\n" +
+                    "```java\n" +
+                    "fenced code\n" +
+                    "```\n" +
+                    "\n" +
+                    "    indented code\n" +
+                    "\n" +
+                    "<div>\n" +
+                    "html block\n" +
+                    "</div>\n" +
+                    "\n" +
+                    "[ref]: http://example.com\n" +
+                    "",
+            "Setext\n======\n\n---\n\ntext  \nwith hard break\\\nand escaped \\* char\n",
+            "   \n\n",
+    };
+
+    private MdRenderingProfile myRenderingProfile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRenderingProfile = MdRenderingProfileManager.getProfile(getProject());
+        myRenderingProfile.copyFrom(new MdRenderingProfile(), true);
+    }
+
+    @NotNull
+    private static String tokensText(@NotNull LexerToken[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (LexerToken token : tokens) {
+            sb.append(token.getElementType()).append('[').append(token.getRange().getStart()).append(", ").append(token.getRange().getEnd()).append(")\n");
+        }
+        return sb.toString();
+    }
+
+    public void test_sameAsListTokens() {
+        for (String text : DOCUMENTS) {
+            Document document = Objects.requireNonNull(MdLexParserManager.parseFlexmarkDocument(myRenderingProfile, text, true));
+            LexParserFlexmarkASTVisitor visitor = new LexParserFlexmarkASTVisitor(document);
+            visitor.build();
+
+            PackedLexerTokens.Builder builder = visitor.getTokens();
+            ArrayList<LexerToken> listTokens = new ArrayList<>(builder.size());
+            for (int i = 0; i < builder.size(); i++) {
+                listTokens.add(new LexerToken(builder.getStart(i), builder.getEnd(i), IElementType.find(builder.getTypeIndex(i)), builder.nesting[i]));
+            }
+
+            LexerToken[] expected = getListData(listTokens);
+            PackedLexerTokens packed = MdLexParser.getData(builder);
+
+            assertEquals(text, tokensText(expected == null ? new LexerToken[0] : expected), tokensText(packed.toLexerTokens()));
+        }
+    }
+
+    public void test_roundTrip() {
+        for (String text : DOCUMENTS) {
+            PackedLexerTokens tokens = MdLexParserManager.parseMarkdownUncached(myRenderingProfile, text).lexerTokens;
+            LexerToken[] lexerTokens = tokens.toLexerTokens();
+
+            assertEquals(text, tokensText(lexerTokens), tokensText(PackedLexerTokens.of(lexerTokens).toLexerTokens()));
+        }
+    }
+
+    public void test_emptyData() {
+        assertSame(MdLexParser.EMPTY_DATA, MdLexParserManager.parseMarkdownUncached(myRenderingProfile, ""));
+    }
+
+    // list representation used before packed tokens, kept as reference for the packed implementation
+
+    private static LexerToken[] getListData(ArrayList<LexerToken> lexerTokens) {
+        LexerToken[] tokens = lexerTokens.toArray(new LexerToken[0]);
+        TokenSet NON_MERGE_TOKEN_SET = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
+
+        if (tokens.length > 0) {
+            Arrays.sort(tokens);
+
+            int iMax = tokens.length;
+            LexerToken thisToken = tokens[0];
+            lexerTokens = new ArrayList<>(iMax);
+
+            for (int i = 1; i < iMax; i++) {
+                LexerToken thatToken = tokens[i];
+
+                if (thisToken.getRange().equals(thatToken.getRange())) {
+                    if (thisToken.getNesting() < thatToken.getNesting()) thisToken = thatToken;
+                    continue;
+                }
+
+                if (!thatToken.doesExtend(thisToken) || NON_MERGE_TOKEN_SET.contains(thisToken.getElementType())) {
+                    lexerTokens.add(thisToken);
+                    thisToken = thatToken;
+                } else {
+                    thisToken.setRange(thisToken.getRange().expandToInclude(thatToken.getRange()));
+                }
+            }
+            lexerTokens.add(thisToken);
+
+            tokens = lexerTokens.toArray(new LexerToken[0]);
+
+            ArrayList<LexerToken> lexemes = new ArrayList<>(tokens.length);
+            splitListLexemes(lexemes, tokens, 0, Integer.MAX_VALUE);
+            return lexemes.toArray(new LexerToken[0]);
+        }
+        return null;
+    }
+
+    private static int splitListLexemes(@NotNull ArrayList<LexerToken> lexemes, @NotNull LexerToken[] tokens, int start, int rangeEnd) {
+        LexerToken token = tokens[start];
+        Range range = token.getRange();
+        Range range1;
+
+        if (range.getEnd() <= rangeEnd) {
+            int end = tokens.length;
+
+            start++;
+            for (; start < end && (range1 = tokens[start].getRange()).getEnd() <= rangeEnd; start++) {
+                if (range.compare(range1) <= 0 && (range.doesNotOverlap(range1) || range.equals(range1))) {
+                    if (!range.equals(range1)) {
+                        lexemes.add(range.equals(token.getRange()) ? token : new LexerToken(range, token.getElementType()));
+                        token = tokens[start];
+                        range = token.getRange();
+                    }
+                } else if (!range.doesContain(range1)) {
+                    lexemes.add(token);
+                    token = tokens[start];
+                    range = token.getRange();
+                }
+            }
+
+            if (!range.isEmpty()) {
+                lexemes.add(range.equals(token.getRange()) ? token : new LexerToken(range, token.getElementType()));
+            }
+        }
+        return start;
+    }
+}
@@ -0,0 +1,49 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser.cache;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.psi.element.MdAnchorTarget;
+import com.vladsch.md.nav.psi.element.MdFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Objects;
+
+public class MdCachedFileAnchorTargetsTest extends BasePlatformTestCase {
+    @NotNull
+    private static String targetsText(@NotNull List<MdAnchorTarget> targets) {
+        StringBuilder sb = new StringBuilder();
+        for (MdAnchorTarget target : targets) {
+            assertTrue(target.isValid());
+            sb.append(target.getAnchorReferenceId()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void test_anchorTargets() {
+        MdFile file = (MdFile) myFixture.configureByText("test.md", "# Heading\n\n## Other Heading\n\ntext\n");
+
+        assertEquals("heading\n", targetsText(MdCachedFileElements.getAnchorTargets(file, "heading")));
+        assertEquals("other-heading\n", targetsText(MdCachedFileElements.getAnchorTargets(file, "Other-Heading")));
+        assertEquals("", targetsText(MdCachedFileElements.getAnchorTargets(file, "missing")));
+    }
+
+    public void test_updatedAfterEdit() {
+        MdFile file = (MdFile) myFixture.configureByText("test.md", "# Heading\n\n## Other Heading\n\ntext\n");
+        assertEquals("other-heading\n", targetsText(MdCachedFileElements.getAnchorTargets(file, "other-heading")));
+
+        Document document = Objects.requireNonNull(PsiDocumentManager.getInstance(getProject()).getDocument(file));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            int offset = document.getText().indexOf("Other");
+            document.replaceString(offset, offset + "Other".length(), "Changed");
+        });
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        assertEquals("", targetsText(MdCachedFileElements.getAnchorTargets(file, "other-heading")));
+        assertEquals("changed-heading\n", targetsText(MdCachedFileElements.getAnchorTargets(file, "changed-heading")));
+        assertEquals("heading\n", targetsText(MdCachedFileElements.getAnchorTargets(file, "heading")));
+    }
+}
@@ -0,0 +1,183 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser.cache;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
+import com.vladsch.md.nav.parser.cache.data.CachedDataOwner;
+import com.vladsch.md.nav.parser.cache.data.CachedDataSet;
+import com.vladsch.md.nav.parser.cache.data.dependency.DataDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.DataKeyDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileKeys;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate;
+import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ProjectFileMonitorTest extends BasePlatformTestCase {
+    private static final CachedDataKey<CachedDataOwner, String> DATA_KEY = new CachedDataKey<CachedDataOwner, String>("test") {
+        @Override
+        public boolean isValid(@NotNull String value) {
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public String compute(@NotNull CachedTransactionContext<CachedDataOwner> context) {
+            return "";
+        }
+    };
+
+    private static class ExtensionPredicate implements ProjectFilePredicate {
+        @Override
+        public boolean test(@NotNull PsiFile psiFile) {
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public ProjectFileKeys getFileKeys() {
+            return ProjectFileKeys.ofExtensions("java", "md");
+        }
+    }
+
+    private static class KeysPredicate implements ProjectFilePredicate {
+        final @NotNull ProjectFileKeys myFileKeys;
+        int myTestCount = 0;
+
+        KeysPredicate(@NotNull ProjectFileKeys fileKeys) {
+            myFileKeys = fileKeys;
+        }
+
+        @Override
+        public boolean test(@NotNull PsiFile psiFile) {
+            myTestCount++;
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public ProjectFileKeys getFileKeys() {
+            return myFileKeys;
+        }
+    }
+
+    @NotNull
+    private static DataKeyDependency computedDependency() {
+        // computed data key stays valid so the dependency is not removed by a project file change
+        CachedDataSet cachedData = new CachedDataSet("test");
+        cachedData.setValue(DATA_KEY, "", new DataDependency[0], new long[0]);
+        return cachedData.getDependency(DATA_KEY);
+    }
+
+    private static void removeDependency(@NotNull ProjectFileMonitor monitor, @NotNull DataKeyDependency keyDependency) {
+        keyDependency.getCachedData().remove(DATA_KEY);
+        monitor.removeInvalidDependencies();
+    }
+
+    public void test_extensionKeys() {
+        assertEquals(ProjectFileKeys.ofExtensions("java", "md").getExtensions(), ProjectFileKeys.ofExtensions("JAVA", "Md").getExtensions());
+    }
+
+    public void test_extensionIgnoresCase() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        ProjectFileDependency dependency = monitor.getDependency(new DataKeyDependency(new CachedDataSet("test"), DATA_KEY), new ExtensionPredicate());
+
+        try {
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("README.MD", "").getVirtualFile()).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("Foo.JAVA", "").getVirtualFile()).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("docs/page.md", "").getVirtualFile()).contains(dependency));
+            assertFalse(monitor.getFileDependencies(myFixture.addFileToProject("notes.txt", "").getVirtualFile()).contains(dependency));
+        } finally {
+            // data key was never computed so the dependency is invalid and removed
+            monitor.removeInvalidDependencies();
+        }
+    }
+
+    public void test_fileNameKeys() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        DataKeyDependency keyDependency = computedDependency();
+        ProjectFileDependency dependency = monitor.getDependency(keyDependency, new KeysPredicate(ProjectFileKeys.ofFileNames(Arrays.asList("Page", "image.png"))));
+
+        try {
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("docs/page.md", "").getVirtualFile()).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("PAGE.txt", "").getVirtualFile()).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("Image.PNG", "").getVirtualFile()).contains(dependency));
+            assertFalse(monitor.getFileDependencies(myFixture.addFileToProject("image.md", "").getVirtualFile()).contains(dependency));
+            assertFalse(monitor.getFileDependencies(myFixture.addFileToProject("other.md", "").getVirtualFile()).contains(dependency));
+        } finally {
+            removeDependency(monitor, keyDependency);
+        }
+    }
+
+    public void test_directoryKeys() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        VirtualFile docsFile = myFixture.addFileToProject("docs/sub/page.md", "").getVirtualFile();
+        String docsPath = docsFile.getParent().getParent().getPath();
+        ProjectFileKeys fileKeys = new ProjectFileKeys(Collections.emptySet(), Collections.emptySet(), Collections.singleton(docsPath));
+        DataKeyDependency keyDependency = computedDependency();
+        ProjectFileDependency dependency = monitor.getDependency(keyDependency, new KeysPredicate(fileKeys));
+
+        try {
+            assertTrue(monitor.getFileDependencies(docsFile).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("docs/page.txt", "").getVirtualFile()).contains(dependency));
+            assertFalse(monitor.getFileDependencies(myFixture.addFileToProject("other/page.md", "").getVirtualFile()).contains(dependency));
+        } finally {
+            removeDependency(monitor, keyDependency);
+        }
+    }
+
+    public void test_addFileKeys() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        DataKeyDependency keyDependency = computedDependency();
+        KeysPredicate predicate = new KeysPredicate(ProjectFileKeys.ofFileNames(Collections.singleton("page")));
+        ProjectFileDependency dependency = monitor.getDependency(keyDependency, predicate);
+        VirtualFile otherFile = myFixture.addFileToProject("other.md", "").getVirtualFile();
+
+        try {
+            assertFalse(monitor.getFileDependencies(otherFile).contains(dependency));
+
+            // keys for a predicate no longer monitored are ignored
+            monitor.addFileKeys(keyDependency, new KeysPredicate(ProjectFileKeys.ofFileNames(Collections.emptySet())), ProjectFileKeys.ofFileNames(Collections.singleton("other")));
+            assertFalse(monitor.getFileDependencies(otherFile).contains(dependency));
+
+            monitor.addFileKeys(keyDependency, predicate, ProjectFileKeys.ofFileNames(Collections.singleton("other")));
+            assertTrue(monitor.getFileDependencies(otherFile).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("page.md", "").getVirtualFile()).contains(dependency));
+        } finally {
+            removeDependency(monitor, keyDependency);
+        }
+    }
+
+    public void test_replacedDependencyKeys() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        DataKeyDependency keyDependency = computedDependency();
+        ProjectFileDependency dependency = monitor.getDependency(keyDependency, new KeysPredicate(ProjectFileKeys.ofFileNames(Collections.singleton("page"))));
+        ProjectFileDependency replaced = monitor.getDependency(keyDependency, new KeysPredicate(ProjectFileKeys.ofFileNames(Collections.singleton("other"))));
+
+        try {
+            assertFalse(monitor.getFileDependencies(myFixture.addFileToProject("page.md", "").getVirtualFile()).contains(dependency));
+            assertTrue(monitor.getFileDependencies(myFixture.addFileToProject("other.md", "").getVirtualFile()).contains(replaced));
+        } finally {
+            removeDependency(monitor, keyDependency);
+        }
+    }
+
+    public void test_invalidDependencyNotTested() {
+        ProjectFileMonitor monitor = ProjectFileMonitor.getInstance(getProject());
+        KeysPredicate predicate = new KeysPredicate(ProjectFileKeys.ofFileNames(Collections.singleton("page")));
+        // data key was never computed so the dependency is already invalid
+        ProjectFileDependency dependency = monitor.getDependency(new DataKeyDependency(new CachedDataSet("test"), DATA_KEY), predicate);
+        PsiFile psiFile = myFixture.addFileToProject("page.md", "");
+
+        monitor.checkDependencies(false, psiFile);
+
+        assertEquals(0, predicate.myTestCount);
+        assertFalse(monitor.getFileDependencies(psiFile.getVirtualFile()).contains(dependency));
+    }
+}
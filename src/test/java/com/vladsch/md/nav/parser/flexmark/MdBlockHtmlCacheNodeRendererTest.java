@@ -0,0 +1,100 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.MutableDataSet;
+import com.vladsch.flexmark.util.sequence.TagRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MdBlockHtmlCacheNodeRendererTest extends BasePlatformTestCase {
+    private static final String TEXT = "" +
+            "# Heading\n" +
+            "\n" +
+            "Paragraph with [link][ref] and `code`.\n" +
+            "\n" +
+            "* item 1\n" +
+            "* item 2\n" +
+            "\n" +
+            "```java\n" +
+            "class A {}\n" +
+            "```\n" +
+            "\n" +
+            "[ref]: https://example.com\n" +
+            "\n" +
+            "# Heading\n" +
+            "\n" +
+            "Last paragraph\n";
+
+    /**
+     * @return rendered HTML followed by tag ranges of the document
+     */
+    @NotNull
+    private static String render(@NotNull String text, @Nullable MdBlockHtmlCache cache) {
+        MutableDataSet options = new MutableDataSet();
+        options.set(HtmlRenderer.SOURCE_POSITION_ATTRIBUTE, MdNavigatorExtension.SOURCE_POSITION_ATTRIBUTE_NAME);
+        options.set(HtmlRenderer.RENDER_HEADER_ID, true);
+        if (cache != null) options.set(MdNavigatorExtension.BLOCK_HTML_CACHE, cache.startRender("context"));
+
+        HtmlRenderer.Builder rendererBuilder = HtmlRenderer.builder(options);
+        if (cache != null) rendererBuilder.nodeRendererFactory(new MdBlockHtmlCacheNodeRenderer.Factory());
+
+        Document document = Parser.builder(options).build().parse(text);
+        StringBuilder sb = new StringBuilder(rendererBuilder.build().render(document));
+        for (TagRange tagRange : HtmlRenderer.TAG_RANGES.get(document)) {
+            sb.append(tagRange.getTag()).append(":").append(tagRange.getStart()).append("-").append(tagRange.getEnd()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    public void test_sameAsUncached() {
+        MdBlockHtmlCache cache = new MdBlockHtmlCache();
+        assertEquals(render(TEXT, null), render(TEXT, cache));
+        assertEquals(0, cache.getHits());
+
+        assertEquals(render(TEXT, null), render(TEXT, cache));
+        assertTrue(cache.getHits() > 0);
+        assertEquals(String.format("blocks: %d, hits: %d, misses: %d, hit rate: 50%%", cache.size(), cache.getHits(), cache.getMisses()), cache.getStatistics());
+    }
+
+    public void test_shiftedBlocks() {
+        MdBlockHtmlCache cache = new MdBlockHtmlCache();
+        render(TEXT, cache);
+
+        String edited = TEXT.replace("Paragraph with", "Longer paragraph with");
+        long misses = cache.getMisses();
+        assertEquals(render(edited, null), render(edited, cache));
+
+        // only the edited paragraph is rendered again
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    public void test_referenceChanged() {
+        MdBlockHtmlCache cache = new MdBlockHtmlCache();
+        render(TEXT, cache);
+
+        String edited = TEXT.replace("https://example.com", "https://example.org");
+        assertEquals(render(edited, null), render(edited, cache));
+    }
+
+    public void test_headingIdChanged() {
+        MdBlockHtmlCache cache = new MdBlockHtmlCache();
+        render(TEXT, cache);
+
+        // second heading id no longer has a duplicate suffix
+        String edited = TEXT.replaceFirst("# Heading", "# First");
+        assertEquals(render(edited, null), render(edited, cache));
+    }
+
+    public void test_unusedEntriesRemoved() {
+        MdBlockHtmlCache cache = new MdBlockHtmlCache();
+        render(TEXT, cache);
+        int size = cache.size();
+
+        render(TEXT.replace("Last paragraph\n", ""), cache);
+        assertEquals(size - 1, cache.size());
+    }
+}
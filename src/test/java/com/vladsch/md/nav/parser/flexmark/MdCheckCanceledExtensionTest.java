@@ -0,0 +1,71 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.MutableDataSet;
+import org.jetbrains.annotations.NotNull;
+
+public class MdCheckCanceledExtensionTest extends BasePlatformTestCase {
+    private static final String TEXT = "" +
+            "# Heading\n" +
+            "\n" +
+            "Paragraph with *emphasis* and `code`\n" +
+            "on two lines.\n" +
+            "\n" +
+            "* item 1\n" +
+            "* item 2\n" +
+            "";
+
+    @NotNull
+    private static Parser parser(boolean checkCanceled) {
+        MutableDataSet options = new MutableDataSet();
+        if (checkCanceled) {
+            Parser.Builder builder = Parser.builder(options);
+            builder.customBlockParserFactory(new MdCheckCanceledExtension.BlockFactory());
+            builder.customInlineParserExtensionFactory(new MdCheckCanceledExtension.InlineFactory());
+            return builder.build();
+        }
+        return Parser.builder(options).build();
+    }
+
+    @NotNull
+    private static HtmlRenderer renderer(boolean checkCanceled) {
+        HtmlRenderer.Builder builder = HtmlRenderer.builder(new MutableDataSet());
+        if (checkCanceled) builder.nodeRendererFactory(new MdCheckCanceledExtension.RendererFactory());
+        return builder.build();
+    }
+
+    private static void assertCanceled(@NotNull Runnable runnable) {
+        EmptyProgressIndicator indicator = new EmptyProgressIndicator();
+        indicator.cancel();
+
+        try {
+            ProgressManager.getInstance().runProcess(runnable, indicator);
+            fail("expected ProcessCanceledException");
+        } catch (ProcessCanceledException ignored) {
+
+        }
+    }
+
+    public void test_sameAsUnchecked() {
+        String expected = renderer(false).render(parser(false).parse(TEXT));
+
+        assertEquals(expected, renderer(false).render(parser(true).parse(TEXT)));
+        assertEquals(expected, renderer(true).render(parser(true).parse(TEXT)));
+    }
+
+    public void test_parseCanceled() {
+        assertCanceled(() -> parser(true).parse(TEXT));
+    }
+
+    public void test_renderCanceled() {
+        Document document = parser(false).parse(TEXT);
+        assertCanceled(() -> renderer(true).render(document));
+    }
+}
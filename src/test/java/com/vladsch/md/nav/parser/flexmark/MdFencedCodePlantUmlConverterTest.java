@@ -0,0 +1,128 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.util.Md5Utils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+
+public class MdFencedCodePlantUmlConverterTest extends BasePlatformTestCase {
+    private static final String DIAGRAM = "" +
+            "@startuml\n" +
+            "!include common.puml\n" +
+            "  !include sub/part.puml!1\n" +
+            "!include <C4/C4_Context>\n" +
+            "!include missing.puml\n" +
+            "A -> B\n" +
+            "@enduml\n" +
+            "";
+
+    private File myBaseDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myBaseDir = FileUtil.createTempDirectory("plantuml", null);
+        FileUtil.writeToFile(new File(myBaseDir, "common.puml"), "skinparam monochrome true\n");
+        FileUtil.writeToFile(new File(myBaseDir, "sub/part.puml"), "@startuml\nA -> B\n@enduml\n@startuml\nB -> C\n@enduml\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            FileUtil.delete(myBaseDir);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    @NotNull
+    private String path(@NotNull String relativePath) {
+        return FileUtil.toSystemIndependentName(new File(myBaseDir, relativePath).getAbsolutePath());
+    }
+
+    @NotNull
+    private static String md5(@NotNull String text, @Nullable File baseDir) {
+        Md5Utils md5 = new Md5Utils();
+        md5.add(text);
+        MdFencedCodePlantUmlConverter.resolveIncludes(text, baseDir, md5);
+        return md5.getMd5();
+    }
+
+    public void test_relativeIncludes() {
+        String expected = "" +
+                "@startuml\n" +
+                "!include " + path("common.puml") + "\n" +
+                "  !include " + path("sub/part.puml") + "!1\n" +
+                "!include <C4/C4_Context>\n" +
+                "!include missing.puml\n" +
+                "A -> B\n" +
+                "@enduml\n" +
+                "";
+
+        assertEquals(expected, MdFencedCodePlantUmlConverter.resolveIncludes(DIAGRAM, myBaseDir, new Md5Utils()));
+    }
+
+    public void test_includeSubImportAndImage() throws IOException {
+        FileUtil.writeToFile(new File(myBaseDir, "lib.zip"), "zip");
+        FileUtil.writeToFile(new File(myBaseDir, "img/logo.png"), "png");
+
+        String text = "" +
+                "@startuml\n" +
+                "!includesub sub/part.puml!BLOCK\n" +
+                "!include_once common.puml\n" +
+                "!import lib.zip\n" +
+                "A -> B : <img:img/logo.png> and <img:img/logo.png{scale=0.5}>\n" +
+                "B -> C : <img:http://example.com/logo.png>\n" +
+                "@enduml\n" +
+                "";
+
+        String expected = "" +
+                "@startuml\n" +
+                "!includesub " + path("sub/part.puml") + "!BLOCK\n" +
+                "!include_once " + path("common.puml") + "\n" +
+                "!import " + path("lib.zip") + "\n" +
+                "A -> B : <img:" + path("img/logo.png") + "> and <img:" + path("img/logo.png") + "{scale=0.5}>\n" +
+                "B -> C : <img:http://example.com/logo.png>\n" +
+                "@enduml\n" +
+                "";
+
+        assertEquals(expected, MdFencedCodePlantUmlConverter.resolveIncludes(text, myBaseDir, new Md5Utils()));
+
+        String md5 = md5(text, myBaseDir);
+        FileUtil.writeToFile(new File(myBaseDir, "img/logo.png"), "changed");
+        assertFalse(md5.equals(md5(text, myBaseDir)));
+    }
+
+    public void test_absoluteIncludes() {
+        String text = "@startuml\n!include " + path("common.puml") + "\n@enduml\n";
+
+        assertEquals(text, MdFencedCodePlantUmlConverter.resolveIncludes(text, null, new Md5Utils()));
+        assertEquals(text, MdFencedCodePlantUmlConverter.resolveIncludes(text, myBaseDir, new Md5Utils()));
+    }
+
+    public void test_noBaseDir() {
+        assertEquals(DIAGRAM, MdFencedCodePlantUmlConverter.resolveIncludes(DIAGRAM, null, new Md5Utils()));
+    }
+
+    public void test_includedFileChangesMd5() throws IOException {
+        String md5 = md5(DIAGRAM, myBaseDir);
+        assertEquals(md5, md5(DIAGRAM, myBaseDir));
+
+        FileUtil.writeToFile(new File(myBaseDir, "common.puml"), "skinparam monochrome false\n");
+        assertFalse(md5.equals(md5(DIAGRAM, myBaseDir)));
+    }
+
+    public void test_placeholderFile() throws IOException {
+        File placeholder = MdFencedCodePlantUmlConverter.getPlaceholderFile();
+
+        assertTrue(placeholder.isFile());
+        assertNotNull(ImageIO.read(placeholder));
+        assertEquals(placeholder, MdFencedCodePlantUmlConverter.getPlaceholderFile());
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.intellij.util.indexing.FileBasedIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+public class MdFileNameIndexTest extends BasePlatformTestCase {
+    @NotNull
+    private String namesText(@NotNull Collection<VirtualFile> files) {
+        List<String> names = new ArrayList<>();
+        for (VirtualFile file : files) {
+            names.add(file.getPath().substring(file.getPath().indexOf("/src/") + 5));
+        }
+        Collections.sort(names);
+        return String.join("\n", names);
+    }
+
+    public void test_keys() {
+        assertEquals(new TreeSet<>(Arrays.asList("page", "page.kt", "page.kt.md")), new TreeSet<>(MdFileNameIndex.getKeys("Page.kt.md").keySet()));
+        assertEquals(Collections.singleton(".hidden"), MdFileNameIndex.getKeys(".hidden").keySet());
+    }
+
+    public void test_namePrefix() {
+        myFixture.addFileToProject("Page.md", "");
+        myFixture.addFileToProject("docs/page.kt.md", "");
+        myFixture.addFileToProject("docs/PAGE", "");
+        myFixture.addFileToProject("docs/Pages.md", "");
+        myFixture.addFileToProject("docs/Other.md", "");
+
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(getProject());
+        assertEquals("Page.md\ndocs/PAGE\ndocs/page.kt.md", namesText(MdFileNameIndex.getFilesByNamePrefix("Page", scope)));
+        assertEquals("docs/page.kt.md", namesText(MdFileNameIndex.getFilesByNamePrefix("page.KT", scope)));
+        assertEquals("", namesText(MdFileNameIndex.getFilesByNamePrefix("Pag", scope)));
+    }
+
+    public void test_inputFilter() {
+        FileBasedIndex.InputFilter inputFilter = new MdFileNameIndex().getInputFilter();
+        VirtualFile file = myFixture.addFileToProject("docs/Page.md", "").getVirtualFile();
+
+        assertTrue(inputFilter.acceptInput(file));
+        assertFalse(inputFilter.acceptInput(file.getParent()));
+
+        // library jar contents are not indexed
+        URL url = Objects.requireNonNull(junit.framework.TestCase.class.getClassLoader().getResource("junit/framework/TestCase.class"));
+        VirtualFile jarFile = VfsUtil.findFileByURL(url);
+        assertNotNull(url.toString(), jarFile);
+        assertFalse(inputFilter.acceptInput(jarFile));
+    }
+}
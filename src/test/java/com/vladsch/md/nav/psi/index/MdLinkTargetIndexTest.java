@@ -0,0 +1,171 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.psi.element.MdLinkElement;
+import com.vladsch.md.nav.psi.element.MdLinkRefElement;
+import com.vladsch.md.nav.psi.util.MdIndexUtil;
+import com.vladsch.md.nav.util.LinkRef;
+import com.vladsch.md.nav.util.PathInfo;
+import com.vladsch.md.nav.util.WikiLinkRef;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+public class MdLinkTargetIndexTest extends BasePlatformTestCase {
+    private static final int FILE_COUNT = 2000;
+
+    private static class Candidates {
+        final Set<MdLinkElement<?>> links = new LinkedHashSet<>();
+        int lookups;
+    }
+
+    private void addFiles() {
+        for (int i = 0; i < FILE_COUNT; i++) {
+            String text = "" +
+                    "# Page " + i + "\n" +
+                    "\n" +
+                    "[next](page" + (i + 1) % FILE_COUNT + ".md) and [back](./page" + (i + FILE_COUNT - 1) % FILE_COUNT + ".md#page-" + i + ")\n" +
+                    "\n" +
+                    "[[page" + (i * 7) % FILE_COUNT + "]] [[Other Page|Other-Page#anchor]]\n" +
+                    "\n" +
+                    "![image](images/page" + (i * 13) % FILE_COUNT + ".png) [encoded](Other%20Page.md)\n";
+            myFixture.addFileToProject("page" + i + ".md", text);
+        }
+        myFixture.addFileToProject("Other Page.md", "[first](page0.md)\n");
+        myFixture.addFileToProject("Other-Page.md", "[first](page0.md)\n");
+    }
+
+    /**
+     * Candidates found the way reference search did before the index, testing every key of the link element index
+     */
+    @NotNull
+    private Candidates scanCandidates(@NotNull String name, boolean useWikiPageMatching) {
+        Project project = getProject();
+        PathInfo pathInfo = new PathInfo(name);
+        String fileNameNoExt = pathInfo.getFileNameNoExt();
+        String fileName = pathInfo.getFileName();
+        List<String> keys = new ArrayList<>();
+        Candidates candidates = new Candidates();
+
+        MdLinkElementIndex.getInstance().processAllKeys(project, key -> {
+            candidates.lookups++;
+            int pos = key.indexOf('#');
+            String linkAddress = pos >= 0 ? key.substring(0, pos) : key;
+
+            if (useWikiPageMatching) {
+                String linkRefAddress = WikiLinkRef.linkAsFile(linkAddress);
+                boolean handled = false;
+                try {
+                    String regex = WikiLinkRef.linkAsFileRegex(linkRefAddress);
+                    if (fileNameNoExt.matches(regex) || fileName.matches(regex)) {
+                        keys.add(key);
+                        handled = true;
+                    }
+                } catch (PatternSyntaxException e) {
+                    handled = true;
+                }
+
+                if (pos >= 0 && !handled) {
+                    try {
+                        String regex1 = linkRefAddress + "\\Q#" + key.substring(pos + 1) + "\\E";
+                        if (fileNameNoExt.matches(regex1) || fileName.matches(regex1)) {
+                            keys.add(key);
+                        }
+                    } catch (PatternSyntaxException ignored) {
+                    }
+                }
+            } else if (fileNameNoExt.equals(new PathInfo(LinkRef.urlDecode(linkAddress)).getFileNameNoExt())) {
+                keys.add(key);
+            }
+            return true;
+        });
+
+        for (String key : keys) {
+            for (MdLinkElement<?> link : MdLinkElementIndex.getInstance().get(key, project, GlobalSearchScope.projectScope(project))) {
+                candidates.links.add(link);
+            }
+        }
+        return candidates;
+    }
+
+    @NotNull
+    private Candidates indexCandidates(@NotNull String name, boolean useWikiPageMatching) {
+        Project project = getProject();
+        Candidates candidates = new Candidates();
+
+        for (String key : MdLinkTargetIndex.getFileKeys(name, useWikiPageMatching)) {
+            candidates.lookups++;
+            for (MdLinkElement<?> link : MdLinkTargetIndex.getInstance().get(key, project, GlobalSearchScope.projectScope(project))) {
+                candidates.links.add(link);
+            }
+        }
+        return candidates;
+    }
+
+    @NotNull
+    private Set<PsiElement> scanReferences(@NotNull PsiFile file) {
+        Set<PsiElement> references = new HashSet<>();
+        for (MdLinkElement<?> link : scanCandidates(file.getName(), false).links) {
+            if (link.getLinkRefElement() == null || link.getLinkRefElement().getReference() == null) continue;
+            if (link.getLinkRefElement().getReference().resolve() == file) references.add(link.getLinkRefElement());
+        }
+        return references;
+    }
+
+    @NotNull
+    private Set<PsiElement> indexReferences(@NotNull PsiFile file) {
+        Set<PsiElement> references = new HashSet<>();
+        MdIndexUtil.processReferences(file, GlobalSearchScope.projectScope(getProject()), reference -> {
+            // plain text references are found through their own index
+            if (reference.getElement() instanceof MdLinkRefElement) references.add(reference.getElement());
+            return true;
+        });
+        return references;
+    }
+
+    public void test_linkKeys() {
+        assertEquals(new LinkedHashSet<>(Arrays.asList("Page", "[[dir-Page.md", "[[dir-Page.md#anchor")), MdLinkTargetIndex.getLinkKeys("dir/Page.md#anchor"));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("Other Page", "[[Other%20Page")), MdLinkTargetIndex.getLinkKeys("Other%20Page"));
+    }
+
+    public void test_fileKeys() {
+        assertEquals(new LinkedHashSet<>(Arrays.asList("Other Page")), MdLinkTargetIndex.getFileKeys("Other Page.md", false));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("[[Other-Page", "[[Other-Page.md")), MdLinkTargetIndex.getFileKeys("Other Page.md", true));
+    }
+
+    public void test_sameCandidates() {
+        addFiles();
+
+        for (String name : new String[] { "page0.md", "page1.md", "page1999.md", "Other Page.md", "Other-Page.md", "missing.md" }) {
+            for (boolean useWikiPageMatching : new boolean[] { false, true }) {
+                Candidates scanned = scanCandidates(name, useWikiPageMatching);
+                Candidates indexed = indexCandidates(name, useWikiPageMatching);
+
+                assertEquals(name + " wiki: " + useWikiPageMatching, scanned.links, indexed.links);
+                assertTrue(name + " lookups: " + indexed.lookups + " >= " + scanned.lookups, indexed.lookups * 100 < scanned.lookups);
+            }
+        }
+    }
+
+    public void test_sameReferences() {
+        addFiles();
+
+        for (String name : new String[] { "page0.md", "page1.md", "page1000.md", "Other Page.md", "Other-Page.md" }) {
+            PsiFile file = getPsiManager().findFile(Objects.requireNonNull(myFixture.findFileInTempDir(name)));
+            assertNotNull(name, file);
+            assertEquals(name, scanReferences(file), indexReferences(file));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.psi.element.MdListItem;
+import com.vladsch.md.nav.psi.element.MdTaskItemType;
+import com.vladsch.md.nav.util.format.MdTaskItemStatsManager;
+import com.vladsch.md.nav.util.format.TaskItemCounts;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class MdTaskItemIndexTest extends BasePlatformTestCase {
+    private static final int FILE_COUNT = 50;
+
+    private void addFiles() {
+        for (int i = 0; i < FILE_COUNT; i++) {
+            StringBuilder text = new StringBuilder();
+            text.append("# Tasks ").append(i).append("\n\n");
+
+            for (int j = 0; j < i % 5; j++) {
+                text.append("- [ ] open task ").append(j).append("\n");
+                text.append("- [x] done task ").append(j).append("\n");
+                text.append("  - [ ] nested open task\n");
+                text.append("  - [X] nested done task\n");
+                text.append("- plain item\n");
+                text.append("- [ ] \n");
+            }
+
+            text.append("\n");
+            if (i % 3 == 0) {
+                text.append("1. [ ] ordered open task\n");
+                text.append("2. [x] ordered done task\n\n");
+            }
+            text.append("> - [ ] quoted open task\n");
+            myFixture.addFileToProject("tasks" + i + ".md", text.toString());
+        }
+        myFixture.addFileToProject("no-tasks.md", "# No Tasks\n\n- item\n- [link](tasks0.md)\n");
+    }
+
+    @NotNull
+    private PsiFile getFile(@NotNull String name) {
+        PsiFile file = getPsiManager().findFile(Objects.requireNonNull(myFixture.findFileInTempDir(name)));
+        assertNotNull(name, file);
+        return file;
+    }
+
+    @NotNull
+    private static List<MdListItem> psiTaskItems(@NotNull PsiFile file) {
+        List<MdListItem> taskItems = new ArrayList<>();
+        for (MdListItem item : PsiTreeUtil.findChildrenOfType(file, MdListItem.class)) {
+            if (item.isTaskItem()) taskItems.add(item);
+        }
+        return taskItems;
+    }
+
+    @NotNull
+    private static String psiTaskItemText(@NotNull PsiFile file) {
+        StringBuilder sb = new StringBuilder();
+        for (MdListItem item : psiTaskItems(file)) {
+            sb.append(item.getTextRange().getStartOffset()).append(' ').append(item.getTaskItemType()).append(item.isEmptyItem() ? " empty" : "").append('\n');
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    private static String indexTaskItemText(@Nullable MdTaskItemIndex.TaskItems taskItems) {
+        StringBuilder sb = new StringBuilder();
+        if (taskItems != null) {
+            for (int i = 0; i < taskItems.size(); i++) {
+                sb.append(taskItems.getOffset(i)).append(' ').append(taskItems.getTaskItemType(i)).append(taskItems.isEmptyItem(i) ? " empty" : "").append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    private static String countsText(@Nullable TaskItemCounts counts) {
+        return counts == null ? "null" : "complete: " + counts.completeItems + " incomplete: " + counts.incompleteItems + " empty: " + counts.emptyItems;
+    }
+
+    @NotNull
+    private TaskItemCounts psiCounts() {
+        TaskItemCounts counts = new TaskItemCounts();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            VirtualFile virtualFile = myFixture.findFileInTempDir("tasks" + i + ".md");
+            if (virtualFile == null) continue;
+
+            for (MdListItem item : psiTaskItems(getFile("tasks" + i + ".md"))) {
+                if (item.getTaskItemType() == MdTaskItemType.COMPLETE) counts.completeItems++;
+                else if (item.isEmptyItem()) counts.emptyItems++;
+                else counts.incompleteItems++;
+            }
+        }
+        return counts;
+    }
+
+    public void test_sameAsPsi() {
+        addFiles();
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            PsiFile file = getFile("tasks" + i + ".md");
+            String expected = psiTaskItemText(file);
+            assertFalse(file.getName(), expected.isEmpty());
+            assertEquals(file.getName(), expected, indexTaskItemText(MdTaskItemIndex.getTaskItems(getProject(), file.getVirtualFile())));
+        }
+
+        assertNull(MdTaskItemIndex.getTaskItems(getProject(), getFile("no-tasks.md").getVirtualFile()));
+    }
+
+    public void test_projectCounts() {
+        addFiles();
+        MdTaskItemStatsManager manager = MdTaskItemStatsManager.getInstance(getProject());
+
+        assertEquals(countsText(psiCounts()), countsText(manager.getTaskItemCounts()));
+        assertEquals(FILE_COUNT, manager.getTaskItemFiles().size());
+
+        // unsaved edit adds a task and completes another
+        PsiFile file = getFile("tasks7.md");
+        Document document = Objects.requireNonNull(PsiDocumentManager.getInstance(getProject()).getDocument(file));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            int offset = document.getText().indexOf("- [ ] open task 0");
+            document.replaceString(offset, offset + "- [ ]".length(), "- [x]");
+            document.insertString(document.getTextLength(), "\n- [ ] added task\n");
+        });
+        PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+        assertEquals(countsText(psiCounts()), countsText(manager.getTaskItemCounts()));
+        assertEquals(psiTaskItemText(file), indexTaskItemText(MdTaskItemIndex.getTaskItems(getProject(), file.getVirtualFile())));
+
+        // deleted file's tasks are removed
+        VirtualFile deleted = Objects.requireNonNull(myFixture.findFileInTempDir("tasks3.md"));
+        WriteAction.run(() -> deleted.delete(this));
+
+        assertEquals(countsText(psiCounts()), countsText(manager.getTaskItemCounts()));
+        assertEquals(FILE_COUNT - 1, manager.getTaskItemFiles().size());
+        assertNull(manager.getTaskItemCounts(deleted));
+    }
+}
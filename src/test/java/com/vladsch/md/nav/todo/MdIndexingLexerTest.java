@@ -0,0 +1,142 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.todo;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
+import com.intellij.psi.impl.cache.impl.id.IdDataConsumer;
+import com.intellij.psi.impl.cache.impl.id.IdIndexEntry;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.vladsch.md.nav.parser.MdLexParser;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.vladsch.md.nav.psi.util.MdTypes.COMMENT_TEXT;
+
+public class MdIndexingLexerTest extends BasePlatformTestCase {
+    private static final String[] EQUIVALENCE_SAMPLES = {
+            "text <!-- TODO: item --> more\n",
+            "# Heading <!-- heading note -->\n\nparagraph `<!-- not a comment -->` and \\<!-- escaped --> text <!-- comment -->\n",
+            "text\n\n```html\n<!-- TODO: not a todo -->\n```\n\nmore <!-- FIXME: later -->\n",
+            "- item <!-- TODO: in list -->\n\n> quote <!-- TODO: in quote -->\n",
+    };
+
+    @NotNull
+    private static String lex(@NotNull String text) {
+        Lexer lexer = new MdIndexingLexer();
+        lexer.start(text);
+        StringBuilder sb = new StringBuilder();
+        IElementType tokenType;
+        while ((tokenType = lexer.getTokenType()) != null) {
+            sb.append(tokenType).append("[").append(lexer.getTokenSequence()).append("]").append('\n');
+            lexer.advance();
+        }
+        return sb.toString();
+    }
+
+    public void test_text() {
+        assertEquals("TEXT[text <! not a comment]\n", lex("text <! not a comment"));
+    }
+
+    public void test_comment() {
+        assertEquals("" +
+                "TEXT[text ]\n" +
+                "COMMENT_OPEN[<!--]\n" +
+                "COMMENT_TEXT[ TODO: item ]\n" +
+                "COMMENT_CLOSE[-->]\n" +
+                "TEXT[ more]\n", lex("text <!-- TODO: item --> more"));
+    }
+
+    public void test_unclosedComment() {
+        assertEquals("" +
+                "COMMENT_OPEN[<!--]\n" +
+                "COMMENT_TEXT[ TODO: item]\n", lex("<!-- TODO: item"));
+    }
+
+    public void test_escapedComment() {
+        assertEquals("TEXT[\\<!-- not a comment -->]\n", lex("\\<!-- not a comment -->"));
+    }
+
+    public void test_codeSpan() {
+        assertEquals("" +
+                "TEXT[text ]\n" +
+                "CODE_TEXT[`` <!-- ` -->``]\n" +
+                "TEXT[ more]\n", lex("text `` <!-- ` -->`` more"));
+    }
+
+    public void test_unclosedCodeSpan() {
+        assertEquals("" +
+                "TEXT[text `` ]\n" +
+                "COMMENT_OPEN[<!--]\n" +
+                "COMMENT_TEXT[ a ]\n" +
+                "COMMENT_CLOSE[-->]\n" +
+                "TEXT[\n\n``]\n", lex("text `` <!-- a -->\n\n``"));
+    }
+
+    public void test_fencedCode() {
+        assertEquals("" +
+                "TEXT[text\n]\n" +
+                "VERBATIM_CONTENT[```html\n<!-- TODO: not a todo -->\n```\n]\n" +
+                "TEXT[more]\n", lex("text\n```html\n<!-- TODO: not a todo -->\n```\nmore"));
+    }
+
+    public void test_fencedCodeIndented() {
+        assertEquals("" +
+                "TEXT[* item\n\n]\n" +
+                "VERBATIM_CONTENT[    ~~~~\n    ~~~\n    <!-- -->\n    ~~~~~\n]\n", lex("* item\n\n    ~~~~\n    ~~~\n    <!-- -->\n    ~~~~~\n"));
+    }
+
+    public void test_unclosedFencedCode() {
+        assertEquals("VERBATIM_CONTENT[```\n<!-- -->\n]\n", lex("```\n<!-- -->\n"));
+    }
+
+    public void test_notFence() {
+        assertEquals("" +
+                "TEXT[text ]\n" +
+                "CODE_TEXT[```a```]\n" +
+                "TEXT[ b```]\n", lex("text ```a``` b```"));
+    }
+
+    public void test_restart() {
+        String text = "text <!-- TODO: item --> `code` more";
+        Lexer lexer = new MdIndexingLexer();
+        lexer.start(text);
+        while (lexer.getTokenType() != COMMENT_TEXT) lexer.advance();
+
+        Lexer restarted = new MdIndexingLexer();
+        restarted.start(text, lexer.getTokenStart(), text.length(), lexer.getState());
+        while (lexer.getTokenType() != null) {
+            assertEquals(lexer.getTokenType(), restarted.getTokenType());
+            assertEquals(lexer.getTokenStart(), restarted.getTokenStart());
+            assertEquals(lexer.getTokenEnd(), restarted.getTokenEnd());
+            lexer.advance();
+            restarted.advance();
+        }
+        assertNull(restarted.getTokenType());
+    }
+
+    @NotNull
+    private static Map<IdIndexEntry, Integer> indexIds(@NotNull Function<OccurrenceConsumer, Lexer> lexerFactory, @NotNull CharSequence text) {
+        IdDataConsumer idDataConsumer = new IdDataConsumer();
+        OccurrenceConsumer consumer = new OccurrenceConsumer(idDataConsumer, false);
+        Lexer lexer = lexerFactory.apply(consumer);
+        lexer.start(text);
+        while (lexer.getTokenType() != null) lexer.advance();
+        return idDataConsumer.getResult();
+    }
+
+    /**
+     * Indexing lexer must find the same comment words as the full flexmark lexer
+     */
+    public void test_sameIdsAsParserLexer() {
+        Function<OccurrenceConsumer, Lexer> parserLexer = consumer -> new MdFilterLexer(MdLexParser.createLexer(null), consumer);
+
+        for (String text : EQUIVALENCE_SAMPLES) {
+            Map<IdIndexEntry, Integer> expected = indexIds(parserLexer, text);
+            assertFalse(text, expected.isEmpty());
+            assertEquals(text, expected, indexIds(MdIdIndexer::createIndexingLexer, text));
+        }
+    }
+}
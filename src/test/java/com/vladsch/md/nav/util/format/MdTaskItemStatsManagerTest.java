@@ -0,0 +1,80 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.util.format;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+
+public class MdTaskItemStatsManagerTest extends BasePlatformTestCase {
+    private static final String TASKS = "- [ ] open task\n- [x] done task\n";
+
+    @NotNull
+    private MdTaskItemStatsManager readAll() {
+        MdTaskItemStatsManager manager = MdTaskItemStatsManager.getInstance(getProject());
+        assertNotNull(manager.getTaskItemCounts());
+        assertFalse(manager.myReadAllFiles);
+        return manager;
+    }
+
+    public void test_unchangedFilesNotRead() {
+        myFixture.addFileToProject("a.md", TASKS);
+        PsiFile file = myFixture.addFileToProject("b.md", TASKS);
+        myFixture.addFileToProject("c.md", TASKS);
+        MdTaskItemStatsManager manager = readAll();
+        assertEquals(3, manager.getTaskItemFiles().size());
+
+        int readFileCount = manager.myReadFileCount;
+        Document document = Objects.requireNonNull(PsiDocumentManager.getInstance(getProject()).getDocument(file));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "- [ ] added task\n"));
+        PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+        TaskItemCounts counts = Objects.requireNonNull(manager.getTaskItemCounts());
+        assertEquals(4, counts.incompleteItems);
+        assertEquals(readFileCount + 1, manager.myReadFileCount);
+
+        // not Markdown, nothing to read
+        myFixture.addFileToProject("notes.txt", TASKS);
+        assertEmpty(manager.myChangedFiles);
+        assertNotNull(manager.getTaskItemCounts());
+        assertEquals(readFileCount + 1, manager.myReadFileCount);
+    }
+
+    public void test_directoryDeleteMarksCountedFiles() {
+        VirtualFile a = myFixture.addFileToProject("docs/a.md", TASKS).getVirtualFile();
+        VirtualFile b = myFixture.addFileToProject("docs/sub/b.md", TASKS).getVirtualFile();
+        myFixture.addFileToProject("c.md", TASKS);
+        MdTaskItemStatsManager manager = readAll();
+
+        VirtualFile docs = Objects.requireNonNull(a.getParent());
+        WriteAction.run(() -> docs.delete(this));
+
+        assertFalse(manager.myReadAllFiles);
+        assertEquals(new HashSet<>(Arrays.asList(a, b)), new HashSet<>(manager.myChangedFiles));
+
+        TaskItemCounts counts = Objects.requireNonNull(manager.getTaskItemCounts());
+        assertEquals(1, counts.incompleteItems);
+        assertEquals(1, manager.getTaskItemFiles().size());
+    }
+
+    public void test_newMarkdownFilesMarked() {
+        myFixture.addFileToProject("c.md", TASKS);
+        MdTaskItemStatsManager manager = readAll();
+
+        VirtualFile a = myFixture.addFileToProject("docs/a.md", TASKS).getVirtualFile();
+        myFixture.addFileToProject("docs/a.txt", TASKS);
+
+        assertFalse(manager.myReadAllFiles);
+        assertEquals(new HashSet<>(Collections.singletonList(a)), new HashSet<>(manager.myChangedFiles));
+        assertEquals(2, manager.getTaskItemFiles().size());
+    }
+}
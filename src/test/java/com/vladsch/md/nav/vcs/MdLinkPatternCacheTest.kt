@@ -0,0 +1,57 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.vcs
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MdLinkPatternCacheTest {
+    @Test
+    fun test_samePatternHits() {
+        val cache = MdLinkPatternCache()
+        val regex = cache.getRegex("^docs/page\\.md$")
+
+        assertSame(regex, cache.getRegex(String(StringBuilder("^docs/page\\.md$"))))
+        assertEquals(1L, cache.hits)
+        assertEquals(1L, cache.misses)
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun test_ignoreCaseIsPartOfKey() {
+        val cache = MdLinkPatternCache()
+        val regex = cache.getRegex("^Page$")
+        val ignoreCaseRegex = cache.getRegex("^Page$", true)
+
+        assertNotSame(regex, ignoreCaseRegex)
+        assertTrue(ignoreCaseRegex.matches("page"))
+        assertFalse(regex.matches("page"))
+        assertEquals(0L, cache.hits)
+        assertEquals(2L, cache.misses)
+        assertSame(ignoreCaseRegex, cache.getRegex("^Page$", true))
+    }
+
+    @Test
+    fun test_leastRecentlyUsedEvicted() {
+        val cache = MdLinkPatternCache(2)
+        val regex1 = cache.getRegex("1")
+        cache.getRegex("2")
+        cache.getRegex("1")
+        cache.getRegex("3")
+
+        assertEquals(2, cache.size)
+        assertSame(regex1, cache.getRegex("1"))
+        assertEquals(2L, cache.hits)
+        assertEquals(3L, cache.misses)
+
+        // "2" was least recently used when "3" was added
+
+        cache.resetStatistics()
+        cache.getRegex("2")
+        assertEquals(1L, cache.misses)
+        assertEquals("hits: 0, misses: 1, hit rate: 0%, size: 2", cache.getStatistics())
+    }
+}
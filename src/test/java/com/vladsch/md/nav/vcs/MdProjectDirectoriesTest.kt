@@ -0,0 +1,139 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.application.WriteAction
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import java.io.File
+
+class MdProjectDirectoriesTest : BasePlatformTestCase() {
+    private lateinit var myRootDir: File
+    private lateinit var myRoot: VirtualFile
+
+    override fun setUp() {
+        super.setUp()
+        myRootDir = FileUtil.createTempDirectory("directories", null)
+        File(myRootDir, "docs/api").mkdirs()
+        File(myRootDir, "src/docs").mkdirs()
+        File(myRootDir, ".git/objects").mkdirs()
+        myRoot = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(myRootDir)!!
+        VfsUtilCore.processFilesRecursively(myRoot) { true }
+    }
+
+    override fun tearDown() {
+        try {
+            FileUtil.delete(myRootDir)
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    private fun directories(): MdProjectDirectories {
+        val directories = MdProjectDirectories(project, listOf(myRoot))
+        assertEquals(listOf("docs", "src", "docs/api", "src/docs"), paths(directories.getDirectories()))
+        return directories
+    }
+
+    private fun paths(directories: List<VirtualFile>): List<String> {
+        return directories.map { VfsUtilCore.getRelativePath(it, myRoot)!! }
+    }
+
+    private fun find(path: String): VirtualFile {
+        return myRoot.findFileByRelativePath(path)!!
+    }
+
+    fun test_breadthFirstOrder() {
+        val directories = directories()
+
+        assertEquals(listOf("docs", "src/docs"), paths(directories.getDirectories("docs", "docs.")))
+        assertEquals(listOf("docs/api"), paths(directories.getDirectories("api", "api.")))
+        assertEquals(listOf<String>(), paths(directories.getDirectories("missing", "missing.")))
+    }
+
+    fun test_created() {
+        val directories = directories()
+
+        WriteAction.run<Exception> {
+            val guide = find("docs").createChildDirectory(this, "guide")
+            val images = guide.createChildDirectory(this, "images")
+            val hidden = find(".git").createChildDirectory(this, "guide")
+            directories.directoryCreated(guide)
+            directories.directoryCreated(images)
+            directories.directoryCreated(hidden)
+        }
+
+        assertEquals(listOf("docs", "src", "docs/api", "docs/guide", "src/docs", "docs/guide/images"), paths(directories.getDirectories()))
+        assertEquals(listOf("docs/guide"), paths(directories.getDirectories("guide", "guide.")))
+    }
+
+    fun test_renamed() {
+        val directories = directories()
+
+        val api = find("docs/api")
+        WriteAction.run<Exception> {
+            api.rename(this, "reference")
+            directories.directoryMoved(api)
+        }
+
+        assertEquals(listOf<String>(), paths(directories.getDirectories("api", "api.")))
+        assertEquals(listOf("docs/reference"), paths(directories.getDirectories("reference", "reference.")))
+    }
+
+    fun test_moved() {
+        val directories = directories()
+
+        val docs = find("src/docs")
+        WriteAction.run<Exception> {
+            docs.createChildDirectory(this, "images")
+            directories.directoryCreated(docs.findChild("images")!!)
+        }
+        assertEquals(listOf("docs", "src/docs"), paths(directories.getDirectories("docs", "docs.")))
+
+        WriteAction.run<Exception> {
+            docs.move(this, find("docs/api"))
+            directories.directoryMoved(docs)
+        }
+
+        assertEquals(listOf("docs", "src", "docs/api", "docs/api/docs", "docs/api/docs/images"), paths(directories.getDirectories()))
+        assertEquals(listOf("docs", "docs/api/docs"), paths(directories.getDirectories("docs", "docs.")))
+    }
+
+    fun test_movedOutOfProject() {
+        val directories = directories()
+
+        val docs = find("src/docs")
+        WriteAction.run<Exception> {
+            docs.move(this, find(".git"))
+            directories.directoryMoved(docs)
+        }
+
+        assertEquals(listOf("docs", "src", "docs/api"), paths(directories.getDirectories()))
+    }
+
+    fun test_deleted() {
+        val directories = directories()
+
+        WriteAction.run<Exception> {
+            find("src/docs").delete(this)
+            directories.directoryDeleted()
+        }
+
+        assertEquals(listOf("docs", "src", "docs/api"), paths(directories.getDirectories()))
+        assertEquals(listOf("docs"), paths(directories.getDirectories("docs", "docs.")))
+    }
+
+    fun test_subtreeDeleted() {
+        val directories = directories()
+
+        WriteAction.run<Exception> {
+            find("docs").delete(this)
+            directories.directoryDeleted()
+        }
+
+        assertEquals(listOf("src", "src/docs"), paths(directories.getDirectories()))
+        assertEquals(listOf<String>(), paths(directories.getDirectories("api", "api.")))
+    }
+}
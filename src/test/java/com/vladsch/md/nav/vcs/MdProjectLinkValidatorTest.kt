@@ -0,0 +1,80 @@
+// Copyright (c) 2015-2023 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import com.vladsch.md.nav.settings.MdRenderingProfile
+import com.vladsch.md.nav.settings.MdRenderingProfileManager
+
+class MdProjectLinkValidatorTest : BasePlatformTestCase() {
+    override fun setUp() {
+        super.setUp()
+        MdRenderingProfileManager.getProfile(project).copyFrom(MdRenderingProfile(), true)
+    }
+
+    fun test_problemDescriptions() {
+        val ids = GitHubLinkInspector::class.java.fields.filter { it.name.startsWith("ID_") && it.type == String::class.java }.map { it.get(null) as String }
+        assertFalse(ids.isEmpty())
+
+        for (id in ids + MdProjectLinkValidator.ID_UNRESOLVED_LINK) {
+            val description = MdProjectLinkValidator.getProblemDescription(id)
+            assertFalse(id, description == id || description.isBlank())
+        }
+    }
+
+    fun test_cachedResults() {
+        myFixture.addFileToProject("a.md", "[b](b.md)\n")
+        myFixture.addFileToProject("b.md", "text\n")
+        val validator = MdProjectLinkValidator(project)
+
+        val result = validator.validate(EmptyProgressIndicator())
+        assertEquals(2, result.files)
+        assertEquals(2, result.checkedFiles)
+        assertEquals(0, result.problems.size)
+
+        assertEquals(0, validator.validate(EmptyProgressIndicator()).checkedFiles)
+    }
+
+    fun test_addedFileRechecksFilesWithLinkName() {
+        myFixture.addFileToProject("a.md", "[b](b.md)\n")
+        myFixture.addFileToProject("b.md", "text\n")
+        myFixture.addFileToProject("c.md", "[d](docs/d.md)\n")
+        val validator = MdProjectLinkValidator(project)
+
+        validator.validate(EmptyProgressIndicator())
+
+        // unrelated name, only the new file is checked
+        validator.fileAdded(myFixture.addFileToProject("other.md", "text\n").virtualFile)
+        assertEquals(1, validator.validate(EmptyProgressIndicator()).checkedFiles)
+
+        // new file and file with a link of the same name are checked
+        validator.fileAdded(myFixture.addFileToProject("sub/B.md", "text\n").virtualFile)
+        assertEquals(2, validator.validate(EmptyProgressIndicator()).checkedFiles)
+        assertEquals(0, validator.validate(EmptyProgressIndicator()).checkedFiles)
+    }
+
+    fun test_directoryRechecksFilesWithLinks() {
+        myFixture.addFileToProject("a.md", "[b](b.md)\n")
+        myFixture.addFileToProject("b.md", "text\n")
+        val validator = MdProjectLinkValidator(project)
+
+        validator.validate(EmptyProgressIndicator())
+
+        // paths under a directory with files changed, new file and file with links are checked, file without links is not
+        validator.fileAdded(myFixture.addFileToProject("docs/page.md", "text\n").virtualFile.parent)
+        assertEquals(2, validator.validate(EmptyProgressIndicator()).checkedFiles)
+    }
+
+    fun test_unresolvedLinkResolvedByNewFile() {
+        myFixture.addFileToProject("a.md", "[missing](missing.md)\n")
+        val validator = MdProjectLinkValidator(project)
+
+        val problems = validator.validate(EmptyProgressIndicator()).problems
+        assertEquals(1, problems.size)
+        assertEquals(MdProjectLinkValidator.ID_UNRESOLVED_LINK, problems[0].id)
+        assertEquals(1, problems[0].lineNumber)
+
+        validator.fileAdded(myFixture.addFileToProject("missing.md", "text\n").virtualFile)
+        assertEquals(0, validator.validate(EmptyProgressIndicator()).problems.size)
+    }
+}